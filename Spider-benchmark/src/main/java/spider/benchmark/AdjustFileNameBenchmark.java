@@ -0,0 +1,71 @@
+package spider.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import spider.config.SpiderConfig;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * adjustFileName的开销，并和预编译正则、逐字符过滤两种写法对比
+ *
+ * @author Gloduck
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AdjustFileNameBenchmark {
+    private static final Pattern ILLEGAL = Pattern.compile("[\\\\/*?<>:\"|]");
+    @Param({"plain-file-name.mp4", "a/b\\\\c*d?e<f>g:h\"i|j.mp4", "一个很长的中文标题，里面带有：冒号、问号？以及其他的一些字符|用来测试.mp4"})
+    private String name;
+    private BenchmarkSpider spider;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        SpiderConfig config = new SpiderConfig();
+        config.setType("benchmark");
+        config.setTargetLists(Collections.singletonList("http://127.0.0.1/list"));
+        config.adjustConfig();
+        spider = new BenchmarkSpider(config, "http://127.0.0.1", 0);
+    }
+
+    @Benchmark
+    public String adjustFileName() {
+        return spider.fileName(name);
+    }
+
+    @Benchmark
+    public String precompiledPattern() {
+        return ILLEGAL.matcher(name).replaceAll("");
+    }
+
+    @Benchmark
+    public String charLoop() {
+        StringBuilder builder = null;
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            boolean illegal = c == '\\' || c == '/' || c == '*' || c == '?' || c == '<' || c == '>' || c == ':' || c == '"' || c == '|';
+            if (illegal && builder == null) {
+                builder = new StringBuilder(name.length()).append(name, 0, i);
+            } else if (!illegal && builder != null) {
+                builder.append(c);
+            }
+        }
+        return builder == null ? name : builder.toString();
+    }
+}
@@ -0,0 +1,52 @@
+package spider.benchmark;
+
+import spider.AbstractSpider;
+import spider.config.SpiderConfig;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 基准测试用的爬虫，列表中的每个链接直接对应合成服务器上的一个文件，不产生额外的解析请求
+ *
+ * @author Gloduck
+ */
+public class BenchmarkSpider extends AbstractSpider {
+    private final String baseUrl;
+    private final int fileCount;
+
+    public BenchmarkSpider(SpiderConfig config, String baseUrl, int fileCount) {
+        super(config);
+        this.baseUrl = baseUrl;
+        this.fileCount = fileCount;
+    }
+
+    @Override
+    protected DownloadInfo getDownloadInfo(String url) {
+        String id = url.substring(url.lastIndexOf('/') + 1);
+        DownloadInfo info = new DownloadInfo();
+        info.setFileName(adjustFileName("file-" + id + ".bin"));
+        info.setTargetPath(config.getBaseDownloadPath());
+        info.setLink(baseUrl + "/file/" + id);
+        return info;
+    }
+
+    @Override
+    protected List<String> parsePageList(String singleList) {
+        List<String> urls = new ArrayList<>(fileCount);
+        for (int i = 0; i < fileCount; i++) {
+            urls.add(baseUrl + "/page/" + i);
+        }
+        return urls;
+    }
+
+    /**
+     * 暴露给基准测试调用
+     *
+     * @param name 原文件名
+     * @return 替换后的文件名
+     */
+    public String fileName(String name) {
+        return adjustFileName(name);
+    }
+}
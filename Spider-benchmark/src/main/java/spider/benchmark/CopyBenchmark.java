@@ -0,0 +1,104 @@
+package spider.benchmark;
+
+import cn.hutool.core.io.IoUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import spider.buffer.DirectBufferPool;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 比较从输入流复制到文件的几种方式：原来的IoUtil.copyByNIO、每次新分配堆缓冲区的通道复制，
+ * 以及现在传输路径使用的池化直接内存缓冲区加positional write。源数据以InputStream读取，和网络响应体一致
+ *
+ * @author Gloduck
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CopyBenchmark {
+    private static final int FILE_SIZE = 64 * 1024 * 1024;
+    @Param({"8192", "65536", "1048576", "5242880"})
+    private int bufferSize;
+    private Path source;
+    private Path target;
+    private DirectBufferPool bufferPool;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        source = Files.createTempFile("spider-copy-source", ".bin");
+        target = Files.createTempFile("spider-copy-target", ".bin");
+        byte[] data = new byte[FILE_SIZE];
+        new Random(42).nextBytes(data);
+        Files.write(source, data);
+        bufferPool = new DirectBufferPool(DirectBufferPool.floorTierSize(bufferSize));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(source);
+        Files.deleteIfExists(target);
+    }
+
+    @Benchmark
+    public long hutoolCopyByNio() throws IOException {
+        try (InputStream in = Files.newInputStream(source); OutputStream out = Files.newOutputStream(target)) {
+            return IoUtil.copyByNIO(in, out, bufferSize, null);
+        }
+    }
+
+    @Benchmark
+    public long channelCopyHeapBuffer() throws IOException {
+        return channelCopy(ByteBuffer.allocate(bufferSize));
+    }
+
+    @Benchmark
+    public long channelCopyPooledDirectBuffer() throws IOException, InterruptedException {
+        ByteBuffer buffer = bufferPool.lease(DirectBufferPool.floorTierSize(bufferSize));
+        try {
+            return channelCopy(buffer);
+        } finally {
+            bufferPool.release(buffer);
+        }
+    }
+
+    private long channelCopy(ByteBuffer buffer) throws IOException {
+        try (ReadableByteChannel in = Channels.newChannel(Files.newInputStream(source));
+             FileChannel out = FileChannel.open(target, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            long position = 0;
+            while (in.read(buffer) != -1) {
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    position += out.write(buffer, position);
+                }
+                buffer.clear();
+            }
+            return position;
+        }
+    }
+}
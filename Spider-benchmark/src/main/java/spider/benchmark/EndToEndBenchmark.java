@@ -0,0 +1,89 @@
+package spider.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import spider.config.SpiderConfig;
+import spider.download.TransferEngine;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * startDownload的端到端耗时，从本地合成服务器下载一批文件，每次调用都下载到新的空目录
+ *
+ * @author Gloduck
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class EndToEndBenchmark {
+    @Param({"BLOCKING", "ASYNC"})
+    private TransferEngine engine;
+    @Param({"1", "4"})
+    private int segmentCount;
+    @Param({"8"})
+    private int fileCount;
+    @Param({"33554432"})
+    private long fileSize;
+    private SyntheticFileServer server;
+    private Path downloadDir;
+
+    @Setup(Level.Trial)
+    public void startServer() throws IOException {
+        server = new SyntheticFileServer(fileSize);
+    }
+
+    @TearDown(Level.Trial)
+    public void stopServer() {
+        server.close();
+    }
+
+    @Setup(Level.Invocation)
+    public void createDownloadDir() throws IOException {
+        downloadDir = Files.createTempDirectory("spider-e2e");
+    }
+
+    @TearDown(Level.Invocation)
+    public void deleteDownloadDir() throws IOException {
+        try (Stream<Path> paths = Files.walk(downloadDir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public long startDownload() throws InterruptedException, IOException {
+        SpiderConfig config = new SpiderConfig();
+        config.setType("benchmark");
+        config.setTargetLists(Collections.singletonList(server.baseUrl() + "/list"));
+        config.setBaseDownloadPath(downloadDir.toString());
+        config.setSegmentCount(segmentCount);
+        config.setMinSegmentSize(1024 * 1024);
+        config.setTransferEngine(engine);
+        config.adjustConfig();
+        BenchmarkSpider spider = new BenchmarkSpider(config, server.baseUrl(), fileCount);
+        spider.startDownload();
+        if (!spider.getFailedSet().isEmpty()) {
+            throw new IllegalStateException("下载失败：" + spider.getFailures());
+        }
+        return spider.getMetrics().getSnapshot().getBytesTransferred();
+    }
+}
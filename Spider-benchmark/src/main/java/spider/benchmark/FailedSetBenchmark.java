@@ -0,0 +1,73 @@
+package spider.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 多个线程同时记录失败链接时failedSet的竞争开销。最初使用ConcurrentSkipListSet，现在是ConcurrentHashMap的keySet
+ *
+ * @author Gloduck
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(8)
+@Fork(1)
+public class FailedSetBenchmark {
+    private static final int KEY_COUNT = 16 * 1024;
+    private final String[] keys = new String[KEY_COUNT];
+    private Set<String> skipListSet;
+    private Set<String> concurrentKeySet;
+    private Set<String> synchronizedSet;
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        for (int i = 0; i < KEY_COUNT; i++) {
+            keys[i] = "https://example.com/view_video.php?viewkey=ph" + Integer.toHexString(i * 0x9E3779B9);
+        }
+        skipListSet = new ConcurrentSkipListSet<>();
+        concurrentKeySet = ConcurrentHashMap.newKeySet();
+        synchronizedSet = Collections.synchronizedSet(new HashSet<>());
+    }
+
+    @Benchmark
+    public boolean skipListSet() {
+        return addAndCheck(skipListSet);
+    }
+
+    @Benchmark
+    public boolean concurrentKeySet() {
+        return addAndCheck(concurrentKeySet);
+    }
+
+    @Benchmark
+    public boolean synchronizedHashSet() {
+        return addAndCheck(synchronizedSet);
+    }
+
+    private boolean addAndCheck(Set<String> set) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        set.add(keys[random.nextInt(KEY_COUNT)]);
+        return set.contains(keys[random.nextInt(KEY_COUNT)]);
+    }
+}
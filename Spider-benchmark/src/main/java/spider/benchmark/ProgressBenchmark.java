@@ -0,0 +1,68 @@
+package spider.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import spider.progress.ProgressReporter;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 每个数据块的进度回调开销。perChunkPrintf模拟原来的ProgressMonitor加DefaultNoticeHook.downloading，
+ * 每块都格式化并写入带锁的PrintStream；reporterIncrease是现在传输线程上唯一的操作
+ *
+ * @author Gloduck
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(8)
+@Fork(1)
+public class ProgressBenchmark {
+    private static final long TOTAL = 1L << 30;
+    private static final int CHUNK = 64 * 1024;
+    private PrintStream sink;
+    private final AtomicLong legacyCurrent = new AtomicLong();
+    private ProgressReporter reporter;
+    private ProgressReporter.Task task;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        sink = new PrintStream(OutputStream.nullOutputStream());
+        reporter = new ProgressReporter(1000, tasks -> sink.print(tasks.size()));
+        reporter.start();
+        task = reporter.track("benchmark.bin", "http://127.0.0.1/file/0", TOTAL);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        task.finish();
+        reporter.shutdown();
+    }
+
+    @Benchmark
+    public void perChunkPrintf() {
+        long current = legacyCurrent.addAndGet(CHUNK);
+        sink.printf("线程：%s当前的下载进度为；%f\n", Thread.currentThread().getName(), ((current * 100.0) / TOTAL));
+    }
+
+    @Benchmark
+    public void reporterIncrease() {
+        task.increase(CHUNK);
+    }
+}
@@ -0,0 +1,93 @@
+package spider.benchmark;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 基准测试用的本地HTTP服务器，/file/{id}返回指定大小的合成数据，支持HEAD、Range和ETag，
+ * 数据由固定的块重复组成，服务端本身的开销尽量小
+ *
+ * @author Gloduck
+ */
+public class SyntheticFileServer implements AutoCloseable {
+    private static final int CHUNK_SIZE = 64 * 1024;
+    private final long fileSize;
+    private final byte[] chunk = new byte[CHUNK_SIZE];
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    /**
+     * @param fileSize 每个文件的大小
+     * @throws IOException 启动失败
+     */
+    public SyntheticFileServer(long fileSize) throws IOException {
+        this.fileSize = fileSize;
+        for (int i = 0; i < CHUNK_SIZE; i++) {
+            chunk[i] = (byte) (i * 31 + 7);
+        }
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 128);
+        server.createContext("/file/", this::serveFile);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    /**
+     * @return 服务器地址，例如http://127.0.0.1:12345
+     */
+    public String baseUrl() {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+    }
+
+    private void serveFile(HttpExchange exchange) throws IOException {
+        try {
+            String etag = "\"" + fileSize + "\"";
+            long start = 0;
+            long end = fileSize - 1;
+            int status = 200;
+            String range = exchange.getRequestHeaders().getFirst("Range");
+            String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+            if (range != null && range.startsWith("bytes=") && (ifRange == null || ifRange.equals(etag))) {
+                String[] bounds = range.substring("bytes=".length()).split("-", 2);
+                start = Long.parseLong(bounds[0]);
+                if (bounds.length > 1 && !bounds[1].isEmpty()) {
+                    end = Math.min(end, Long.parseLong(bounds[1]));
+                }
+                status = 206;
+                exchange.getResponseHeaders().set("Content-Range", "bytes " + start + "-" + end + "/" + fileSize);
+            }
+            exchange.getResponseHeaders().set("Accept-Ranges", "bytes");
+            exchange.getResponseHeaders().set("ETag", etag);
+            long length = end - start + 1;
+            if ("HEAD".equals(exchange.getRequestMethod())) {
+                exchange.getResponseHeaders().set("Content-Length", String.valueOf(length));
+                exchange.sendResponseHeaders(status, -1);
+                return;
+            }
+            exchange.sendResponseHeaders(status, length);
+            try (OutputStream body = exchange.getResponseBody()) {
+                long position = start;
+                while (position <= end) {
+                    int offset = (int) (position % CHUNK_SIZE);
+                    int n = (int) Math.min(CHUNK_SIZE - offset, end + 1 - position);
+                    body.write(chunk, offset, n);
+                    position += n;
+                }
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
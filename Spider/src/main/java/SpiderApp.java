@@ -1,15 +1,21 @@
 import cn.hutool.core.io.IoUtil;
 
+import cn.hutool.json.JSON;
+import cn.hutool.json.JSONArray;
 import cn.hutool.json.JSONObject;
 import cn.hutool.json.JSONUtil;
 
 import spider.AbstractSpider;
+import spider.JobHandle;
 import spider.NoticeHook;
+import spider.SpiderScheduler;
 import spider.config.SpiderConfig;
 import spider.impl.PornHubSpider;
 import spider.utils.GlobalUtils;
 
 import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
 
 
 /**
@@ -21,6 +27,10 @@ public class SpiderApp {
         start();
     }
 
+    /**
+     * 配置文件可以是单个配置，也可以是配置的数组。多个配置在同一个调度器中同时运行，
+     * 共享的传输名额取各个配置中最大的maxThreadCount，按照jobWeight分配
+     */
     public static void start() {
         try {
             File configFile = GlobalUtils.getFileInJarPath("config.json");
@@ -28,25 +38,55 @@ public class SpiderApp {
                 throw new FileNotFoundException();
             }
             String jsonConfig = IoUtil.read(new FileReader(configFile));
-            JSONObject jsonObject = JSONUtil.parseObj(jsonConfig);
-            SpiderConfig config = jsonObject.toBean(SpiderConfig.class);
-            config.adjustConfig();
-            AbstractSpider abstractSpider;
-            switch (config.getType()) {
-                case "pornhub":
-                    abstractSpider = new PornHubSpider(config, new NoticeHook.DefaultNoticeHook());
-                    break;
-                default:
-                    throw new IllegalArgumentException();
+            JSON json = JSONUtil.parse(jsonConfig);
+            List<SpiderConfig> configs = new ArrayList<>();
+            if (json instanceof JSONArray) {
+                for (Object item : (JSONArray) json) {
+                    configs.add(((JSONObject) item).toBean(SpiderConfig.class));
+                }
+            } else {
+                configs.add(((JSONObject) json).toBean(SpiderConfig.class));
+            }
+            int budget = 0;
+            for (SpiderConfig config : configs) {
+                config.adjustConfig();
+                budget = Math.max(budget, config.getMaxThreadCount());
+            }
+            if (configs.size() == 1) {
+                createSpider(configs.get(0)).startDownload();
+                return;
+            }
+            SpiderScheduler scheduler = new SpiderScheduler(budget);
+            List<JobHandle> jobs = new ArrayList<>();
+            for (int i = 0; i < configs.size(); i++) {
+                SpiderConfig config = configs.get(i);
+                jobs.add(scheduler.submit(config.getType() + "-" + i, createSpider(config)));
+            }
+            scheduler.awaitAll();
+            for (JobHandle job : jobs) {
+                if (job.getFailure() instanceof IOException) {
+                    throw (IOException) job.getFailure();
+                } else if (job.getFailure() instanceof IllegalArgumentException) {
+                    throw (IllegalArgumentException) job.getFailure();
+                }
             }
-            abstractSpider.startDownload();
-
         } catch (FileNotFoundException e) {
             System.out.println("启动失败，无法找到配置文件");
-        } catch (IllegalArgumentException e) {
+        } catch (IllegalArgumentException | ClassCastException e) {
             System.out.println("启动失败，请检查配置文件是否错误");
         } catch (InterruptedException e){
             System.out.println("线程池关闭失败");
+        } catch (IOException e){
+            System.out.println("启动失败，无法打开URL边界日志、缓存或者工作队列");
+        }
+    }
+
+    private static AbstractSpider createSpider(SpiderConfig config) {
+        switch (config.getType()) {
+            case "pornhub":
+                return new PornHubSpider(config, new NoticeHook.DefaultNoticeHook());
+            default:
+                throw new IllegalArgumentException();
         }
     }
 
@@ -1,40 +1,155 @@
 package spider;
 
-import cn.hutool.core.io.IoUtil;
-import cn.hutool.core.io.StreamProgress;
-import cn.hutool.core.util.NumberUtil;
 import cn.hutool.http.HttpRequest;
 import lombok.Data;
-import org.jsoup.internal.StringUtil;
+import spider.buffer.BufferPoolStats;
+import spider.buffer.DirectBufferPool;
+import spider.cache.DiskResolutionCache;
+import spider.cache.HttpPageCache;
+import spider.cache.LruResolutionCache;
+import spider.cache.ResolutionCache;
+import spider.cache.ResolvedEntry;
 import spider.config.SpiderConfig;
+import spider.dedup.ContentIndex;
+import spider.dedup.DedupMode;
+import spider.distributed.DistributedRole;
+import spider.distributed.FileWorkQueue;
+import spider.distributed.Lease;
+import spider.distributed.QueueStatus;
+import spider.distributed.RemoteTaskException;
+import spider.distributed.WorkQueue;
+import spider.download.AsyncDownloader;
+import spider.download.ContentDigest;
+import spider.download.DownloadCheckpoint;
+import spider.download.DownloadException;
+import spider.download.SegmentedDownloader;
+import spider.download.TransferControl;
+import spider.download.TransferEngine;
+import spider.download.TransferWatchdog;
+import spider.engine.ExecutionMode;
+import spider.engine.RetryPolicy;
+import spider.engine.Stage;
+import spider.engine.StageStats;
+import spider.engine.VirtualThreads;
+import spider.engine.WorkTracker;
+import spider.engine.WorkerBudget;
+import spider.event.EventBus;
+import spider.event.EventSubscriber;
+import spider.frontier.UrlFrontier;
+import spider.frontier.UrlState;
+import spider.html.HtmlStreamParser;
+import spider.html.HtmlTag;
+import spider.html.TagSelector;
+import spider.http.HttpResult;
+import spider.http.JdkHttpClient;
+import spider.http.SpiderHttpClient;
+import spider.limit.ConcurrencyController;
+import spider.limit.HostLimiter;
+import spider.limit.LimitedHttpRequest;
+import spider.metrics.MetricsDumper;
+import spider.metrics.SpiderMetrics;
+import spider.progress.ProgressReporter;
 
 import java.io.*;
 import java.net.InetSocketAddress;
 import java.net.Proxy;
 import java.net.URL;
-import java.net.URLConnection;
 import java.nio.file.*;
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 
 /**
  * @author Gloduck
  */
 public abstract class AbstractSpider {
+    private static final String DEADLINE_MESSAGE = "超过了整体的截止时间";
+    private static final String STOPPED_MESSAGE = "任务已停止";
+    private static final String ABORTED_MESSAGE = "运行中出现异常，任务已取消";
     protected SpiderConfig config;
+    private final ConcurrentMap<String, Exception> failures = new ConcurrentHashMap<>();
+    /**
+     * 最终失败的链接，按链接排序，和failures一起更新
+     */
     protected Set<String> failedSet = new ConcurrentSkipListSet<>();
     private List<String> allTargetUrls = null;
+    private final AtomicLong targetUrlCount = new AtomicLong();
+    private final AtomicLong skippedUrlCount = new AtomicLong();
+    private UrlFrontier frontier;
+    /**
+     * 按内容寻址的文件索引，不去重时为null
+     */
+    private ContentIndex contentIndex;
+    private ResolutionCache resolutionCache;
+    private volatile HttpPageCache pageCache;
+    private volatile WorkQueue workQueue;
+    /**
+     * 工作节点持有的租约
+     */
+    private final ConcurrentMap<String, Lease> leases = new ConcurrentHashMap<>();
+    private Semaphore leaseSlots;
     protected NoticeHook noticeHook;
+    private HostLimiter hostLimiter;
+    private final DirectBufferPool bufferPool;
+    private final SpiderMetrics metrics;
+    private SpiderHttpClient httpClient;
+    private ExecutorService segmentExecutor;
+    private SegmentedDownloader segmentedDownloader;
+    private AsyncDownloader asyncDownloader;
+    private Stage parseStage;
+    private Stage resolveStage;
+    private Stage transferStage;
+    private RetryPolicy retryPolicy;
+    private ScheduledExecutorService retryScheduler;
+    /**
+     * 执行到期的重试。重新提交在阶段满时会阻塞，不能占用重试调度线程，否则后面到期的重试都要等待
+     */
+    private ExecutorService resubmitExecutor;
+    private WorkTracker workTracker;
+    private TransferWatchdog transferWatchdog;
+    /**
+     * 还没有结束的链接对应的任务句柄
+     */
+    private final ConcurrentMap<String, TaskHandle> taskHandles = new ConcurrentHashMap<>();
+    /**
+     * 停止的原因，没有停止时为null
+     */
+    private volatile String stopReason;
+    /**
+     * 整体的截止时间使用单独的线程，不受重试调度的影响，没有截止时间时为null
+     */
+    private ScheduledExecutorService deadlineScheduler;
+    /**
+     * 由调度器分配的共享传输名额，单独运行时为null
+     */
+    private volatile WorkerBudget.Share budgetShare;
+    private ProgressReporter progressReporter;
+    private final List<NamedSubscriber> eventSubscribers = new CopyOnWriteArrayList<>();
+    private volatile EventBus<SpiderEvent> eventBus;
 
 
     public AbstractSpider(SpiderConfig config) {
         this.config = config;
+        this.hostLimiter = new HostLimiter(config);
+        this.bufferPool = new DirectBufferPool(config.getBufferPoolMaxBytes());
+        this.metrics = new SpiderMetrics(this::getStageStats, this::getBufferPoolStats);
     }
 
     public AbstractSpider(SpiderConfig config, NoticeHook noticeHook) {
-        this.config = config;
+        this(config);
         this.noticeHook = noticeHook;
     }
 
@@ -57,78 +172,683 @@ public abstract class AbstractSpider {
     protected abstract List<String> parsePageList(String singleList) throws Exception;
 
     /**
-     * 模板方法，解析所有的下载链接
+     * 模板方法，在解析阶段并发解析所有的下载链接，每解析完一个列表就把其中的链接交给解析下载信息阶段，不在内存中保留全部链接。
+     * beforeParseList和afterParseList依然只在全部列表开始前和结束后各调用一次
      *
      * @param list 列表链接
-     * @return 列表里所有的url
+     * @throws InterruptedException 等待解析完成时被中断
+     * @throws IOException          读取URL边界日志失败
      */
-    private List<String> doParsePageList(List<String> list) {
-        if (noticeHook != null) {
-            noticeHook.beforeParseList(config);
+    private void doParsePageList(List<String> list) throws InterruptedException, IOException {
+        publish(SpiderEvent.beforeParseList());
+        for (String current : list) {
+            parseStage.submit(() -> parseSingleList(current));
+        }
+        // 之前运行中没有完成的链接即使不在这次的列表里也要继续处理
+        frontier.admitUnfinished(this::dispatch);
+        parseStage.shutdownAndAwait();
+        publish(SpiderEvent.afterParseList(targetUrlCount.get(), allTargetUrls));
+    }
+
+    /**
+     * 解析单个列表，并将解析出的链接提交给解析下载信息阶段，队列满时阻塞
+     *
+     * @param current 列表链接
+     * @return 是否解析成功
+     */
+    private boolean parseSingleList(String current) {
+        if (stopReason != null) {
+            return false;
         }
-        List<String> res = new LinkedList<>();
         List<String> urls;
-        for (String current : list) {
-            try {
-                if (noticeHook != null) {
-                    noticeHook.parseListing(config, current);
+        publish(SpiderEvent.parseListing(current));
+        long start = System.nanoTime();
+        try {
+            urls = parsePageList(current);
+        } catch (Exception e) {
+            metrics.listParsed(System.nanoTime() - start, false);
+            publish(SpiderEvent.parseListFailed(current, e));
+            return false;
+        }
+        metrics.listParsed(System.nanoTime() - start, true);
+        for (String url : urls) {
+            if (frontier.offer(url)) {
+                dispatch(url);
+            } else {
+                skippedUrlCount.incrementAndGet();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 协调者把链接放入工作队列，否则提交给本地的解析下载信息阶段
+     *
+     * @param url 链接
+     */
+    private void dispatch(String url) {
+        if (config.getDistributedRole() != DistributedRole.COORDINATOR) {
+            submitResolve(url);
+            return;
+        }
+        try {
+            if (workQueue.offer(url)) {
+                targetUrlCount.incrementAndGet();
+                if (allTargetUrls != null) {
+                    allTargetUrls.add(url);
                 }
-                urls = parsePageList(current);
-                res.addAll(urls);
-            } catch (Exception e) {
-                if (noticeHook != null) {
-                    noticeHook.parseListFailed(config, current, e);
+            } else {
+                skippedUrlCount.incrementAndGet();
+            }
+        } catch (IOException e) {
+            recordFailure(url, e);
+        }
+    }
+
+    /**
+     * 工作节点从工作队列租用链接并提交给解析下载信息阶段，同时持有的租约数不超过传输线程数，
+     * 避免一个节点租走所有的链接而其他节点空闲。持有的租约定期续租，队列中所有的链接都结束后返回
+     *
+     * @throws IOException          访问工作队列失败
+     * @throws InterruptedException 等待时被中断
+     */
+    private void pullFromWorkQueue() throws IOException, InterruptedException {
+        long renewPeriod = Math.max(1, config.getLeaseMillis() / 3);
+        // 续租使用单独的线程，重试调度繁忙时租约也不会过期，否则同一个链接会被其他节点重复下载
+        ScheduledExecutorService renewal = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "spider-lease-renewal");
+            thread.setDaemon(true);
+            return thread;
+        });
+        renewal.scheduleWithFixedDelay(this::renewLeases, renewPeriod, renewPeriod, TimeUnit.MILLISECONDS);
+        leaseSlots = new Semaphore(config.getMaxThreadCount());
+        try {
+            while (stopReason == null) {
+                leaseSlots.acquire();
+                Lease lease = workQueue.lease(config.getWorkerId(), config.getLeaseMillis());
+                if (lease != null) {
+                    leases.put(lease.getUrl(), lease);
+                    submitResolve(lease.getUrl());
+                    continue;
+                }
+                leaseSlots.release();
+                if (stopReason != null || workQueue.status().isDrained()) {
+                    return;
                 }
+                // 其他节点还有没有结束的链接，租约过期时需要接管
+                Thread.sleep(config.getQueuePollMillis());
             }
+        } finally {
+            renewal.shutdownNow();
         }
-        if (noticeHook != null) {
-            noticeHook.afterParseList(config, res);
+    }
+
+    private void renewLeases() {
+        for (Lease lease : leases.values()) {
+            try {
+                Lease renewed = workQueue.renew(lease, config.getLeaseMillis());
+                if (renewed != null) {
+                    leases.replace(lease.getUrl(), lease, renewed);
+                }
+            } catch (IOException e) {
+                // 下次续租时重试，租约过期后会被其他节点接管
+            }
+        }
+    }
+
+    /**
+     * 工作节点上的链接成功或者最终失败后通知工作队列
+     *
+     * @param url     链接
+     * @param failure 失败原因，成功时为null
+     */
+    private void settleLease(String url, Exception failure) {
+        Lease lease = leases.remove(url);
+        if (lease == null) {
+            return;
+        }
+        leaseSlots.release();
+        try {
+            if (failure == null) {
+                workQueue.ack(lease);
+            } else {
+                workQueue.fail(lease, failure.getClass().getSimpleName() + ": " + failure.getMessage());
+            }
+        } catch (IOException e) {
+            // 租约过期后链接会被重新分配
+        }
+    }
+
+    /**
+     * 协调者等待所有节点处理完工作队列中的链接，期间把确认完成的链接记入URL边界，最后汇总各个节点上最终失败的链接
+     *
+     * @throws IOException          访问工作队列失败
+     * @throws InterruptedException 等待时被中断
+     */
+    private void awaitWorkQueueDrained() throws IOException, InterruptedException {
+        workQueue.closeInput();
+        while (true) {
+            // 先检查再取出，保证结束前确认的链接也能取到
+            boolean drained = workQueue.status().isDrained();
+            // 确认完成的链接记入自己的URL边界，重新运行时不再放入工作队列
+            for (String url : workQueue.pollAcknowledged()) {
+                frontier.mark(url, UrlState.DONE);
+            }
+            if (drained || stopReason != null) {
+                break;
+            }
+            Thread.sleep(config.getQueuePollMillis());
+        }
+        for (Map.Entry<String, String> failure : workQueue.failures().entrySet()) {
+            frontier.mark(failure.getKey(), UrlState.FAILED);
+            recordFailure(failure.getKey(), new RemoteTaskException(failure.getValue()));
+        }
+    }
+
+    /**
+     * 将链接提交给解析下载信息阶段，队列满时阻塞
+     *
+     * @param url 链接
+     */
+    private void submitResolve(String url) {
+        targetUrlCount.incrementAndGet();
+        if (allTargetUrls != null) {
+            allTargetUrls.add(url);
         }
-        return res;
+        workTracker.begin();
+        TaskHandle handle = new TaskHandle(url);
+        taskHandles.put(url, handle);
+        String reason = stopReason;
+        if (reason != null) {
+            handle.cancel(reason);
+        }
+        resolveStage.submit(new ResolveTask(url, 1));
     }
 
     /**
-     * 通过URL建立一个URL请求
+     * 通过URL建立一个URL请求，请求执行时会受到每个host的连接数和请求速率限制
      *
      * @param url 请求URL
      * @return 请求
+     * @deprecated 每次请求都会单独建立连接，使用{@link #getPage(String)}以复用连接池
      */
+    @Deprecated
     protected HttpRequest getRequest(String url) {
-        HttpRequest request = HttpRequest.get(url)
+        HttpRequest request = new LimitedHttpRequest(url, hostLimiter)
                 .timeout(config.getTimeoutMilliseconds())
                 .cookie(config.getCookie())
                 .header("User-Agent", config.getUa());
-        String proxyConfig = config.getProxyHostAndPort();
-        if (!StringUtil.isBlank(proxyConfig)) {
-            String[] split = proxyConfig.split(":");
-            if (split.length == 2 && NumberUtil.isInteger(split[1])) {
-                Proxy proxy = new Proxy(Proxy.Type.HTTP, new InetSocketAddress(split[0], Integer.parseInt(split[1])));
-                request.setProxy(proxy);
-            }
+        InetSocketAddress proxyAddress = JdkHttpClient.proxyAddress(config);
+        if (proxyAddress != null) {
+            request.setProxy(new Proxy(Proxy.Type.HTTP, proxyAddress));
         }
         return request;
     }
 
     /**
-     * 开始文件
+     * 通过共用的HTTP客户端获取页面内容，会受到每个host的连接数和请求速率限制。
+     * 配置了pageCachePath时对缓存过的页面发送条件请求，服务器返回304时使用磁盘上的内容
+     *
+     * @param url 页面链接
+     * @return 页面内容
+     * @throws IOException          请求失败或者响应码不是2xx
+     * @throws InterruptedException 等待连接时被中断
      */
-    public final void startDownload() throws InterruptedException {
-        BlockingQueue<Runnable> queue = new LinkedBlockingDeque<>();
-        ThreadPoolExecutor executor = new ThreadPoolExecutor(config.getCoreThreadCount(), config.getMaxThreadCount(), 0L, TimeUnit.MILLISECONDS, queue, Executors.defaultThreadFactory(), new ThreadPoolExecutor.AbortPolicy());
-        allTargetUrls = doParsePageList(config.getTargetLists());
-        for (String downloadUrl : allTargetUrls) {
-            executor.submit(new DownloadTask(downloadUrl));
+    protected String getPage(String url) throws IOException, InterruptedException {
+        HttpPageCache cache = pageCache;
+        HttpPageCache.Entry cached = cache == null ? null : cache.lookup(url);
+        Map<String, String> headers = new HashMap<>(4);
+        headers.put("Accept-Encoding", "gzip, deflate");
+        if (cached != null) {
+            if (cached.getEtag() != null) {
+                headers.put("If-None-Match", cached.getEtag());
+            }
+            if (cached.getLastModified() != null) {
+                headers.put("If-Modified-Since", cached.getLastModified());
+            }
+        }
+        try (HttpResult result = httpClient().execute("GET", url, headers)) {
+            if (result.getStatus() == 304 && cached != null) {
+                try {
+                    byte[] body = cache.read(cached);
+                    metrics.pageCacheLookup(true);
+                    return new String(body, HttpResult.charsetOf(cached.getContentType()));
+                } catch (IOException e) {
+                    // 缓存的内容已经被淘汰，归还连接后重新完整请求一次
+                    cache.invalidate(url);
+                }
+            } else {
+                if (result.getStatus() / 100 != 2) {
+                    throw DownloadException.status(result.getStatus());
+                }
+                byte[] body = result.bodyAsBytes();
+                if (cache != null) {
+                    metrics.pageCacheLookup(false);
+                    cache.store(url, result.header("ETag"), result.header("Last-Modified"), result.header("Content-Type"), body);
+                }
+                return new String(body, HttpResult.charsetOf(result.header("Content-Type")));
+            }
         }
+        return getPage(url);
+    }
 
-        executor.shutdown();
-        executor.awaitTermination(Integer.MAX_VALUE, TimeUnit.MINUTES);
-        if (noticeHook != null) {
-            noticeHook.allTaskDone(config, failedSet, allTargetUrls);
+    /**
+     * 流式读取页面，不把整个页面读入内存也不建立DOM，匹配选择器的元素读取到结束标签后立即交给回调，
+     * 回调返回false时停止读取并关闭连接。选择器只能针对单个元素，见{@link TagSelector}。
+     * 因为通常不会读完整个页面，所以不使用页面缓存
+     *
+     * @param url      页面链接
+     * @param selector 选择器
+     * @param visitor  回调，返回false时停止读取
+     * @return 是否因为回调返回false而提前停止
+     * @throws IOException          请求失败或者响应码不是2xx
+     * @throws InterruptedException 等待连接时被中断
+     */
+    protected final boolean streamPage(String url, String selector, Predicate<HtmlTag> visitor) throws IOException, InterruptedException {
+        TagSelector tagSelector = TagSelector.parse(selector);
+        Map<String, String> headers = Collections.singletonMap("Accept-Encoding", "gzip, deflate");
+        try (HttpResult result = httpClient().execute("GET", url, headers)) {
+            if (result.getStatus() / 100 != 2) {
+                throw DownloadException.status(result.getStatus());
+            }
+            return HtmlStreamParser.parse(result.decodedBody(), HttpResult.charsetOf(result.header("Content-Type")), tagSelector, visitor);
         }
     }
 
     /**
-     * 获取失败列表
+     * 流式读取页面，返回匹配选择器的元素，找到limit个之后停止读取
+     *
+     * @param url      页面链接
+     * @param selector 选择器
+     * @param limit    最多返回的元素数，小于等于0时读取整个页面
+     * @return 匹配的元素
+     * @throws IOException          请求失败或者响应码不是2xx
+     * @throws InterruptedException 等待连接时被中断
+     */
+    protected final List<HtmlTag> selectFromPage(String url, String selector, int limit) throws IOException, InterruptedException {
+        List<HtmlTag> tags = new ArrayList<>();
+        streamPage(url, selector, tag -> {
+            tags.add(tag);
+            return limit <= 0 || tags.size() < limit;
+        });
+        return tags;
+    }
+
+    /**
+     * 创建HTTP客户端，子类可以覆盖以替换实现
+     *
+     * @return HTTP客户端
+     */
+    protected SpiderHttpClient createHttpClient() {
+        return new JdkHttpClient(config, hostLimiter);
+    }
+
+    /**
+     * 创建下载信息的缓存，默认是内存中的LRU缓存，配置了resolveCachePath时再加上磁盘缓存。子类可以覆盖以替换实现
+     *
+     * @return 缓存
+     * @throws IOException 创建磁盘缓存失败
+     */
+    protected ResolutionCache createResolutionCache() throws IOException {
+        ResolutionCache disk = config.getResolveCachePath() == null ? null : new DiskResolutionCache(Paths.get(config.getResolveCachePath()));
+        return new LruResolutionCache(config.getResolveCacheMaxEntries(), disk);
+    }
+
+    /**
+     * 创建传输阶段排队任务的顺序，默认按照配置的transferOrder。子类可以覆盖以使用自定义的顺序，
+     * 需要文件长度时可以在getDownloadInfo中设置，否则只有按照文件长度排序时才会在排队前发送HEAD请求
+     *
+     * @return 排在前面的先传输，返回null时按照解析完成的顺序
+     */
+    protected Comparator<DownloadInfo> createTransferOrder() {
+        // 长度未知的文件排在最后
+        Comparator<DownloadInfo> unknownLast = Comparator.comparing(info -> info.getContentLength() < 0);
+        switch (config.getTransferOrder()) {
+            case LARGEST_FIRST:
+                return unknownLast.thenComparing(Comparator.comparingLong(DownloadInfo::getContentLength).reversed());
+            case SMALLEST_FIRST:
+                return unknownLast.thenComparingLong(DownloadInfo::getContentLength);
+            case PRIORITY:
+                return Comparator.comparingInt(DownloadInfo::getPriority).reversed();
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * 创建分布式模式使用的工作队列，默认是workQueuePath目录下的文件队列。子类可以覆盖以使用其他的后端
+     *
+     * @return 工作队列
+     * @throws IOException 打开工作队列失败
+     */
+    protected WorkQueue createWorkQueue() throws IOException {
+        return FileWorkQueue.open(Paths.get(config.getWorkQueuePath()));
+    }
+
+    /**
+     * 获取列表解析、下载信息解析和文件传输共用的HTTP客户端
+     *
+     * @return HTTP客户端
+     */
+    protected final synchronized SpiderHttpClient httpClient() {
+        if (httpClient == null) {
+            httpClient = createHttpClient();
+        }
+        return httpClient;
+    }
+
+    /**
+     * 开始文件。列表解析、下载信息解析和文件传输分为三个阶段，各自拥有独立的线程池，阶段之间通过有界队列连接，
+     * 队列满时上游阻塞，保证内存占用不随链接数增长。重复的链接和之前已经下载完成的链接在解析下载信息之前跳过。
+     * 分布式模式下协调者只解析列表，把链接放入工作队列并等待所有节点完成；工作节点不解析列表，从工作队列租用链接
+     *
+     * @throws InterruptedException 等待任务结束时被中断
+     * @throws IOException          打开URL边界日志、文件索引、缓存或者工作队列失败
+     */
+    public final void startDownload() throws InterruptedException, IOException {
+        // 在准备工作之前清除上一次运行的停止原因，准备期间调用的stop依然有效
+        resetStop();
+        runDownload();
+    }
+
+    /**
+     * 由调度器在任务线程上调用，停止原因在任务加入调度器时已经清除，加入之后立即移除也不会丢失
+     *
+     * @throws InterruptedException 等待任务结束时被中断
+     * @throws IOException          打开URL边界日志、文件索引、缓存或者工作队列失败
+     */
+    final void startScheduledDownload() throws InterruptedException, IOException {
+        runDownload();
+    }
+
+    /**
+     * 清除上一次运行的停止原因
+     */
+    final void resetStop() {
+        stopReason = null;
+    }
+
+    private void runDownload() throws InterruptedException, IOException {
+        // 缓存在多次运行之间保留
+        if (resolutionCache == null) {
+            resolutionCache = createResolutionCache();
+        }
+        if (pageCache == null && config.getPageCachePath() != null) {
+            pageCache = HttpPageCache.open(Paths.get(config.getPageCachePath()), config.getPageCacheMaxBytes());
+        }
+        ConcurrencyController concurrency = hostLimiter.getConcurrencyController();
+        MetricsDumper metricsDumper = null;
+        boolean completed = false;
+        // 上一次运行创建的组件都已经关闭，清空后出现异常时只关闭本次已经创建的部分
+        frontier = null;
+        contentIndex = null;
+        workQueue = null;
+        segmentExecutor = null;
+        parseStage = null;
+        resolveStage = null;
+        transferStage = null;
+        retryScheduler = null;
+        resubmitExecutor = null;
+        deadlineScheduler = null;
+        transferWatchdog = null;
+        progressReporter = null;
+        try {
+            frontier = config.getFrontierPath() == null ? UrlFrontier.inMemory() : UrlFrontier.open(Paths.get(config.getFrontierPath()));
+            contentIndex = config.getDedupMode() == DedupMode.NONE ? null : ContentIndex.open(Paths.get(config.getContentIndexPath()));
+            DistributedRole role = config.getDistributedRole();
+            workQueue = role == DistributedRole.NONE ? null : createWorkQueue();
+            skippedUrlCount.set(0);
+            ExecutionMode mode = config.getExecutionMode();
+            EventBus<SpiderEvent> bus = new EventBus<>(config.getEventBufferSize(), config.getEventOverflowPolicy());
+            if (noticeHook != null) {
+                bus.subscribe("notice", new NoticeHookSubscriber(noticeHook, config, failedSet));
+            }
+            for (NamedSubscriber subscriber : eventSubscribers) {
+                bus.subscribe(subscriber.name, subscriber.subscriber);
+            }
+            eventBus = bus;
+            // 分段任务单独使用线程池，避免下载任务等待排在自己后面的分段而死锁
+            segmentExecutor = mode == ExecutionMode.VIRTUAL ? VirtualThreads.newExecutor("spider-segment-") : Executors.newCachedThreadPool();
+            segmentedDownloader = new SegmentedDownloader(config, segmentExecutor, httpClient(), hostLimiter, bufferPool, metrics);
+            asyncDownloader = null;
+            if (config.getTransferEngine() == TransferEngine.ASYNC) {
+                if (!(httpClient() instanceof JdkHttpClient)) {
+                    throw new IllegalStateException("异步传输引擎需要使用JdkHttpClient");
+                }
+                asyncDownloader = new AsyncDownloader(config, segmentedDownloader, (JdkHttpClient) httpClient(), hostLimiter, bufferPool, metrics);
+            }
+            targetUrlCount.set(0);
+            allTargetUrls = config.isRetainTargetUrls() ? Collections.synchronizedList(new ArrayList<>()) : null;
+            parseStage = Stage.platform("parse", config.getParseThreadCount(), config.getParseThreadCount(), config.getParseThreadCount() * 4, Integer.MAX_VALUE);
+            resolveStage = Stage.of(mode, "resolve", config.getResolveThreadCount(), config.getResolveThreadCount(), config.getResolveQueueCapacity(), config.getMaxInFlightTasks());
+            Comparator<DownloadInfo> order = createTransferOrder();
+            // 按优先级执行或者使用异步传输引擎时，线程池不再限制排队和同时进行的传输数，由在途任务数限制
+            int maxInFlight = Math.min(config.getMaxInFlightTasks(), config.getMaxThreadCount() + config.getTaskQueueCapacity());
+            if (order == null) {
+                transferStage = Stage.of(mode, "transfer", config.getCoreThreadCount(), config.getMaxThreadCount(), config.getTaskQueueCapacity(),
+                        asyncDownloader == null ? config.getMaxInFlightTasks() : maxInFlight);
+            } else {
+                transferStage = Stage.prioritized(mode, "transfer", config.getMaxThreadCount(), maxInFlight,
+                        (a, b) -> order.compare(((TransferTask) a).info, ((TransferTask) b).info));
+            }
+            retryPolicy = new RetryPolicy(config);
+            retryScheduler = Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "spider-retry"));
+            resubmitExecutor = mode == ExecutionMode.VIRTUAL ? VirtualThreads.newExecutor("spider-resubmit-") : Executors.newCachedThreadPool();
+            workTracker = new WorkTracker();
+            taskHandles.clear();
+            if (config.getJobTimeoutMillis() > 0) {
+                deadlineScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                    Thread thread = new Thread(r, "spider-deadline");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+                deadlineScheduler.schedule(() -> stopWith(DEADLINE_MESSAGE), config.getJobTimeoutMillis(), TimeUnit.MILLISECONDS);
+            }
+            transferWatchdog = new TransferWatchdog(config.getTaskTimeoutMillis(), config.getStallMinBytesPerSecond(), config.getStallWindowMillis());
+            transferWatchdog.start();
+            if (concurrency != null) {
+                concurrency.start();
+            }
+            progressReporter = new ProgressReporter(config.getProgressIntervalMillis(), tasks -> publish(SpiderEvent.progress(tasks), false));
+            progressReporter.start();
+            metrics.registerMBean(config.getType());
+            if (config.getMetricsDumpIntervalMillis() > 0) {
+                Path dumpPath = config.getMetricsDumpPath() == null ? null : Paths.get(config.getMetricsDumpPath());
+                metricsDumper = new MetricsDumper(metrics, config.getMetricsDumpIntervalMillis(), config.getMetricsDumpFormat(), dumpPath);
+                metricsDumper.start();
+            }
+            failures.clear();
+            failedSet.clear();
+            // 准备期间已经停止或者超过截止时间时不再分发任何链接
+            if (stopReason == null) {
+                if (role == DistributedRole.WORKER) {
+                    pullFromWorkQueue();
+                } else {
+                    doParsePageList(config.getTargetLists());
+                }
+            }
+            // 失败的任务会在延迟后重新进入队列，所以要等所有的链接都成功或者最终失败后才能关闭各个阶段
+            workTracker.awaitIdle();
+            if (role == DistributedRole.COORDINATOR) {
+                awaitWorkQueueDrained();
+            }
+            completed = true;
+        } finally {
+            if (!completed) {
+                // 出现异常时取消还没有结束的任务，关闭各个阶段时不再等待它们下载完成
+                stopWith(ABORTED_MESSAGE);
+            }
+            tearDown(concurrency, metricsDumper, completed);
+        }
+    }
+
+    /**
+     * 关闭本次运行创建的线程池、调度器、监控以及打开的文件，没有创建的部分跳过。
+     * 前面的步骤抛出异常时后面的步骤依然执行
+     *
+     * @param concurrency   自适应并发控制器
+     * @param metricsDumper 指标输出
+     * @param completed     是否正常结束，正常结束时才发布结束事件
+     * @throws InterruptedException 等待阶段关闭时被中断
+     * @throws IOException          关闭文件失败
+     */
+    private void tearDown(ConcurrencyController concurrency, MetricsDumper metricsDumper, boolean completed) throws InterruptedException, IOException {
+        if (deadlineScheduler != null) {
+            deadlineScheduler.shutdownNow();
+        }
+        if (retryScheduler != null) {
+            retryScheduler.shutdown();
+        }
+        if (resubmitExecutor != null) {
+            resubmitExecutor.shutdown();
+        }
+        if (transferWatchdog != null) {
+            transferWatchdog.shutdown();
+        }
+        if (concurrency != null) {
+            concurrency.shutdown();
+        }
+        try {
+            for (Stage stage : new Stage[]{parseStage, resolveStage, transferStage}) {
+                if (stage != null) {
+                    stage.shutdownAndAwait();
+                }
+            }
+        } finally {
+            if (segmentExecutor != null) {
+                segmentExecutor.shutdown();
+            }
+            if (asyncDownloader != null) {
+                asyncDownloader.close();
+                asyncDownloader = null;
+            }
+            if (progressReporter != null) {
+                progressReporter.shutdown();
+            }
+            if (metricsDumper != null) {
+                metricsDumper.shutdown();
+            }
+            metrics.unregisterMBean();
+            try {
+                EventBus<SpiderEvent> bus = eventBus;
+                if (bus != null) {
+                    if (completed) {
+                        // 结束事件不能丢弃，并且要等订阅者处理完所有事件后才返回
+                        publish(SpiderEvent.allTaskDone(targetUrlCount.get(), allTargetUrls), true);
+                    }
+                    eventBus = null;
+                    bus.close();
+                }
+            } finally {
+                try {
+                    closeFiles();
+                } finally {
+                    closeHttpClient();
+                }
+            }
+        }
+    }
+
+    /**
+     * 关闭本次运行使用的HTTP客户端，下次使用时重新创建
+     */
+    private synchronized void closeHttpClient() throws IOException {
+        if (httpClient != null) {
+            httpClient.close();
+            httpClient = null;
+        }
+    }
+
+    private void closeFiles() throws IOException {
+        try {
+            if (frontier != null) {
+                frontier.close();
+            }
+        } finally {
+            try {
+                if (contentIndex != null) {
+                    contentIndex.close();
+                    contentIndex = null;
+                }
+            } finally {
+                if (workQueue != null) {
+                    workQueue.close();
+                    workQueue = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * 注册事件订阅者，在下一次startDownload时生效。每个订阅者在自己的线程上按发布顺序接收事件
+     *
+     * @param name       订阅者名称，用于线程名
+     * @param subscriber 订阅者
+     */
+    public final void addEventSubscriber(String name, EventSubscriber<SpiderEvent> subscriber) {
+        eventSubscribers.add(new NamedSubscriber(name, subscriber));
+    }
+
+    /**
+     * 按照配置的溢出策略发布事件
+     *
+     * @param event 事件
+     */
+    private void publish(SpiderEvent event) {
+        EventBus<SpiderEvent> bus = eventBus;
+        if (bus != null) {
+            bus.publish(event);
+        }
+    }
+
+    /**
+     * 发布事件
+     *
+     * @param event 事件
+     * @param block 缓冲区已满时是否等待
+     */
+    private void publish(SpiderEvent event, boolean block) {
+        EventBus<SpiderEvent> bus = eventBus;
+        if (bus != null) {
+            bus.publish(event, block);
+        }
+    }
+
+    /**
+     * 获取各个阶段的队列深度、活跃线程数以及吞吐量
+     *
+     * @return 各个阶段的统计信息，未开始时为空
+     */
+    public final List<StageStats> getStageStats() {
+        List<StageStats> stats = new ArrayList<>(3);
+        for (Stage stage : new Stage[]{parseStage, resolveStage, transferStage}) {
+            if (stage != null) {
+                stats.add(stage.stats());
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * 获取传输缓冲池的命中、未命中次数以及借出内存的峰值
+     *
+     * @return 缓冲池的统计信息
+     */
+    public final BufferPoolStats getBufferPoolStats() {
+        return bufferPool.stats();
+    }
+
+    /**
+     * 获取运行指标，包括各阶段的耗时分布、各主机的下载速度、队列深度以及重试次数
+     *
+     * @return 指标
+     */
+    public final SpiderMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * 获取失败列表，只包含重试后依然失败的链接
      *
      * @return 失败的列表
      */
@@ -137,14 +857,145 @@ public abstract class AbstractSpider {
     }
 
     /**
-     * 返回所有的目标链接
+     * 获取最终失败的链接以及最后一次失败的原因
      *
-     * @return
+     * @return 链接和失败原因
+     */
+    public final Map<String, Exception> getFailures() {
+        return Collections.unmodifiableMap(this.failures);
+    }
+
+    /**
+     * 返回所有的目标链接，只有开启retainTargetUrls时才会保留，否则返回null
+     *
+     * @return 所有的目标链接
      */
     public final List<String> getAllTargetUrls() {
         return this.allTargetUrls;
     }
 
+    /**
+     * 返回解析出的目标链接数
+     *
+     * @return 目标链接数
+     */
+    public final long getTargetUrlCount() {
+        return this.targetUrlCount.get();
+    }
+
+    /**
+     * 获取因为重复或者之前已经下载完成而跳过的链接数
+     *
+     * @return 跳过的链接数
+     */
+    public final long getSkippedUrlCount() {
+        return this.skippedUrlCount.get();
+    }
+
+    /**
+     * 获取自适应并发控制当前的上限，键为host，全局的上限对应的键为*
+     *
+     * @return 上限，没有开启自适应并发时返回null
+     */
+    public final Map<String, Integer> getConcurrencyLimits() {
+        ConcurrencyController concurrency = hostLimiter.getConcurrencyController();
+        if (concurrency == null) {
+            return null;
+        }
+        Map<String, Integer> limits = new LinkedHashMap<>();
+        limits.put("*", concurrency.globalLimit());
+        limits.putAll(concurrency.hostLimits());
+        return limits;
+    }
+
+    /**
+     * 获取分布式模式下工作队列的状态
+     *
+     * @return 状态，不是分布式模式或者没有运行时返回null
+     * @throws IOException 访问工作队列失败
+     */
+    public final QueueStatus getWorkQueueStatus() throws IOException {
+        WorkQueue queue = workQueue;
+        return queue == null ? null : queue.status();
+    }
+
+    /**
+     * 获取链接对应的任务句柄，用于取消单个任务
+     *
+     * @param url 链接
+     * @return 任务句柄，链接没有在处理中时返回null
+     */
+    public final TaskHandle getTaskHandle(String url) {
+        return taskHandles.get(url);
+    }
+
+    /**
+     * 获取所有还没有结束的任务
+     *
+     * @return 任务句柄
+     */
+    public final Collection<TaskHandle> getActiveTasks() {
+        return Collections.unmodifiableCollection(new ArrayList<>(taskHandles.values()));
+    }
+
+    /**
+     * 取消链接对应的任务，正在进行的传输立即中止，链接记为最终失败
+     *
+     * @param url 链接
+     * @return 链接是否在处理中并且是第一次取消
+     */
+    public final boolean cancelTask(String url) {
+        TaskHandle handle = taskHandles.get(url);
+        return handle != null && handle.cancel();
+    }
+
+    /**
+     * 停止正在运行的startDownload：不再解析新的列表，所有还没有结束的任务被取消并记为失败，startDownload随后返回
+     */
+    public final void stop() {
+        stopWith(STOPPED_MESSAGE);
+    }
+
+    /**
+     * 是否已经停止或者超过了整体的截止时间
+     *
+     * @return 是否已经停止
+     */
+    public final boolean isStopped() {
+        return stopReason != null;
+    }
+
+    /**
+     * 停止或者超过整体的截止时间后取消所有还没有结束的任务，之后提交的链接也直接取消
+     *
+     * @param reason 原因
+     */
+    private void stopWith(String reason) {
+        synchronized (taskHandles) {
+            if (stopReason != null) {
+                return;
+            }
+            stopReason = reason;
+        }
+        for (TaskHandle handle : taskHandles.values()) {
+            handle.cancel(reason);
+        }
+        WorkerBudget.Share share = budgetShare;
+        if (share != null) {
+            // 唤醒等待共享名额的提交线程，否则它们会一直占用线程，阶段无法关闭
+            share.close();
+        }
+    }
+
+    /**
+     * 由调度器在startDownload前设置共享的传输名额
+     *
+     * @param share 名额份额，为null时不受共享名额限制
+     */
+    void setBudgetShare(WorkerBudget.Share share) {
+        this.budgetShare = share;
+    }
+
     /**
      * 调整文件名
      *
@@ -171,134 +1022,442 @@ public abstract class AbstractSpider {
             Files.copy(ins, target, StandardCopyOption.REPLACE_EXISTING);
             success = true;
         } catch (IOException e) {
-            if (noticeHook != null) {
-                noticeHook.downloadFailed(config, failedSet, info, e);
-            }
+            publish(SpiderEvent.downloadFailed(info, e));
         }
 
         return success;
     }
 
     /**
-     * 下载文件，并且记录进度
+     * 下载文件，并且记录进度。数据先写入.part文件，中断后再次运行时会从断点继续。
+     * 探测到文件长度后才调用beforeDownload，目标文件已经存在时直接跳过。
+     * 传输期间受到单个任务超时和速度下限的检查，任务被取消时也会立即中止。
+     * 长度或者摘要校验失败时按可重试的错误处理；开启去重时，服务器提供的SHA-256已经在索引中的文件不再传输
      *
-     * @param info 文件信息
-     * @return 是否下载成功
+     * @param info   文件信息
+     * @param handle 任务句柄
+     * @param probe  排队前的探测结果，没有时为null
+     * @return 下载完成后完成，阻塞传输引擎返回时已经完成
      */
-    private boolean download(DownloadInfo info) {
-        boolean success = false;
-        InputStream inputStream = null;
-        OutputStream outputStream = null;
+    private CompletableFuture<Void> download(DownloadInfo info, TaskHandle handle, SegmentedDownloader.RangeProbe probe) {
         try {
+            handle.check();
             Path target = Paths.get(info.getTargetPath(), info.getFileName());
             if (Files.exists(target, LinkOption.NOFOLLOW_LINKS) && !config.isOverlayExists()) {
-                return true;
+                return CompletableFuture.completedFuture(null);
             }
             Files.createDirectories(target.getParent());
-            URL url = new URL(info.getLink());
-            URLConnection urlConnection = url.openConnection();
-            long fileLength = urlConnection.getContentLengthLong();
-            ProgressMonitor progressMonitor = new ProgressMonitor(fileLength, info);
-
-            File file = target.toFile();
-            inputStream = urlConnection.getInputStream();
-            outputStream = new FileOutputStream(file);
-            IoUtil.copyByNIO(inputStream, outputStream, config.getDownloadBufferSize(), progressMonitor);
-            success = true;
+            if (probe == null) {
+                probe = segmentedDownloader.probe(info.getLink());
+                rememberProbe(handle.getUrl(), info, probe);
+            }
+            info.setContentLength(probe.getContentLength());
+            publish(SpiderEvent.beforeDownload(info));
+            if (reuseExisting(target, probe)) {
+                return CompletableFuture.completedFuture(null);
+            }
+            DownloadCheckpoint checkpoint = segmentedDownloader.resumableCheckpoint(target, probe);
+            if (checkpoint == null) {
+                segmentedDownloader.discard(target);
+            }
+            ProgressReporter.Task progress = progressReporter.track(info.getFileName(), info.getLink(), probe.getContentLength());
+            TransferControl control = handle.newAttempt();
+            Runnable unwatch = transferWatchdog.watch(control, progress::current);
+            if (asyncDownloader != null) {
+                return asyncDownloader.download(info.getLink(), target, probe, checkpoint, progress::increase, control)
+                        .whenComplete((v, e) -> {
+                            unwatch.run();
+                            progress.finish();
+                        })
+                        .thenAccept(sha256 -> deduplicate(target, sha256));
+            }
+            String sha256;
+            try {
+                sha256 = segmentedDownloader.download(info.getLink(), target, probe, checkpoint, progress::increase, control);
+            } finally {
+                unwatch.run();
+                progress.finish();
+            }
+            deduplicate(target, sha256);
+            return CompletableFuture.completedFuture(null);
         } catch (Exception e) {
-            if (noticeHook != null) {
-                noticeHook.downloadFailed(config, failedSet, info, e);
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * 服务器提供了SHA-256并且索引中已经有内容相同的文件时，不再传输，直接链接或者跳过
+     *
+     * @param target 目标文件
+     * @param probe  探测结果
+     * @return 是否已经处理
+     */
+    private boolean reuseExisting(Path target, SegmentedDownloader.RangeProbe probe) {
+        ContentDigest digest = probe.getDigest();
+        if (contentIndex == null || digest == null || !"SHA-256".equals(digest.getAlgorithm()) || probe.getContentLength() < 0) {
+            return false;
+        }
+        Path existing = contentIndex.find(digest.hex(), probe.getContentLength(), target);
+        return existing != null && replaceWithExisting(target, existing);
+    }
+
+    /**
+     * 在索引中登记下载完成的文件，已经有内容相同的文件时按照去重方式处理。去重失败时保留下载的文件
+     *
+     * @param target 下载完成的文件
+     * @param sha256 文件的SHA-256，没有计算时为null
+     */
+    private void deduplicate(Path target, String sha256) {
+        if (contentIndex == null || sha256 == null) {
+            return;
+        }
+        try {
+            Path existing = contentIndex.register(sha256, Files.size(target), target);
+            if (existing != null) {
+                replaceWithExisting(target, existing);
             }
-        } finally {
+        } catch (IOException ignored) {
+            // 只是多占一份空间
+        }
+    }
+
+    /**
+     * 用已有的文件代替目标文件。硬链接先创建在临时文件上再替换，目标文件在任何时刻都是完整的
+     *
+     * @param target   目标文件
+     * @param existing 内容相同的已有文件
+     * @return 是否已经代替，无法创建硬链接时返回false
+     */
+    private boolean replaceWithExisting(Path target, Path existing) {
+        try {
+            if (config.getDedupMode() == DedupMode.SKIP) {
+                Files.deleteIfExists(target);
+                return true;
+            }
+            Path link = target.resolveSibling(target.getFileName() + ".link");
             try {
-                if (outputStream != null) {
-                    outputStream.close();
-                }
-                if (inputStream != null) {
-                    inputStream.close();
-                }
-            } catch (IOException e) {
-                if (noticeHook != null) {
-                    noticeHook.downloadFailed(config, failedSet, info, e);
-                }
+                Files.deleteIfExists(link);
+                Files.createLink(link, existing);
+                Files.move(link, target, StandardCopyOption.REPLACE_EXISTING);
+                return true;
+            } catch (IOException | UnsupportedOperationException e) {
+                // 不在同一个文件系统上或者文件系统不支持硬链接
+                Files.deleteIfExists(link);
+                return false;
             }
+        } catch (IOException e) {
+            return false;
         }
-        return success;
     }
 
     /**
-     * 下载任务
+     * 记录最终失败的链接
+     *
+     * @param url 链接
+     * @param e   最后一次失败的原因
+     */
+    private void recordFailure(String url, Exception e) {
+        failures.put(url, e);
+        failedSet.add(url);
+    }
+
+    /**
+     * 处理失败的任务，临时性错误在退避一段时间后重新提交到对应阶段，不占用工作线程等待；否则记录为最终失败
+     *
+     * @param url      目标链接
+     * @param attempt  已经尝试的次数
+     * @param e        失败原因
+     * @param resubmit 重新提交任务
+     */
+    private void retryOrFail(String url, int attempt, Exception e, Runnable resubmit) {
+        TaskHandle handle = taskHandles.get(url);
+        if (!retryPolicy.shouldRetry(e, attempt) || (handle != null && handle.isCancelled())) {
+            recordFailure(url, e);
+            frontier.mark(url, UrlState.FAILED);
+            settleLease(url, e);
+            taskHandles.remove(url);
+            workTracker.end();
+            return;
+        }
+        long delay = retryPolicy.delayMillis(attempt);
+        metrics.retryScheduled();
+        publish(SpiderEvent.retryScheduled(url, attempt, delay, e));
+        retryScheduler.schedule(() -> resubmitExecutor.execute(resubmit), delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 解析下载信息任务，成功后提交给传输阶段
      */
-    private class DownloadTask implements Runnable {
+    private class ResolveTask implements BooleanSupplier {
         private final String url;
+        private final int attempt;
 
-        public DownloadTask(String url) {
+        public ResolveTask(String url, int attempt) {
             this.url = url;
+            this.attempt = attempt;
         }
 
         @Override
-        public void run() {
-            if (noticeHook != null) {
-                noticeHook.beforeGetDownloadInfo(config, failedSet, url);
+        public boolean getAsBoolean() {
+            try {
+                taskHandles.get(url).check();
+            } catch (DownloadException e) {
+                // 等待中或者重试前被取消
+                retryOrFail(url, attempt, e, null);
+                return false;
             }
+            ResolvedEntry cached = resolutionCache.get(url);
+            metrics.resolveCacheLookup(cached != null);
+            if (cached != null) {
+                DownloadInfo info = new DownloadInfo();
+                info.setFileName(cached.getFileName());
+                info.setTargetPath(cached.getTargetPath());
+                info.setLink(cached.getLink());
+                info.setContentLength(cached.getContentLength());
+                info.setPriority(cached.getPriority());
+                publish(SpiderEvent.afterGetDownloadInfo(url, info));
+                frontier.mark(url, UrlState.RESOLVED);
+                // 缓存中有探测结果时直接交给传输使用，否则只在排序需要并且长度未知时探测
+                SegmentedDownloader.RangeProbe probe = cachedProbe(cached);
+                if (probe == null) {
+                    probe = probeForOrder(info);
+                    if (probe != null) {
+                        rememberProbe(url, info, probe);
+                    }
+                }
+                submitTransfer(new TransferTask(url, info, 1, true, probe));
+                return true;
+            }
+            publish(SpiderEvent.beforeGetDownloadInfo(url));
             DownloadInfo info = null;
+            Exception cause = null;
+            long start = System.nanoTime();
             try {
                 info = getDownloadInfo(url);
             } catch (Exception e) {
-                noticeHook.getDownloadInfoFailed(config, failedSet, url, e);
-            }
-            if (noticeHook != null) {
-                noticeHook.afterGetDownloadInfo(config, failedSet, info);
+                cause = e;
+                publish(SpiderEvent.getDownloadInfoFailed(url, e));
             }
+            metrics.resolved(System.nanoTime() - start, info != null);
+            publish(SpiderEvent.afterGetDownloadInfo(url, info));
             if (info == null) {
-                failedSet.add(url);
-                return;
+                if (cause == null) {
+                    cause = new IllegalStateException("未能解析出下载信息");
+                }
+                retryOrFail(url, attempt, cause, () -> resolveStage.submit(new ResolveTask(url, attempt + 1)));
+                return false;
             }
-            if (noticeHook != null) {
-                noticeHook.beforeDownload(config, failedSet, info);
+            SegmentedDownloader.RangeProbe probe = probeForOrder(info);
+            ResolvedEntry entry = new ResolvedEntry();
+            entry.setUrl(url);
+            entry.setFileName(info.getFileName());
+            entry.setTargetPath(info.getTargetPath());
+            entry.setLink(info.getLink());
+            entry.setContentLength(info.getContentLength());
+            entry.setPriority(info.getPriority());
+            entry.setExpiresAtMillis(System.currentTimeMillis() + config.getResolveCacheTtlMillis());
+            if (probe != null) {
+                copyProbe(probe, entry);
             }
-            boolean success = download(info);
-            if (noticeHook != null) {
-                noticeHook.afterDownload(config, failedSet, info, success);
+            resolutionCache.put(entry);
+            frontier.mark(url, UrlState.RESOLVED);
+            submitTransfer(new TransferTask(url, info, 1, false, probe));
+            return true;
+        }
+
+        /**
+         * 按照文件长度排序并且长度未知时，在排队前发送HEAD请求，探测结果在传输时复用
+         *
+         * @param info 下载信息
+         * @return 探测结果，不需要或者探测失败时返回null
+         */
+        private SegmentedDownloader.RangeProbe probeForOrder(DownloadInfo info) {
+            if (!config.getTransferOrder().isSizeAware() || info.getContentLength() >= 0) {
+                return null;
             }
-            if (!success) {
-                failedSet.add(url);
+            try {
+                SegmentedDownloader.RangeProbe probe = segmentedDownloader.probe(info.getLink());
+                info.setContentLength(probe.getContentLength());
+                return probe;
+            } catch (IOException e) {
+                // 传输时会重新探测
+                return null;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
             }
         }
     }
 
-    @Data
-    protected static class DownloadInfo {
-        private String fileName;
-        private String targetPath;
-        private String link;
+    /**
+     * 读取缓存的探测结果
+     *
+     * @param entry 缓存的解析结果
+     * @return 探测结果，没有探测过时返回null
+     */
+    private static SegmentedDownloader.RangeProbe cachedProbe(ResolvedEntry entry) {
+        if (!entry.isProbed()) {
+            return null;
+        }
+        SegmentedDownloader.RangeProbe probe = new SegmentedDownloader.RangeProbe();
+        probe.setAcceptRanges(entry.isAcceptRanges());
+        probe.setContentLength(entry.getContentLength());
+        probe.setEtag(entry.getEtag());
+        probe.setLastModified(entry.getLastModified());
+        if (entry.getDigestAlgorithm() != null && entry.getDigestValue() != null) {
+            probe.setDigest(new ContentDigest(entry.getDigestAlgorithm(), Base64.getDecoder().decode(entry.getDigestValue())));
+        }
+        return probe;
     }
 
-    private class ProgressMonitor implements StreamProgress {
-        private final long total;
-        private final DownloadInfo downloadInfo;
+    private static void copyProbe(SegmentedDownloader.RangeProbe probe, ResolvedEntry entry) {
+        entry.setProbed(true);
+        entry.setAcceptRanges(probe.isAcceptRanges());
+        entry.setContentLength(probe.getContentLength());
+        entry.setEtag(probe.getEtag());
+        entry.setLastModified(probe.getLastModified());
+        ContentDigest digest = probe.getDigest();
+        entry.setDigestAlgorithm(digest == null ? null : digest.getAlgorithm());
+        entry.setDigestValue(digest == null ? null : Base64.getEncoder().encodeToString(digest.getValue()));
+    }
 
-        public ProgressMonitor(long total, DownloadInfo downloadInfo) {
-            this.total = total;
-            this.downloadInfo = downloadInfo;
+    /**
+     * 把传输前的探测结果写回缓存的解析结果，下次运行时不用再探测。下载链接已经变化时不写回
+     *
+     * @param url   目标链接
+     * @param info  下载信息
+     * @param probe 探测结果
+     */
+    private void rememberProbe(String url, DownloadInfo info, SegmentedDownloader.RangeProbe probe) {
+        ResolvedEntry entry = resolutionCache.get(url);
+        if (entry != null && Objects.equals(entry.getLink(), info.getLink())) {
+            copyProbe(probe, entry);
+            resolutionCache.put(entry);
         }
+    }
 
-        @Override
-        public void start() {
+    /**
+     * 提交传输任务。和其他任务共享传输名额时先在提交线程上获取名额，轮到当前任务后再交给传输阶段，
+     * 不占用传输线程等待；份额在等待期间被注销时链接记为失败
+     *
+     * @param task 传输任务
+     */
+    private void submitTransfer(TransferTask task) {
+        WorkerBudget.Share share = budgetShare;
+        if (share != null) {
+            Exception cause = null;
+            try {
+                if (!share.acquire()) {
+                    String reason = stopReason;
+                    cause = DownloadException.cancelled(reason == null ? STOPPED_MESSAGE : reason);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                cause = e;
+            }
+            if (cause != null) {
+                retryOrFail(task.url, task.attempt, cause, null);
+                return;
+            }
+            task.share = share;
+        }
+        try {
+            transferStage.submitAsync(task);
+        } catch (RuntimeException e) {
+            if (share != null) {
+                share.release();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 传输任务，异步传输引擎下启动传输后即交出线程，在传输完成的回调中处理结果
+     */
+    private class TransferTask implements Supplier<CompletableFuture<Boolean>> {
+        private final String url;
+        private final DownloadInfo info;
+        private final int attempt;
+        /**
+         * 下载信息是否来自缓存
+         */
+        private final boolean cached;
+        /**
+         * 排队前的探测结果，只在第一次传输时使用
+         */
+        private final SegmentedDownloader.RangeProbe probe;
+        /**
+         * 提交前获得的共享名额，传输结束后归还，不受共享名额限制时为null
+         */
+        private WorkerBudget.Share share;
+        private long startNanos;
 
+        public TransferTask(String url, DownloadInfo info, int attempt, boolean cached, SegmentedDownloader.RangeProbe probe) {
+            this.url = url;
+            this.info = info;
+            this.attempt = attempt;
+            this.cached = cached;
+            this.probe = probe;
         }
 
         @Override
-        public void progress(long progressSize) {
-            if (noticeHook != null) {
-                noticeHook.downloading(config, failedSet, downloadInfo, progressSize, total);
+        public CompletableFuture<Boolean> get() {
+            startNanos = System.nanoTime();
+            CompletableFuture<Void> transfer = download(info, taskHandles.get(url), probe);
+            WorkerBudget.Share granted = share;
+            if (granted != null) {
+                transfer = transfer.whenComplete((v, e) -> granted.release());
             }
+            return transfer.handle((v, e) -> complete(e));
         }
 
-        @Override
-        public void finish() {
+        private boolean complete(Throwable throwable) {
+            Exception cause = null;
+            if (throwable != null) {
+                Throwable unwrapped = throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable;
+                cause = unwrapped instanceof Exception ? (Exception) unwrapped : new ExecutionException(unwrapped);
+                publish(SpiderEvent.downloadFailed(info, cause));
+            }
+            metrics.transferred(System.nanoTime() - startNanos, cause == null);
+            publish(SpiderEvent.afterDownload(info, cause == null));
+            if (cause != null) {
+                // 下载链接可能已经失效，不再使用缓存的结果；来自缓存的结果重试时重新解析
+                resolutionCache.invalidate(url);
+                Runnable resubmit = cached ? () -> resolveStage.submit(new ResolveTask(url, attempt + 1))
+                        : () -> submitTransfer(new TransferTask(url, info, attempt + 1, false, null));
+                retryOrFail(url, attempt, cause, resubmit);
+                return false;
+            }
+            frontier.mark(url, UrlState.DONE);
+            settleLease(url, null);
+            taskHandles.remove(url);
+            workTracker.end();
+            return true;
+        }
+    }
+
+    private static class NamedSubscriber {
+        private final String name;
+        private final EventSubscriber<SpiderEvent> subscriber;
 
+        private NamedSubscriber(String name, EventSubscriber<SpiderEvent> subscriber) {
+            this.name = name;
+            this.subscriber = subscriber;
         }
+    }
 
+    @Data
+    protected static class DownloadInfo {
+        private String fileName;
+        private String targetPath;
+        private String link;
+        /**
+         * 文件长度，未知时为-1，传输前由探测结果填充。按照文件长度排序时可以在getDownloadInfo中设置，避免额外的HEAD请求
+         */
+        private long contentLength = -1;
+        /**
+         * 传输顺序为PRIORITY时使用，数值大的先传输
+         */
+        private int priority;
     }
 }
@@ -0,0 +1,117 @@
+package spider;
+
+import spider.engine.WorkerBudget;
+
+/**
+ * 调度器中一个爬虫任务的句柄
+ *
+ * @author Gloduck
+ */
+public class JobHandle {
+    private final String name;
+    private final AbstractSpider spider;
+    private final WorkerBudget.Share share;
+    private volatile JobState state = JobState.RUNNING;
+    private volatile Exception failure;
+    private Thread thread;
+
+    JobHandle(String name, AbstractSpider spider, WorkerBudget.Share share) {
+        this.name = name;
+        this.spider = spider;
+        this.share = share;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public AbstractSpider getSpider() {
+        return spider;
+    }
+
+    public JobState getState() {
+        return state;
+    }
+
+    /**
+     * 任务异常结束的原因
+     *
+     * @return 原因，没有异常时为null
+     */
+    public Exception getFailure() {
+        return failure;
+    }
+
+    /**
+     * 当前任务占用的共享传输名额数
+     *
+     * @return 名额数
+     */
+    public int getActiveTransfers() {
+        return share.inUse();
+    }
+
+    public int getWeight() {
+        return share.getWeight();
+    }
+
+    /**
+     * 等待任务结束
+     *
+     * @throws InterruptedException 等待时被中断
+     */
+    public void await() throws InterruptedException {
+        thread.join();
+    }
+
+    /**
+     * 在调度器的锁内调用，先清除上一次运行的停止原因再启动任务线程，之后的移除不会被任务线程覆盖
+     */
+    void start() {
+        spider.resetStop();
+        thread = new Thread(this::run, "spider-job-" + name);
+        thread.start();
+    }
+
+    void markRemoved() {
+        state = JobState.REMOVED;
+        spider.stop();
+    }
+
+    private void run() {
+        spider.setBudgetShare(share);
+        try {
+            spider.startScheduledDownload();
+        } catch (Exception e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            failure = e;
+        } finally {
+            spider.setBudgetShare(null);
+            share.close();
+            if (state == JobState.RUNNING) {
+                state = failure == null ? JobState.DONE : JobState.FAILED;
+            }
+        }
+    }
+
+    public enum JobState {
+        /**
+         * 运行中
+         */
+        RUNNING,
+        /**
+         * 正常结束，其中个别链接依然可能失败
+         */
+        DONE,
+        /**
+         * 启动失败或者异常结束
+         */
+        FAILED,
+        /**
+         * 被移除
+         */
+        REMOVED
+    }
+}
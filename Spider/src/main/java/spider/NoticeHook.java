@@ -1,23 +1,35 @@
 package spider;
 
 import spider.config.SpiderConfig;
+import spider.progress.TaskProgress;
 
-import java.io.IOException;
-import java.net.URL;
-import java.net.URLConnection;
 import java.util.List;
 import java.util.Set;
 
 public interface NoticeHook {
 
     /**
-     * 所有任务结束后调用
+     * 所有任务结束后调用，只有开启retainTargetUrls时才会调用
      *
      * @param config
      * @param failedSet
      * @param allTargetUrls
+     * @deprecated 链接不再全部保留在内存中，使用{@link #allTaskDone(SpiderConfig, Set, long)}
      */
-    void allTaskDone(SpiderConfig config, Set<String> failedSet, List<String> allTargetUrls);
+    @Deprecated
+    default void allTaskDone(SpiderConfig config, Set<String> failedSet, List<String> allTargetUrls) {
+        allTaskDone(config, failedSet, allTargetUrls.size());
+    }
+
+    /**
+     * 所有任务结束后调用，开启retainTargetUrls时改为调用{@link #allTaskDone(SpiderConfig, Set, List)}，默认实现会转到这里
+     *
+     * @param config
+     * @param failedSet
+     * @param targetCount 目标链接数
+     */
+    default void allTaskDone(SpiderConfig config, Set<String> failedSet, long targetCount) {
+    }
 
     /**
      * 开始解析列表时候调用
@@ -27,15 +39,29 @@ public interface NoticeHook {
     void beforeParseList(SpiderConfig config);
 
     /**
-     * 解析列表完成后调用
+     * 解析列表完成后调用，只有开启retainTargetUrls时才会调用
      *
      * @param config
      * @param resultList
+     * @deprecated 链接不再全部保留在内存中，使用{@link #afterParseList(SpiderConfig, long)}
+     */
+    @Deprecated
+    default void afterParseList(SpiderConfig config, List<String> resultList) {
+        afterParseList(config, resultList.size());
+    }
+
+    /**
+     * 解析列表完成后调用，解析出的链接已经流式交给下载任务。
+     * 开启retainTargetUrls时改为调用{@link #afterParseList(SpiderConfig, List)}，默认实现会转到这里
+     *
+     * @param config
+     * @param resultCount 解析出的链接数
      */
-    void afterParseList(SpiderConfig config, List<String> resultList);
+    default void afterParseList(SpiderConfig config, long resultCount) {
+    }
 
     /**
-     * 解析列表过程中调用
+     * 解析列表过程中调用，多个列表并发解析时会在不同的线程中调用
      *
      * @param config
      * @param currentList
@@ -43,7 +69,7 @@ public interface NoticeHook {
     void parseListing(SpiderConfig config, String currentList);
 
     /**
-     * 解析列表失败调用
+     * 解析列表失败调用，多个列表并发解析时会在不同的线程中调用
      *
      * @param config
      * @param currentList
@@ -96,8 +122,21 @@ public interface NoticeHook {
      * @param info
      * @param current
      * @param total
+     * @deprecated 进度改为由汇报线程定期汇总，不再按数据块调用，使用{@link #progressReport(SpiderConfig, Set, List)}
      */
-    void downloading(SpiderConfig config, Set<String> failedSet, AbstractSpider.DownloadInfo info, long current, long total);
+    @Deprecated
+    default void downloading(SpiderConfig config, Set<String> failedSet, AbstractSpider.DownloadInfo info, long current, long total) {
+    }
+
+    /**
+     * 按照progressIntervalMillis的间隔汇报所有正在传输的任务的进度，只在汇报线程上调用，没有任务在传输时不调用
+     *
+     * @param config
+     * @param failedSet
+     * @param tasks 正在传输的任务的进度快照
+     */
+    default void progressReport(SpiderConfig config, Set<String> failedSet, List<TaskProgress> tasks) {
+    }
 
     /**
      * 下载失败调用
@@ -109,6 +148,18 @@ public interface NoticeHook {
      */
     void downloadFailed(SpiderConfig config, Set<String> failedSet, AbstractSpider.DownloadInfo info, Exception e);
 
+    /**
+     * 任务出现临时性错误，将在延迟后重试时调用
+     *
+     * @param config
+     * @param url     目标链接
+     * @param attempt 已经尝试的次数
+     * @param delayMillis 重试前等待的毫秒数
+     * @param e       本次失败的原因
+     */
+    default void retryScheduled(SpiderConfig config, String url, int attempt, long delayMillis, Exception e) {
+    }
+
     /**
      * 下载完成后调用
      *
@@ -122,8 +173,8 @@ public interface NoticeHook {
     class DefaultNoticeHook implements NoticeHook {
 
         @Override
-        public void allTaskDone(SpiderConfig config, Set<String> failedSet, List<String> allTargetUrls) {
-            System.out.printf("所有的任务已经完成，目标链接数为：%d，失败数为：%d\n失败的任务如下：\n",allTargetUrls.size(), failedSet.size());
+        public void allTaskDone(SpiderConfig config, Set<String> failedSet, long targetCount) {
+            System.out.printf("所有的任务已经完成，目标链接数为：%d，失败数为：%d\n失败的任务如下：\n", targetCount, failedSet.size());
             for (String s : failedSet) {
                 System.out.println(s);
             }
@@ -136,8 +187,8 @@ public interface NoticeHook {
         }
 
         @Override
-        public void afterParseList(SpiderConfig config, List<String> resultList) {
-            System.out.printf("解析列表完成，待下载视频一共有%d个\n", resultList.size());
+        public void afterParseList(SpiderConfig config, long resultCount) {
+            System.out.printf("解析列表完成，待下载视频一共有%d个\n", resultCount);
         }
 
         @Override
@@ -153,13 +204,13 @@ public interface NoticeHook {
 
         @Override
         public void beforeGetDownloadInfo(SpiderConfig config, Set<String> failedSet, String currentUrl) {
-            String name = Thread.currentThread().getName();
+            String name = NoticeHookSubscriber.sourceThreadName();
             System.out.printf("线程：%s开始解析链接：%s\n", name, currentUrl);
         }
 
         @Override
         public void afterGetDownloadInfo(SpiderConfig config, Set<String> failedSet, AbstractSpider.DownloadInfo info) {
-            String name = Thread.currentThread().getName();
+            String name = NoticeHookSubscriber.sourceThreadName();
             if (info == null) {
                 System.out.printf("线程：%s解析失败\n", name);
 
@@ -175,23 +226,22 @@ public interface NoticeHook {
 
         @Override
         public void beforeDownload(SpiderConfig config, Set<String> failedSet, AbstractSpider.DownloadInfo info) {
-            String name = Thread.currentThread().getName();
-            String size = "未知";
-            try {
-                URL url = new URL(info.getLink());
-                URLConnection urlConnection = url.openConnection();
-                long contentLengthLong = urlConnection.getContentLengthLong();
-                size = String.format("%dMB", (contentLengthLong / (1024 * 1024)));
-            } catch (IOException e) {
-
-            }
+            String name = NoticeHookSubscriber.sourceThreadName();
+            long contentLength = info.getContentLength();
+            String size = contentLength < 0 ? "未知" : String.format("%dMB", (contentLength / (1024 * 1024)));
             System.out.printf("线程：%s开始下载，文件名为：%s，目标路径为：%s，文件大小为：%s\n", name, info.getFileName(), info.getTargetPath(), size);
         }
 
         @Override
-        public void downloading(SpiderConfig config, Set<String> failedSet, AbstractSpider.DownloadInfo info, long current, long total) {
-            String name = Thread.currentThread().getName();
-            System.out.printf("线程：%s当前的下载进度为；%f\n", name, ((current * 100.0) / total));
+        public void progressReport(SpiderConfig config, Set<String> failedSet, List<TaskProgress> tasks) {
+            StringBuilder builder = new StringBuilder();
+            builder.append(String.format("当前正在下载%d个文件：\n", tasks.size()));
+            for (TaskProgress task : tasks) {
+                String percent = task.getTotal() < 0 ? "未知" : String.format("%.2f%%", task.percent());
+                builder.append(String.format("  %s 进度：%s，已下载：%dMB，速度：%.2fMB/s\n",
+                        task.getFileName(), percent, task.getCurrent() / (1024 * 1024), task.getBytesPerSecond() / (1024 * 1024)));
+            }
+            System.out.print(builder);
         }
 
         @Override
@@ -199,9 +249,14 @@ public interface NoticeHook {
             System.out.printf("下载：%s失败，错误信息为：\n%s\n", info.getLink(),e.getLocalizedMessage());
         }
 
+        @Override
+        public void retryScheduled(SpiderConfig config, String url, int attempt, long delayMillis, Exception e) {
+            System.out.printf("链接：%s第%d次尝试失败，%dms后重试，错误信息为：\n%s\n", url, attempt, delayMillis, e.getLocalizedMessage());
+        }
+
         @Override
         public void afterDownload(SpiderConfig config, Set<String> failedSet, AbstractSpider.DownloadInfo info, boolean success) {
-            String name = Thread.currentThread().getName();
+            String name = NoticeHookSubscriber.sourceThreadName();
             if (success) {
                 System.out.printf("线程：%s下载文件成功，文件为：%s\n", name, info.getTargetPath() + info.getFileName());
             } else {
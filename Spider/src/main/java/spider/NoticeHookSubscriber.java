@@ -0,0 +1,99 @@
+package spider;
+
+import spider.config.SpiderConfig;
+import spider.event.EventSubscriber;
+
+import java.util.Set;
+
+/**
+ * 把事件总线上的事件转换为对{@link NoticeHook}的调用，使原有的NoticeHook实现可以直接作为订阅者使用
+ *
+ * @author Gloduck
+ */
+public class NoticeHookSubscriber implements EventSubscriber<SpiderEvent> {
+    private static final ThreadLocal<SpiderEvent> CURRENT = new ThreadLocal<>();
+    private final NoticeHook hook;
+    private final SpiderConfig config;
+    private final Set<String> failedSet;
+
+    public NoticeHookSubscriber(NoticeHook hook, SpiderConfig config, Set<String> failedSet) {
+        this.hook = hook;
+        this.config = config;
+        this.failedSet = failedSet;
+    }
+
+    /**
+     * 获取触发当前回调的线程名，不在订阅线程上时返回当前线程名
+     *
+     * @return 线程名
+     */
+    public static String sourceThreadName() {
+        SpiderEvent event = CURRENT.get();
+        return event != null ? event.getThreadName() : Thread.currentThread().getName();
+    }
+
+    @Override
+    public void onEvent(SpiderEvent event) {
+        CURRENT.set(event);
+        try {
+            dispatch(event);
+        } finally {
+            CURRENT.remove();
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    private void dispatch(SpiderEvent event) {
+        switch (event.getType()) {
+            case BEFORE_PARSE_LIST:
+                hook.beforeParseList(config);
+                break;
+            case PARSE_LISTING:
+                hook.parseListing(config, event.getUrl());
+                break;
+            case PARSE_LIST_FAILED:
+                hook.parseListFailed(config, event.getUrl(), event.getException());
+                break;
+            case AFTER_PARSE_LIST:
+                if (event.getTargetUrls() != null) {
+                    hook.afterParseList(config, event.getTargetUrls());
+                } else {
+                    hook.afterParseList(config, event.getCount());
+                }
+                break;
+            case BEFORE_GET_DOWNLOAD_INFO:
+                hook.beforeGetDownloadInfo(config, failedSet, event.getUrl());
+                break;
+            case GET_DOWNLOAD_INFO_FAILED:
+                hook.getDownloadInfoFailed(config, failedSet, event.getUrl(), event.getException());
+                break;
+            case AFTER_GET_DOWNLOAD_INFO:
+                hook.afterGetDownloadInfo(config, failedSet, event.getInfo());
+                break;
+            case BEFORE_DOWNLOAD:
+                hook.beforeDownload(config, failedSet, event.getInfo());
+                break;
+            case PROGRESS:
+                hook.progressReport(config, failedSet, event.getProgress());
+                break;
+            case DOWNLOAD_FAILED:
+                hook.downloadFailed(config, failedSet, event.getInfo(), event.getException());
+                break;
+            case RETRY_SCHEDULED:
+                hook.retryScheduled(config, event.getUrl(), event.getAttempt(), event.getDelayMillis(), event.getException());
+                break;
+            case AFTER_DOWNLOAD:
+                hook.afterDownload(config, failedSet, event.getInfo(), event.isSuccess());
+                break;
+            case ALL_TASK_DONE:
+                if (event.getTargetUrls() != null) {
+                    hook.allTaskDone(config, failedSet, event.getTargetUrls());
+                } else {
+                    hook.allTaskDone(config, failedSet, event.getCount());
+                }
+                break;
+            default:
+                break;
+        }
+    }
+}
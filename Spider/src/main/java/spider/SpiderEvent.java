@@ -0,0 +1,140 @@
+package spider;
+
+import lombok.Getter;
+import spider.progress.TaskProgress;
+
+import java.util.List;
+
+/**
+ * 爬虫生命周期事件，由引擎发布到事件总线，订阅者在自己的线程上处理。
+ * 不同类型的事件只会填充与之相关的字段
+ *
+ * @author Gloduck
+ */
+@Getter
+public class SpiderEvent {
+    public enum Type {
+        BEFORE_PARSE_LIST,
+        PARSE_LISTING,
+        PARSE_LIST_FAILED,
+        AFTER_PARSE_LIST,
+        BEFORE_GET_DOWNLOAD_INFO,
+        GET_DOWNLOAD_INFO_FAILED,
+        AFTER_GET_DOWNLOAD_INFO,
+        BEFORE_DOWNLOAD,
+        PROGRESS,
+        DOWNLOAD_FAILED,
+        RETRY_SCHEDULED,
+        AFTER_DOWNLOAD,
+        ALL_TASK_DONE
+    }
+
+    private final Type type;
+    private final long timestampMillis = System.currentTimeMillis();
+    /**
+     * 发布事件的线程名
+     */
+    private final String threadName = Thread.currentThread().getName();
+    private String url;
+    private AbstractSpider.DownloadInfo info;
+    private Exception exception;
+    private long count;
+    private int attempt;
+    private long delayMillis;
+    private boolean success;
+    private List<TaskProgress> progress;
+    /**
+     * 开启retainTargetUrls时保留的全部目标链接，没有保留时为null
+     */
+    private List<String> targetUrls;
+
+    private SpiderEvent(Type type) {
+        this.type = type;
+    }
+
+    static SpiderEvent beforeParseList() {
+        return new SpiderEvent(Type.BEFORE_PARSE_LIST);
+    }
+
+    static SpiderEvent parseListing(String list) {
+        SpiderEvent event = new SpiderEvent(Type.PARSE_LISTING);
+        event.url = list;
+        return event;
+    }
+
+    static SpiderEvent parseListFailed(String list, Exception e) {
+        SpiderEvent event = new SpiderEvent(Type.PARSE_LIST_FAILED);
+        event.url = list;
+        event.exception = e;
+        return event;
+    }
+
+    static SpiderEvent afterParseList(long resultCount, List<String> targetUrls) {
+        SpiderEvent event = new SpiderEvent(Type.AFTER_PARSE_LIST);
+        event.count = resultCount;
+        event.targetUrls = targetUrls;
+        return event;
+    }
+
+    static SpiderEvent beforeGetDownloadInfo(String url) {
+        SpiderEvent event = new SpiderEvent(Type.BEFORE_GET_DOWNLOAD_INFO);
+        event.url = url;
+        return event;
+    }
+
+    static SpiderEvent getDownloadInfoFailed(String url, Exception e) {
+        SpiderEvent event = new SpiderEvent(Type.GET_DOWNLOAD_INFO_FAILED);
+        event.url = url;
+        event.exception = e;
+        return event;
+    }
+
+    static SpiderEvent afterGetDownloadInfo(String url, AbstractSpider.DownloadInfo info) {
+        SpiderEvent event = new SpiderEvent(Type.AFTER_GET_DOWNLOAD_INFO);
+        event.url = url;
+        event.info = info;
+        return event;
+    }
+
+    static SpiderEvent beforeDownload(AbstractSpider.DownloadInfo info) {
+        SpiderEvent event = new SpiderEvent(Type.BEFORE_DOWNLOAD);
+        event.info = info;
+        return event;
+    }
+
+    static SpiderEvent progress(List<TaskProgress> tasks) {
+        SpiderEvent event = new SpiderEvent(Type.PROGRESS);
+        event.progress = tasks;
+        return event;
+    }
+
+    static SpiderEvent downloadFailed(AbstractSpider.DownloadInfo info, Exception e) {
+        SpiderEvent event = new SpiderEvent(Type.DOWNLOAD_FAILED);
+        event.info = info;
+        event.exception = e;
+        return event;
+    }
+
+    static SpiderEvent retryScheduled(String url, int attempt, long delayMillis, Exception e) {
+        SpiderEvent event = new SpiderEvent(Type.RETRY_SCHEDULED);
+        event.url = url;
+        event.attempt = attempt;
+        event.delayMillis = delayMillis;
+        event.exception = e;
+        return event;
+    }
+
+    static SpiderEvent afterDownload(AbstractSpider.DownloadInfo info, boolean success) {
+        SpiderEvent event = new SpiderEvent(Type.AFTER_DOWNLOAD);
+        event.info = info;
+        event.success = success;
+        return event;
+    }
+
+    static SpiderEvent allTaskDone(long targetCount, List<String> targetUrls) {
+        SpiderEvent event = new SpiderEvent(Type.ALL_TASK_DONE);
+        event.count = targetCount;
+        event.targetUrls = targetUrls;
+        return event;
+    }
+}
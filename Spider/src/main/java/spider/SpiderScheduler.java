@@ -0,0 +1,119 @@
+package spider;
+
+import spider.engine.WorkerBudget;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 在同一个进程中同时运行多个爬虫任务，所有任务共享同一份传输名额，名额按照每个任务配置的jobWeight公平分配。
+ * 任务可以在运行期间随时加入或者移除，每个任务在自己的线程上执行startDownload
+ *
+ * @author Gloduck
+ */
+public class SpiderScheduler {
+    private final WorkerBudget budget;
+    private final Map<String, JobHandle> jobs = new LinkedHashMap<>();
+
+    /**
+     * @param maxConcurrentTransfers 所有任务同时进行的传输数上限
+     */
+    public SpiderScheduler(int maxConcurrentTransfers) {
+        this.budget = new WorkerBudget(maxConcurrentTransfers);
+    }
+
+    /**
+     * 加入一个任务并立即开始运行
+     *
+     * @param name   任务名，不能和运行中的任务重复
+     * @param spider 爬虫，不能同时加入多个调度器
+     * @return 任务句柄
+     */
+    public synchronized JobHandle submit(String name, AbstractSpider spider) {
+        JobHandle previous = jobs.get(name);
+        if (previous != null && previous.getState() == JobHandle.JobState.RUNNING) {
+            throw new IllegalArgumentException("任务已经在运行：" + name);
+        }
+        JobHandle job = new JobHandle(name, spider, budget.register(name, spider.config.getJobWeight()));
+        jobs.put(name, job);
+        job.start();
+        return job;
+    }
+
+    /**
+     * 移除任务，运行中的任务会被停止，还没有结束的链接记为失败。不等待任务结束，需要时调用{@link JobHandle#await()}
+     *
+     * @param name 任务名
+     * @return 被移除的任务，不存在时返回null
+     */
+    public synchronized JobHandle remove(String name) {
+        JobHandle job = jobs.remove(name);
+        if (job != null && job.getState() == JobHandle.JobState.RUNNING) {
+            job.markRemoved();
+        }
+        return job;
+    }
+
+    /**
+     * 获取任务
+     *
+     * @param name 任务名
+     * @return 任务句柄，不存在时返回null
+     */
+    public synchronized JobHandle getJob(String name) {
+        return jobs.get(name);
+    }
+
+    /**
+     * 获取所有的任务，包括已经结束但是没有移除的任务
+     *
+     * @return 任务句柄
+     */
+    public synchronized List<JobHandle> getJobs() {
+        return new ArrayList<>(jobs.values());
+    }
+
+    public WorkerBudget getBudget() {
+        return budget;
+    }
+
+    /**
+     * 等待所有任务结束，等待期间加入的任务也会等待
+     *
+     * @throws InterruptedException 等待时被中断
+     */
+    public void awaitAll() throws InterruptedException {
+        while (true) {
+            JobHandle running = null;
+            for (JobHandle job : getJobs()) {
+                if (job.getState() == JobHandle.JobState.RUNNING) {
+                    running = job;
+                    break;
+                }
+            }
+            if (running == null) {
+                return;
+            }
+            running.await();
+        }
+    }
+
+    /**
+     * 移除所有任务并等待它们结束
+     *
+     * @throws InterruptedException 等待时被中断
+     */
+    public void shutdown() throws InterruptedException {
+        List<JobHandle> removed = new ArrayList<>();
+        synchronized (this) {
+            for (String name : new ArrayList<>(jobs.keySet())) {
+                removed.add(remove(name));
+            }
+        }
+        for (JobHandle job : removed) {
+            job.await();
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package spider;
+
+import spider.download.DownloadException;
+import spider.download.TransferControl;
+
+/**
+ * 单个链接的任务句柄，从链接进入解析下载信息阶段开始，到成功或者最终失败为止。
+ * 取消后正在进行的传输立即中止，等待中的重试和还没有开始的阶段不再执行，链接记为最终失败
+ *
+ * @author Gloduck
+ */
+public class TaskHandle {
+    private final String url;
+    private volatile String cancelReason;
+    private volatile TransferControl control;
+
+    TaskHandle(String url) {
+        this.url = url;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    /**
+     * 取消任务
+     *
+     * @return 是否是第一次取消
+     */
+    public boolean cancel() {
+        return cancel("任务已取消");
+    }
+
+    public boolean isCancelled() {
+        return cancelReason != null;
+    }
+
+    boolean cancel(String reason) {
+        synchronized (this) {
+            if (cancelReason != null) {
+                return false;
+            }
+            cancelReason = reason;
+        }
+        TransferControl current = control;
+        if (current != null) {
+            current.abort(DownloadException.cancelled(reason));
+        }
+        return true;
+    }
+
+    /**
+     * 已经取消时抛出取消的原因
+     *
+     * @throws DownloadException 取消的原因
+     */
+    void check() throws DownloadException {
+        String reason = cancelReason;
+        if (reason != null) {
+            throw DownloadException.cancelled(reason);
+        }
+    }
+
+    /**
+     * 为一次传输创建中止开关，已经取消时开关直接处于中止状态
+     *
+     * @return 中止开关
+     */
+    TransferControl newAttempt() {
+        TransferControl attempt = new TransferControl();
+        control = attempt;
+        String reason = cancelReason;
+        if (reason != null) {
+            attempt.abort(DownloadException.cancelled(reason));
+        }
+        return attempt;
+    }
+}
@@ -0,0 +1,19 @@
+package spider.buffer;
+
+import lombok.Data;
+
+/**
+ * 缓冲池的统计信息
+ *
+ * @author Gloduck
+ */
+@Data
+public class BufferPoolStats {
+    private long maxBytes;
+    private long allocatedBytes;
+    private long leasedBytes;
+    private long peakLeasedBytes;
+    private long hits;
+    private long misses;
+    private long waits;
+}
@@ -0,0 +1,249 @@
+package spider.buffer;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 可复用的直接内存缓冲区池，按2的幂次分档，借出时取不小于所需大小的最小一档。
+ * 所有已分配的缓冲区（包括借出的和池中空闲的）总大小不超过上限，
+ * 达到上限时先丢弃其他档位的空闲缓冲区腾出额度，仍然不够则阻塞直到有缓冲区归还，或者登记回调在有缓冲区归还时得到通知
+ *
+ * @author Gloduck
+ */
+public class DirectBufferPool {
+    /**
+     * 最小一档为8K
+     */
+    private static final int MIN_TIER_SHIFT = 13;
+    private static final int TIER_COUNT = 31 - MIN_TIER_SHIFT;
+    private final long maxBytes;
+    private final List<ArrayDeque<ByteBuffer>> tiers;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition released = lock.newCondition();
+    /**
+     * tryLease借不到缓冲区时登记的回调，下一次归还时全部执行一次
+     */
+    private List<Runnable> releaseCallbacks = new ArrayList<>();
+    private long allocatedBytes;
+    private long leasedBytes;
+    private long peakLeasedBytes;
+    private long hits;
+    private long misses;
+    private long waits;
+
+    /**
+     * @param maxBytes 所有缓冲区总大小的上限
+     */
+    public DirectBufferPool(long maxBytes) {
+        this.maxBytes = maxBytes;
+        this.tiers = new ArrayList<>(TIER_COUNT);
+        for (int i = 0; i < TIER_COUNT; i++) {
+            tiers.add(new ArrayDeque<>());
+        }
+    }
+
+    /**
+     * 借出一个已经清空的缓冲区，容量为不小于size的最小一档
+     *
+     * @param size 需要的大小
+     * @return 缓冲区
+     * @throws InterruptedException 等待其他缓冲区归还时被中断
+     */
+    public ByteBuffer lease(int size) throws InterruptedException {
+        int tier = tierOf(size);
+        int capacity = 1 << (tier + MIN_TIER_SHIFT);
+        if (capacity > maxBytes) {
+            throw new IllegalArgumentException(String.format("缓冲区大小%d超过了缓冲池的上限%d", capacity, maxBytes));
+        }
+        lock.lockInterruptibly();
+        try {
+            boolean waited = false;
+            while (true) {
+                ByteBuffer buffer = takeIdle(tier, capacity);
+                if (buffer != null) {
+                    return buffer;
+                }
+                if (reserve(capacity)) {
+                    break;
+                }
+                if (!waited) {
+                    waits++;
+                    waited = true;
+                }
+                released.await();
+            }
+        } finally {
+            lock.unlock();
+        }
+        // 额度已经占用，分配本身放到锁外进行
+        return ByteBuffer.allocateDirect(capacity);
+    }
+
+    /**
+     * 借出一个已经清空的缓冲区，没有空闲的缓冲区并且已经达到上限时不等待，直接返回null。
+     * 用于不能阻塞的线程，例如HttpClient投递响应数据的线程
+     *
+     * @param size 需要的大小
+     * @return 缓冲区，没有可用的额度时返回null
+     */
+    public ByteBuffer tryLease(int size) {
+        return tryLease(size, null);
+    }
+
+    /**
+     * 借出一个已经清空的缓冲区，借不到时不等待，登记回调后返回null。
+     * 登记和判断在同一个锁内完成，返回null之后的归还一定会执行回调，回调在归还缓冲区的线程上执行，不能阻塞
+     *
+     * @param size        需要的大小
+     * @param onAvailable 借不到时登记的回调，下一次有缓冲区归还时执行一次，为null时不登记
+     * @return 缓冲区，没有可用的额度时返回null
+     */
+    public ByteBuffer tryLease(int size, Runnable onAvailable) {
+        int tier = tierOf(size);
+        int capacity = 1 << (tier + MIN_TIER_SHIFT);
+        if (capacity > maxBytes) {
+            throw new IllegalArgumentException(String.format("缓冲区大小%d超过了缓冲池的上限%d", capacity, maxBytes));
+        }
+        lock.lock();
+        try {
+            ByteBuffer buffer = takeIdle(tier, capacity);
+            if (buffer != null) {
+                return buffer;
+            }
+            if (!reserve(capacity)) {
+                waits++;
+                if (onAvailable != null) {
+                    releaseCallbacks.add(onAvailable);
+                }
+                return null;
+            }
+        } finally {
+            lock.unlock();
+        }
+        return ByteBuffer.allocateDirect(capacity);
+    }
+
+    /**
+     * 归还缓冲区，只能归还从本池借出的缓冲区
+     *
+     * @param buffer 缓冲区
+     */
+    public void release(ByteBuffer buffer) {
+        buffer.clear();
+        List<Runnable> callbacks;
+        lock.lock();
+        try {
+            tiers.get(tierOf(buffer.capacity())).offerFirst(buffer);
+            leasedBytes -= buffer.capacity();
+            released.signalAll();
+            if (releaseCallbacks.isEmpty()) {
+                callbacks = Collections.emptyList();
+            } else {
+                callbacks = releaseCallbacks;
+                releaseCallbacks = new ArrayList<>();
+            }
+        } finally {
+            lock.unlock();
+        }
+        // 回调可能再次借出缓冲区，放到锁外执行
+        for (Runnable callback : callbacks) {
+            callback.run();
+        }
+    }
+
+    /**
+     * 获取缓冲池的统计信息
+     *
+     * @return 统计信息
+     */
+    public BufferPoolStats stats() {
+        lock.lock();
+        try {
+            BufferPoolStats stats = new BufferPoolStats();
+            stats.setMaxBytes(maxBytes);
+            stats.setAllocatedBytes(allocatedBytes);
+            stats.setLeasedBytes(leasedBytes);
+            stats.setPeakLeasedBytes(peakLeasedBytes);
+            stats.setHits(hits);
+            stats.setMisses(misses);
+            stats.setWaits(waits);
+            return stats;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 计算不超过size的最大一档的大小，用于只把size当作建议值、不希望向上取整的场景
+     *
+     * @param size 建议的大小
+     * @return 档位大小
+     */
+    public static int floorTierSize(int size) {
+        return Math.max(1 << MIN_TIER_SHIFT, Integer.highestOneBit(size));
+    }
+
+    /**
+     * 在锁内取出同一档的空闲缓冲区
+     */
+    private ByteBuffer takeIdle(int tier, int capacity) {
+        ByteBuffer buffer = tiers.get(tier).pollFirst();
+        if (buffer != null) {
+            hits++;
+            leased(capacity);
+        }
+        return buffer;
+    }
+
+    /**
+     * 在锁内为新的缓冲区占用额度，额度不够时先丢弃空闲缓冲区
+     *
+     * @return 是否占用成功
+     */
+    private boolean reserve(int capacity) {
+        if (allocatedBytes + capacity > maxBytes) {
+            evictIdle(allocatedBytes + capacity - maxBytes);
+        }
+        if (allocatedBytes + capacity > maxBytes) {
+            return false;
+        }
+        misses++;
+        allocatedBytes += capacity;
+        leased(capacity);
+        return true;
+    }
+
+    private void leased(int capacity) {
+        leasedBytes += capacity;
+        if (leasedBytes > peakLeasedBytes) {
+            peakLeasedBytes = leasedBytes;
+        }
+    }
+
+    /**
+     * 从大到小丢弃空闲缓冲区，直到腾出足够的额度或者没有空闲缓冲区，丢弃的内存由GC回收
+     */
+    private void evictIdle(long needed) {
+        for (int i = TIER_COUNT - 1; i >= 0 && needed > 0; i--) {
+            ArrayDeque<ByteBuffer> idle = tiers.get(i);
+            while (needed > 0 && !idle.isEmpty()) {
+                int capacity = idle.pollLast().capacity();
+                allocatedBytes -= capacity;
+                needed -= capacity;
+            }
+        }
+    }
+
+    private static int tierOf(int size) {
+        int shift = size <= 1 << MIN_TIER_SHIFT ? MIN_TIER_SHIFT : 32 - Integer.numberOfLeadingZeros(size - 1);
+        if (shift - MIN_TIER_SHIFT >= TIER_COUNT) {
+            throw new IllegalArgumentException("缓冲区过大：" + size);
+        }
+        return shift - MIN_TIER_SHIFT;
+    }
+}
@@ -0,0 +1,81 @@
+package spider.cache;
+
+import cn.hutool.crypto.SecureUtil;
+import cn.hutool.json.JSONUtil;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * 磁盘上的缓存，每个链接保存为一个json文件，文件名是链接的SHA-1，重新运行时依然有效。
+ * 过期的文件在读取时删除
+ *
+ * @author Gloduck
+ */
+public class DiskResolutionCache implements ResolutionCache {
+    private final Path directory;
+
+    /**
+     * @param directory 缓存目录，不存在时创建
+     * @throws IOException 创建目录失败
+     */
+    public DiskResolutionCache(Path directory) throws IOException {
+        this.directory = Files.createDirectories(directory);
+    }
+
+    @Override
+    public ResolvedEntry get(String url) {
+        Path path = pathOf(url);
+        if (!Files.exists(path)) {
+            return null;
+        }
+        ResolvedEntry entry;
+        try {
+            entry = JSONUtil.toBean(new String(Files.readAllBytes(path), StandardCharsets.UTF_8), ResolvedEntry.class);
+        } catch (Exception e) {
+            // 损坏的文件当作未命中，下次写入时覆盖
+            return null;
+        }
+        // 不同的链接SHA-1相同的可能性可以忽略，但是依然要确认
+        if (!url.equals(entry.getUrl())) {
+            return null;
+        }
+        if (entry.isExpired(System.currentTimeMillis())) {
+            invalidate(url);
+            return null;
+        }
+        return entry;
+    }
+
+    @Override
+    public void put(ResolvedEntry entry) {
+        Path path = pathOf(entry.getUrl());
+        Path temp = path.resolveSibling(path.getFileName() + "." + Thread.currentThread().getId() + ".tmp");
+        try {
+            Files.write(temp, JSONUtil.toJsonStr(entry).getBytes(StandardCharsets.UTF_8));
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // 写入缓存失败只会导致下次重新解析
+            try {
+                Files.deleteIfExists(temp);
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    @Override
+    public void invalidate(String url) {
+        try {
+            Files.deleteIfExists(pathOf(url));
+        } catch (IOException ignored) {
+            // 删除失败时文件过期后依然会被当作未命中
+        }
+    }
+
+    private Path pathOf(String url) {
+        return directory.resolve(SecureUtil.sha1(url) + ".json");
+    }
+}
@@ -0,0 +1,229 @@
+package spider.cache;
+
+import cn.hutool.crypto.SecureUtil;
+import cn.hutool.json.JSONUtil;
+import lombok.Data;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 磁盘上的HTTP页面缓存，保存带有ETag或者Last-Modified的响应体，再次请求时发送条件请求，
+ * 服务器返回304时直接使用磁盘上的内容。每个链接对应一个.meta和一个.body文件，文件名是链接的SHA-1。
+ * 总大小超过上限时淘汰最久没有使用的页面，使用时间记录在.body文件的修改时间上，重新运行时依然有效
+ *
+ * @author Gloduck
+ */
+public class HttpPageCache {
+    private static final String META_SUFFIX = ".meta";
+    private static final String BODY_SUFFIX = ".body";
+    private final Path directory;
+    private final long maxBytes;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+
+    private HttpPageCache(Path directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * 打开缓存目录，按照上次使用的时间恢复淘汰顺序
+     *
+     * @param directory 缓存目录，不存在时创建
+     * @param maxBytes  响应体的总大小上限
+     * @return 缓存
+     * @throws IOException 读取目录失败
+     */
+    public static HttpPageCache open(Path directory, long maxBytes) throws IOException {
+        HttpPageCache cache = new HttpPageCache(Files.createDirectories(directory), maxBytes);
+        cache.load();
+        return cache;
+    }
+
+    /**
+     * 获取缓存的页面信息，用于发送条件请求
+     *
+     * @param url 页面链接
+     * @return 页面信息，没有缓存时返回null
+     */
+    public synchronized Entry lookup(String url) {
+        return entries.get(url);
+    }
+
+    /**
+     * 读取缓存的响应体，并记录为最近使用
+     *
+     * @param entry 页面信息
+     * @return 响应体
+     * @throws IOException 文件已经被淘汰或者读取失败
+     */
+    public byte[] read(Entry entry) throws IOException {
+        Path body = directory.resolve(entry.getKey() + BODY_SUFFIX);
+        byte[] bytes = Files.readAllBytes(body);
+        try {
+            Files.setLastModifiedTime(body, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException ignored) {
+            // 只影响下次运行时的淘汰顺序
+        }
+        return bytes;
+    }
+
+    /**
+     * 保存页面，没有ETag和Last-Modified的页面无法验证是否变化，不保存
+     *
+     * @param url          页面链接
+     * @param etag         ETag
+     * @param lastModified Last-Modified
+     * @param contentType  Content-Type
+     * @param body         解压后的响应体
+     */
+    public void store(String url, String etag, String lastModified, String contentType, byte[] body) {
+        if ((etag == null && lastModified == null) || body.length > maxBytes) {
+            return;
+        }
+        Entry entry = new Entry();
+        entry.setUrl(url);
+        entry.setKey(SecureUtil.sha1(url));
+        entry.setEtag(etag);
+        entry.setLastModified(lastModified);
+        entry.setContentType(contentType);
+        entry.setSize(body.length);
+        try {
+            // 先写响应体再写元数据，元数据存在时响应体一定是完整的
+            write(directory.resolve(entry.getKey() + BODY_SUFFIX), body);
+            write(directory.resolve(entry.getKey() + META_SUFFIX), JSONUtil.toJsonStr(entry).getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            // 写入缓存失败只会导致下次重新下载
+            return;
+        }
+        List<Entry> evicted = new ArrayList<>();
+        synchronized (this) {
+            Entry previous = entries.put(url, entry);
+            if (previous != null) {
+                totalBytes -= previous.getSize();
+            }
+            totalBytes += entry.getSize();
+            Iterator<Entry> iterator = entries.values().iterator();
+            while (totalBytes > maxBytes && iterator.hasNext()) {
+                Entry eldest = iterator.next();
+                iterator.remove();
+                totalBytes -= eldest.getSize();
+                evicted.add(eldest);
+            }
+        }
+        for (Entry eldest : evicted) {
+            delete(eldest.getKey());
+        }
+    }
+
+    /**
+     * 删除缓存的页面，响应体读取失败时调用
+     *
+     * @param url 页面链接
+     */
+    public void invalidate(String url) {
+        Entry entry;
+        synchronized (this) {
+            entry = entries.remove(url);
+            if (entry == null) {
+                return;
+            }
+            totalBytes -= entry.getSize();
+        }
+        delete(entry.getKey());
+    }
+
+    /**
+     * 缓存的响应体总大小
+     *
+     * @return 字节数
+     */
+    public synchronized long totalBytes() {
+        return totalBytes;
+    }
+
+    private void load() throws IOException {
+        List<Entry> loaded = new ArrayList<>();
+        Map<Entry, Long> lastUsed = new LinkedHashMap<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + META_SUFFIX)) {
+            for (Path meta : stream) {
+                Entry entry;
+                try {
+                    entry = JSONUtil.toBean(new String(Files.readAllBytes(meta), StandardCharsets.UTF_8), Entry.class);
+                } catch (Exception e) {
+                    Files.deleteIfExists(meta);
+                    continue;
+                }
+                Path body = directory.resolve(entry.getKey() + BODY_SUFFIX);
+                if (entry.getUrl() == null || !Files.exists(body) || Files.size(body) != entry.getSize()) {
+                    delete(entry.getKey());
+                    continue;
+                }
+                loaded.add(entry);
+                lastUsed.put(entry, Files.getLastModifiedTime(body).toMillis());
+            }
+        }
+        loaded.sort(Comparator.comparingLong(lastUsed::get));
+        List<Entry> evicted = new ArrayList<>();
+        synchronized (this) {
+            for (Entry entry : loaded) {
+                entries.put(entry.getUrl(), entry);
+                totalBytes += entry.getSize();
+            }
+            Iterator<Entry> iterator = entries.values().iterator();
+            while (totalBytes > maxBytes && iterator.hasNext()) {
+                Entry eldest = iterator.next();
+                iterator.remove();
+                totalBytes -= eldest.getSize();
+                evicted.add(eldest);
+            }
+        }
+        for (Entry eldest : evicted) {
+            delete(eldest.getKey());
+        }
+    }
+
+    private static void write(Path path, byte[] content) throws IOException {
+        Path temp = path.resolveSibling(path.getFileName() + "." + Thread.currentThread().getId() + ".tmp");
+        try {
+            Files.write(temp, content);
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private void delete(String key) {
+        try {
+            Files.deleteIfExists(directory.resolve(key + META_SUFFIX));
+            Files.deleteIfExists(directory.resolve(key + BODY_SUFFIX));
+        } catch (IOException ignored) {
+            // 没有元数据的响应体下次打开时不会被使用
+        }
+    }
+
+    @Data
+    public static class Entry {
+        private String url;
+        /**
+         * 文件名，链接的SHA-1
+         */
+        private String key;
+        private String etag;
+        private String lastModified;
+        private String contentType;
+        private long size;
+    }
+}
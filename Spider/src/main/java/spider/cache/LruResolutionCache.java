@@ -0,0 +1,81 @@
+package spider.cache;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 内存中的LRU缓存，条目数超过上限时淘汰最久没有访问的条目。
+ * 可以指定下一级缓存，未命中时从下一级读取并放回内存，写入和删除同时作用于下一级
+ *
+ * @author Gloduck
+ */
+public class LruResolutionCache implements ResolutionCache {
+    private final Map<String, ResolvedEntry> entries;
+    private final ResolutionCache next;
+
+    /**
+     * @param maxEntries 最大条目数
+     * @param next       下一级缓存，可以为null
+     */
+    public LruResolutionCache(int maxEntries, ResolutionCache next) {
+        this.entries = new LinkedHashMap<String, ResolvedEntry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, ResolvedEntry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+        this.next = next;
+    }
+
+    @Override
+    public ResolvedEntry get(String url) {
+        long now = System.currentTimeMillis();
+        synchronized (entries) {
+            ResolvedEntry entry = entries.get(url);
+            if (entry != null) {
+                if (!entry.isExpired(now)) {
+                    return entry;
+                }
+                entries.remove(url);
+            }
+        }
+        if (next == null) {
+            return null;
+        }
+        ResolvedEntry entry = next.get(url);
+        if (entry != null) {
+            synchronized (entries) {
+                entries.put(url, entry);
+            }
+        }
+        return entry;
+    }
+
+    @Override
+    public void put(ResolvedEntry entry) {
+        synchronized (entries) {
+            entries.put(entry.getUrl(), entry);
+        }
+        if (next != null) {
+            next.put(entry);
+        }
+    }
+
+    @Override
+    public void invalidate(String url) {
+        synchronized (entries) {
+            entries.remove(url);
+        }
+        if (next != null) {
+            next.invalidate(url);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (next != null) {
+            next.close();
+        }
+    }
+}
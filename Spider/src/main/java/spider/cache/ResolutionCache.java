@@ -0,0 +1,37 @@
+package spider.cache;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * 下载信息解析结果的缓存，以页面链接为键。命中时跳过getDownloadInfo，不再请求和解析页面
+ *
+ * @author Gloduck
+ */
+public interface ResolutionCache extends Closeable {
+    /**
+     * 获取没有过期的解析结果
+     *
+     * @param url 页面链接
+     * @return 解析结果，没有或者已经过期时返回null
+     */
+    ResolvedEntry get(String url);
+
+    /**
+     * 保存解析结果，过期时间由调用方设置
+     *
+     * @param entry 解析结果
+     */
+    void put(ResolvedEntry entry);
+
+    /**
+     * 删除解析结果，下载链接失效时调用
+     *
+     * @param url 页面链接
+     */
+    void invalidate(String url);
+
+    @Override
+    default void close() throws IOException {
+    }
+}
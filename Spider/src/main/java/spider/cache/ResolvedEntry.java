@@ -0,0 +1,44 @@
+package spider.cache;
+
+import lombok.Data;
+
+/**
+ * 缓存的下载信息解析结果
+ *
+ * @author Gloduck
+ */
+@Data
+public class ResolvedEntry {
+    private String url;
+    private String fileName;
+    private String targetPath;
+    private String link;
+    /**
+     * 文件长度，未知时为-1
+     */
+    private long contentLength = -1;
+    private int priority;
+    /**
+     * 是否已经在传输前探测过，探测过时传输直接使用下面的结果，不再发送HEAD请求
+     */
+    private boolean probed;
+    private boolean acceptRanges;
+    private String etag;
+    private String lastModified;
+    /**
+     * 服务器提供的摘要算法，没有时为null
+     */
+    private String digestAlgorithm;
+    /**
+     * Base64编码的摘要
+     */
+    private String digestValue;
+    /**
+     * 过期时间，签名过的下载链接会失效，过期后需要重新解析
+     */
+    private long expiresAtMillis;
+
+    public boolean isExpired(long nowMillis) {
+        return nowMillis >= expiresAtMillis;
+    }
+}
@@ -2,7 +2,18 @@ package spider.config;
 
 import lombok.Data;
 import org.jsoup.internal.StringUtil;
+import spider.dedup.DedupMode;
+import spider.distributed.DistributedRole;
+import spider.download.TransferEngine;
+import spider.engine.ExecutionMode;
+import spider.engine.TransferOrder;
+import spider.event.OverflowPolicy;
+import spider.metrics.MetricsFormat;
+import spider.engine.VirtualThreads;
 
+import java.lang.management.ManagementFactory;
+import java.net.http.HttpClient;
+import java.nio.file.Paths;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -14,8 +25,87 @@ public class SpiderConfig {
     private boolean overlayExists;
     private int coreThreadCount;
     private int maxThreadCount;
+    private int taskQueueCapacity;
+    private boolean retainTargetUrls;
+    private int parseThreadCount;
+    private int resolveThreadCount;
+    private int resolveQueueCapacity;
+    private ExecutionMode executionMode;
+    private int maxInFlightTasks;
+    private int maxConnectionsPerHost;
+    private double requestsPerSecond;
+    private double requestsPerSecondPerHost;
+    private long bytesPerSecond;
+    private long bytesPerSecondPerHost;
+    /**
+     * 是否根据吞吐量、延迟和错误率自动调整全局和每个host的并发请求数
+     */
+    private boolean adaptiveConcurrency;
+    private int adaptiveMinConcurrency;
+    private int adaptiveMaxConcurrency;
+    private long adaptiveIntervalMillis;
     private int timeoutMilliseconds;
+    private int retryMaxAttempts;
+    private long retryBaseDelayMillis;
+    private long retryMaxDelayMillis;
+    /**
+     * 单次传输的最长时间，0表示不限制
+     */
+    private long taskTimeoutMillis;
+    /**
+     * 传输速度的下限，0表示不检查
+     */
+    private long stallMinBytesPerSecond;
+    private long stallWindowMillis;
+    /**
+     * 整体的截止时间，0表示不限制
+     */
+    private long jobTimeoutMillis;
+    /**
+     * 多个任务共享传输名额时的权重
+     */
+    private int jobWeight;
     private int downloadBufferSize;
+    private long bufferPoolMaxBytes;
+    private long progressIntervalMillis;
+    private int eventBufferSize;
+    private OverflowPolicy eventOverflowPolicy;
+    private long metricsDumpIntervalMillis;
+    private MetricsFormat metricsDumpFormat;
+    private String metricsDumpPath;
+    private String frontierPath;
+    private int resolveCacheMaxEntries;
+    private long resolveCacheTtlMillis;
+    private String resolveCachePath;
+    private String pageCachePath;
+    private long pageCacheMaxBytes;
+    private DistributedRole distributedRole;
+    private String workQueuePath;
+    private String workerId;
+    private long leaseMillis;
+    private long queuePollMillis;
+    /**
+     * 文件传输引擎，ASYNC时同时进行的传输数不超过maxThreadCount + taskQueueCapacity
+     */
+    private TransferEngine transferEngine;
+    /**
+     * 传输阶段排队任务的执行顺序，不是FIFO时排队的任务数为maxThreadCount + taskQueueCapacity
+     */
+    private TransferOrder transferOrder;
+    private int segmentCount;
+    private long minSegmentSize;
+    /**
+     * JdkHttpClient使用的HTTP版本。HTTP_2会把同一个host的分段请求复用到一个连接上，分段下载不再有多个连接的带宽
+     */
+    private HttpClient.Version httpVersion;
+    /**
+     * 内容相同的文件的处理方式，不是NONE时下载的同时计算SHA-256
+     */
+    private DedupMode dedupMode;
+    /**
+     * 按内容寻址的文件索引，为空时使用baseDownloadPath下的.spider-content-index
+     */
+    private String contentIndexPath;
     private String baseDownloadPath;
     private String proxyHostAndPort;
     private String type;
@@ -35,16 +125,162 @@ public class SpiderConfig {
         if(maxThreadCount <= 0){
             maxThreadCount = processors * 2;
         }
+        if(taskQueueCapacity <= 0){
+            taskQueueCapacity = maxThreadCount * 4;
+        }
+        if(parseThreadCount <= 0){
+            parseThreadCount = processors;
+        }
+        if(resolveThreadCount <= 0){
+            resolveThreadCount = coreThreadCount;
+        }
+        if(resolveQueueCapacity <= 0){
+            resolveQueueCapacity = resolveThreadCount * 4;
+        }
+        if(executionMode == null){
+            executionMode = ExecutionMode.PLATFORM;
+        }
+        if(executionMode == ExecutionMode.VIRTUAL){
+            if(!VirtualThreads.isSupported()){
+                throw new IllegalArgumentException("虚拟线程模式需要JDK21及以上");
+            }
+            // 虚拟线程模式下并发数只由每个host的连接数限制
+            if(maxConnectionsPerHost <= 0){
+                maxConnectionsPerHost = 64;
+            }
+        }
+        if(maxInFlightTasks <= 0){
+            maxInFlightTasks = 10000;
+        }
         if(timeoutMilliseconds <= 0){
             timeoutMilliseconds = 3000;
         }
+        if(retryMaxAttempts <= 0){
+            retryMaxAttempts = 3;
+        }
+        if(retryBaseDelayMillis <= 0){
+            retryBaseDelayMillis = 1000;
+        }
+        if(retryMaxDelayMillis <= 0){
+            retryMaxDelayMillis = 60 * 1000;
+        }
         if(downloadBufferSize <= 0){
             // 5M
             downloadBufferSize = 5 * 1024 * 1024;
         }
+        if(bufferPoolMaxBytes <= 0){
+            bufferPoolMaxBytes = (long) downloadBufferSize * maxThreadCount;
+        }
+        if(bufferPoolMaxBytes < downloadBufferSize){
+            throw new IllegalArgumentException("bufferPoolMaxBytes不能小于downloadBufferSize");
+        }
+        if(progressIntervalMillis <= 0){
+            progressIntervalMillis = 1000;
+        }
+        if(eventBufferSize <= 0){
+            eventBufferSize = 8192;
+        }
+        if(Integer.bitCount(eventBufferSize) != 1){
+            throw new IllegalArgumentException("eventBufferSize必须是2的幂");
+        }
+        if(eventOverflowPolicy == null){
+            eventOverflowPolicy = OverflowPolicy.BLOCK;
+        }
+        if(metricsDumpFormat == null){
+            metricsDumpFormat = MetricsFormat.TEXT;
+        }
+        if(StringUtil.isBlank(metricsDumpPath)){
+            metricsDumpPath = null;
+        }
+        if(StringUtil.isBlank(frontierPath)){
+            frontierPath = null;
+        }
+        if(resolveCacheMaxEntries <= 0){
+            resolveCacheMaxEntries = 10000;
+        }
+        if(resolveCacheTtlMillis <= 0){
+            // 签名过的下载链接通常在一段时间后失效
+            resolveCacheTtlMillis = 30 * 60 * 1000;
+        }
+        if(StringUtil.isBlank(resolveCachePath)){
+            resolveCachePath = null;
+        }
+        if(StringUtil.isBlank(pageCachePath)){
+            pageCachePath = null;
+        }
+        if(pageCacheMaxBytes <= 0){
+            // 256M
+            pageCacheMaxBytes = 256L * 1024 * 1024;
+        }
+        if(distributedRole == null){
+            distributedRole = DistributedRole.NONE;
+        }
+        if(distributedRole != DistributedRole.NONE && StringUtil.isBlank(workQueuePath)){
+            throw new IllegalArgumentException("分布式模式需要配置workQueuePath");
+        }
+        if(StringUtil.isBlank(workerId)){
+            // pid@hostname
+            workerId = ManagementFactory.getRuntimeMXBean().getName();
+        }
+        if(taskTimeoutMillis < 0){
+            taskTimeoutMillis = 0;
+        }
+        if(stallMinBytesPerSecond < 0){
+            stallMinBytesPerSecond = 0;
+        }
+        if(stallWindowMillis <= 0){
+            stallWindowMillis = 30 * 1000;
+        }
+        if(jobTimeoutMillis < 0){
+            jobTimeoutMillis = 0;
+        }
+        if(jobWeight <= 0){
+            jobWeight = 1;
+        }
+        if(leaseMillis <= 0){
+            leaseMillis = 5 * 60 * 1000;
+        }
+        if(queuePollMillis <= 0){
+            queuePollMillis = 1000;
+        }
+        if(transferEngine == null){
+            transferEngine = TransferEngine.BLOCKING;
+        }
+        if(transferOrder == null){
+            transferOrder = TransferOrder.FIFO;
+        }
+        if(segmentCount <= 0){
+            segmentCount = 1;
+        }
+        if(minSegmentSize <= 0){
+            // 8M
+            minSegmentSize = 8 * 1024 * 1024;
+        }
+        if(httpVersion == null){
+            httpVersion = HttpClient.Version.HTTP_1_1;
+        }
+        if(adaptiveMinConcurrency <= 0){
+            adaptiveMinConcurrency = 1;
+        }
+        if(adaptiveMaxConcurrency <= 0){
+            // 每个传输线程的每个分段一个连接
+            adaptiveMaxConcurrency = maxThreadCount * segmentCount;
+        }
+        if(adaptiveMaxConcurrency < adaptiveMinConcurrency){
+            adaptiveMaxConcurrency = adaptiveMinConcurrency;
+        }
+        if(adaptiveIntervalMillis <= 0){
+            adaptiveIntervalMillis = 1000;
+        }
         if(StringUtil.isBlank(baseDownloadPath)){
             baseDownloadPath = "./";
         }
+        if(dedupMode == null){
+            dedupMode = DedupMode.NONE;
+        }
+        if(StringUtil.isBlank(contentIndexPath)){
+            contentIndexPath = dedupMode == DedupMode.NONE ? null : Paths.get(baseDownloadPath, ".spider-content-index").toString();
+        }
         if(type == null || targetLists == null || targetLists.size() == 0){
             throw new IllegalArgumentException();
         }
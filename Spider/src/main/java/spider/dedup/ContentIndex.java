@@ -0,0 +1,189 @@
+package spider.dedup;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 按内容寻址的文件索引，记录每个SHA-256第一次下载到的文件，用于发现内容相同但名称不同的文件。
+ * 记录以追加的方式写入日志，打开时回放；查询时检查文件是否依然存在并且长度没有变化，失效的记录直接丢弃
+ *
+ * @author Gloduck
+ */
+public class ContentIndex implements Closeable {
+    /**
+     * 过期记录超过有效记录的这个倍数时压缩日志
+     */
+    private static final int COMPACT_RATIO = 2;
+    private static final char SEPARATOR = '\t';
+    private final Path logPath;
+    private final Map<String, Entry> entries = new HashMap<>();
+    private Writer writer;
+
+    private ContentIndex(Path logPath) {
+        this.logPath = logPath;
+    }
+
+    /**
+     * 打开日志文件，回放其中的记录
+     *
+     * @param logPath 日志文件
+     * @return 索引
+     * @throws IOException 读取或者创建日志失败
+     */
+    public static ContentIndex open(Path logPath) throws IOException {
+        ContentIndex index = new ContentIndex(logPath);
+        index.replay();
+        return index;
+    }
+
+    /**
+     * 查找内容相同的已有文件
+     *
+     * @param sha256  文件的SHA-256
+     * @param size    文件长度
+     * @param exclude 不作为结果返回的文件，通常是当前的目标文件
+     * @return 已有的文件，没有时返回null
+     */
+    public synchronized Path find(String sha256, long size, Path exclude) {
+        Entry entry = entries.get(sha256);
+        if (entry == null) {
+            return null;
+        }
+        if (!isIntact(entry)) {
+            entries.remove(sha256);
+            return null;
+        }
+        if (entry.size != size) {
+            return null;
+        }
+        return entry.path.equals(exclude.toAbsolutePath().normalize()) ? null : entry.path;
+    }
+
+    /**
+     * 登记下载完成的文件，已经有内容相同的文件时不登记
+     *
+     * @param sha256 文件的SHA-256
+     * @param size   文件长度
+     * @param path   文件
+     * @return 内容相同的已有文件，没有时返回null
+     */
+    public synchronized Path register(String sha256, long size, Path path) {
+        Path existing = find(sha256, size, path);
+        if (existing != null) {
+            return existing;
+        }
+        Entry entry = new Entry(size, path.toAbsolutePath().normalize());
+        entries.put(sha256, entry);
+        append(sha256, entry);
+        return null;
+    }
+
+    /**
+     * 将日志刷到磁盘
+     *
+     * @throws IOException 写入失败
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (writer != null) {
+            writer.close();
+            writer = null;
+        }
+    }
+
+    private static boolean isIntact(Entry entry) {
+        try {
+            return Files.isRegularFile(entry.path, LinkOption.NOFOLLOW_LINKS) && Files.size(entry.path) == entry.size;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private void replay() throws IOException {
+        long records = 0;
+        if (Files.exists(logPath)) {
+            try (BufferedReader reader = Files.newBufferedReader(logPath, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    int first = line.indexOf(SEPARATOR);
+                    int second = first < 0 ? -1 : line.indexOf(SEPARATOR, first + 1);
+                    if (first <= 0 || second < 0) {
+                        // 进程中断时可能留下写了一半的行
+                        continue;
+                    }
+                    try {
+                        long size = Long.parseLong(line.substring(first + 1, second));
+                        entries.put(line.substring(0, first), new Entry(size, Paths.get(line.substring(second + 1))));
+                        records++;
+                    } catch (RuntimeException e) {
+                        continue;
+                    }
+                }
+            }
+        } else if (logPath.getParent() != null) {
+            Files.createDirectories(logPath.getParent());
+        }
+        if (records > (long) entries.size() * COMPACT_RATIO) {
+            compact();
+        }
+        writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(logPath.toFile(), true), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 每个摘要只保留最后的记录，先写入临时文件再替换
+     */
+    private void compact() throws IOException {
+        Path temp = logPath.resolveSibling(logPath.getFileName() + ".tmp");
+        try (Writer out = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                write(out, entry.getKey(), entry.getValue());
+            }
+        }
+        Files.move(temp, logPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void append(String sha256, Entry entry) {
+        if (writer == null) {
+            return;
+        }
+        try {
+            write(writer, sha256, entry);
+            // 交给操作系统即可，丢失的记录只会让之后的重复文件多占一份空间
+            writer.flush();
+        } catch (IOException e) {
+            throw new IllegalStateException("写入文件索引失败：" + logPath, e);
+        }
+    }
+
+    private static void write(Writer out, String sha256, Entry entry) throws IOException {
+        out.write(sha256);
+        out.write(SEPARATOR);
+        out.write(Long.toString(entry.size));
+        out.write(SEPARATOR);
+        out.write(entry.path.toString());
+        out.write('\n');
+    }
+
+    private static class Entry {
+        private final long size;
+        private final Path path;
+
+        private Entry(long size, Path path) {
+            this.size = size;
+            this.path = path;
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package spider.dedup;
+
+/**
+ * 内容相同的文件的处理方式
+ *
+ * @author Gloduck
+ */
+public enum DedupMode {
+    /**
+     * 不去重，也不计算用于去重的摘要
+     */
+    NONE,
+    /**
+     * 用指向已有文件的硬链接代替重复的文件，不占用额外的空间；无法创建硬链接时保留下载的文件
+     */
+    HARD_LINK,
+    /**
+     * 删除重复的文件，只保留最先下载的一份
+     */
+    SKIP
+}
@@ -0,0 +1,21 @@
+package spider.distributed;
+
+/**
+ * 分布式模式下的角色
+ *
+ * @author Gloduck
+ */
+public enum DistributedRole {
+    /**
+     * 单机运行，不使用工作队列
+     */
+    NONE,
+    /**
+     * 解析列表，把链接放入工作队列，等待所有节点完成后汇总失败的链接
+     */
+    COORDINATOR,
+    /**
+     * 从工作队列租用链接并下载到本节点的baseDownloadPath
+     */
+    WORKER
+}
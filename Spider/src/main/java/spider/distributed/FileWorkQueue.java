@@ -0,0 +1,332 @@
+package spider.distributed;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 基于共享目录的工作队列，用于同一台机器上的多个进程，或者挂载了同一个目录的多台机器。
+ * 所有操作以追加的方式写入同一个日志文件，通过文件锁互斥；每个进程在内存中维护队列状态，
+ * 获得锁后先读取其他进程追加的新记录，所以每次操作只读取增量。
+ * 租约的过期时间使用各个节点的本地时钟，多台机器时需要保持时钟同步
+ *
+ * @author Gloduck
+ */
+public class FileWorkQueue implements WorkQueue {
+    private static final String LOG_FILE = "queue.log";
+    private static final String LOCK_FILE = "queue.lock";
+    /**
+     * 文件锁由整个JVM持有，同一个JVM中打开同一个目录的多个实例需要先在进程内互斥
+     */
+    private static final ConcurrentMap<Path, Object> LOCAL_LOCKS = new ConcurrentHashMap<>();
+    private final Object localLock;
+    private final FileChannel lockChannel;
+    private final FileChannel logChannel;
+    private final Map<String, Item> items = new HashMap<>();
+    private final Deque<String> pending = new ArrayDeque<>();
+    private final Map<String, String> failures = new LinkedHashMap<>();
+    /**
+     * 还没有取出的确认完成的链接，第一次调用pollAcknowledged之后才开始记录，没有调用的节点不占用内存
+     */
+    private List<String> acknowledged;
+    private final ByteBuffer readBuffer = ByteBuffer.allocate(64 * 1024);
+    private final ByteArrayOutputStream partialLine = new ByteArrayOutputStream();
+    private long offset;
+    private boolean inputClosed;
+    private long leasedCount;
+    private long doneCount;
+
+    private FileWorkQueue(Path directory) throws IOException {
+        Path normalized = Files.createDirectories(directory).toAbsolutePath().normalize();
+        this.localLock = LOCAL_LOCKS.computeIfAbsent(normalized, p -> new Object());
+        this.lockChannel = FileChannel.open(normalized.resolve(LOCK_FILE), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        this.logChannel = FileChannel.open(normalized.resolve(LOG_FILE), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * 打开队列目录，不存在时创建，已经存在时恢复其中的状态
+     *
+     * @param directory 队列目录
+     * @return 队列
+     * @throws IOException 打开失败
+     */
+    public static FileWorkQueue open(Path directory) throws IOException {
+        FileWorkQueue queue = new FileWorkQueue(directory);
+        queue.locked(() -> null);
+        return queue;
+    }
+
+    @Override
+    public boolean offer(String url) throws IOException {
+        return locked(() -> {
+            if (items.containsKey(url)) {
+                return false;
+            }
+            append("ADD", url);
+            return true;
+        });
+    }
+
+    @Override
+    public void closeInput() throws IOException {
+        locked(() -> {
+            if (!inputClosed) {
+                append("CLOSE", "");
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public Lease lease(String workerId, long leaseMillis) throws IOException {
+        return locked(() -> {
+            long now = System.currentTimeMillis();
+            String url = null;
+            while (!pending.isEmpty()) {
+                String candidate = pending.poll();
+                if (items.get(candidate).status == Status.PENDING) {
+                    url = candidate;
+                    break;
+                }
+            }
+            if (url == null) {
+                // 没有等待中的链接时接管过期的租约
+                for (Map.Entry<String, Item> entry : items.entrySet()) {
+                    if (entry.getValue().status == Status.LEASED && entry.getValue().expiresAtMillis < now) {
+                        url = entry.getKey();
+                        break;
+                    }
+                }
+            }
+            if (url == null) {
+                return null;
+            }
+            long expiresAt = now + leaseMillis;
+            append("LEASE", url, workerId, String.valueOf(expiresAt));
+            return new Lease(url, workerId, expiresAt);
+        });
+    }
+
+    @Override
+    public Lease renew(Lease lease, long leaseMillis) throws IOException {
+        return locked(() -> {
+            if (!heldBy(lease)) {
+                return null;
+            }
+            long expiresAt = System.currentTimeMillis() + leaseMillis;
+            append("LEASE", lease.getUrl(), lease.getWorkerId(), String.valueOf(expiresAt));
+            return new Lease(lease.getUrl(), lease.getWorkerId(), expiresAt);
+        });
+    }
+
+    @Override
+    public void ack(Lease lease) throws IOException {
+        locked(() -> {
+            Item item = items.get(lease.getUrl());
+            if (item != null && item.status != Status.DONE) {
+                append("ACK", lease.getUrl(), lease.getWorkerId());
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public void fail(Lease lease, String reason) throws IOException {
+        locked(() -> {
+            if (heldBy(lease)) {
+                append("FAIL", lease.getUrl(), lease.getWorkerId(), reason.replaceAll("[\\t\\r\\n]", " "));
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public QueueStatus status() throws IOException {
+        return locked(() -> {
+            QueueStatus status = new QueueStatus();
+            status.setLeased(leasedCount);
+            status.setDone(doneCount);
+            status.setFailed(failures.size());
+            status.setPending(items.size() - leasedCount - doneCount - failures.size());
+            status.setInputClosed(inputClosed);
+            return status;
+        });
+    }
+
+    @Override
+    public Map<String, String> failures() throws IOException {
+        return locked(() -> new LinkedHashMap<>(failures));
+    }
+
+    @Override
+    public List<String> pollAcknowledged() throws IOException {
+        return locked(() -> {
+            if (acknowledged == null) {
+                acknowledged = new ArrayList<>();
+                for (Map.Entry<String, Item> entry : items.entrySet()) {
+                    if (entry.getValue().status == Status.DONE) {
+                        acknowledged.add(entry.getKey());
+                    }
+                }
+            }
+            List<String> polled = acknowledged;
+            acknowledged = new ArrayList<>();
+            return polled;
+        });
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            logChannel.close();
+        } finally {
+            lockChannel.close();
+        }
+    }
+
+    private boolean heldBy(Lease lease) {
+        Item item = items.get(lease.getUrl());
+        return item != null && item.status == Status.LEASED && lease.getWorkerId().equals(item.workerId);
+    }
+
+    /**
+     * 持有文件锁执行操作，执行前先读取其他进程追加的记录
+     */
+    private <T> T locked(LockedAction<T> action) throws IOException {
+        synchronized (localLock) {
+            FileLock lock = lockChannel.lock();
+            try {
+                catchUp();
+                return action.run();
+            } finally {
+                lock.release();
+            }
+        }
+    }
+
+    private void catchUp() throws IOException {
+        long size = logChannel.size();
+        while (offset < size) {
+            readBuffer.clear();
+            int read = logChannel.read(readBuffer, offset);
+            if (read <= 0) {
+                break;
+            }
+            offset += read;
+            // 按字节切分行，读取边界上被拆开的多字节字符留到下一次一起解码
+            int lineStart = 0;
+            byte[] bytes = readBuffer.array();
+            for (int i = 0; i < read; i++) {
+                if (bytes[i] == '\n') {
+                    partialLine.write(bytes, lineStart, i - lineStart);
+                    apply(partialLine.toString(StandardCharsets.UTF_8));
+                    partialLine.reset();
+                    lineStart = i + 1;
+                }
+            }
+            partialLine.write(bytes, lineStart, read - lineStart);
+        }
+    }
+
+    private void append(String... fields) throws IOException {
+        String record = String.join("\t", fields) + "\n";
+        if (partialLine.size() > 0) {
+            // 其他进程写到一半时退出，先结束这一行，避免和新记录连在一起
+            record = "\n" + record;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(record.getBytes(StandardCharsets.UTF_8));
+        long position = logChannel.size();
+        while (buffer.hasRemaining()) {
+            position += logChannel.write(buffer, position);
+        }
+        // 自己写入的记录也通过回放生效，保证所有进程按照同样的顺序处理
+        catchUp();
+    }
+
+    private void apply(String line) {
+        String[] fields = line.split("\t", 4);
+        if (fields.length < 2 || ("LEASE".equals(fields[0]) && (fields.length < 4 || !fields[3].matches("\\d+")))) {
+            // 写到一半的记录
+            return;
+        }
+        String url = fields[1];
+        Item item = items.get(url);
+        switch (fields[0]) {
+            case "ADD":
+                if (item == null) {
+                    items.put(url, new Item());
+                    pending.add(url);
+                }
+                break;
+            case "CLOSE":
+                inputClosed = true;
+                break;
+            case "LEASE":
+                if (item != null && (item.status == Status.PENDING || item.status == Status.LEASED)) {
+                    if (item.status == Status.PENDING) {
+                        leasedCount++;
+                    }
+                    item.status = Status.LEASED;
+                    item.workerId = fields[2];
+                    item.expiresAtMillis = Long.parseLong(fields[3]);
+                }
+                break;
+            case "ACK":
+                if (item != null && item.status != Status.DONE) {
+                    if (item.status == Status.LEASED) {
+                        leasedCount--;
+                    } else if (item.status == Status.FAILED) {
+                        failures.remove(url);
+                    }
+                    item.status = Status.DONE;
+                    doneCount++;
+                    if (acknowledged != null) {
+                        acknowledged.add(url);
+                    }
+                }
+                break;
+            case "FAIL":
+                if (item != null && item.status == Status.LEASED) {
+                    leasedCount--;
+                    item.status = Status.FAILED;
+                    failures.put(url, (fields.length > 2 ? fields[2] : "") + "：" + (fields.length > 3 ? fields[3] : ""));
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    private enum Status {
+        PENDING,
+        LEASED,
+        DONE,
+        FAILED
+    }
+
+    private static class Item {
+        private Status status = Status.PENDING;
+        private String workerId;
+        private long expiresAtMillis;
+    }
+
+    @FunctionalInterface
+    private interface LockedAction<T> {
+        T run() throws IOException;
+    }
+}
@@ -0,0 +1,15 @@
+package spider.distributed;
+
+import lombok.Data;
+
+/**
+ * 工作队列中的一个租约，到期前没有确认或者续租时链接会重新分配给其他节点
+ *
+ * @author Gloduck
+ */
+@Data
+public class Lease {
+    private final String url;
+    private final String workerId;
+    private final long expiresAtMillis;
+}
@@ -0,0 +1,32 @@
+package spider.distributed;
+
+import lombok.Data;
+
+/**
+ * 工作队列的状态
+ *
+ * @author Gloduck
+ */
+@Data
+public class QueueStatus {
+    private long pending;
+    /**
+     * 已经租出的链接数，包括已经过期还没有被重新租用的
+     */
+    private long leased;
+    private long done;
+    private long failed;
+    /**
+     * 协调者是否已经放入了所有的链接
+     */
+    private boolean inputClosed;
+
+    /**
+     * 所有的链接都已经完成或者最终失败
+     *
+     * @return 是否已经完成
+     */
+    public boolean isDrained() {
+        return inputClosed && pending == 0 && leased == 0;
+    }
+}
@@ -0,0 +1,14 @@
+package spider.distributed;
+
+/**
+ * 其他节点上最终失败的链接，只保留失败原因的描述
+ *
+ * @author Gloduck
+ */
+public class RemoteTaskException extends Exception {
+    private static final long serialVersionUID = 1L;
+
+    public RemoteTaskException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,90 @@
+package spider.distributed;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 多个节点共享的工作队列，链接以租约的方式分配，节点完成后确认，节点崩溃时租约到期后重新分配
+ *
+ * @author Gloduck
+ */
+public interface WorkQueue extends Closeable {
+    /**
+     * 放入链接，已经放入过的链接会被忽略
+     *
+     * @param url 链接
+     * @return 是否放入
+     * @throws IOException 访问队列失败
+     */
+    boolean offer(String url) throws IOException;
+
+    /**
+     * 标记不会再放入新的链接，之后所有链接结束时队列即完成
+     *
+     * @throws IOException 访问队列失败
+     */
+    void closeInput() throws IOException;
+
+    /**
+     * 租用一个等待中或者租约已经过期的链接
+     *
+     * @param workerId    节点标识
+     * @param leaseMillis 租约时长
+     * @return 租约，当前没有可以租用的链接时返回null
+     * @throws IOException 访问队列失败
+     */
+    Lease lease(String workerId, long leaseMillis) throws IOException;
+
+    /**
+     * 续租，租约已经被其他节点接管时返回null
+     *
+     * @param lease       租约
+     * @param leaseMillis 租约时长
+     * @return 新的租约
+     * @throws IOException 访问队列失败
+     */
+    Lease renew(Lease lease, long leaseMillis) throws IOException;
+
+    /**
+     * 确认链接已经完成，即使租约已经过期也有效
+     *
+     * @param lease 租约
+     * @throws IOException 访问队列失败
+     */
+    void ack(Lease lease) throws IOException;
+
+    /**
+     * 报告链接最终失败，租约已经被其他节点接管时忽略
+     *
+     * @param lease  租约
+     * @param reason 失败原因
+     * @throws IOException 访问队列失败
+     */
+    void fail(Lease lease, String reason) throws IOException;
+
+    /**
+     * 获取队列的状态
+     *
+     * @return 状态
+     * @throws IOException 访问队列失败
+     */
+    QueueStatus status() throws IOException;
+
+    /**
+     * 获取所有节点上最终失败的链接
+     *
+     * @return 链接和失败原因，失败原因包含节点标识
+     * @throws IOException 访问队列失败
+     */
+    Map<String, String> failures() throws IOException;
+
+    /**
+     * 取出上一次调用之后确认完成的链接，协调者用于更新自己的URL边界。第一次调用返回之前所有确认完成的链接
+     *
+     * @return 链接
+     * @throws IOException 访问队列失败
+     */
+    List<String> pollAcknowledged() throws IOException;
+}
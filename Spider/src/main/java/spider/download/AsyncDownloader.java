@@ -0,0 +1,525 @@
+package spider.download;
+
+import spider.buffer.DirectBufferPool;
+import spider.config.SpiderConfig;
+import spider.http.IdleWatched;
+import spider.http.JdkHttpClient;
+import spider.limit.HostLimiter;
+import spider.limit.HostSemaphores;
+import spider.metrics.SpiderMetrics;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongConsumer;
+
+/**
+ * 异步传输引擎。通过HttpClient.sendAsync发起请求，响应体的ByteBuffer复制到池化的直接内存缓冲区后由AsynchronousFileChannel按偏移写入，
+ * 写入完成后才向上游请求下一批数据，缓冲池用尽时暂停请求直到有缓冲区归还，传输过程中既不占用线程，也不需要按下载分配大块的堆内存。
+ * 分段、断点、.part文件以及校验的规则与{@link SegmentedDownloader}相同
+ *
+ * @author Gloduck
+ */
+public class AsyncDownloader implements Closeable {
+    private static final long CHECKPOINT_INTERVAL_MILLIS = 1000;
+    /**
+     * 每次从响应数据复制到直接内存再写入文件的块大小
+     */
+    private static final int CHUNK_SIZE = 64 * 1024;
+    private final SpiderConfig config;
+    private final SegmentedDownloader planner;
+    private final JdkHttpClient httpClient;
+    private final HostLimiter limiter;
+    private final DirectBufferPool bufferPool;
+    private final SpiderMetrics metrics;
+    private final ScheduledExecutorService throttleScheduler;
+
+    public AsyncDownloader(SpiderConfig config, SegmentedDownloader planner, JdkHttpClient httpClient, HostLimiter limiter, DirectBufferPool bufferPool, SpiderMetrics metrics) {
+        this.config = config;
+        this.planner = planner;
+        this.httpClient = httpClient;
+        this.limiter = limiter;
+        this.bufferPool = bufferPool;
+        this.metrics = metrics;
+        this.throttleScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "spider-async-throttle");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 异步下载文件，失败时保留.part文件和断点以便下次续传，校验失败时删除.part文件和断点
+     *
+     * @param link       下载链接
+     * @param target     目标文件
+     * @param probe      探测结果
+     * @param checkpoint 可以续传的断点，为null时重新下载
+     * @param progress   进度回调，参数为本次新增的字节数
+     * @param control    中止开关，中止时取消所有分段，以中止的原因失败
+     * @return 全部分段完成、校验通过并重命名为目标文件后完成，结果为文件的SHA-256，不需要去重时为null
+     */
+    public CompletableFuture<String> download(String link, Path target, SegmentedDownloader.RangeProbe probe, DownloadCheckpoint checkpoint, LongConsumer progress, TransferControl control) {
+        if (control.isAborted()) {
+            return CompletableFuture.failedFuture(control.cause());
+        }
+        Path part = SegmentedDownloader.partPath(target);
+        Path checkpointPath = SegmentedDownloader.checkpointPath(target);
+        boolean resume = checkpoint != null;
+        if (!resume) {
+            checkpoint = planner.plan(link, probe);
+        } else {
+            progress.accept(checkpoint.committedBytes());
+        }
+        AsynchronousFileChannel channel;
+        try {
+            StandardOpenOption mode = resume ? StandardOpenOption.WRITE : StandardOpenOption.TRUNCATE_EXISTING;
+            channel = AsynchronousFileChannel.open(part, StandardOpenOption.CREATE, StandardOpenOption.WRITE, mode);
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        DownloadCheckpoint plan = checkpoint;
+        OrderedHasher hasher = planner.newHasher(probe, checkpoint, part);
+        Transfer transfer = new Transfer(link, checkpoint, checkpointPath, channel, progress, hasher, metrics);
+        Runnable unregister = control.onAbort(() -> transfer.abort(control.cause()));
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (DownloadCheckpoint.Segment segment : checkpoint.getSegments()) {
+            if (!segment.finished()) {
+                CompletableFuture<Void> future = fetchSegment(transfer, segment);
+                future.whenComplete((v, e) -> {
+                    if (e != null) {
+                        transfer.abort(e);
+                    }
+                });
+                futures.add(future);
+            }
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).handle((v, e) -> {
+            unregister.run();
+            String sha256 = null;
+            try {
+                if (e != null) {
+                    if (transfer.validatorChanged) {
+                        Files.deleteIfExists(checkpointPath);
+                    } else {
+                        transfer.commitQuietly();
+                    }
+                }
+                channel.close();
+                if (e == null) {
+                    sha256 = planner.verify(part, checkpointPath, plan, hasher);
+                    Files.move(part, target, StandardCopyOption.REPLACE_EXISTING);
+                    Files.deleteIfExists(checkpointPath);
+                }
+            } catch (IOException ioException) {
+                throw new CompletionException(ioException);
+            } finally {
+                closeQuietly(hasher);
+            }
+            if (e != null) {
+                // 报告最先失败的分段的原因，其余分段只是被连带中止
+                Throwable cause = transfer.failure != null ? transfer.failure : e;
+                throw cause instanceof CompletionException ? (CompletionException) cause : new CompletionException(cause);
+            }
+            return sha256;
+        });
+    }
+
+    /**
+     * 关闭限速调度线程，调用前所有的下载都应该已经结束
+     */
+    @Override
+    public void close() {
+        throttleScheduler.shutdownNow();
+    }
+
+    private static void closeQuietly(OrderedHasher hasher) {
+        if (hasher == null) {
+            return;
+        }
+        try {
+            hasher.close();
+        } catch (IOException ignored) {
+            // 只是补读用的只读通道
+        }
+    }
+
+    private CompletableFuture<Void> fetchSegment(Transfer transfer, DownloadCheckpoint.Segment segment) {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        Map<String, String> headers = new HashMap<>(2);
+        boolean ranged = segment.getEnd() >= 0 && (segment.position() > 0 || transfer.checkpoint.getSegments().size() > 1);
+        if (ranged) {
+            headers.put("Range", "bytes=" + segment.position() + "-" + segment.getEnd());
+            String validator = transfer.checkpoint.ifRangeValidator();
+            if (validator != null) {
+                headers.put("If-Range", validator);
+            }
+        }
+        int expected = ranged ? HttpURLConnection.HTTP_PARTIAL : HttpURLConnection.HTTP_OK;
+        long sentNanos = System.nanoTime();
+        HttpResponse.BodyHandler<Void> handler = responseInfo -> {
+            metrics.firstByte(System.nanoTime() - sentNanos);
+            int code = responseInfo.statusCode();
+            if (ranged && code == HttpURLConnection.HTTP_OK) {
+                transfer.validatorChanged = true;
+                done.completeExceptionally(DownloadException.transientError("服务器未返回分段内容，文件可能已经变化"));
+                return new CancellingSubscriber();
+            }
+            if (code != expected) {
+                done.completeExceptionally(DownloadException.status(code));
+                return new CancellingSubscriber();
+            }
+            // 长度未知的分段只能依靠响应头判断是否完整
+            long declared = segment.getEnd() < 0 ? responseInfo.headers().firstValueAsLong("Content-Length").orElse(-1) : -1;
+            return new FileSubscriber(transfer, segment, done, declared);
+        };
+        try {
+            httpClient.sendAsync("GET", transfer.link, headers, handler).whenComplete((response, e) -> {
+                if (e != null) {
+                    done.completeExceptionally(e instanceof CompletionException && e.getCause() != null ? e.getCause() : e);
+                }
+            });
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            done.completeExceptionally(e);
+        }
+        return done;
+    }
+
+    /**
+     * 一次下载中各分段共享的状态
+     */
+    private static class Transfer {
+        private final String link;
+        private final String host;
+        private final DownloadCheckpoint checkpoint;
+        private final Path checkpointPath;
+        private final AsynchronousFileChannel channel;
+        private final LongConsumer progress;
+        private final OrderedHasher hasher;
+        private final LongAdder hostBytes;
+        private final Set<FileSubscriber> subscribers = ConcurrentHashMap.newKeySet();
+        private volatile boolean validatorChanged;
+        private volatile boolean aborted;
+        private volatile Throwable failure;
+        private long lastCommitMillis = System.currentTimeMillis();
+
+        private Transfer(String link, DownloadCheckpoint checkpoint, Path checkpointPath, AsynchronousFileChannel channel, LongConsumer progress, OrderedHasher hasher, SpiderMetrics metrics) {
+            this.link = link;
+            this.host = HostSemaphores.hostOf(link);
+            this.checkpoint = checkpoint;
+            this.checkpointPath = checkpointPath;
+            this.channel = channel;
+            this.progress = progress;
+            this.hasher = hasher;
+            this.hostBytes = metrics.hostBytes(host);
+        }
+
+        /**
+         * 任意一段失败后中止其余分段
+         *
+         * @param cause 失败的原因
+         */
+        private void abort(Throwable cause) {
+            synchronized (this) {
+                if (aborted) {
+                    return;
+                }
+                failure = cause;
+                aborted = true;
+            }
+            for (FileSubscriber subscriber : subscribers) {
+                subscriber.fail(new IOException("下载已中止"));
+            }
+        }
+
+        /**
+         * 先将数据刷到磁盘再保存断点，保证断点里记录的字节一定已经落盘
+         */
+        private synchronized void commit(boolean force) throws IOException {
+            long now = System.currentTimeMillis();
+            if (!checkpoint.hasValidator() || (!force && now - lastCommitMillis < CHECKPOINT_INTERVAL_MILLIS)) {
+                return;
+            }
+            lastCommitMillis = now;
+            String snapshot = checkpoint.snapshot();
+            channel.force(false);
+            DownloadCheckpoint.write(checkpointPath, snapshot);
+        }
+
+        private void commitQuietly() {
+            try {
+                commit(true);
+            } catch (IOException ignored) {
+                // 断点保存失败只会导致下次少续传一部分，不影响本次的结果
+            }
+        }
+    }
+
+    /**
+     * 将一个分段的响应体写入文件，写完当前这批数据后才请求下一批，超过速率限制时推迟请求
+     */
+    private class FileSubscriber implements HttpResponse.BodySubscriber<Void>, IdleWatched {
+        private final Transfer transfer;
+        private final DownloadCheckpoint.Segment segment;
+        private final CompletableFuture<Void> done;
+        private final long end;
+        private final long declared;
+        private final Deque<ByteBuffer> pending = new ArrayDeque<>();
+        private Flow.Subscription subscription;
+        private long position;
+        private long chunkBytes;
+        private boolean writing;
+        private boolean upstreamDone;
+        private volatile long lastActivityMillis = System.currentTimeMillis();
+
+        private FileSubscriber(Transfer transfer, DownloadCheckpoint.Segment segment, CompletableFuture<Void> done, long declared) {
+            this.transfer = transfer;
+            this.segment = segment;
+            this.done = done;
+            this.end = segment.getEnd() >= 0 ? segment.getEnd() : Long.MAX_VALUE - 1;
+            this.position = segment.position();
+            this.declared = declared;
+        }
+
+        @Override
+        public CompletionStage<Void> getBody() {
+            return done;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            transfer.subscribers.add(this);
+            httpClient.watch(this);
+            if (transfer.aborted) {
+                fail(new IOException("下载已中止"));
+                return;
+            }
+            subscription.request(1);
+        }
+
+        @Override
+        public synchronized void onNext(List<ByteBuffer> items) {
+            lastActivityMillis = System.currentTimeMillis();
+            pending.addAll(items);
+            writing = true;
+            writeNext();
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            fail(throwable);
+        }
+
+        @Override
+        public synchronized void onComplete() {
+            upstreamDone = true;
+            if (!writing) {
+                finish();
+            }
+        }
+
+        private synchronized void writeNext() {
+            if (done.isDone()) {
+                return;
+            }
+            while (!pending.isEmpty() && (!pending.peek().hasRemaining() || position > end)) {
+                pending.poll();
+            }
+            if (pending.isEmpty()) {
+                afterChunk();
+                return;
+            }
+            ByteBuffer source = pending.peek();
+            // 当前线程可能是HttpClient投递数据的线程，不能等待缓冲区归还。缓冲池用尽时暂停写入，也不再向上游请求数据，
+            // 有缓冲区归还时再继续
+            ByteBuffer chunk = bufferPool.tryLease(CHUNK_SIZE, this::resumeLater);
+            if (chunk == null) {
+                return;
+            }
+            int length = (int) Math.min(Math.min(chunk.remaining(), source.remaining()), end + 1 - position);
+            ByteBuffer slice = source.duplicate();
+            slice.limit(slice.position() + length);
+            chunk.put(slice);
+            source.position(source.position() + length);
+            chunk.flip();
+            if (transfer.hasher != null) {
+                try {
+                    transfer.hasher.beforeWrite(chunk, position);
+                } catch (IOException e) {
+                    bufferPool.release(chunk);
+                    fail(e);
+                    return;
+                }
+            }
+            write(chunk, length);
+        }
+
+        private void write(ByteBuffer chunk, int length) {
+            transfer.channel.write(chunk, position, null, new CompletionHandler<Integer, Void>() {
+                @Override
+                public void completed(Integer written, Void attachment) {
+                    synchronized (FileSubscriber.this) {
+                        position += written;
+                        if (chunk.hasRemaining()) {
+                            write(chunk, length);
+                            return;
+                        }
+                        bufferPool.release(chunk);
+                        synchronized (transfer.checkpoint) {
+                            segment.setCommitted(position - segment.getStart());
+                        }
+                        chunkBytes += length;
+                        transfer.progress.accept(length);
+                        transfer.hostBytes.add(length);
+                        writeNext();
+                    }
+                }
+
+                @Override
+                public void failed(Throwable exc, Void attachment) {
+                    bufferPool.release(chunk);
+                    fail(exc);
+                }
+            });
+        }
+
+        /**
+         * 在归还缓冲区的线程上调用，可能持有其他分段的锁，所以交给调度线程继续写入
+         */
+        private void resumeLater() {
+            try {
+                throttleScheduler.execute(this::writeNext);
+            } catch (RejectedExecutionException ignored) {
+                // 下载器已经关闭，暂停的分段已经随下载一起结束
+            }
+        }
+
+        /**
+         * 当前这批数据全部写入后保存断点，并按速率限制请求下一批
+         */
+        private void afterChunk() {
+            writing = false;
+            try {
+                transfer.commit(false);
+            } catch (IOException e) {
+                fail(e);
+                return;
+            }
+            if (upstreamDone || position > end) {
+                finish();
+                return;
+            }
+            long delayNanos = limiter.reserveBytes(transfer.host, chunkBytes);
+            chunkBytes = 0;
+            // 限速等待的时间不算作空闲
+            lastActivityMillis = System.currentTimeMillis() + TimeUnit.NANOSECONDS.toMillis(delayNanos);
+            if (delayNanos > 0) {
+                throttleScheduler.schedule(() -> subscription.request(1), delayNanos, TimeUnit.NANOSECONDS);
+            } else {
+                subscription.request(1);
+            }
+        }
+
+        private void finish() {
+            if (position <= end && segment.getEnd() >= 0) {
+                fail(DownloadException.transientError(String.format("分段%d-%d下载不完整，实际下载到：%d", segment.getStart(), segment.getEnd(), position)));
+                return;
+            }
+            if (declared >= 0 && position != segment.getStart() + declared) {
+                fail(DownloadException.transientError(String.format("响应体不完整，应为%d字节，实际为%d字节", declared, position - segment.getStart())));
+                return;
+            }
+            if (position > end) {
+                // 已经收到分段需要的全部数据，多余的数据不再读取
+                subscription.cancel();
+            }
+            cleanup();
+            done.complete(null);
+        }
+
+        /**
+         * 可能在巡检线程或者其他分段的线程上调用，和onNext、onComplete使用同一个锁
+         */
+        private synchronized void fail(Throwable throwable) {
+            cleanup();
+            if (subscription != null) {
+                subscription.cancel();
+            }
+            done.completeExceptionally(throwable);
+        }
+
+        private void cleanup() {
+            transfer.subscribers.remove(this);
+            httpClient.unwatch(this);
+        }
+
+        @Override
+        public synchronized boolean closeIfIdle() {
+            if (done.isDone()) {
+                return true;
+            }
+            if (writing || System.currentTimeMillis() - lastActivityMillis < config.getTimeoutMilliseconds()) {
+                return false;
+            }
+            fail(new SocketTimeoutException("读取响应超时"));
+            return true;
+        }
+    }
+
+    /**
+     * 响应码不符合预期时直接取消，不读取响应体
+     */
+    private static class CancellingSubscriber implements HttpResponse.BodySubscriber<Void> {
+        private final CompletableFuture<Void> body = CompletableFuture.completedFuture(null);
+
+        @Override
+        public CompletionStage<Void> getBody() {
+            return body;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            subscription.cancel();
+        }
+
+        @Override
+        public void onNext(List<ByteBuffer> item) {
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+        }
+
+        @Override
+        public void onComplete() {
+        }
+    }
+}
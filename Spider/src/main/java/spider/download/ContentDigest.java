@@ -0,0 +1,105 @@
+package spider.download;
+
+import lombok.Data;
+
+import java.util.Base64;
+import java.util.Locale;
+import java.util.function.Function;
+
+/**
+ * 服务器提供的文件摘要，来自Repr-Digest、Digest或者Content-MD5响应头，多个算法时使用最强的一个
+ *
+ * @author Gloduck
+ */
+@Data
+public class ContentDigest {
+    private static final String[][] ALGORITHMS = {
+            {"sha-512", "SHA-512"},
+            {"sha-256", "SHA-256"},
+            {"sha", "SHA-1"},
+            {"md5", "MD5"}
+    };
+    /**
+     * MessageDigest中的算法名
+     */
+    private final String algorithm;
+    private final byte[] value;
+
+    /**
+     * 从响应头中解析摘要
+     *
+     * @param header 按名称读取响应头
+     * @return 摘要，没有或者都无法识别时返回null
+     */
+    public static ContentDigest fromHeaders(Function<String, String> header) {
+        ContentDigest digest = parseList(header.apply("Repr-Digest"));
+        if (digest == null) {
+            digest = parseList(header.apply("Digest"));
+        }
+        if (digest == null) {
+            digest = decode("MD5", header.apply("Content-MD5"));
+        }
+        return digest;
+    }
+
+    /**
+     * 摘要的十六进制表示
+     *
+     * @return 小写的十六进制字符串
+     */
+    public String hex() {
+        return toHex(value);
+    }
+
+    static String toHex(byte[] bytes) {
+        StringBuilder builder = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            builder.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return builder.toString();
+    }
+
+    /**
+     * 解析alg=value的列表，Repr-Digest的值两边有冒号
+     */
+    private static ContentDigest parseList(String header) {
+        if (header == null) {
+            return null;
+        }
+        ContentDigest best = null;
+        int bestRank = ALGORITHMS.length;
+        for (String item : header.split(",")) {
+            int separator = item.indexOf('=');
+            if (separator <= 0) {
+                continue;
+            }
+            String name = item.substring(0, separator).trim().toLowerCase(Locale.ROOT);
+            for (int rank = 0; rank < bestRank; rank++) {
+                if (ALGORITHMS[rank][0].equals(name)) {
+                    ContentDigest digest = decode(ALGORITHMS[rank][1], item.substring(separator + 1));
+                    if (digest != null) {
+                        best = digest;
+                        bestRank = rank;
+                    }
+                    break;
+                }
+            }
+        }
+        return best;
+    }
+
+    private static ContentDigest decode(String algorithm, String value) {
+        if (value == null) {
+            return null;
+        }
+        String trimmed = value.trim();
+        if (trimmed.length() >= 2 && trimmed.startsWith(":") && trimmed.endsWith(":")) {
+            trimmed = trimmed.substring(1, trimmed.length() - 1);
+        }
+        try {
+            return new ContentDigest(algorithm, Base64.getDecoder().decode(trimmed));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
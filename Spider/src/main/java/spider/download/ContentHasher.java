@@ -0,0 +1,73 @@
+package spider.download;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * 按文件顺序接收数据并计算摘要，需要去重时计算SHA-256，服务器提供了摘要时同时计算对应的算法用于校验
+ *
+ * @author Gloduck
+ */
+public class ContentHasher {
+    static final String INDEX_ALGORITHM = "SHA-256";
+    private final MessageDigest sha256;
+    private final ContentDigest expected;
+    private final MessageDigest expectedDigest;
+
+    /**
+     * @param computeSha256 是否计算用于去重的SHA-256
+     * @param expected      服务器提供的摘要，没有时为null
+     */
+    public ContentHasher(boolean computeSha256, ContentDigest expected) {
+        this.sha256 = computeSha256 || (expected != null && INDEX_ALGORITHM.equals(expected.getAlgorithm())) ? newDigest(INDEX_ALGORITHM) : null;
+        this.expected = expected;
+        if (expected == null) {
+            this.expectedDigest = null;
+        } else if (INDEX_ALGORITHM.equals(expected.getAlgorithm())) {
+            this.expectedDigest = sha256;
+        } else {
+            this.expectedDigest = newDigest(expected.getAlgorithm());
+        }
+    }
+
+    /**
+     * 更新摘要，不改变缓冲区的位置
+     *
+     * @param buffer 从position到limit的数据
+     */
+    public void update(ByteBuffer buffer) {
+        if (sha256 != null) {
+            sha256.update(buffer.duplicate());
+        }
+        if (expectedDigest != null && expectedDigest != sha256) {
+            expectedDigest.update(buffer.duplicate());
+        }
+    }
+
+    /**
+     * 结束计算并和服务器提供的摘要比较
+     *
+     * @return SHA-256的十六进制表示，没有计算时为null
+     * @throws DownloadException 和服务器提供的摘要不一致，可以重试
+     */
+    public String complete() throws DownloadException {
+        byte[] sha256Value = sha256 == null ? null : sha256.digest();
+        if (expected != null) {
+            byte[] actual = expectedDigest == sha256 ? sha256Value : expectedDigest.digest();
+            if (!MessageDigest.isEqual(actual, expected.getValue())) {
+                throw DownloadException.transientError(String.format("文件校验失败，%s应为%s，实际为%s",
+                        expected.getAlgorithm(), expected.hex(), ContentDigest.toHex(actual)));
+            }
+        }
+        return sha256Value == null ? null : ContentDigest.toHex(sha256Value);
+    }
+
+    private static MessageDigest newDigest(String algorithm) {
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("不支持的摘要算法：" + algorithm, e);
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package spider.download;
+
+import cn.hutool.json.JSONUtil;
+import lombok.Data;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * 下载断点，记录每一段已经落盘的字节数以及文件的校验信息(ETag/Last-Modified)
+ *
+ * @author Gloduck
+ */
+@Data
+public class DownloadCheckpoint {
+    private String link;
+    private String etag;
+    private String lastModified;
+    private long contentLength;
+    private List<Segment> segments = new ArrayList<>();
+
+    /**
+     * 读取断点文件，不存在或者损坏时返回null
+     *
+     * @param path 断点文件
+     * @return 断点
+     */
+    public static DownloadCheckpoint load(Path path) {
+        if (!Files.exists(path)) {
+            return null;
+        }
+        try {
+            String json = new String(Files.readAllBytes(path), StandardCharsets.UTF_8);
+            return JSONUtil.toBean(json, DownloadCheckpoint.class);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * 生成当前断点的快照
+     *
+     * @return 快照json
+     */
+    public synchronized String snapshot() {
+        return JSONUtil.toJsonStr(this);
+    }
+
+    /**
+     * 先写临时文件再替换，避免进程中途退出导致断点文件损坏
+     *
+     * @param path 断点文件
+     * @param json 断点快照
+     * @throws IOException 出现的异常
+     */
+    public static void write(Path path, String json) throws IOException {
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        Files.write(temp, json.getBytes(StandardCharsets.UTF_8));
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * 是否有可以用来判断文件是否变化的校验信息
+     *
+     * @return 是否有校验信息
+     */
+    public boolean hasValidator() {
+        return etag != null || lastModified != null;
+    }
+
+    /**
+     * 判断断点是否依然对应服务器上的同一个文件
+     *
+     * @param probe 本次探测的结果
+     * @return 是否可以续传
+     */
+    public boolean matches(SegmentedDownloader.RangeProbe probe) {
+        if (!probe.isAcceptRanges() || contentLength != probe.getContentLength()) {
+            return false;
+        }
+        if (!hasValidator()) {
+            return false;
+        }
+        return Objects.equals(etag, probe.getEtag()) && Objects.equals(lastModified, probe.getLastModified());
+    }
+
+    /**
+     * If-Range使用的校验值，优先使用强ETag
+     *
+     * @return 校验值
+     */
+    public String ifRangeValidator() {
+        if (etag != null && !etag.startsWith("W/")) {
+            return etag;
+        }
+        return lastModified;
+    }
+
+    /**
+     * 已经落盘的字节总数
+     *
+     * @return 字节数
+     */
+    public synchronized long committedBytes() {
+        long sum = 0;
+        for (Segment segment : segments) {
+            sum += segment.getCommitted();
+        }
+        return sum;
+    }
+
+    @Data
+    public static class Segment {
+        private long start;
+        /**
+         * 结束位置(包含)，长度未知时为-1
+         */
+        private long end;
+        private long committed;
+
+        public long position() {
+            return start + committed;
+        }
+
+        public boolean finished() {
+            return end >= 0 && position() > end;
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package spider.download;
+
+import java.io.IOException;
+
+/**
+ * 下载过程中出现的异常，记录响应码以及是否可以重试
+ *
+ * @author Gloduck
+ */
+public class DownloadException extends IOException {
+    private static final long serialVersionUID = 1L;
+    private final int statusCode;
+    private final boolean retryable;
+
+    public DownloadException(String message, int statusCode, boolean retryable) {
+        super(message);
+        this.statusCode = statusCode;
+        this.retryable = retryable;
+    }
+
+    /**
+     * 服务器返回了非预期的响应码，5xx、429和408可以重试
+     *
+     * @param statusCode 响应码
+     * @return 异常
+     */
+    public static DownloadException status(int statusCode) {
+        boolean retryable = statusCode >= 500 || statusCode == 429 || statusCode == 408;
+        return new DownloadException("服务器返回了非预期的响应码：" + statusCode, statusCode, retryable);
+    }
+
+    /**
+     * 可以通过重试恢复的错误，例如传输不完整、文件在续传期间发生了变化
+     *
+     * @param message 错误信息
+     * @return 异常
+     */
+    public static DownloadException transientError(String message) {
+        return new DownloadException(message, -1, true);
+    }
+
+    /**
+     * 任务被取消或者超过了整体的截止时间，不再重试
+     *
+     * @param message 取消的原因
+     * @return 异常
+     */
+    public static DownloadException cancelled(String message) {
+        return new DownloadException(message, -1, false);
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    public boolean isRetryable() {
+        return retryable;
+    }
+}
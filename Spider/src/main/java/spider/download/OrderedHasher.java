@@ -0,0 +1,118 @@
+package spider.download;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * 在写入文件的同时按文件顺序计算摘要。写入的数据正好接在已经计算到的位置之后时直接使用即将写入的缓冲区；
+ * 后面的分段先到达的数据在前面的分段完成后从.part文件中补读，这部分数据刚刚写入，通常还在页缓存中。
+ * 单线程不续传的下载不需要补读，续传时只补读之前运行中已经落盘的部分
+ *
+ * @author Gloduck
+ */
+class OrderedHasher implements AutoCloseable {
+    /**
+     * 补读使用的缓冲区大小。补读时持有锁，不从缓冲池借用，避免和持有缓冲区等待锁的分段互相等待
+     */
+    private static final int CATCH_UP_BUFFER_SIZE = 64 * 1024;
+    private final ContentHasher hasher;
+    private final List<DownloadCheckpoint.Segment> segments;
+    private final Object committedLock;
+    private final Path part;
+    private long position;
+    private int segmentIndex;
+    private FileChannel reader;
+    private ByteBuffer catchUpBuffer;
+
+    /**
+     * @param hasher     摘要
+     * @param checkpoint 断点，分段按起始位置排列，已经落盘的字节数由写入方在写入后更新
+     * @param part       .part文件
+     */
+    OrderedHasher(ContentHasher hasher, DownloadCheckpoint checkpoint, Path part) {
+        this.hasher = hasher;
+        this.segments = checkpoint.getSegments();
+        this.committedLock = checkpoint;
+        this.part = part;
+    }
+
+    /**
+     * 在写入文件之前调用，先补读已经落盘但还没有计算的数据，能接上时直接计算本次的数据
+     *
+     * @param data   即将写入的数据，不改变缓冲区的位置
+     * @param offset 写入的文件偏移
+     * @throws IOException 补读失败
+     */
+    synchronized void beforeWrite(ByteBuffer data, long offset) throws IOException {
+        catchUp();
+        if (position == offset) {
+            hasher.update(data);
+            position += data.remaining();
+        }
+    }
+
+    /**
+     * 所有分段都完成后调用，补读剩余的数据并和服务器提供的摘要比较
+     *
+     * @param length 文件长度
+     * @return SHA-256的十六进制表示，没有计算时为null
+     * @throws IOException 补读失败，或者和服务器提供的摘要不一致
+     */
+    synchronized String complete(long length) throws IOException {
+        catchUp();
+        if (position != length) {
+            throw DownloadException.transientError(String.format("文件校验失败，只计算到%d，文件长度为%d", position, length));
+        }
+        return hasher.complete();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (reader != null) {
+            reader.close();
+            reader = null;
+        }
+    }
+
+    /**
+     * 从当前位置开始，沿着各个分段已经落盘的部分向后计算
+     */
+    private void catchUp() throws IOException {
+        while (segmentIndex < segments.size()) {
+            DownloadCheckpoint.Segment segment = segments.get(segmentIndex);
+            long available;
+            synchronized (committedLock) {
+                available = segment.position();
+            }
+            if (position < available) {
+                read(available);
+            }
+            if (!segment.finished() || position <= segment.getEnd()) {
+                return;
+            }
+            segmentIndex++;
+        }
+    }
+
+    private void read(long until) throws IOException {
+        if (reader == null) {
+            reader = FileChannel.open(part, StandardOpenOption.READ);
+            catchUpBuffer = ByteBuffer.allocate(CATCH_UP_BUFFER_SIZE);
+        }
+        while (position < until) {
+            catchUpBuffer.clear();
+            catchUpBuffer.limit((int) Math.min(catchUpBuffer.capacity(), until - position));
+            int read = reader.read(catchUpBuffer, position);
+            if (read <= 0) {
+                throw new IOException("补读文件失败，位置：" + position);
+            }
+            catchUpBuffer.flip();
+            hasher.update(catchUpBuffer);
+            position += read;
+        }
+    }
+}
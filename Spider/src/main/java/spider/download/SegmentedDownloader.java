@@ -0,0 +1,437 @@
+package spider.download;
+
+import lombok.Data;
+import spider.buffer.DirectBufferPool;
+import spider.config.SpiderConfig;
+import spider.dedup.DedupMode;
+import spider.http.HttpResult;
+import spider.http.SpiderHttpClient;
+import spider.limit.HostLimiter;
+import spider.limit.HostSemaphores;
+import spider.metrics.SpiderMetrics;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongConsumer;
+
+/**
+ * 分段下载器，通过HTTP Range请求并发下载同一个文件的不同部分，并按偏移写入文件。
+ * 下载过程中的数据写入.part文件，并定期保存断点，下载完成并且长度和摘要校验通过后才重命名为目标文件。
+ *
+ * @author Gloduck
+ */
+public class SegmentedDownloader {
+    private static final String PART_SUFFIX = ".part";
+    private static final String CHECKPOINT_SUFFIX = ".part.cp";
+    private static final long CHECKPOINT_INTERVAL_MILLIS = 1000;
+    private final SpiderConfig config;
+    private final ExecutorService segmentExecutor;
+    private final SpiderHttpClient httpClient;
+    private final HostLimiter limiter;
+    private final DirectBufferPool bufferPool;
+    private final SpiderMetrics metrics;
+
+    public SegmentedDownloader(SpiderConfig config, ExecutorService segmentExecutor, SpiderHttpClient httpClient, HostLimiter limiter, DirectBufferPool bufferPool, SpiderMetrics metrics) {
+        this.config = config;
+        this.segmentExecutor = segmentExecutor;
+        this.httpClient = httpClient;
+        this.limiter = limiter;
+        this.bufferPool = bufferPool;
+        this.metrics = metrics;
+    }
+
+    /**
+     * 通过HEAD请求探测服务器是否支持Range、文件长度以及校验信息，服务器不支持HEAD时按未知处理
+     *
+     * @param link 下载链接
+     * @return 探测结果
+     * @throws IOException 出现的异常
+     */
+    public RangeProbe probe(String link) throws IOException, InterruptedException {
+        try (HttpResult result = httpClient.execute("HEAD", link, Collections.emptyMap())) {
+            RangeProbe probe = new RangeProbe();
+            probe.setContentLength(-1);
+            if (result.getStatus() >= HttpURLConnection.HTTP_BAD_REQUEST) {
+                return probe;
+            }
+            probe.setContentLength(result.contentLength());
+            probe.setAcceptRanges("bytes".equalsIgnoreCase(result.header("Accept-Ranges")));
+            probe.setEtag(result.header("ETag"));
+            probe.setLastModified(result.header("Last-Modified"));
+            probe.setDigest(ContentDigest.fromHeaders(result::header));
+            return probe;
+        }
+    }
+
+    /**
+     * 计算文件应该分成的段数，为1说明不适合分段下载
+     *
+     * @param probe 探测结果
+     * @return 段数
+     */
+    public int segmentCountOf(RangeProbe probe) {
+        if (!probe.isAcceptRanges() || probe.getContentLength() <= 0) {
+            return 1;
+        }
+        long bySize = probe.getContentLength() / config.getMinSegmentSize();
+        return (int) Math.max(1, Math.min(config.getSegmentCount(), bySize));
+    }
+
+    /**
+     * 读取可以续传的断点，没有断点或者服务器上的文件已经变化时返回null
+     *
+     * @param target 目标文件
+     * @param probe  探测结果
+     * @return 断点
+     */
+    public DownloadCheckpoint resumableCheckpoint(Path target, RangeProbe probe) {
+        DownloadCheckpoint checkpoint = DownloadCheckpoint.load(checkpointPath(target));
+        if (checkpoint == null || !Files.exists(partPath(target)) || !checkpoint.matches(probe)) {
+            return null;
+        }
+        return checkpoint;
+    }
+
+    /**
+     * 下载文件，当前线程负责最后一段，其余段交给分段线程池。失败时保留.part文件和断点以便下次续传，
+     * 校验失败时删除.part文件和断点
+     *
+     * @param link       下载链接
+     * @param target     目标文件
+     * @param probe      探测结果
+     * @param checkpoint 可以续传的断点，为null时重新下载
+     * @param progress   进度回调，参数为本次新增的字节数
+     * @param control    中止开关，中止时关闭所有分段的响应，以中止的原因失败
+     * @return 文件的SHA-256，不需要去重时为null
+     * @throws Exception 任意一段失败、被中止或者校验失败时抛出
+     */
+    public String download(String link, Path target, RangeProbe probe, DownloadCheckpoint checkpoint, LongConsumer progress, TransferControl control) throws Exception {
+        control.check();
+        Path part = partPath(target);
+        Path checkpointPath = checkpointPath(target);
+        boolean resume = checkpoint != null;
+        if (!resume) {
+            checkpoint = plan(link, probe);
+        } else {
+            progress.accept(checkpoint.committedBytes());
+        }
+        int bufferSize = DirectBufferPool.floorTierSize(config.getDownloadBufferSize() / checkpoint.getSegments().size());
+        StandardOpenOption mode = resume ? StandardOpenOption.WRITE : StandardOpenOption.TRUNCATE_EXISTING;
+        String sha256;
+        try (OrderedHasher hasher = newHasher(probe, checkpoint, part)) {
+            SegmentContext context = new SegmentContext(link, checkpoint, checkpointPath, bufferSize, progress, control, hasher, metrics);
+            transfer(context, part, mode);
+            sha256 = verify(part, checkpointPath, checkpoint, hasher);
+        }
+        Files.move(part, target, StandardCopyOption.REPLACE_EXISTING);
+        Files.deleteIfExists(checkpointPath);
+        return sha256;
+    }
+
+    /**
+     * 下载所有没有完成的分段，结束时保存断点
+     */
+    private void transfer(SegmentContext context, Path part, StandardOpenOption mode) throws Exception {
+        DownloadCheckpoint checkpoint = context.checkpoint;
+        try (FileChannel channel = FileChannel.open(part, StandardOpenOption.CREATE, StandardOpenOption.WRITE, mode)) {
+            context.channel = channel;
+            List<DownloadCheckpoint.Segment> pending = new ArrayList<>();
+            for (DownloadCheckpoint.Segment segment : checkpoint.getSegments()) {
+                if (!segment.finished()) {
+                    pending.add(segment);
+                }
+            }
+            List<Future<?>> futures = new ArrayList<>(pending.size());
+            try {
+                for (int i = 0; i < pending.size() - 1; i++) {
+                    DownloadCheckpoint.Segment segment = pending.get(i);
+                    futures.add(segmentExecutor.submit(() -> {
+                        fetchSegment(context, segment);
+                        return null;
+                    }));
+                }
+                if (!pending.isEmpty()) {
+                    fetchSegment(context, pending.get(pending.size() - 1));
+                }
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+            } finally {
+                // 不能中断分段线程，FileChannel被中断时会直接关闭，导致其它分段和断点都无法写入
+                context.aborted = true;
+                for (Future<?> future : futures) {
+                    future.cancel(false);
+                }
+                if (context.validatorChanged) {
+                    Files.deleteIfExists(context.checkpointPath);
+                } else {
+                    context.commitQuietly();
+                }
+            }
+        }
+    }
+
+    /**
+     * 需要去重或者服务器提供了摘要时，创建在写入的同时计算摘要的对象
+     *
+     * @param probe      探测结果
+     * @param checkpoint 断点
+     * @param part       .part文件
+     * @return 不需要计算摘要时返回null
+     */
+    OrderedHasher newHasher(RangeProbe probe, DownloadCheckpoint checkpoint, Path part) {
+        boolean dedup = config.getDedupMode() != DedupMode.NONE;
+        if (!dedup && probe.getDigest() == null) {
+            return null;
+        }
+        return new OrderedHasher(new ContentHasher(dedup, probe.getDigest()), checkpoint, part);
+    }
+
+    /**
+     * 所有分段完成后检查文件长度，并完成摘要的计算和比较。校验失败时删除.part文件和断点，重试时重新下载
+     *
+     * @param part           .part文件
+     * @param checkpointPath 断点文件
+     * @param checkpoint     断点
+     * @param hasher         摘要，不需要时为null
+     * @return 文件的SHA-256，不需要去重时为null
+     * @throws IOException 校验失败或者读取失败
+     */
+    String verify(Path part, Path checkpointPath, DownloadCheckpoint checkpoint, OrderedHasher hasher) throws IOException {
+        long length = Files.size(part);
+        try {
+            if (checkpoint.getContentLength() >= 0 && length != checkpoint.getContentLength()) {
+                throw DownloadException.transientError(String.format("文件长度校验失败，应为%d，实际为%d", checkpoint.getContentLength(), length));
+            }
+            return hasher == null ? null : hasher.complete(length);
+        } catch (DownloadException e) {
+            Files.deleteIfExists(part);
+            Files.deleteIfExists(checkpointPath);
+            throw e;
+        }
+    }
+
+    /**
+     * 删除目标文件对应的.part文件和断点
+     *
+     * @param target 目标文件
+     * @throws IOException 出现的异常
+     */
+    public void discard(Path target) throws IOException {
+        Files.deleteIfExists(partPath(target));
+        Files.deleteIfExists(checkpointPath(target));
+    }
+
+    /**
+     * 按探测结果为新的下载划分分段
+     *
+     * @param link  下载链接
+     * @param probe 探测结果
+     * @return 新的断点
+     */
+    DownloadCheckpoint plan(String link, RangeProbe probe) {
+        DownloadCheckpoint checkpoint = new DownloadCheckpoint();
+        checkpoint.setLink(link);
+        checkpoint.setEtag(probe.getEtag());
+        checkpoint.setLastModified(probe.getLastModified());
+        checkpoint.setContentLength(probe.getContentLength());
+        int count = segmentCountOf(probe);
+        long length = probe.getContentLength();
+        long segmentSize = length / count;
+        for (int i = 0; i < count; i++) {
+            DownloadCheckpoint.Segment segment = new DownloadCheckpoint.Segment();
+            segment.setStart(i * segmentSize);
+            segment.setEnd(i == count - 1 ? Math.max(-1, length - 1) : (i + 1) * segmentSize - 1);
+            checkpoint.getSegments().add(segment);
+        }
+        return checkpoint;
+    }
+
+    /**
+     * 下载单个分段，并通过positional write写入到文件对应偏移处
+     */
+    private void fetchSegment(SegmentContext context, DownloadCheckpoint.Segment segment) throws IOException, InterruptedException {
+        Map<String, String> headers = new HashMap<>(2);
+        boolean ranged = segment.getEnd() >= 0 && (segment.position() > 0 || context.checkpoint.getSegments().size() > 1);
+        if (ranged) {
+            headers.put("Range", "bytes=" + segment.position() + "-" + segment.getEnd());
+            String validator = context.checkpoint.ifRangeValidator();
+            if (validator != null) {
+                headers.put("If-Range", validator);
+            }
+        }
+        long sentNanos = System.nanoTime();
+        try (HttpResult result = httpClient.execute("GET", context.link, headers)) {
+            // 关闭响应体可以唤醒阻塞中的读取
+            Runnable unregister = context.control.onAbort(() -> closeQuietly(result));
+            try {
+                readSegment(context, segment, result, ranged, sentNanos);
+            } catch (IOException e) {
+                context.control.check();
+                throw e;
+            } finally {
+                unregister.run();
+            }
+        }
+    }
+
+    /**
+     * 检查响应码，并把分段的响应体写入文件
+     */
+    private void readSegment(SegmentContext context, DownloadCheckpoint.Segment segment, HttpResult result, boolean ranged, long sentNanos) throws IOException, InterruptedException {
+        metrics.firstByte(System.nanoTime() - sentNanos);
+        int code = result.getStatus();
+        if (ranged && code == HttpURLConnection.HTTP_OK) {
+            context.validatorChanged = true;
+            throw DownloadException.transientError("服务器未返回分段内容，文件可能已经变化");
+        }
+        if (code != (ranged ? HttpURLConnection.HTTP_PARTIAL : HttpURLConnection.HTTP_OK)) {
+            throw DownloadException.status(code);
+        }
+        long end = segment.getEnd() >= 0 ? segment.getEnd() : Long.MAX_VALUE - 1;
+        long position = segment.position();
+        // 长度未知的分段只能依靠响应头判断是否完整
+        long declared = segment.getEnd() < 0 ? result.contentLength() : -1;
+        ReadableByteChannel body = Channels.newChannel(result.getBody());
+        // 直接内存缓冲区可以直接写入文件，避免FileChannel内部再复制到临时的直接内存
+        ByteBuffer buffer = bufferPool.lease(context.bufferSize);
+        try {
+            int read;
+            while (!context.aborted && !context.control.isAborted() && position <= end) {
+                buffer.clear();
+                buffer.limit((int) Math.min(buffer.capacity(), end + 1 - position));
+                if ((read = body.read(buffer)) == -1) {
+                    break;
+                }
+                buffer.flip();
+                if (context.hasher != null) {
+                    context.hasher.beforeWrite(buffer, position);
+                }
+                while (buffer.hasRemaining()) {
+                    position += context.channel.write(buffer, position);
+                }
+                synchronized (context.checkpoint) {
+                    segment.setCommitted(position - segment.getStart());
+                }
+                context.progress.accept(read);
+                context.hostBytes.add(read);
+                limiter.consumeBytes(context.host, read);
+                context.commit(false);
+            }
+        } finally {
+            bufferPool.release(buffer);
+        }
+        context.control.check();
+        if (context.aborted) {
+            throw new IOException("下载已中止");
+        }
+        if (segment.getEnd() >= 0 && position != segment.getEnd() + 1) {
+            throw DownloadException.transientError(String.format("分段%d-%d下载不完整，实际下载到：%d", segment.getStart(), segment.getEnd(), position));
+        }
+        if (declared >= 0 && position != segment.getStart() + declared) {
+            throw DownloadException.transientError(String.format("响应体不完整，应为%d字节，实际为%d字节", declared, position - segment.getStart()));
+        }
+    }
+
+    private static void closeQuietly(HttpResult result) {
+        try {
+            result.getBody().close();
+        } catch (IOException ignored) {
+            // 只是为了唤醒阻塞的读取
+        }
+    }
+
+    static Path partPath(Path target) {
+        return target.resolveSibling(target.getFileName() + PART_SUFFIX);
+    }
+
+    static Path checkpointPath(Path target) {
+        return target.resolveSibling(target.getFileName() + CHECKPOINT_SUFFIX);
+    }
+
+    /**
+     * 一次下载中各分段共享的状态
+     */
+    private static class SegmentContext {
+        private final String link;
+        private final String host;
+        private final DownloadCheckpoint checkpoint;
+        private final Path checkpointPath;
+        private final int bufferSize;
+        private final LongConsumer progress;
+        private final TransferControl control;
+        private final OrderedHasher hasher;
+        private final LongAdder hostBytes;
+        private FileChannel channel;
+        private volatile boolean validatorChanged;
+        private volatile boolean aborted;
+        private long lastCommitMillis = System.currentTimeMillis();
+
+        private SegmentContext(String link, DownloadCheckpoint checkpoint, Path checkpointPath, int bufferSize, LongConsumer progress, TransferControl control, OrderedHasher hasher, SpiderMetrics metrics) {
+            this.link = link;
+            this.host = HostSemaphores.hostOf(link);
+            this.checkpoint = checkpoint;
+            this.checkpointPath = checkpointPath;
+            this.bufferSize = bufferSize;
+            this.progress = progress;
+            this.control = control;
+            this.hasher = hasher;
+            this.hostBytes = metrics.hostBytes(host);
+        }
+
+        /**
+         * 先将数据刷到磁盘再保存断点，保证断点里记录的字节一定已经落盘
+         *
+         * @param force 是否忽略保存间隔
+         */
+        private synchronized void commit(boolean force) throws IOException {
+            long now = System.currentTimeMillis();
+            if (!checkpoint.hasValidator() || (!force && now - lastCommitMillis < CHECKPOINT_INTERVAL_MILLIS)) {
+                return;
+            }
+            lastCommitMillis = now;
+            String snapshot = checkpoint.snapshot();
+            channel.force(false);
+            DownloadCheckpoint.write(checkpointPath, snapshot);
+        }
+
+        private void commitQuietly() {
+            try {
+                commit(true);
+            } catch (IOException ignored) {
+                // 断点保存失败只会导致下次少续传一部分，不影响本次的结果
+            }
+        }
+    }
+
+    @Data
+    public static class RangeProbe {
+        private boolean acceptRanges;
+        private long contentLength;
+        private String etag;
+        private String lastModified;
+        /**
+         * 服务器提供的摘要，没有时为null
+         */
+        private ContentDigest digest;
+    }
+}
@@ -0,0 +1,74 @@
+package spider.download;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 一次传输的中止开关，由其他线程调用{@link #abort(IOException)}后，传输中注册的动作立即执行以唤醒阻塞的读取或者取消异步的分段，
+ * 传输随后以中止的原因失败。只有第一次中止生效
+ *
+ * @author Gloduck
+ */
+public class TransferControl {
+    private final List<Runnable> abortActions = new CopyOnWriteArrayList<>();
+    private volatile IOException cause;
+
+    /**
+     * 中止传输
+     *
+     * @param cause 中止的原因，作为传输失败的原因
+     * @return 是否是第一次中止
+     */
+    public boolean abort(IOException cause) {
+        synchronized (this) {
+            if (this.cause != null) {
+                return false;
+            }
+            this.cause = cause;
+        }
+        for (Runnable action : abortActions) {
+            action.run();
+        }
+        return true;
+    }
+
+    public boolean isAborted() {
+        return cause != null;
+    }
+
+    /**
+     * 中止的原因
+     *
+     * @return 原因，没有中止时返回null
+     */
+    public IOException cause() {
+        return cause;
+    }
+
+    /**
+     * 已经中止时抛出中止的原因
+     *
+     * @throws IOException 中止的原因
+     */
+    public void check() throws IOException {
+        IOException current = cause;
+        if (current != null) {
+            throw current;
+        }
+    }
+
+    /**
+     * 注册中止时执行的动作，已经中止时立即执行
+     *
+     * @param action 动作
+     * @return 传输结束后用于注销的动作
+     */
+    public Runnable onAbort(Runnable action) {
+        abortActions.add(action);
+        if (isAborted() && abortActions.remove(action)) {
+            action.run();
+        }
+        return () -> abortActions.remove(action);
+    }
+}
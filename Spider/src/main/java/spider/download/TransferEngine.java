@@ -0,0 +1,17 @@
+package spider.download;
+
+/**
+ * 文件传输引擎
+ *
+ * @author Gloduck
+ */
+public enum TransferEngine {
+    /**
+     * 每个分段占用一个线程，通过阻塞流读取
+     */
+    BLOCKING,
+    /**
+     * 基于HttpClient.sendAsync和AsynchronousFileChannel，传输过程中不占用线程，同时进行的传输数不超过maxThreadCount + taskQueueCapacity
+     */
+    ASYNC
+}
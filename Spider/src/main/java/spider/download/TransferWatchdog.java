@@ -0,0 +1,114 @@
+package spider.download;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * 检查传输是否超过单个任务的超时时间，或者在一段时间内的平均速度低于下限，满足任一条件时中止传输。
+ * 中止的原因可以重试，传输线程立即释放，之后按照重试策略重新调度，分段的断点保证已经下载的部分不会重新下载
+ *
+ * @author Gloduck
+ */
+public class TransferWatchdog {
+    private static final long CHECK_INTERVAL_MILLIS = 500;
+    private final long taskTimeoutMillis;
+    private final long minBytesPerSecond;
+    private final long stallWindowMillis;
+    private final Set<Watch> watches = ConcurrentHashMap.newKeySet();
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * @param taskTimeoutMillis 单次传输的最长时间，0表示不限制
+     * @param minBytesPerSecond 最低速度，0表示不检查
+     * @param stallWindowMillis 计算平均速度的时间窗口
+     */
+    public TransferWatchdog(long taskTimeoutMillis, long minBytesPerSecond, long stallWindowMillis) {
+        this.taskTimeoutMillis = taskTimeoutMillis;
+        this.minBytesPerSecond = minBytesPerSecond;
+        this.stallWindowMillis = stallWindowMillis;
+    }
+
+    public synchronized void start() {
+        if (scheduler != null || (taskTimeoutMillis <= 0 && minBytesPerSecond <= 0)) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "spider-transfer-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::check, CHECK_INTERVAL_MILLIS, CHECK_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void shutdown() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+        watches.clear();
+    }
+
+    /**
+     * 开始检查一次传输
+     *
+     * @param control 传输的中止开关
+     * @param bytes   读取已经传输的字节数，续传时包括之前已经下载的部分
+     * @return 传输结束后用于停止检查的动作
+     */
+    public Runnable watch(TransferControl control, LongSupplier bytes) {
+        Watch watch = new Watch(control, bytes);
+        watches.add(watch);
+        return () -> watches.remove(watch);
+    }
+
+    private void check() {
+        long now = System.nanoTime();
+        for (Watch watch : watches) {
+            if (watch.control.isAborted()) {
+                watches.remove(watch);
+                continue;
+            }
+            long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(now - watch.startNanos);
+            if (taskTimeoutMillis > 0 && elapsedMillis >= taskTimeoutMillis) {
+                watch.control.abort(DownloadException.transientError("传输超过了单个任务的超时时间：" + taskTimeoutMillis + "ms"));
+                continue;
+            }
+            if (minBytesPerSecond <= 0) {
+                continue;
+            }
+            long windowMillis = TimeUnit.NANOSECONDS.toMillis(now - watch.windowStartNanos);
+            if (windowMillis < stallWindowMillis) {
+                continue;
+            }
+            long bytes = watch.bytes.getAsLong();
+            double bytesPerSecond = (bytes - watch.windowStartBytes) * 1000.0 / windowMillis;
+            if (bytesPerSecond < minBytesPerSecond) {
+                watch.control.abort(DownloadException.transientError(String.format("传输速度%.0fB/s低于下限%dB/s", bytesPerSecond, minBytesPerSecond)));
+                continue;
+            }
+            watch.windowStartNanos = now;
+            watch.windowStartBytes = bytes;
+        }
+    }
+
+    private static class Watch {
+        private final TransferControl control;
+        private final LongSupplier bytes;
+        private final long startNanos = System.nanoTime();
+        /**
+         * 以下两个字段只在检查线程上读写
+         */
+        private long windowStartNanos = startNanos;
+        private long windowStartBytes;
+
+        private Watch(TransferControl control, LongSupplier bytes) {
+            this.control = control;
+            this.bytes = bytes;
+            this.windowStartBytes = bytes.getAsLong();
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package spider.engine;
+
+/**
+ * 下载引擎的执行模式
+ *
+ * @author Gloduck
+ */
+public enum ExecutionMode {
+    /**
+     * 使用固定大小的平台线程池
+     */
+    PLATFORM,
+    /**
+     * 每个任务一个虚拟线程，并发数由每个host的信号量限制，需要JDK21及以上
+     */
+    VIRTUAL
+}
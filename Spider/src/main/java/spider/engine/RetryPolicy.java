@@ -0,0 +1,99 @@
+package spider.engine;
+
+import spider.config.SpiderConfig;
+import spider.download.DownloadException;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.net.http.HttpTimeoutException;
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 重试策略，指数退避并加入随机抖动，只对超时、连接重置以及5xx等临时性错误重试
+ *
+ * @author Gloduck
+ */
+public class RetryPolicy {
+    /**
+     * java.net.http.HttpClient在连接被关闭或者重置时只抛出普通的IOException，只能通过异常信息判断
+     */
+    private static final String[] CONNECTION_CLOSED_MESSAGES = {
+            "closed", "connection reset", "broken pipe", "received no bytes"
+    };
+    private final int maxAttempts;
+    private final long baseDelayMillis;
+    private final long maxDelayMillis;
+
+    public RetryPolicy(SpiderConfig config) {
+        this.maxAttempts = config.getRetryMaxAttempts();
+        this.baseDelayMillis = config.getRetryBaseDelayMillis();
+        this.maxDelayMillis = config.getRetryMaxDelayMillis();
+    }
+
+    /**
+     * 判断是否应该重试
+     *
+     * @param e       本次失败的原因
+     * @param attempt 已经尝试的次数，从1开始
+     * @return 是否重试
+     */
+    public boolean shouldRetry(Throwable e, int attempt) {
+        return attempt < maxAttempts && isRetryable(e);
+    }
+
+    /**
+     * 计算下一次重试前的等待时间，在退避时间的一半到全部之间随机
+     *
+     * @param attempt 已经尝试的次数，从1开始
+     * @return 等待的毫秒数
+     */
+    public long delayMillis(int attempt) {
+        long delay = baseDelayMillis << Math.min(attempt - 1, 30);
+        if (delay <= 0 || delay > maxDelayMillis) {
+            delay = maxDelayMillis;
+        }
+        long half = delay / 2;
+        return half + ThreadLocalRandom.current().nextLong(delay - half + 1);
+    }
+
+    /**
+     * 沿着异常链判断是否是临时性错误
+     *
+     * @param e 异常
+     * @return 是否可以重试
+     */
+    public static boolean isRetryable(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof DownloadException) {
+                return ((DownloadException) cause).isRetryable();
+            }
+            if (cause instanceof SocketTimeoutException || cause instanceof SocketException || cause instanceof EOFException
+                    || cause instanceof HttpTimeoutException) {
+                return true;
+            }
+            if (cause instanceof IOException && isConnectionClosed(cause.getMessage())) {
+                return true;
+            }
+            if (cause.getCause() == cause) {
+                break;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isConnectionClosed(String message) {
+        if (message == null) {
+            return false;
+        }
+        String lower = message.toLowerCase(Locale.ROOT);
+        for (String closed : CONNECTION_CLOSED_MESSAGES) {
+            if (lower.contains(closed)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,240 @@
+package spider.engine;
+
+import java.util.Comparator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+/**
+ * 流水线中的一个阶段，拥有独立的线程池。平台线程模式下使用有界队列，虚拟线程模式下通过信号量限制在途任务数，
+ * 两种模式下超过上限时都会阻塞上游的提交线程。异步任务在返回的future完成前一直计为在途任务。
+ * 按优先级执行的阶段使用固定数量的线程和优先级队列，排队的任务按照给定的顺序出队，顺序相同时先提交的先执行
+ *
+ * @author Gloduck
+ */
+public class Stage {
+    private final String name;
+    private final ExecutorService executor;
+    /**
+     * 限制在途任务数，包括已经交出线程的异步任务
+     */
+    private final Semaphore inFlight;
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicLong sequence = new AtomicLong();
+    private final long startMillis = System.currentTimeMillis();
+
+    private Stage(String name, ExecutorService executor, Semaphore inFlight) {
+        this.name = name;
+        this.executor = executor;
+        this.inFlight = inFlight;
+    }
+
+    /**
+     * 创建使用平台线程池的阶段
+     *
+     * @param name            阶段名
+     * @param coreThreadCount 核心线程数
+     * @param maxThreadCount  最大线程数
+     * @param queueCapacity   队列容量
+     * @param maxInFlight     最大在途任务数
+     * @return 阶段
+     */
+    public static Stage platform(String name, int coreThreadCount, int maxThreadCount, int queueCapacity, int maxInFlight) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(coreThreadCount, maxThreadCount, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), new StageThreadFactory(name), new BlockingPolicy());
+        return new Stage(name, executor, new Semaphore(maxInFlight));
+    }
+
+    /**
+     * 创建每个任务一个虚拟线程的阶段
+     *
+     * @param name        阶段名
+     * @param maxInFlight 最大在途任务数
+     * @return 阶段
+     */
+    public static Stage virtual(String name, int maxInFlight) {
+        return new Stage(name, VirtualThreads.newExecutor("spider-" + name + "-"), new Semaphore(maxInFlight));
+    }
+
+    /**
+     * 创建按优先级执行的阶段，在途任务数包括正在执行和排队的任务
+     *
+     * @param mode        执行模式，虚拟线程模式下工作线程是固定数量的虚拟线程
+     * @param name        阶段名
+     * @param threadCount 线程数
+     * @param maxInFlight 最大在途任务数
+     * @param order       任务的顺序，比较的是提交的任务对象，排在前面的先执行
+     * @return 阶段
+     */
+    public static Stage prioritized(ExecutionMode mode, String name, int threadCount, int maxInFlight, Comparator<Object> order) {
+        ThreadFactory factory = mode == ExecutionMode.VIRTUAL ? VirtualThreads.newFactory("spider-" + name + "-") : new StageThreadFactory(name);
+        Comparator<PrioritizedTask> byKey = Comparator.comparing((PrioritizedTask task) -> task.key, order).thenComparingLong(task -> task.sequence);
+        // 无界队列不会触发线程数增长，所以核心线程数等于最大线程数，由在途任务数限制队列长度
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threadCount, threadCount, 60L, TimeUnit.SECONDS,
+                new PriorityBlockingQueue<Runnable>(16, (a, b) -> byKey.compare((PrioritizedTask) a, (PrioritizedTask) b)), factory);
+        return new Stage(name, executor, new Semaphore(maxInFlight));
+    }
+
+    /**
+     * 按执行模式创建阶段
+     *
+     * @param mode            执行模式
+     * @param name            阶段名
+     * @param coreThreadCount 平台线程模式的核心线程数
+     * @param maxThreadCount  平台线程模式的最大线程数
+     * @param queueCapacity   平台线程模式的队列容量
+     * @param maxInFlight     最大在途任务数
+     * @return 阶段
+     */
+    public static Stage of(ExecutionMode mode, String name, int coreThreadCount, int maxThreadCount, int queueCapacity, int maxInFlight) {
+        if (mode == ExecutionMode.VIRTUAL) {
+            return virtual(name, maxInFlight);
+        }
+        return platform(name, coreThreadCount, maxThreadCount, queueCapacity, maxInFlight);
+    }
+
+    /**
+     * 提交任务，队列满或者在途任务达到上限时阻塞
+     *
+     * @param task 任务，返回是否成功
+     */
+    public void submit(BooleanSupplier task) {
+        execute(() -> CompletableFuture.completedFuture(task.getAsBoolean()), task);
+    }
+
+    /**
+     * 提交异步任务，任务在工作线程中启动后即交出线程，返回的future完成前一直占用一个在途名额
+     *
+     * @param task 任务，返回的future表示是否成功
+     */
+    public void submitAsync(Supplier<CompletableFuture<Boolean>> task) {
+        execute(task, task);
+    }
+
+    /**
+     * @param task 任务
+     * @param key  提交的任务对象，按优先级执行时用于排序
+     */
+    private void execute(Supplier<CompletableFuture<Boolean>> task, Object key) {
+        try {
+            inFlight.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException(e);
+        }
+        submitted.increment();
+        pending.incrementAndGet();
+        try {
+            executor.execute(new PrioritizedTask(() -> run(task), key, sequence.getAndIncrement()));
+        } catch (RejectedExecutionException e) {
+            pending.decrementAndGet();
+            inFlight.release();
+            throw e;
+        }
+    }
+
+    private void run(Supplier<CompletableFuture<Boolean>> task) {
+        pending.decrementAndGet();
+        active.incrementAndGet();
+        CompletableFuture<Boolean> future;
+        try {
+            future = task.get();
+        } catch (RuntimeException | Error e) {
+            finish(false);
+            throw e;
+        }
+        future.whenComplete((success, e) -> finish(e == null && Boolean.TRUE.equals(success)));
+    }
+
+    private void finish(boolean success) {
+        active.decrementAndGet();
+        if (success) {
+            completed.increment();
+        } else {
+            failed.increment();
+        }
+        inFlight.release();
+    }
+
+    /**
+     * 不再接收新任务，并等待已经提交的任务完成
+     *
+     * @throws InterruptedException 等待时被中断
+     */
+    public void shutdownAndAwait() throws InterruptedException {
+        executor.shutdown();
+        executor.awaitTermination(Integer.MAX_VALUE, TimeUnit.MINUTES);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 获取当前阶段的统计信息
+     *
+     * @return 统计信息
+     */
+    public StageStats stats() {
+        StageStats stats = new StageStats();
+        stats.setName(name);
+        stats.setQueueDepth(pending.get());
+        stats.setActiveCount(active.get());
+        stats.setPoolSize(executor instanceof ThreadPoolExecutor ? ((ThreadPoolExecutor) executor).getPoolSize() : active.get());
+        stats.setSubmitted(submitted.sum());
+        stats.setCompleted(completed.sum());
+        stats.setFailed(failed.sum());
+        long elapsed = Math.max(1, System.currentTimeMillis() - startMillis);
+        stats.setThroughputPerSecond((completed.sum() + failed.sum()) * 1000.0 / elapsed);
+        return stats;
+    }
+
+    /**
+     * 队列中的任务，记录排序用的任务对象和提交顺序
+     */
+    private static class PrioritizedTask implements Runnable {
+        private final Runnable runnable;
+        private final Object key;
+        private final long sequence;
+
+        private PrioritizedTask(Runnable runnable, Object key, long sequence) {
+            this.runnable = runnable;
+            this.key = key;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public void run() {
+            runnable.run();
+        }
+    }
+
+    private static class StageThreadFactory implements ThreadFactory {
+        private final String prefix;
+        private final AtomicInteger index = new AtomicInteger();
+
+        private StageThreadFactory(String name) {
+            this.prefix = "spider-" + name + "-";
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            return new Thread(r, prefix + index.incrementAndGet());
+        }
+    }
+}
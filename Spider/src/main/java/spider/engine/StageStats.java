@@ -0,0 +1,20 @@
+package spider.engine;
+
+import lombok.Data;
+
+/**
+ * 阶段的统计信息
+ *
+ * @author Gloduck
+ */
+@Data
+public class StageStats {
+    private String name;
+    private int queueDepth;
+    private int activeCount;
+    private int poolSize;
+    private long submitted;
+    private long completed;
+    private long failed;
+    private double throughputPerSecond;
+}
@@ -0,0 +1,34 @@
+package spider.engine;
+
+/**
+ * 传输阶段排队任务的执行顺序
+ *
+ * @author Gloduck
+ */
+public enum TransferOrder {
+    /**
+     * 按照解析完成的顺序
+     */
+    FIFO,
+    /**
+     * 文件大的先传输，避免最后只剩几个大文件单独传输，缩短整体完成时间
+     */
+    LARGEST_FIRST,
+    /**
+     * 文件小的先传输，尽快得到结果
+     */
+    SMALLEST_FIRST,
+    /**
+     * 按照下载信息中的优先级，数值大的先传输
+     */
+    PRIORITY;
+
+    /**
+     * 是否需要在排队前知道文件长度
+     *
+     * @return 是否需要
+     */
+    public boolean isSizeAware() {
+        return this == LARGEST_FIRST || this == SMALLEST_FIRST;
+    }
+}
@@ -0,0 +1,59 @@
+package spider.engine;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * 虚拟线程工具，项目以JDK11为编译目标，所以通过反射调用JDK21的虚拟线程API
+ *
+ * @author Gloduck
+ */
+public class VirtualThreads {
+    private static final int MIN_FEATURE_VERSION = 21;
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * 当前运行的JDK是否支持虚拟线程
+     *
+     * @return 是否支持
+     */
+    public static boolean isSupported() {
+        return Runtime.version().feature() >= MIN_FEATURE_VERSION;
+    }
+
+    /**
+     * 创建每个任务一个虚拟线程的线程池
+     *
+     * @param prefix 线程名前缀
+     * @return 线程池
+     */
+    public static ExecutorService newExecutor(String prefix) {
+        try {
+            Method method = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+            return (ExecutorService) method.invoke(null, newFactory(prefix));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("当前JDK不支持虚拟线程", e);
+        }
+    }
+
+    /**
+     * 创建虚拟线程的线程工厂，用于线程数固定的线程池
+     *
+     * @param prefix 线程名前缀
+     * @return 线程工厂
+     */
+    public static ThreadFactory newFactory(String prefix) {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, prefix, 1L);
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("当前JDK不支持虚拟线程", e);
+        }
+    }
+}
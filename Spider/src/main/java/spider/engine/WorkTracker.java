@@ -0,0 +1,46 @@
+package spider.engine;
+
+/**
+ * 记录还未结束的工作项数，包括正在等待重试的项，用于判断流水线是否已经全部完成
+ *
+ * @author Gloduck
+ */
+public class WorkTracker {
+    private long outstanding;
+
+    /**
+     * 新增一个工作项
+     */
+    public synchronized void begin() {
+        outstanding++;
+    }
+
+    /**
+     * 一个工作项成功或者最终失败
+     */
+    public synchronized void end() {
+        if (--outstanding == 0) {
+            notifyAll();
+        }
+    }
+
+    /**
+     * 当前未结束的工作项数
+     *
+     * @return 工作项数
+     */
+    public synchronized long outstanding() {
+        return outstanding;
+    }
+
+    /**
+     * 等待所有工作项结束
+     *
+     * @throws InterruptedException 等待时被中断
+     */
+    public synchronized void awaitIdle() throws InterruptedException {
+        while (outstanding > 0) {
+            wait();
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package spider.engine;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 多个任务共享的传输名额，名额不足时按照权重公平分配：等待中的任务里，已占用名额与权重之比最小的先获得名额。
+ * 只有一个任务在等待时它可以使用所有空闲的名额，其他任务开始等待后，随着名额的归还逐渐回到各自的份额
+ *
+ * @author Gloduck
+ */
+public class WorkerBudget {
+    private final int capacity;
+    private final List<Share> shares = new ArrayList<>();
+    private int used;
+
+    /**
+     * @param capacity 所有任务同时进行的传输数上限
+     */
+    public WorkerBudget(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("名额数必须大于0");
+        }
+        this.capacity = capacity;
+    }
+
+    /**
+     * 注册一个任务
+     *
+     * @param name   任务名
+     * @param weight 权重，必须大于0
+     * @return 任务的份额
+     */
+    public synchronized Share register(String name, int weight) {
+        if (weight <= 0) {
+            throw new IllegalArgumentException("权重必须大于0");
+        }
+        Share share = new Share(name, weight);
+        shares.add(share);
+        return share;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * 当前被占用的名额数
+     *
+     * @return 名额数
+     */
+    public synchronized int used() {
+        return used;
+    }
+
+    private boolean grantable(Share share) {
+        if (used >= capacity) {
+            return false;
+        }
+        for (Share other : shares) {
+            // 交叉相乘比较inUse/weight，避免浮点数
+            if (other != share && other.waiting > 0 && (long) other.inUse * share.weight < (long) share.inUse * other.weight) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 一个任务在共享名额中的份额
+     */
+    public class Share implements AutoCloseable {
+        private final String name;
+        private final int weight;
+        private int inUse;
+        private int waiting;
+        private boolean closed;
+
+        private Share(String name, int weight) {
+            this.name = name;
+            this.weight = weight;
+        }
+
+        /**
+         * 获取一个名额，没有轮到当前任务时阻塞
+         *
+         * @return 是否获得名额，份额已经注销时立即返回false
+         * @throws InterruptedException 等待时被中断
+         */
+        public boolean acquire() throws InterruptedException {
+            synchronized (WorkerBudget.this) {
+                waiting++;
+                try {
+                    while (!closed && !grantable(this)) {
+                        WorkerBudget.this.wait();
+                    }
+                } catch (InterruptedException e) {
+                    waiting--;
+                    // 当前任务不再等待，其他任务可能因此可以获得名额
+                    WorkerBudget.this.notifyAll();
+                    throw e;
+                }
+                waiting--;
+                if (closed) {
+                    WorkerBudget.this.notifyAll();
+                    return false;
+                }
+                inUse++;
+                used++;
+                return true;
+            }
+        }
+
+        /**
+         * 归还一个名额
+         */
+        public void release() {
+            synchronized (WorkerBudget.this) {
+                inUse--;
+                used--;
+                WorkerBudget.this.notifyAll();
+            }
+        }
+
+        /**
+         * 任务停止或者结束后注销份额，等待中的获取立即返回false，已经获得的名额依然需要归还
+         */
+        @Override
+        public void close() {
+            synchronized (WorkerBudget.this) {
+                closed = true;
+                shares.remove(this);
+                WorkerBudget.this.notifyAll();
+            }
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getWeight() {
+            return weight;
+        }
+
+        /**
+         * 当前任务占用的名额数
+         *
+         * @return 名额数
+         */
+        public int inUse() {
+            synchronized (WorkerBudget.this) {
+                return inUse;
+            }
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package spider.event;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 异步事件总线。每个订阅者拥有独立的环形缓冲区和消费线程，发布方只需要把事件放入缓冲区，
+ * 订阅者处理得慢不会拖慢发布方，缓冲区满时按照{@link OverflowPolicy}丢弃或者等待
+ *
+ * @author Gloduck
+ */
+public class EventBus<E> {
+    /**
+     * 消费线程空闲时最长的休眠时间，发布方会在放入事件后唤醒休眠的消费线程
+     */
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    /**
+     * 缓冲区满时发布方每次等待的时间
+     */
+    private static final long FULL_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    private final int bufferSize;
+    private final OverflowPolicy policy;
+    private final List<Subscription<E>> subscriptions = new CopyOnWriteArrayList<>();
+    private final AtomicLong dropped = new AtomicLong();
+
+    /**
+     * @param bufferSize 每个订阅者的缓冲区大小，必须是2的幂
+     * @param policy     缓冲区已满时的处理策略
+     */
+    public EventBus(int bufferSize, OverflowPolicy policy) {
+        this.bufferSize = bufferSize;
+        this.policy = policy;
+    }
+
+    /**
+     * 注册订阅者，并启动它的消费线程
+     *
+     * @param name       订阅者名称，用于线程名
+     * @param subscriber 订阅者
+     */
+    public void subscribe(String name, EventSubscriber<? super E> subscriber) {
+        Subscription<E> subscription = new Subscription<>(new RingBuffer<>(bufferSize), subscriber);
+        Thread thread = new Thread(subscription::consume, "spider-event-" + name);
+        thread.setDaemon(true);
+        subscription.thread = thread;
+        subscriptions.add(subscription);
+        thread.start();
+    }
+
+    /**
+     * 按照溢出策略发布事件
+     *
+     * @param event 事件
+     * @return 是否所有订阅者都收到了事件
+     */
+    public boolean publish(E event) {
+        return publish(event, policy == OverflowPolicy.BLOCK);
+    }
+
+    /**
+     * 发布事件
+     *
+     * @param event 事件
+     * @param block 缓冲区已满时是否等待，为false时丢弃
+     * @return 是否所有订阅者都收到了事件
+     */
+    public boolean publish(E event, boolean block) {
+        boolean delivered = true;
+        for (Subscription<E> subscription : subscriptions) {
+            while (!subscription.ring.offer(event)) {
+                if (!block || subscription.closed) {
+                    dropped.incrementAndGet();
+                    delivered = false;
+                    break;
+                }
+                LockSupport.parkNanos(this, FULL_PARK_NANOS);
+            }
+            if (subscription.waiting) {
+                LockSupport.unpark(subscription.thread);
+            }
+        }
+        return delivered;
+    }
+
+    /**
+     * 停止接收新的事件，等待订阅者处理完缓冲区中剩余的事件
+     *
+     * @throws InterruptedException 等待时被中断
+     */
+    public void close() throws InterruptedException {
+        for (Subscription<E> subscription : subscriptions) {
+            subscription.closed = true;
+            LockSupport.unpark(subscription.thread);
+        }
+        for (Subscription<E> subscription : subscriptions) {
+            subscription.thread.join();
+        }
+        subscriptions.clear();
+    }
+
+    /**
+     * 因为缓冲区已满而丢弃的事件数，一个事件对每个没收到的订阅者各计一次
+     *
+     * @return 丢弃的事件数
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    private static class Subscription<E> {
+        private final RingBuffer<E> ring;
+        private final EventSubscriber<? super E> subscriber;
+        private Thread thread;
+        private volatile boolean waiting;
+        private volatile boolean closed;
+
+        private Subscription(RingBuffer<E> ring, EventSubscriber<? super E> subscriber) {
+            this.ring = ring;
+            this.subscriber = subscriber;
+        }
+
+        private void consume() {
+            while (true) {
+                E event = ring.poll();
+                if (event != null) {
+                    deliver(event);
+                    continue;
+                }
+                if (closed) {
+                    // 关闭前发布的事件可能刚刚写入，再检查一次
+                    if (!ring.hasNext()) {
+                        return;
+                    }
+                    continue;
+                }
+                waiting = true;
+                if (!ring.hasNext() && !closed) {
+                    LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                }
+                waiting = false;
+            }
+        }
+
+        private void deliver(E event) {
+            try {
+                subscriber.onEvent(event);
+            } catch (RuntimeException ignored) {
+                // 订阅者出错不能让消费线程停止，否则之后的事件都会堆积在缓冲区
+            }
+        }
+    }
+}
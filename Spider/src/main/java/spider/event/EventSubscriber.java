@@ -0,0 +1,17 @@
+package spider.event;
+
+/**
+ * 事件订阅者，每个订阅者在自己的线程上按发布顺序接收事件
+ *
+ * @author Gloduck
+ */
+@FunctionalInterface
+public interface EventSubscriber<E> {
+
+    /**
+     * 处理一个事件
+     *
+     * @param event 事件
+     */
+    void onEvent(E event);
+}
@@ -0,0 +1,17 @@
+package spider.event;
+
+/**
+ * 事件缓冲区已满时的处理策略
+ *
+ * @author Gloduck
+ */
+public enum OverflowPolicy {
+    /**
+     * 丢弃新的事件，发布方不会被慢的订阅者拖慢
+     */
+    DROP,
+    /**
+     * 等待订阅者腾出空间，保证事件不丢失
+     */
+    BLOCK
+}
@@ -0,0 +1,92 @@
+package spider.event;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 有界无锁环形缓冲区，多生产者单消费者。每个槽位带有序号，生产者通过CAS抢占写入位置，
+ * 写完数据后再发布序号，消费者看到序号后才读取，整个过程不加锁
+ *
+ * @author Gloduck
+ */
+class RingBuffer<E> {
+    private final int capacity;
+    private final int mask;
+    private final AtomicReferenceArray<E> items;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+    /**
+     * 只在消费者线程上读写
+     */
+    private long head;
+
+    /**
+     * @param capacity 容量，必须是2的幂
+     */
+    RingBuffer(int capacity) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("容量必须是2的幂：" + capacity);
+        }
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+        this.items = new AtomicReferenceArray<>(capacity);
+        this.sequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * 放入一个元素，可以在任意线程上调用
+     *
+     * @param item 元素
+     * @return 缓冲区已满时返回false
+     */
+    boolean offer(E item) {
+        long position = tail.get();
+        while (true) {
+            int index = (int) position & mask;
+            long diff = sequences.get(index) - position;
+            if (diff == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    items.lazySet(index, item);
+                    // 序号的volatile写保证消费者看到序号时一定能看到数据
+                    sequences.set(index, position + 1);
+                    return true;
+                }
+                position = tail.get();
+            } else if (diff < 0) {
+                return false;
+            } else {
+                position = tail.get();
+            }
+        }
+    }
+
+    /**
+     * 取出一个元素，只能在消费者线程上调用
+     *
+     * @return 缓冲区为空时返回null
+     */
+    E poll() {
+        int index = (int) head & mask;
+        if (sequences.get(index) != head + 1) {
+            return null;
+        }
+        E item = items.get(index);
+        items.lazySet(index, null);
+        sequences.set(index, head + capacity);
+        head++;
+        return item;
+    }
+
+    /**
+     * 是否有可以取出的元素，只能在消费者线程上调用
+     *
+     * @return 是否有元素
+     */
+    boolean hasNext() {
+        return sequences.get((int) head & mask) == head + 1;
+    }
+}
@@ -0,0 +1,193 @@
+package spider.frontier;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * URL边界使用的开放寻址哈希表，保存在内存映射的临时文件中，不占用堆内存，关闭时删除文件。
+ * 每个槽位只保存链接的64位指纹、状态和本次运行中是否已经登记，不保存链接本身，
+ * 不同链接指纹相同的概率可以忽略。装载因子超过一半时重新散列到两倍大小的新文件
+ *
+ * @author Gloduck
+ */
+class FingerprintIndex implements Closeable {
+    private static final int SLOT_SIZE = 16;
+    private static final int STATE_OFFSET = 8;
+    private static final int ADMITTED_OFFSET = 9;
+    private static final int INITIAL_SLOTS = 1 << 16;
+    /**
+     * 单个映射不能超过2GB，最多容纳三千多万个链接
+     */
+    private static final int MAX_SLOTS = 1 << 26;
+    private static final UrlState[] STATES = UrlState.values();
+    private final Path directory;
+    private final String prefix;
+    private FileChannel channel;
+    private MappedByteBuffer table;
+    private int mask;
+    private int size;
+
+    private FingerprintIndex(Path directory, String prefix) {
+        this.directory = directory;
+        this.prefix = prefix;
+    }
+
+    /**
+     * 创建空的索引
+     *
+     * @param directory 索引文件所在的目录，为null时使用系统的临时目录
+     * @param prefix    索引文件名前缀
+     * @return 索引
+     * @throws IOException 创建索引文件失败
+     */
+    static FingerprintIndex create(Path directory, String prefix) throws IOException {
+        FingerprintIndex index = new FingerprintIndex(directory, prefix);
+        index.channel = index.newChannel();
+        index.table = index.channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) INITIAL_SLOTS * SLOT_SIZE);
+        index.mask = INITIAL_SLOTS - 1;
+        return index;
+    }
+
+    /**
+     * 计算链接的指纹，不会返回0，0表示空槽位
+     *
+     * @param url 链接
+     * @return 指纹
+     */
+    static long fingerprint(String url) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < url.length(); i++) {
+            hash ^= url.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        // 最后再混合一次，低位也分布均匀，直接用作槽位
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash == 0 ? 1 : hash;
+    }
+
+    /**
+     * 查找指纹所在的槽位
+     *
+     * @param fingerprint 指纹
+     * @return 槽位，不存在时返回-1
+     */
+    int find(long fingerprint) {
+        int slot = probe(table, mask, fingerprint);
+        return table.getLong(slot * SLOT_SIZE) == 0 ? -1 : slot;
+    }
+
+    /**
+     * 指纹不存在时以给定的状态插入
+     *
+     * @param fingerprint 指纹
+     * @param state       状态
+     * @return 槽位，扩容后之前返回的槽位失效
+     * @throws IOException 扩容失败
+     */
+    int insert(long fingerprint, UrlState state) throws IOException {
+        int slot = find(fingerprint);
+        if (slot >= 0) {
+            return slot;
+        }
+        if (size + 1 > (mask + 1) / 2) {
+            grow();
+        }
+        slot = probe(table, mask, fingerprint);
+        table.putLong(slot * SLOT_SIZE, fingerprint);
+        table.put(slot * SLOT_SIZE + STATE_OFFSET, (byte) (state.ordinal() + 1));
+        size++;
+        return slot;
+    }
+
+    UrlState state(int slot) {
+        return STATES[table.get(slot * SLOT_SIZE + STATE_OFFSET) - 1];
+    }
+
+    void setState(int slot, UrlState state) {
+        table.put(slot * SLOT_SIZE + STATE_OFFSET, (byte) (state.ordinal() + 1));
+    }
+
+    boolean admitted(int slot) {
+        return table.get(slot * SLOT_SIZE + ADMITTED_OFFSET) != 0;
+    }
+
+    void setAdmitted(int slot, boolean admitted) {
+        table.put(slot * SLOT_SIZE + ADMITTED_OFFSET, (byte) (admitted ? 1 : 0));
+    }
+
+    /**
+     * 清除所有槽位的登记标记
+     */
+    void clearAdmitted() {
+        for (int slot = 0; slot <= mask; slot++) {
+            table.put(slot * SLOT_SIZE + ADMITTED_OFFSET, (byte) 0);
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    @Override
+    public void close() throws IOException {
+        // 映射在回收之前依然有效，但是文件已经删除，之后不能再访问
+        table = null;
+        channel.close();
+    }
+
+    private void grow() throws IOException {
+        int slots = mask + 1;
+        if (slots >= MAX_SLOTS) {
+            throw new IllegalStateException("URL边界索引已满，链接数：" + size);
+        }
+        int newMask = slots * 2 - 1;
+        FileChannel newChannel = newChannel();
+        MappedByteBuffer newTable;
+        try {
+            newTable = newChannel.map(FileChannel.MapMode.READ_WRITE, 0, (long) (newMask + 1) * SLOT_SIZE);
+        } catch (IOException e) {
+            newChannel.close();
+            throw e;
+        }
+        for (int slot = 0; slot < slots; slot++) {
+            long fingerprint = table.getLong(slot * SLOT_SIZE);
+            if (fingerprint != 0) {
+                int target = probe(newTable, newMask, fingerprint);
+                newTable.putLong(target * SLOT_SIZE, fingerprint);
+                newTable.putShort(target * SLOT_SIZE + STATE_OFFSET, table.getShort(slot * SLOT_SIZE + STATE_OFFSET));
+            }
+        }
+        channel.close();
+        channel = newChannel;
+        table = newTable;
+        mask = newMask;
+    }
+
+    private FileChannel newChannel() throws IOException {
+        Path file = directory == null ? Files.createTempFile(prefix, ".idx") : Files.createTempFile(directory, prefix, ".idx");
+        return FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE);
+    }
+
+    /**
+     * 线性探测，返回指纹所在或者第一个空的槽位
+     */
+    private static int probe(MappedByteBuffer table, int mask, long fingerprint) {
+        int slot = (int) fingerprint & mask;
+        while (true) {
+            long current = table.getLong(slot * SLOT_SIZE);
+            if (current == 0 || current == fingerprint) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+}
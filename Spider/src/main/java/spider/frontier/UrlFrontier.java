@@ -0,0 +1,256 @@
+package spider.frontier;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.function.Consumer;
+
+/**
+ * URL边界，记录每个链接的状态，用于在任何网络请求之前跳过重复和已经完成的链接。
+ * 状态保存在内存映射的指纹索引中，堆内存不随链接数增长。
+ * 指定了日志文件时，状态变化以追加的方式写入日志，重新启动时回放日志重建索引，只重新处理没有完成的链接；
+ * 日志中过期的记录过多时在打开时压缩
+ *
+ * @author Gloduck
+ */
+public class UrlFrontier implements Closeable {
+    /**
+     * 过期记录超过有效记录的这个倍数时压缩日志
+     */
+    private static final int COMPACT_RATIO = 2;
+    private static final char SEPARATOR = '\t';
+    private final Path logPath;
+    private final FingerprintIndex index;
+    private Writer writer;
+
+    private UrlFrontier(Path logPath, FingerprintIndex index) {
+        this.logPath = logPath;
+        this.index = index;
+    }
+
+    /**
+     * 只在本次运行中去重，不保存到磁盘，索引放在系统的临时目录
+     *
+     * @return URL边界
+     * @throws IOException 创建索引失败
+     */
+    public static UrlFrontier inMemory() throws IOException {
+        return new UrlFrontier(null, FingerprintIndex.create(null, "spider-frontier"));
+    }
+
+    /**
+     * 打开日志文件，回放其中的记录，索引放在日志所在的目录
+     *
+     * @param logPath 日志文件
+     * @return URL边界
+     * @throws IOException 读取或者创建日志失败
+     */
+    public static UrlFrontier open(Path logPath) throws IOException {
+        Path directory = logPath.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        UrlFrontier frontier = new UrlFrontier(logPath, FingerprintIndex.create(directory, logPath.getFileName() + "."));
+        try {
+            frontier.replay();
+        } catch (IOException | RuntimeException e) {
+            frontier.index.close();
+            throw e;
+        }
+        return frontier;
+    }
+
+    /**
+     * 登记本次运行中发现的链接
+     *
+     * @param url 链接
+     * @return 需要处理时返回true；已经完成或者本次运行中已经登记过时返回false
+     */
+    public synchronized boolean offer(String url) {
+        long fingerprint = FingerprintIndex.fingerprint(url);
+        int slot = index.find(fingerprint);
+        if (slot < 0) {
+            slot = insert(fingerprint, UrlState.PENDING);
+            append(url, UrlState.PENDING);
+        } else if (index.state(slot) == UrlState.DONE || index.admitted(slot)) {
+            return false;
+        }
+        index.setAdmitted(slot, true);
+        return true;
+    }
+
+    /**
+     * 登记之前运行中没有完成的链接，之后再发现这些链接时不会重复处理。
+     * 逐行扫描日志，不在内存中收集链接，处理每个链接时不持有锁
+     *
+     * @param action 处理没有完成的链接
+     * @throws IOException 读取日志失败
+     */
+    public void admitUnfinished(Consumer<String> action) throws IOException {
+        if (logPath == null) {
+            // 只在内存中时没有之前运行的记录
+            return;
+        }
+        // 扫描期间追加的记录都属于已经登记的链接，同一个链接的多条记录通过登记标记只处理一次
+        readLog((state, url) -> {
+            if (admitIfUnfinished(url)) {
+                action.accept(url);
+            }
+        });
+    }
+
+    /**
+     * 更新链接的状态
+     *
+     * @param url   链接
+     * @param state 状态
+     */
+    public synchronized void mark(String url, UrlState state) {
+        long fingerprint = FingerprintIndex.fingerprint(url);
+        int slot = index.find(fingerprint);
+        if (slot < 0) {
+            insert(fingerprint, state);
+        } else if (index.state(slot) == state) {
+            return;
+        } else {
+            index.setState(slot, state);
+        }
+        append(url, state);
+    }
+
+    /**
+     * 获取链接的状态
+     *
+     * @param url 链接
+     * @return 状态，没有记录时返回null
+     */
+    public synchronized UrlState state(String url) {
+        int slot = index.find(FingerprintIndex.fingerprint(url));
+        return slot < 0 ? null : index.state(slot);
+    }
+
+    /**
+     * 将日志刷到磁盘，删除索引
+     *
+     * @throws IOException 写入失败
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            if (writer != null) {
+                writer.close();
+                writer = null;
+            }
+        } finally {
+            index.close();
+        }
+    }
+
+    private synchronized boolean admitIfUnfinished(String url) {
+        int slot = index.find(FingerprintIndex.fingerprint(url));
+        // 进程中断时写了一半的行找不到对应的链接
+        if (slot < 0 || index.state(slot) == UrlState.DONE || index.admitted(slot)) {
+            return false;
+        }
+        index.setAdmitted(slot, true);
+        return true;
+    }
+
+    private void replay() throws IOException {
+        long records = 0;
+        if (Files.exists(logPath)) {
+            records = readLog((state, url) -> index.setState(index.insert(FingerprintIndex.fingerprint(url), state), state));
+        }
+        if (records > (long) index.size() * COMPACT_RATIO) {
+            compact();
+        }
+        writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(logPath.toFile(), true), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 每个链接只保留最后的状态，先写入临时文件再替换。索引中只有指纹，所以再扫描一遍日志取得链接，
+     * 用登记标记记录已经写出的链接，完成后清除
+     */
+    private void compact() throws IOException {
+        Path temp = logPath.resolveSibling(logPath.getFileName() + ".tmp");
+        try (Writer out = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            readLog((state, url) -> {
+                int slot = index.find(FingerprintIndex.fingerprint(url));
+                if (!index.admitted(slot)) {
+                    index.setAdmitted(slot, true);
+                    out.write(index.state(slot).name());
+                    out.write(SEPARATOR);
+                    out.write(url);
+                    out.write('\n');
+                }
+            });
+        } finally {
+            index.clearAdmitted();
+        }
+        Files.move(temp, logPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * 逐行读取日志
+     *
+     * @param action 处理每条有效的记录
+     * @return 有效记录数
+     */
+    private long readLog(RecordAction action) throws IOException {
+        long records = 0;
+        try (BufferedReader reader = Files.newBufferedReader(logPath, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int separator = line.indexOf(SEPARATOR);
+                if (separator <= 0) {
+                    continue;
+                }
+                UrlState state;
+                try {
+                    state = UrlState.valueOf(line.substring(0, separator));
+                } catch (IllegalArgumentException e) {
+                    // 进程中断时可能留下写了一半的行
+                    continue;
+                }
+                records++;
+                action.accept(state, line.substring(separator + 1));
+            }
+        }
+        return records;
+    }
+
+    private int insert(long fingerprint, UrlState state) {
+        try {
+            return index.insert(fingerprint, state);
+        } catch (IOException e) {
+            throw new IllegalStateException("扩容URL边界索引失败：" + logPath, e);
+        }
+    }
+
+    private void append(String url, UrlState state) {
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.write(state.name());
+            writer.write(SEPARATOR);
+            writer.write(url);
+            writer.write('\n');
+            // 交给操作系统即可，进程崩溃时不会丢失，断电时最多少记录几条，下次运行会重新处理
+            writer.flush();
+        } catch (IOException e) {
+            throw new IllegalStateException("写入URL边界日志失败：" + logPath, e);
+        }
+    }
+
+    @FunctionalInterface
+    private interface RecordAction {
+        void accept(UrlState state, String url) throws IOException;
+    }
+}
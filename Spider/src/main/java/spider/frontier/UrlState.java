@@ -0,0 +1,25 @@
+package spider.frontier;
+
+/**
+ * 链接在URL边界中的状态
+ *
+ * @author Gloduck
+ */
+public enum UrlState {
+    /**
+     * 已经发现，还没有解析出下载信息
+     */
+    PENDING,
+    /**
+     * 已经解析出下载信息，还没有下载完成
+     */
+    RESOLVED,
+    /**
+     * 已经下载完成，之后发现时直接跳过
+     */
+    DONE,
+    /**
+     * 重试后依然失败，下一次运行时会重新尝试
+     */
+    FAILED
+}
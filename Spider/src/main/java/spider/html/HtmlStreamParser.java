@@ -0,0 +1,412 @@
+package spider.html;
+
+import org.jsoup.parser.Parser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * 流式HTML解析，边读取边按标签切分，不建立DOM，只把匹配选择器的元素交给回调。
+ * 回调返回false后立即停止读取，剩余的内容不会再从网络上读取。
+ * 匹配元素的文本收集到对应的结束标签或者父元素的结束标签为止，li、p、td这类可以省略结束标签的元素遇到同名的开始标签时也会结束
+ *
+ * @author Gloduck
+ */
+public class HtmlStreamParser {
+    /**
+     * 每个元素收集的文本长度上限
+     */
+    private static final int MAX_TEXT_LENGTH = 64 * 1024;
+    private static final Set<String> VOID_ELEMENTS = new HashSet<>(Arrays.asList(
+            "area", "base", "br", "col", "embed", "hr", "img", "input", "link", "meta", "param", "source", "track", "wbr"));
+    private static final Set<String> OPTIONAL_END_ELEMENTS = new HashSet<>(Arrays.asList(
+            "li", "p", "option", "td", "th", "tr", "dt", "dd"));
+    /**
+     * 内容不是HTML的元素，直接跳到结束标签
+     */
+    private static final Set<String> RAW_TEXT_ELEMENTS = new HashSet<>(Arrays.asList("script", "style"));
+    private final Reader reader;
+    private final TagSelector selector;
+    private final Predicate<HtmlTag> visitor;
+    private final char[] buffer = new char[8192];
+    private int position;
+    private int limit;
+    private final List<Capture> captures = new ArrayList<>();
+    private final StringBuilder scratch = new StringBuilder();
+    private boolean stopped;
+
+    private HtmlStreamParser(Reader reader, TagSelector selector, Predicate<HtmlTag> visitor) {
+        this.reader = reader;
+        this.selector = selector;
+        this.visitor = visitor;
+    }
+
+    /**
+     * 解析输入流，不会关闭输入流
+     *
+     * @param in       输入流
+     * @param charset  编码
+     * @param selector 选择器
+     * @param visitor  回调，返回false时停止解析
+     * @return 是否因为回调返回false而提前停止
+     * @throws IOException 读取失败
+     */
+    public static boolean parse(InputStream in, Charset charset, TagSelector selector, Predicate<HtmlTag> visitor) throws IOException {
+        return parse(new InputStreamReader(in, charset), selector, visitor);
+    }
+
+    /**
+     * 解析字符流，不会关闭字符流
+     *
+     * @param reader   字符流
+     * @param selector 选择器
+     * @param visitor  回调，返回false时停止解析
+     * @return 是否因为回调返回false而提前停止
+     * @throws IOException 读取失败
+     */
+    public static boolean parse(Reader reader, TagSelector selector, Predicate<HtmlTag> visitor) throws IOException {
+        HtmlStreamParser parser = new HtmlStreamParser(reader, selector, visitor);
+        parser.run();
+        return parser.stopped;
+    }
+
+    private void run() throws IOException {
+        int c;
+        while (!stopped && (c = read()) != -1) {
+            if (c != '<') {
+                text((char) c);
+                continue;
+            }
+            int next = peek();
+            if (next == '!') {
+                read();
+                if (consume("--")) {
+                    skipPast("-->");
+                } else {
+                    skipPast(">");
+                }
+            } else if (next == '?') {
+                skipPast(">");
+            } else if (next == '/') {
+                read();
+                String name = readName();
+                skipPast(">");
+                if (!name.isEmpty()) {
+                    endTag(name);
+                }
+            } else if (next != -1 && Character.isLetter(next)) {
+                startTag();
+            } else {
+                text('<');
+            }
+        }
+        // 文档结束时没有闭合的元素也要交给回调
+        while (!stopped && !captures.isEmpty()) {
+            emit(captures.remove(0));
+        }
+    }
+
+    private void startTag() throws IOException {
+        String name = readName();
+        Map<String, String> attributes = new HashMap<>();
+        boolean selfClosing = false;
+        int c;
+        while ((c = skipWhitespace()) != -1) {
+            if (c == '>') {
+                read();
+                break;
+            }
+            if (c == '/') {
+                read();
+                selfClosing = peek() == '>';
+                continue;
+            }
+            String attribute = readAttributeName();
+            if (attribute.isEmpty()) {
+                read();
+                continue;
+            }
+            String value = "";
+            if (skipWhitespace() == '=') {
+                read();
+                value = readAttributeValue();
+            }
+            attributes.putIfAbsent(attribute, value);
+        }
+        boolean isVoid = selfClosing || VOID_ELEMENTS.contains(name);
+        boolean rawText = RAW_TEXT_ELEMENTS.contains(name);
+        // 标签之间的文本不能直接连在一起
+        text(' ');
+        // script和style的结束标签在跳过内容时已经读掉，不计入打开的子元素
+        if (!isVoid && !rawText) {
+            openElement(name);
+        }
+        if (rawText) {
+            if (selector.matches(name, attributes)) {
+                emit(new Capture(name, attributes));
+            }
+            skipRawText(name);
+            return;
+        }
+        if (!selector.matches(name, attributes)) {
+            return;
+        }
+        Capture capture = new Capture(name, attributes);
+        if (isVoid) {
+            emit(capture);
+        } else {
+            captures.add(capture);
+        }
+    }
+
+    /**
+     * 可以省略结束标签的元素遇到同名的开始标签时，结束没有子元素的同名元素；
+     * 最内层打开的子元素与新元素同名时，新元素代替它，其他情况记为新打开的子元素
+     */
+    private void openElement(String name) {
+        boolean optionalEnd = OPTIONAL_END_ELEMENTS.contains(name);
+        List<Capture> finished = null;
+        Iterator<Capture> iterator = captures.iterator();
+        while (iterator.hasNext()) {
+            Capture capture = iterator.next();
+            if (optionalEnd && capture.open.isEmpty() && capture.name.equals(name)) {
+                iterator.remove();
+                if (finished == null) {
+                    finished = new ArrayList<>(1);
+                }
+                finished.add(capture);
+            } else if (!optionalEnd || capture.open.isEmpty() || !capture.open.get(capture.open.size() - 1).equals(name)) {
+                capture.open.add(name);
+            }
+        }
+        emitAll(finished);
+    }
+
+    /**
+     * 结束标签对应打开的子元素时，结束该子元素以及其中省略了结束标签的元素；
+     * 不对应任何子元素时，结束标签属于元素自身或者它的父元素，元素都要结束
+     */
+    private void endTag(String name) {
+        if (VOID_ELEMENTS.contains(name)) {
+            return;
+        }
+        text(' ');
+        List<Capture> finished = null;
+        Iterator<Capture> iterator = captures.iterator();
+        while (iterator.hasNext()) {
+            Capture capture = iterator.next();
+            int index = capture.open.lastIndexOf(name);
+            if (index >= 0) {
+                capture.open.subList(index, capture.open.size()).clear();
+            } else {
+                iterator.remove();
+                if (finished == null) {
+                    finished = new ArrayList<>(1);
+                }
+                finished.add(capture);
+            }
+        }
+        emitAll(finished);
+    }
+
+    private void emitAll(List<Capture> finished) {
+        if (finished != null) {
+            for (Capture capture : finished) {
+                emit(capture);
+            }
+        }
+    }
+
+    private void text(char c) {
+        for (Capture capture : captures) {
+            capture.append(c);
+        }
+    }
+
+    private void emit(Capture capture) {
+        if (stopped) {
+            return;
+        }
+        String text = capture.text == null ? "" : Parser.unescapeEntities(capture.text.toString().trim(), false);
+        if (!visitor.test(new HtmlTag(capture.name, capture.attributes, text))) {
+            stopped = true;
+        }
+    }
+
+    private void skipRawText(String name) throws IOException {
+        String end = "</" + name;
+        int c;
+        while ((c = read()) != -1) {
+            if (c == '<' && peekIgnoreCase(end.substring(1))) {
+                skipPast(">");
+                return;
+            }
+        }
+    }
+
+    private String readName() throws IOException {
+        scratch.setLength(0);
+        int c;
+        while ((c = peek()) != -1 && !Character.isWhitespace(c) && c != '>' && c != '/') {
+            scratch.append((char) c);
+            read();
+        }
+        return scratch.toString().toLowerCase(Locale.ROOT);
+    }
+
+    private String readAttributeName() throws IOException {
+        scratch.setLength(0);
+        int c;
+        while ((c = peek()) != -1 && !Character.isWhitespace(c) && c != '=' && c != '>' && c != '/') {
+            scratch.append((char) c);
+            read();
+        }
+        return scratch.toString().toLowerCase(Locale.ROOT);
+    }
+
+    private String readAttributeValue() throws IOException {
+        scratch.setLength(0);
+        int quote = skipWhitespace();
+        int c;
+        if (quote == '"' || quote == '\'') {
+            read();
+            while ((c = read()) != -1 && c != quote) {
+                scratch.append((char) c);
+            }
+        } else {
+            while ((c = peek()) != -1 && !Character.isWhitespace(c) && c != '>') {
+                scratch.append((char) c);
+                read();
+            }
+        }
+        return scratch.indexOf("&") >= 0 ? Parser.unescapeEntities(scratch.toString(), true) : scratch.toString();
+    }
+
+    private int skipWhitespace() throws IOException {
+        int c;
+        while ((c = peek()) != -1 && Character.isWhitespace(c)) {
+            read();
+        }
+        return c;
+    }
+
+    private boolean consume(String expected) throws IOException {
+        for (int i = 0; i < expected.length(); i++) {
+            if (!fill(i + 1) || buffer[position + i] != expected.charAt(i)) {
+                return false;
+            }
+        }
+        position += expected.length();
+        return true;
+    }
+
+    private boolean peekIgnoreCase(String expected) throws IOException {
+        for (int i = 0; i < expected.length(); i++) {
+            if (!fill(i + 1) || Character.toLowerCase(buffer[position + i]) != expected.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void skipPast(String terminator) throws IOException {
+        int matched = 0;
+        int c;
+        while ((c = read()) != -1) {
+            if (c == terminator.charAt(matched)) {
+                if (++matched == terminator.length()) {
+                    return;
+                }
+            } else {
+                matched = c == terminator.charAt(0) ? 1 : 0;
+            }
+        }
+    }
+
+    private int read() throws IOException {
+        if (position >= limit && !fill(1)) {
+            return -1;
+        }
+        return buffer[position++];
+    }
+
+    private int peek() throws IOException {
+        if (position >= limit && !fill(1)) {
+            return -1;
+        }
+        return buffer[position];
+    }
+
+    /**
+     * 保证缓冲区中至少有count个未读字符
+     */
+    private boolean fill(int count) throws IOException {
+        if (limit - position >= count) {
+            return true;
+        }
+        if (position > 0) {
+            System.arraycopy(buffer, position, buffer, 0, limit - position);
+            limit -= position;
+            position = 0;
+        }
+        while (limit < count) {
+            int read = reader.read(buffer, limit, buffer.length - limit);
+            if (read == -1) {
+                return false;
+            }
+            limit += read;
+        }
+        return true;
+    }
+
+    private static class Capture {
+        private final String name;
+        private final Map<String, String> attributes;
+        private StringBuilder text;
+        /**
+         * 元素内没有结束的子元素，按打开的顺序排列
+         */
+        private final List<String> open = new ArrayList<>();
+        private boolean lastWhitespace = true;
+
+        private Capture(String name, Map<String, String> attributes) {
+            this.name = name;
+            this.attributes = attributes;
+        }
+
+        private void append(char c) {
+            if (text == null) {
+                if (Character.isWhitespace(c)) {
+                    return;
+                }
+                text = new StringBuilder();
+            }
+            if (text.length() >= MAX_TEXT_LENGTH) {
+                return;
+            }
+            // 合并连续的空白
+            if (Character.isWhitespace(c)) {
+                if (!lastWhitespace) {
+                    text.append(' ');
+                    lastWhitespace = true;
+                }
+                return;
+            }
+            text.append(c);
+            lastWhitespace = false;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package spider.html;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * 流式解析中匹配到的元素，只包含标签名、属性以及元素内的文本，不包含子元素
+ *
+ * @author Gloduck
+ */
+public class HtmlTag {
+    private final String name;
+    private final Map<String, String> attributes;
+    private final String text;
+
+    HtmlTag(String name, Map<String, String> attributes, String text) {
+        this.name = name;
+        this.attributes = attributes;
+        this.text = text;
+    }
+
+    /**
+     * 标签名，小写
+     *
+     * @return 标签名
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 获取属性值，属性名忽略大小写
+     *
+     * @param name 属性名
+     * @return 属性值，不存在时返回null，没有值的属性返回空字符串
+     */
+    public String attr(String name) {
+        return attributes.get(name.toLowerCase());
+    }
+
+    public Map<String, String> getAttributes() {
+        return Collections.unmodifiableMap(attributes);
+    }
+
+    /**
+     * 元素内所有文本节点拼接后的内容，空白已经合并，超过长度上限的部分被丢弃
+     *
+     * @return 文本
+     */
+    public String getText() {
+        return text;
+    }
+
+    @Override
+    public String toString() {
+        return "<" + name + " " + attributes + ">" + text;
+    }
+}
@@ -0,0 +1,178 @@
+package spider.html;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 只针对单个元素的简单选择器，不依赖父元素，所以可以在流式解析中直接判断。
+ * 支持标签名(或*)、.class、#id、[attr]、[attr=value]、[attr^=value]、[attr$=value]、[attr*=value]，
+ * 可以组合使用，多个选择器之间用逗号分隔，满足其中之一即匹配。不支持后代、子元素等组合器
+ *
+ * @author Gloduck
+ */
+public class TagSelector {
+    private final List<Compound> alternatives;
+
+    private TagSelector(List<Compound> alternatives) {
+        this.alternatives = alternatives;
+    }
+
+    /**
+     * 解析选择器
+     *
+     * @param selector 选择器
+     * @return 选择器
+     * @throws IllegalArgumentException 选择器格式错误或者使用了不支持的语法
+     */
+    public static TagSelector parse(String selector) {
+        List<Compound> alternatives = new ArrayList<>();
+        for (String part : selector.split(",", -1)) {
+            alternatives.add(Compound.parse(part.trim(), selector));
+        }
+        return new TagSelector(alternatives);
+    }
+
+    /**
+     * 判断元素是否匹配
+     *
+     * @param name       小写的标签名
+     * @param attributes 属性，属性名小写
+     * @return 是否匹配
+     */
+    public boolean matches(String name, Map<String, String> attributes) {
+        for (Compound compound : alternatives) {
+            if (compound.matches(name, attributes)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static class Compound {
+        private String tag;
+        private final List<Condition> conditions = new ArrayList<>();
+
+        private static Compound parse(String text, String selector) {
+            if (text.isEmpty()) {
+                throw new IllegalArgumentException("选择器格式错误：" + selector);
+            }
+            Compound compound = new Compound();
+            int i = 0;
+            int start = i;
+            while (i < text.length() && isNameChar(text.charAt(i))) {
+                i++;
+            }
+            if (i > start) {
+                compound.tag = text.substring(start, i).toLowerCase(Locale.ROOT);
+            } else if (text.charAt(0) == '*') {
+                i++;
+            }
+            while (i < text.length()) {
+                char c = text.charAt(i);
+                if (c == '.' || c == '#') {
+                    start = ++i;
+                    while (i < text.length() && isNameChar(text.charAt(i))) {
+                        i++;
+                    }
+                    if (i == start) {
+                        throw new IllegalArgumentException("选择器格式错误：" + selector);
+                    }
+                    String value = text.substring(start, i);
+                    compound.conditions.add(c == '.' ? new Condition("class", '~', value) : new Condition("id", '=', value));
+                } else if (c == '[') {
+                    int end = text.indexOf(']', i);
+                    if (end < 0) {
+                        throw new IllegalArgumentException("选择器格式错误：" + selector);
+                    }
+                    compound.conditions.add(Condition.parse(text.substring(i + 1, end), selector));
+                    i = end + 1;
+                } else {
+                    throw new IllegalArgumentException("不支持的选择器语法：" + selector);
+                }
+            }
+            return compound;
+        }
+
+        private boolean matches(String name, Map<String, String> attributes) {
+            if (tag != null && !tag.equals(name)) {
+                return false;
+            }
+            for (Condition condition : conditions) {
+                if (!condition.matches(attributes.get(condition.attribute))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static boolean isNameChar(char c) {
+            return Character.isLetterOrDigit(c) || c == '-' || c == '_';
+        }
+    }
+
+    private static class Condition {
+        private final String attribute;
+        /**
+         * 0表示只要求属性存在，~表示空白分隔的列表中包含该值
+         */
+        private final char operator;
+        private final String value;
+
+        private Condition(String attribute, char operator, String value) {
+            this.attribute = attribute.toLowerCase(Locale.ROOT);
+            this.operator = operator;
+            this.value = value;
+        }
+
+        private static Condition parse(String text, String selector) {
+            int eq = text.indexOf('=');
+            if (eq < 0) {
+                return new Condition(text.trim(), (char) 0, null);
+            }
+            char operator = '=';
+            int nameEnd = eq;
+            if (eq > 0 && "^$*~".indexOf(text.charAt(eq - 1)) >= 0) {
+                operator = text.charAt(eq - 1);
+                nameEnd = eq - 1;
+            }
+            String name = text.substring(0, nameEnd).trim();
+            String value = text.substring(eq + 1).trim();
+            if (value.length() >= 2 && (value.charAt(0) == '"' || value.charAt(0) == '\'') && value.charAt(value.length() - 1) == value.charAt(0)) {
+                value = value.substring(1, value.length() - 1);
+            }
+            if (name.isEmpty()) {
+                throw new IllegalArgumentException("选择器格式错误：" + selector);
+            }
+            return new Condition(name, operator, value);
+        }
+
+        private boolean matches(String actual) {
+            if (actual == null) {
+                return false;
+            }
+            switch (operator) {
+                case 0:
+                    return true;
+                case '=':
+                    return actual.equals(value);
+                case '^':
+                    return actual.startsWith(value);
+                case '$':
+                    return actual.endsWith(value);
+                case '*':
+                    return actual.contains(value);
+                case '~':
+                    for (String token : actual.split("\\s+")) {
+                        if (token.equals(value)) {
+                            return true;
+                        }
+                    }
+                    return false;
+                default:
+                    return false;
+            }
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package spider.http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * HTTP响应，关闭时归还连接
+ *
+ * @author Gloduck
+ */
+public class HttpResult implements Closeable {
+    private final int status;
+    private final Map<String, List<String>> headers;
+    private final InputStream body;
+    private final Closeable onClose;
+
+    public HttpResult(int status, Map<String, List<String>> headers, InputStream body, Closeable onClose) {
+        this.status = status;
+        this.headers = headers;
+        this.body = body;
+        this.onClose = onClose;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public Map<String, List<String>> getHeaders() {
+        return headers;
+    }
+
+    public InputStream getBody() {
+        return body;
+    }
+
+    /**
+     * 获取第一个同名响应头，忽略大小写
+     *
+     * @param name 响应头名称
+     * @return 响应头的值，不存在时返回null
+     */
+    public String header(String name) {
+        for (Map.Entry<String, List<String>> entry : headers.entrySet()) {
+            if (entry.getKey() != null && entry.getKey().equalsIgnoreCase(name) && !entry.getValue().isEmpty()) {
+                return entry.getValue().get(0);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 响应体长度，未知时返回-1
+     *
+     * @return 长度
+     */
+    public long contentLength() {
+        String value = header("Content-Length");
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * 按Content-Encoding解压响应体，支持gzip和deflate，其他编码原样返回
+     *
+     * @return 解压后的响应体
+     * @throws IOException 出现的异常
+     */
+    public InputStream decodedBody() throws IOException {
+        String encoding = header("Content-Encoding");
+        if (encoding == null) {
+            return body;
+        }
+        switch (encoding.trim().toLowerCase(Locale.ROOT)) {
+            case "gzip":
+            case "x-gzip":
+                return new GZIPInputStream(body);
+            case "deflate":
+                return new InflaterInputStream(body);
+            default:
+                return body;
+        }
+    }
+
+    /**
+     * 读取并解压整个响应体
+     *
+     * @return 响应体
+     * @throws IOException 出现的异常
+     */
+    public byte[] bodyAsBytes() throws IOException {
+        InputStream in = decodedBody();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * 按Content-Type中的编码读取整个响应体，没有指定时使用UTF-8
+     *
+     * @return 响应体
+     * @throws IOException 出现的异常
+     */
+    public String bodyAsString() throws IOException {
+        return new String(bodyAsBytes(), charsetOf(header("Content-Type")));
+    }
+
+    /**
+     * 解析Content-Type中的编码
+     *
+     * @param contentType Content-Type，可以为null
+     * @return 编码，没有指定或者不支持时返回UTF-8
+     */
+    public static Charset charsetOf(String contentType) {
+        if (contentType != null) {
+            for (String part : contentType.split(";")) {
+                String trimmed = part.trim();
+                if (trimmed.toLowerCase(Locale.ROOT).startsWith("charset=")) {
+                    try {
+                        return Charset.forName(trimmed.substring(8).replace("\"", ""));
+                    } catch (IllegalArgumentException ignored) {
+                        break;
+                    }
+                }
+            }
+        }
+        return StandardCharsets.UTF_8;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            body.close();
+        } finally {
+            onClose.close();
+        }
+    }
+}
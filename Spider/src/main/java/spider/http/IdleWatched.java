@@ -0,0 +1,16 @@
+package spider.http;
+
+/**
+ * 可以被巡检线程检查是否空闲超时的传输
+ *
+ * @author Gloduck
+ */
+public interface IdleWatched {
+
+    /**
+     * 超过超时时间没有收到数据时中止传输
+     *
+     * @return 是否已经中止，中止后不再被检查
+     */
+    boolean closeIfIdle();
+}
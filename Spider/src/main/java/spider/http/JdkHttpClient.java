@@ -0,0 +1,182 @@
+package spider.http;
+
+import cn.hutool.core.util.NumberUtil;
+import org.jsoup.internal.StringUtil;
+import spider.config.SpiderConfig;
+import spider.limit.HostLimiter;
+import spider.limit.HostSemaphores;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.ProxySelector;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 基于java.net.http.HttpClient的实现，客户端内部按host维护keep-alive连接池，https下通过ALPN协商HTTP/2。
+ * 代理、UA和Cookie只在这里配置一次。HttpClient读取响应体没有超时，由巡检线程关闭超过timeoutMilliseconds没有数据的响应
+ *
+ * @author Gloduck
+ */
+public class JdkHttpClient implements SpiderHttpClient {
+    private final SpiderConfig config;
+    private final HostLimiter limiter;
+    private final HttpClient client;
+    private final Set<IdleWatched> watched = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService watchdog;
+
+    public JdkHttpClient(SpiderConfig config, HostLimiter limiter) {
+        this.config = config;
+        this.limiter = limiter;
+        HttpClient.Builder builder = HttpClient.newBuilder()
+                // 默认HTTP/1.1，每个分段使用单独的连接
+                .version(config.getHttpVersion() == null ? HttpClient.Version.HTTP_1_1 : config.getHttpVersion())
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .connectTimeout(Duration.ofMillis(config.getTimeoutMilliseconds()));
+        InetSocketAddress proxy = proxyAddress(config);
+        if (proxy != null) {
+            builder.proxy(ProxySelector.of(proxy));
+        }
+        this.client = builder.build();
+        this.watchdog = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "spider-http-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(100, config.getTimeoutMilliseconds() / 4);
+        watchdog.scheduleWithFixedDelay(() -> watched.removeIf(IdleWatched::closeIfIdle), period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 解析配置中的代理地址，格式为host:port，未配置或者格式错误时返回null
+     *
+     * @param config 配置
+     * @return 代理地址
+     */
+    public static InetSocketAddress proxyAddress(SpiderConfig config) {
+        String proxyConfig = config.getProxyHostAndPort();
+        if (StringUtil.isBlank(proxyConfig)) {
+            return null;
+        }
+        String[] split = proxyConfig.split(":");
+        if (split.length == 2 && NumberUtil.isInteger(split[1])) {
+            return new InetSocketAddress(split[0], Integer.parseInt(split[1]));
+        }
+        return null;
+    }
+
+    @Override
+    public HttpResult execute(String method, String url, Map<String, String> headers) throws IOException, InterruptedException {
+        HostSemaphores.Permit permit = limiter.acquireConnection(url);
+        try {
+            long sentNanos = System.nanoTime();
+            HttpResponse<InputStream> response;
+            try {
+                response = client.send(buildRequest(method, url, headers), HttpResponse.BodyHandlers.ofInputStream());
+            } catch (IOException e) {
+                limiter.onFailure(url);
+                throw e;
+            }
+            limiter.onResponse(url, response.statusCode(), System.nanoTime() - sentNanos);
+            ReadTimeoutInputStream body = new ReadTimeoutInputStream(response.body(), config.getTimeoutMilliseconds());
+            watched.add(body);
+            return new HttpResult(response.statusCode(), response.headers().map(), body, () -> {
+                watched.remove(body);
+                permit.close();
+            });
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            permit.close();
+            throw e;
+        }
+    }
+
+    /**
+     * 异步发送请求，调用线程只在等待host连接许可时阻塞，许可在响应体处理完成后归还
+     *
+     * @param method  请求方法
+     * @param url     请求链接
+     * @param headers 额外的请求头
+     * @param handler 响应体处理器
+     * @param <T>     响应体类型
+     * @return 响应
+     * @throws InterruptedException 等待连接许可时被中断
+     */
+    public <T> CompletableFuture<HttpResponse<T>> sendAsync(String method, String url, Map<String, String> headers, HttpResponse.BodyHandler<T> handler) throws InterruptedException {
+        HostSemaphores.Permit permit = limiter.acquireConnection(url);
+        try {
+            long sentNanos = System.nanoTime();
+            AtomicBoolean responded = new AtomicBoolean();
+            HttpResponse.BodyHandler<T> observed = responseInfo -> {
+                responded.set(true);
+                limiter.onResponse(url, responseInfo.statusCode(), System.nanoTime() - sentNanos);
+                return handler.apply(responseInfo);
+            };
+            CompletableFuture<HttpResponse<T>> future = client.sendAsync(buildRequest(method, url, headers), observed);
+            future.whenComplete((response, e) -> {
+                if (e != null && !responded.get()) {
+                    limiter.onFailure(url);
+                }
+                permit.close();
+            });
+            return future;
+        } catch (RuntimeException e) {
+            permit.close();
+            throw e;
+        }
+    }
+
+    /**
+     * 由巡检线程定期检查传输是否空闲超时
+     *
+     * @param transfer 传输
+     */
+    public void watch(IdleWatched transfer) {
+        watched.add(transfer);
+    }
+
+    /**
+     * 传输结束后不再检查
+     *
+     * @param transfer 传输
+     */
+    public void unwatch(IdleWatched transfer) {
+        watched.remove(transfer);
+    }
+
+    /**
+     * 停止巡检线程，调用前所有的请求都应该已经结束
+     */
+    @Override
+    public void close() {
+        watchdog.shutdownNow();
+        watched.clear();
+    }
+
+    private HttpRequest buildRequest(String method, String url, Map<String, String> headers) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(url))
+                .timeout(Duration.ofMillis(config.getTimeoutMilliseconds()))
+                .method(method, HttpRequest.BodyPublishers.noBody());
+        if (!StringUtil.isBlank(config.getUa())) {
+            builder.header("User-Agent", config.getUa());
+        }
+        if (!StringUtil.isBlank(config.getCookie())) {
+            builder.header("Cookie", config.getCookie());
+        }
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            builder.header(header.getKey(), header.getValue());
+        }
+        return builder.build();
+    }
+}
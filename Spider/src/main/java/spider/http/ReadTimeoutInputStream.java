@@ -0,0 +1,79 @@
+package spider.http;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.SocketTimeoutException;
+
+/**
+ * 记录当前这次读取开始等待的时间，由{@link JdkHttpClient}的巡检线程关闭等待过久的流，
+ * 以此弥补java.net.http.HttpClient读取响应体时没有超时的问题。
+ * 只计算阻塞在读取中的时间，调用方在两次读取之间限速、等待缓冲区或者计算摘要的时间不算作空闲
+ *
+ * @author Gloduck
+ */
+class ReadTimeoutInputStream extends FilterInputStream implements IdleWatched {
+    private final long timeoutMillis;
+    /**
+     * 当前这次读取开始的时间，没有在读取时为-1
+     */
+    private volatile long readStartMillis = -1;
+    private volatile boolean timedOut;
+
+    ReadTimeoutInputStream(InputStream in, long timeoutMillis) {
+        super(in);
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    @Override
+    public int read() throws IOException {
+        readStartMillis = System.currentTimeMillis();
+        try {
+            return guard(super.read());
+        } finally {
+            readStartMillis = -1;
+        }
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        readStartMillis = System.currentTimeMillis();
+        try {
+            return guard(super.read(b, off, len));
+        } finally {
+            readStartMillis = -1;
+        }
+    }
+
+    /**
+     * 一次读取等待超过超时时间时关闭流，阻塞中的读取会因此返回
+     *
+     * @return 是否已经超时关闭
+     */
+    @Override
+    public boolean closeIfIdle() {
+        long started = readStartMillis;
+        if (started < 0 || System.currentTimeMillis() - started < timeoutMillis) {
+            return false;
+        }
+        timedOut = true;
+        try {
+            in.close();
+        } catch (IOException ignored) {
+            // 只是为了唤醒阻塞的读取，关闭失败也没有影响
+        }
+        return true;
+    }
+
+    private int guard(int read) throws SocketTimeoutException {
+        if (timedOut) {
+            throw new SocketTimeoutException("读取响应超时");
+        }
+        return read;
+    }
+
+    @Override
+    public int read(byte[] b) throws IOException {
+        return read(b, 0, b.length);
+    }
+}
@@ -0,0 +1,32 @@
+package spider.http;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * 爬虫使用的HTTP客户端，列表解析、下载信息解析和文件传输共用同一个实例，以便复用连接。每次运行结束时关闭，下次使用时重新创建
+ *
+ * @author Gloduck
+ */
+public interface SpiderHttpClient extends Closeable {
+
+    /**
+     * 发送请求，响应头返回后即返回，响应体需要调用方读取并关闭
+     *
+     * @param method  请求方法
+     * @param url     请求链接
+     * @param headers 额外的请求头，UA、Cookie等公共请求头由客户端统一添加
+     * @return 响应
+     * @throws IOException          出现的异常
+     * @throws InterruptedException 等待连接时被中断
+     */
+    HttpResult execute(String method, String url, Map<String, String> headers) throws IOException, InterruptedException;
+
+    /**
+     * 释放客户端占用的线程等资源，默认没有需要释放的资源
+     */
+    @Override
+    default void close() {
+    }
+}
@@ -0,0 +1,116 @@
+package spider.limit;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 上限可以在运行时调整的许可，同时记录一个统计周期内的传输字节数、响应数、错误数和响应延迟，
+ * 供{@link ConcurrencyController}调整上限
+ *
+ * @author Gloduck
+ */
+class AdaptiveLimit {
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder responses = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder latencyNanos = new LongAdder();
+    private int limit;
+    private int inUse;
+    /**
+     * 周期内是否出现过许可用尽，没有用尽说明并发数不是瓶颈，不需要增加
+     */
+    private boolean saturated;
+    /**
+     * 以下字段只在调整线程上读写
+     */
+    private double lastThroughput;
+    private double minLatencyNanos = Double.MAX_VALUE;
+    private boolean lastIncreased;
+
+    AdaptiveLimit(int limit) {
+        this.limit = limit;
+    }
+
+    synchronized void acquire() throws InterruptedException {
+        while (inUse >= limit) {
+            saturated = true;
+            wait();
+        }
+        if (++inUse >= limit) {
+            saturated = true;
+        }
+    }
+
+    synchronized void release() {
+        inUse--;
+        notifyAll();
+    }
+
+    synchronized int getLimit() {
+        return limit;
+    }
+
+    synchronized void setLimit(int limit) {
+        this.limit = limit;
+        notifyAll();
+    }
+
+    void recordBytes(long count) {
+        bytes.add(count);
+    }
+
+    void recordResponse(long nanos) {
+        responses.increment();
+        latencyNanos.add(nanos);
+    }
+
+    void recordError() {
+        errors.increment();
+    }
+
+    /**
+     * 根据上一个周期的统计计算新的上限，并开始下一个周期。
+     * 错误率超过阈值时按比例减小；许可用尽时，吞吐量不再增加而延迟明显上升说明已经越过拐点，减一，否则加一
+     *
+     * @param intervalMillis 周期长度
+     * @param floor          下限
+     * @param ceiling        上限
+     * @return 新的上限
+     */
+    int adjust(long intervalMillis, int floor, int ceiling) {
+        long windowBytes = bytes.sumThenReset();
+        long windowResponses = responses.sumThenReset();
+        long windowErrors = errors.sumThenReset();
+        long windowLatency = latencyNanos.sumThenReset();
+        boolean windowSaturated;
+        int current;
+        synchronized (this) {
+            windowSaturated = saturated || inUse >= limit;
+            saturated = false;
+            current = limit;
+        }
+        int next = current;
+        double throughput = windowBytes * 1000.0 / intervalMillis;
+        long requests = windowResponses + windowErrors;
+        if (requests > 0 && windowErrors >= requests * ConcurrencyController.ERROR_RATE_THRESHOLD) {
+            next = (int) (current * ConcurrencyController.DECREASE_RATIO);
+            lastIncreased = false;
+        } else if (windowSaturated) {
+            double latency = windowResponses > 0 ? (double) windowLatency / windowResponses : 0;
+            if (latency > 0) {
+                minLatencyNanos = Math.min(minLatencyNanos, latency);
+            }
+            boolean pastKnee = lastIncreased && throughput < lastThroughput * ConcurrencyController.MIN_GAIN
+                    && latency > minLatencyNanos * ConcurrencyController.LATENCY_TOLERANCE;
+            next = pastKnee ? current - 1 : current + 1;
+            lastIncreased = !pastKnee;
+        } else {
+            lastIncreased = false;
+        }
+        next = Math.max(floor, Math.min(ceiling, next));
+        lastThroughput = throughput;
+        if (next != current) {
+            setLimit(next);
+        }
+        return next;
+    }
+}
@@ -0,0 +1,163 @@
+package spider.limit;
+
+import spider.config.SpiderConfig;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 自适应的并发控制，分别限制全局和每个host同时进行的请求数，并按照加性增、乘性减的方式定期调整上限：
+ * 429、5xx和连接失败的比例超过阈值时按比例减小；许可用尽时尝试加一，增加后吞吐量没有提高并且响应延迟明显上升时减一。
+ * 上限始终在配置的下限和上限之间
+ *
+ * @author Gloduck
+ */
+public class ConcurrencyController {
+    static final double ERROR_RATE_THRESHOLD = 0.05;
+    static final double DECREASE_RATIO = 0.7;
+    /**
+     * 增加并发后吞吐量至少要提高的比例
+     */
+    static final double MIN_GAIN = 1.05;
+    /**
+     * 响应延迟超过观察到的最小延迟的倍数时认为请求开始排队
+     */
+    static final double LATENCY_TOLERANCE = 2.0;
+    private final int floor;
+    private final int ceiling;
+    private final int hostCeiling;
+    private final long intervalMillis;
+    private final int initialLimit;
+    private final AdaptiveLimit global;
+    private final ConcurrentMap<String, AdaptiveLimit> hosts = new ConcurrentHashMap<>();
+    private ScheduledExecutorService scheduler;
+
+    public ConcurrencyController(SpiderConfig config) {
+        this.floor = config.getAdaptiveMinConcurrency();
+        this.ceiling = config.getAdaptiveMaxConcurrency();
+        this.hostCeiling = config.getMaxConnectionsPerHost() > 0 ? Math.min(ceiling, config.getMaxConnectionsPerHost()) : ceiling;
+        this.intervalMillis = config.getAdaptiveIntervalMillis();
+        // 从固定配置下的并发数开始
+        this.initialLimit = Math.max(floor, Math.min(ceiling, config.getMaxThreadCount()));
+        this.global = new AdaptiveLimit(initialLimit);
+    }
+
+    public synchronized void start() {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "spider-concurrency");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::adjust, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void shutdown() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    /**
+     * 获取host和全局的许可，没有空闲许可时阻塞。先获取host的许可，等待繁忙的host时不占用全局许可，
+     * 其他host的请求不会因此被阻塞
+     *
+     * @param host host
+     * @return 许可，请求结束后需要关闭
+     * @throws InterruptedException 等待时被中断
+     */
+    public HostSemaphores.Permit acquire(String host) throws InterruptedException {
+        AdaptiveLimit hostLimit = hostLimit(host);
+        hostLimit.acquire();
+        try {
+            global.acquire();
+        } catch (InterruptedException e) {
+            hostLimit.release();
+            throw e;
+        }
+        return () -> {
+            hostLimit.release();
+            global.release();
+        };
+    }
+
+    /**
+     * 收到响应头时调用
+     *
+     * @param host         host
+     * @param status       响应码
+     * @param latencyNanos 从发送请求到收到响应头的时间
+     */
+    public void onResponse(String host, int status, long latencyNanos) {
+        AdaptiveLimit hostLimit = hostLimit(host);
+        if (status == 429 || status >= 500) {
+            global.recordError();
+            hostLimit.recordError();
+            return;
+        }
+        global.recordResponse(latencyNanos);
+        hostLimit.recordResponse(latencyNanos);
+    }
+
+    /**
+     * 连接失败或者没有收到响应时调用
+     *
+     * @param host host
+     */
+    public void onFailure(String host) {
+        global.recordError();
+        hostLimit(host).recordError();
+    }
+
+    /**
+     * 传输数据后调用
+     *
+     * @param host  host
+     * @param bytes 字节数
+     */
+    public void onBytes(String host, long bytes) {
+        global.recordBytes(bytes);
+        hostLimit(host).recordBytes(bytes);
+    }
+
+    /**
+     * 当前的全局上限
+     *
+     * @return 上限
+     */
+    public int globalLimit() {
+        return global.getLimit();
+    }
+
+    /**
+     * 当前每个host的上限
+     *
+     * @return host到上限的映射
+     */
+    public Map<String, Integer> hostLimits() {
+        Map<String, Integer> limits = new LinkedHashMap<>();
+        for (Map.Entry<String, AdaptiveLimit> entry : hosts.entrySet()) {
+            limits.put(entry.getKey(), entry.getValue().getLimit());
+        }
+        return limits;
+    }
+
+    private AdaptiveLimit hostLimit(String host) {
+        return hosts.computeIfAbsent(host, key -> new AdaptiveLimit(Math.min(initialLimit, hostCeiling)));
+    }
+
+    private void adjust() {
+        global.adjust(intervalMillis, floor, ceiling);
+        for (AdaptiveLimit hostLimit : hosts.values()) {
+            hostLimit.adjust(intervalMillis, floor, hostCeiling);
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package spider.limit;
+
+import spider.config.SpiderConfig;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 访问限制，包括每个host的最大连接数，以及每个host和全局的请求速率、传输速率。
+ * 开启自适应并发后，全局和每个host同时进行的请求数由{@link ConcurrencyController}根据响应情况调整
+ *
+ * @author Gloduck
+ */
+public class HostLimiter {
+    private final SpiderConfig config;
+    private final HostSemaphores connections;
+    private final TokenBucket globalRequests;
+    private final TokenBucket globalBytes;
+    private final ConcurrentMap<String, TokenBucket> hostRequests = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, TokenBucket> hostBytes = new ConcurrentHashMap<>();
+    private final ConcurrencyController concurrency;
+
+    public HostLimiter(SpiderConfig config) {
+        this.config = config;
+        this.connections = new HostSemaphores(config.getMaxConnectionsPerHost());
+        this.globalRequests = TokenBucket.perSecond(config.getRequestsPerSecond());
+        this.globalBytes = TokenBucket.perSecond(config.getBytesPerSecond());
+        this.concurrency = config.isAdaptiveConcurrency() ? new ConcurrencyController(config) : null;
+    }
+
+    /**
+     * 自适应并发控制，没有开启时为null
+     *
+     * @return 并发控制
+     */
+    public ConcurrencyController getConcurrencyController() {
+        return concurrency;
+    }
+
+    /**
+     * 发起请求前调用，占用一个host连接并消耗一个请求令牌
+     *
+     * @param url 请求链接
+     * @return 连接许可，连接关闭后需要归还
+     * @throws InterruptedException 等待时被中断
+     */
+    public HostSemaphores.Permit acquireConnection(String url) throws InterruptedException {
+        HostSemaphores.Permit permit = connections.acquire(url);
+        try {
+            String host = HostSemaphores.hostOf(url);
+            if (concurrency != null) {
+                HostSemaphores.Permit adaptive;
+                try {
+                    adaptive = concurrency.acquire(host);
+                } catch (InterruptedException e) {
+                    permit.close();
+                    throw e;
+                }
+                HostSemaphores.Permit connection = permit;
+                permit = () -> {
+                    adaptive.close();
+                    connection.close();
+                };
+            }
+            acquire(globalRequests, 1);
+            acquire(hostBucket(hostRequests, host, config.getRequestsPerSecondPerHost()), 1);
+            return permit;
+        } catch (InterruptedException e) {
+            permit.close();
+            throw e;
+        }
+    }
+
+    /**
+     * 传输数据后调用，超过传输速率时阻塞
+     *
+     * @param host  host
+     * @param bytes 本次传输的字节数
+     * @throws InterruptedException 等待时被中断
+     */
+    public void consumeBytes(String host, long bytes) throws InterruptedException {
+        if (concurrency != null) {
+            concurrency.onBytes(host, bytes);
+        }
+        acquire(globalBytes, bytes);
+        acquire(hostBucket(hostBytes, host, config.getBytesPerSecondPerHost()), bytes);
+    }
+
+    /**
+     * 异步传输数据后调用，不阻塞，返回需要暂停读取的时间
+     *
+     * @param host  host
+     * @param bytes 本次传输的字节数
+     * @return 需要等待的纳秒数
+     */
+    public long reserveBytes(String host, long bytes) {
+        if (concurrency != null) {
+            concurrency.onBytes(host, bytes);
+        }
+        return Math.max(reserve(globalBytes, bytes), reserve(hostBucket(hostBytes, host, config.getBytesPerSecondPerHost()), bytes));
+    }
+
+    /**
+     * 收到响应头时调用，用于自适应并发控制
+     *
+     * @param url          请求链接
+     * @param status       响应码
+     * @param latencyNanos 从发送请求到收到响应头的时间
+     */
+    public void onResponse(String url, int status, long latencyNanos) {
+        if (concurrency != null) {
+            concurrency.onResponse(HostSemaphores.hostOf(url), status, latencyNanos);
+        }
+    }
+
+    /**
+     * 请求没有收到响应时调用，用于自适应并发控制
+     *
+     * @param url 请求链接
+     */
+    public void onFailure(String url) {
+        if (concurrency != null) {
+            concurrency.onFailure(HostSemaphores.hostOf(url));
+        }
+    }
+
+    private static long reserve(TokenBucket bucket, long count) {
+        return bucket == null ? 0 : bucket.reserve(count);
+    }
+
+    private TokenBucket hostBucket(ConcurrentMap<String, TokenBucket> buckets, String host, double rate) {
+        if (rate <= 0) {
+            return null;
+        }
+        return buckets.computeIfAbsent(host, key -> TokenBucket.perSecond(rate));
+    }
+
+    private static void acquire(TokenBucket bucket, long count) throws InterruptedException {
+        if (bucket != null) {
+            bucket.acquire(count);
+        }
+    }
+}
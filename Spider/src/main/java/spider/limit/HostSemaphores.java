@@ -0,0 +1,64 @@
+package spider.limit;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+
+/**
+ * 每个host一个信号量，限制同一个host上同时进行的任务数
+ *
+ * @author Gloduck
+ */
+public class HostSemaphores {
+    private static final Permit NO_LIMIT = () -> {
+    };
+    private final int permitsPerHost;
+    private final ConcurrentMap<String, Semaphore> semaphores = new ConcurrentHashMap<>();
+
+    /**
+     * @param permitsPerHost 每个host的许可数，小于等于0时不限制
+     */
+    public HostSemaphores(int permitsPerHost) {
+        this.permitsPerHost = permitsPerHost;
+    }
+
+    /**
+     * 获取url所在host的许可，没有空闲许可时阻塞
+     *
+     * @param url 链接
+     * @return 许可，使用完成后需要关闭
+     * @throws InterruptedException 等待时被中断
+     */
+    public Permit acquire(String url) throws InterruptedException {
+        if (permitsPerHost <= 0) {
+            return NO_LIMIT;
+        }
+        Semaphore semaphore = semaphores.computeIfAbsent(hostOf(url), host -> new Semaphore(permitsPerHost));
+        semaphore.acquire();
+        return semaphore::release;
+    }
+
+    /**
+     * 解析链接的host，链接不合法时返回空字符串
+     *
+     * @param url 链接
+     * @return host
+     */
+    public static String hostOf(String url) {
+        try {
+            return new URL(url).getHost();
+        } catch (MalformedURLException e) {
+            return "";
+        }
+    }
+
+    /**
+     * host许可，关闭时归还
+     */
+    public interface Permit extends AutoCloseable {
+        @Override
+        void close();
+    }
+}
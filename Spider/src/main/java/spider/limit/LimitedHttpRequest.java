@@ -0,0 +1,35 @@
+package spider.limit;
+
+import cn.hutool.http.HttpException;
+import cn.hutool.http.HttpRequest;
+import cn.hutool.http.HttpResponse;
+
+/**
+ * 执行前经过访问限制的请求，同步请求在响应读取完成后归还连接许可
+ *
+ * @author Gloduck
+ */
+public class LimitedHttpRequest extends HttpRequest {
+    private final HostLimiter limiter;
+
+    public LimitedHttpRequest(String url, HostLimiter limiter) {
+        super(url);
+        this.limiter = limiter;
+    }
+
+    @Override
+    public HttpResponse execute(boolean isAsync) {
+        HostSemaphores.Permit permit;
+        try {
+            permit = limiter.acquireConnection(getUrl());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new HttpException(e);
+        }
+        try {
+            return super.execute(isAsync);
+        } finally {
+            permit.close();
+        }
+    }
+}
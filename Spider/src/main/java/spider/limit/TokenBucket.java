@@ -0,0 +1,66 @@
+package spider.limit;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 令牌桶，令牌不足时允许透支，由后续的获取者等待补足，这样大块的获取也能平滑地接近限制速率
+ *
+ * @author Gloduck
+ */
+public class TokenBucket {
+    private final double tokensPerNano;
+    private final double capacity;
+    private double tokens;
+    private long lastRefillNanos;
+
+    /**
+     * @param tokensPerSecond 每秒产生的令牌数
+     * @param capacity        桶的容量，即允许的突发量
+     */
+    public TokenBucket(double tokensPerSecond, double capacity) {
+        this.tokensPerNano = tokensPerSecond / TimeUnit.SECONDS.toNanos(1);
+        this.capacity = capacity;
+        this.tokens = capacity;
+        this.lastRefillNanos = System.nanoTime();
+    }
+
+    /**
+     * 按速率创建令牌桶，突发量为一秒的令牌数，速率小于等于0时返回null表示不限制
+     *
+     * @param tokensPerSecond 每秒产生的令牌数
+     * @return 令牌桶
+     */
+    public static TokenBucket perSecond(double tokensPerSecond) {
+        if (tokensPerSecond <= 0) {
+            return null;
+        }
+        return new TokenBucket(tokensPerSecond, Math.max(1, tokensPerSecond));
+    }
+
+    /**
+     * 获取令牌，令牌不足时阻塞到透支的部分被补足
+     *
+     * @param count 令牌数
+     * @throws InterruptedException 等待时被中断
+     */
+    public void acquire(long count) throws InterruptedException {
+        long waitNanos = reserve(count);
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    /**
+     * 预支令牌但不阻塞，由调用方自行等待返回的时间，供异步传输使用
+     *
+     * @param count 令牌数
+     * @return 需要等待的纳秒数
+     */
+    public synchronized long reserve(long count) {
+        long now = System.nanoTime();
+        tokens = Math.min(capacity, tokens + (now - lastRefillNanos) * tokensPerNano);
+        lastRefillNanos = now;
+        tokens -= count;
+        return tokens >= 0 ? 0 : (long) (-tokens / tokensPerNano);
+    }
+}
@@ -0,0 +1,18 @@
+package spider.metrics;
+
+import lombok.Data;
+
+/**
+ * 延迟直方图的快照
+ *
+ * @author Gloduck
+ */
+@Data
+public class HistogramSnapshot {
+    private long count;
+    private double meanMillis;
+    private double p50Millis;
+    private double p90Millis;
+    private double p99Millis;
+    private double maxMillis;
+}
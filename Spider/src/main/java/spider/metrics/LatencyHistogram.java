@@ -0,0 +1,98 @@
+package spider.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 对数线性分桶的延迟直方图，以微秒为单位记录。每个2的幂次区间再均分为32个桶，相对误差约3%，
+ * 记录时只对一个桶做原子累加，不加锁也不分配对象，可以在传输线程上一直开启
+ *
+ * @author Gloduck
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    /**
+     * 最大可以记录约2^40微秒，即12天，更大的值计入最后一个桶
+     */
+    private static final int MAX_EXPONENT = 40;
+    private static final int BUCKET_COUNT = (MAX_EXPONENT - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT;
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sumMicros = new LongAdder();
+
+    /**
+     * 记录一次耗时
+     *
+     * @param nanos 纳秒
+     */
+    public void recordNanos(long nanos) {
+        long micros = Math.max(0, TimeUnit.NANOSECONDS.toMicros(nanos));
+        buckets.incrementAndGet(indexOf(micros));
+        count.increment();
+        sumMicros.add(micros);
+    }
+
+    /**
+     * 生成快照，采样期间并发写入的数据可能只计入一部分
+     *
+     * @return 快照
+     */
+    public HistogramSnapshot snapshot() {
+        long[] counts = new long[BUCKET_COUNT];
+        long total = 0;
+        int maxIndex = -1;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] = buckets.get(i);
+            total += counts[i];
+            if (counts[i] > 0) {
+                maxIndex = i;
+            }
+        }
+        HistogramSnapshot snapshot = new HistogramSnapshot();
+        snapshot.setCount(total);
+        if (total == 0) {
+            return snapshot;
+        }
+        snapshot.setMeanMillis(sumMicros.sum() / 1000.0 / Math.max(1, count.sum()));
+        snapshot.setP50Millis(percentile(counts, total, 0.50));
+        snapshot.setP90Millis(percentile(counts, total, 0.90));
+        snapshot.setP99Millis(percentile(counts, total, 0.99));
+        snapshot.setMaxMillis(upperBound(maxIndex) / 1000.0);
+        return snapshot;
+    }
+
+    private static double percentile(long[] counts, long total, double quantile) {
+        long rank = (long) Math.ceil(total * quantile);
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return upperBound(i) / 1000.0;
+            }
+        }
+        return upperBound(counts.length - 1) / 1000.0;
+    }
+
+    static int indexOf(long micros) {
+        if (micros < 2 * SUB_BUCKET_COUNT) {
+            return (int) micros;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(micros) - SUB_BUCKET_BITS;
+        int index = (shift + 1) * SUB_BUCKET_COUNT + (int) ((micros >>> shift) - SUB_BUCKET_COUNT);
+        return Math.min(index, BUCKET_COUNT - 1);
+    }
+
+    /**
+     * 桶内最大的值，作为该桶的代表值，保证百分位数不会被低估
+     */
+    static long upperBound(int index) {
+        if (index < 2 * SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = index / SUB_BUCKET_COUNT - 1;
+        long sub = index % SUB_BUCKET_COUNT + SUB_BUCKET_COUNT;
+        return ((sub + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,85 @@
+package spider.metrics;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 定期输出指标快照，指定了文件时每次覆盖写入，否则输出到标准输出
+ *
+ * @author Gloduck
+ */
+public class MetricsDumper {
+    private final SpiderMetrics metrics;
+    private final long intervalMillis;
+    private final MetricsFormat format;
+    private final Path path;
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * @param metrics        指标
+     * @param intervalMillis 输出间隔
+     * @param format         输出格式
+     * @param path           输出文件，为null时输出到标准输出
+     */
+    public MetricsDumper(SpiderMetrics metrics, long intervalMillis, MetricsFormat format, Path path) {
+        this.metrics = metrics;
+        this.intervalMillis = intervalMillis;
+        this.format = format;
+        this.path = path;
+    }
+
+    public synchronized void start() {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "spider-metrics");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleAtFixedRate(this::dumpQuietly, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 停止定期输出，并输出最后一次快照
+     */
+    public synchronized void shutdown() {
+        if (scheduler == null) {
+            return;
+        }
+        scheduler.shutdownNow();
+        scheduler = null;
+        dumpQuietly();
+    }
+
+    /**
+     * 输出一次快照
+     *
+     * @throws IOException 写入文件失败
+     */
+    public void dump() throws IOException {
+        String content = format == MetricsFormat.JSON ? metrics.getSnapshotJson() + System.lineSeparator() : metrics.getSnapshotText();
+        if (path == null) {
+            System.out.print(content);
+            return;
+        }
+        // 先写临时文件再替换，读取方不会看到写了一半的内容
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        Files.write(temp, content.getBytes(StandardCharsets.UTF_8));
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void dumpQuietly() {
+        try {
+            dump();
+        } catch (IOException | RuntimeException ignored) {
+            // 输出失败不能影响下载，也不能让定时任务停止
+        }
+    }
+}
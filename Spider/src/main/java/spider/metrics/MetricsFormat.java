@@ -0,0 +1,11 @@
+package spider.metrics;
+
+/**
+ * 定期输出指标时使用的格式
+ *
+ * @author Gloduck
+ */
+public enum MetricsFormat {
+    TEXT,
+    JSON
+}
@@ -0,0 +1,47 @@
+package spider.metrics;
+
+import lombok.Data;
+import spider.buffer.BufferPoolStats;
+import spider.engine.StageStats;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 某一时刻所有指标的快照
+ *
+ * @author Gloduck
+ */
+@Data
+public class MetricsSnapshot {
+    private long timestampMillis;
+    private long listsParsed;
+    private long listParseFailures;
+    private long urlsResolved;
+    private long resolveFailures;
+    private long resolveCacheHits;
+    private long resolveCacheMisses;
+    /**
+     * 服务器返回304，使用缓存内容的页面数
+     */
+    private long pageCacheHits;
+    private long pageCacheMisses;
+    private long downloadsSucceeded;
+    private long downloadsFailed;
+    private long retries;
+    private long bytesTransferred;
+    private double bytesPerSecond;
+    private HistogramSnapshot listParse;
+    private HistogramSnapshot resolve;
+    private HistogramSnapshot timeToFirstByte;
+    private HistogramSnapshot transfer;
+    /**
+     * 各个主机最近一段时间的下载速度
+     */
+    private Map<String, Double> hostBytesPerSecond;
+    /**
+     * 各个阶段的队列深度和活跃线程数
+     */
+    private List<StageStats> stages;
+    private BufferPoolStats bufferPool;
+}
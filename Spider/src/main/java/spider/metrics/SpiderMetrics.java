@@ -0,0 +1,234 @@
+package spider.metrics;
+
+import cn.hutool.json.JSONUtil;
+import spider.buffer.BufferPoolStats;
+import spider.engine.StageStats;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * 爬虫运行时的指标，计数器使用LongAdder，延迟使用{@link LatencyHistogram}，
+ * 记录时都不加锁，开销低到可以在生产环境一直开启。队列深度和缓冲池等状态在生成快照时再读取
+ *
+ * @author Gloduck
+ */
+public class SpiderMetrics implements SpiderMetricsMXBean {
+    /**
+     * 速度按照至少这么长的时间窗口计算，避免频繁采样时数值抖动
+     */
+    private static final long RATE_WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private final LongAdder listsParsed = new LongAdder();
+    private final LongAdder listParseFailures = new LongAdder();
+    private final LongAdder urlsResolved = new LongAdder();
+    private final LongAdder resolveFailures = new LongAdder();
+    private final LongAdder resolveCacheHits = new LongAdder();
+    private final LongAdder resolveCacheMisses = new LongAdder();
+    private final LongAdder pageCacheHits = new LongAdder();
+    private final LongAdder pageCacheMisses = new LongAdder();
+    private final LongAdder downloadsSucceeded = new LongAdder();
+    private final LongAdder downloadsFailed = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LatencyHistogram listParse = new LatencyHistogram();
+    private final LatencyHistogram resolve = new LatencyHistogram();
+    private final LatencyHistogram timeToFirstByte = new LatencyHistogram();
+    private final LatencyHistogram transfer = new LatencyHistogram();
+    private final ConcurrentMap<String, LongAdder> hostBytes = new ConcurrentHashMap<>();
+    private final Supplier<List<StageStats>> stageStats;
+    private final Supplier<BufferPoolStats> bufferPoolStats;
+    private long rateBaselineNanos = System.nanoTime();
+    private Map<String, Long> rateBaseline = Collections.emptyMap();
+    private Map<String, Double> hostRates = Collections.emptyMap();
+    private ObjectName objectName;
+
+    /**
+     * @param stageStats      读取各个阶段状态的方法
+     * @param bufferPoolStats 读取缓冲池状态的方法
+     */
+    public SpiderMetrics(Supplier<List<StageStats>> stageStats, Supplier<BufferPoolStats> bufferPoolStats) {
+        this.stageStats = stageStats;
+        this.bufferPoolStats = bufferPoolStats;
+    }
+
+    public void listParsed(long nanos, boolean success) {
+        listParse.recordNanos(nanos);
+        (success ? listsParsed : listParseFailures).increment();
+    }
+
+    public void resolved(long nanos, boolean success) {
+        resolve.recordNanos(nanos);
+        (success ? urlsResolved : resolveFailures).increment();
+    }
+
+    public void resolveCacheLookup(boolean hit) {
+        (hit ? resolveCacheHits : resolveCacheMisses).increment();
+    }
+
+    public void pageCacheLookup(boolean hit) {
+        (hit ? pageCacheHits : pageCacheMisses).increment();
+    }
+
+    public void firstByte(long nanos) {
+        timeToFirstByte.recordNanos(nanos);
+    }
+
+    public void transferred(long nanos, boolean success) {
+        transfer.recordNanos(nanos);
+        (success ? downloadsSucceeded : downloadsFailed).increment();
+    }
+
+    public void retryScheduled() {
+        retries.increment();
+    }
+
+    /**
+     * 获取某个主机的字节计数器，调用方应该在一次传输中缓存，避免每次写入都查找
+     *
+     * @param host 主机
+     * @return 计数器
+     */
+    public LongAdder hostBytes(String host) {
+        return hostBytes.computeIfAbsent(host, h -> new LongAdder());
+    }
+
+    /**
+     * 注册到平台MBeanServer，同名的MBean已经存在时在名称后加上编号
+     *
+     * @param name MBean的名称
+     * @return 实际注册的名称，注册失败时返回null
+     */
+    public synchronized ObjectName registerMBean(String name) {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (int i = 0; objectName == null; i++) {
+            try {
+                ObjectName candidate = new ObjectName("spider:type=Metrics,name=" + ObjectName.quote(i == 0 ? name : name + "-" + i));
+                server.registerMBean(this, candidate);
+                objectName = candidate;
+            } catch (InstanceAlreadyExistsException e) {
+                // 换一个名称重试
+            } catch (JMException e) {
+                return null;
+            }
+        }
+        return objectName;
+    }
+
+    /**
+     * 从平台MBeanServer注销
+     */
+    public synchronized void unregisterMBean() {
+        if (objectName == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (JMException ignored) {
+            // 已经被注销
+        }
+        objectName = null;
+    }
+
+    @Override
+    public MetricsSnapshot getSnapshot() {
+        MetricsSnapshot snapshot = new MetricsSnapshot();
+        snapshot.setTimestampMillis(System.currentTimeMillis());
+        snapshot.setListsParsed(listsParsed.sum());
+        snapshot.setListParseFailures(listParseFailures.sum());
+        snapshot.setUrlsResolved(urlsResolved.sum());
+        snapshot.setResolveFailures(resolveFailures.sum());
+        snapshot.setResolveCacheHits(resolveCacheHits.sum());
+        snapshot.setResolveCacheMisses(resolveCacheMisses.sum());
+        snapshot.setPageCacheHits(pageCacheHits.sum());
+        snapshot.setPageCacheMisses(pageCacheMisses.sum());
+        snapshot.setDownloadsSucceeded(downloadsSucceeded.sum());
+        snapshot.setDownloadsFailed(downloadsFailed.sum());
+        snapshot.setRetries(retries.sum());
+        snapshot.setListParse(listParse.snapshot());
+        snapshot.setResolve(resolve.snapshot());
+        snapshot.setTimeToFirstByte(timeToFirstByte.snapshot());
+        snapshot.setTransfer(transfer.snapshot());
+        long total = 0;
+        for (LongAdder bytes : hostBytes.values()) {
+            total += bytes.sum();
+        }
+        snapshot.setBytesTransferred(total);
+        Map<String, Double> rates = hostRates();
+        snapshot.setHostBytesPerSecond(rates);
+        snapshot.setBytesPerSecond(rates.values().stream().mapToDouble(Double::doubleValue).sum());
+        snapshot.setStages(stageStats.get());
+        snapshot.setBufferPool(bufferPoolStats.get());
+        return snapshot;
+    }
+
+    @Override
+    public String getSnapshotJson() {
+        return JSONUtil.toJsonStr(getSnapshot());
+    }
+
+    @Override
+    public String getSnapshotText() {
+        MetricsSnapshot snapshot = getSnapshot();
+        StringBuilder builder = new StringBuilder();
+        builder.append(String.format("列表：成功%d，失败%d；下载信息：成功%d，失败%d；下载：成功%d，失败%d；重试：%d%n",
+                snapshot.getListsParsed(), snapshot.getListParseFailures(), snapshot.getUrlsResolved(), snapshot.getResolveFailures(),
+                snapshot.getDownloadsSucceeded(), snapshot.getDownloadsFailed(), snapshot.getRetries()));
+        builder.append(String.format("下载信息缓存：命中%d，未命中%d；页面缓存：命中%d，未命中%d%n", snapshot.getResolveCacheHits(), snapshot.getResolveCacheMisses(),
+                snapshot.getPageCacheHits(), snapshot.getPageCacheMisses()));
+        builder.append(String.format("已下载：%dMB，当前速度：%.2fMB/s%n", snapshot.getBytesTransferred() / (1024 * 1024), snapshot.getBytesPerSecond() / (1024 * 1024)));
+        appendHistogram(builder, "解析列表", snapshot.getListParse());
+        appendHistogram(builder, "解析下载信息", snapshot.getResolve());
+        appendHistogram(builder, "首字节", snapshot.getTimeToFirstByte());
+        appendHistogram(builder, "传输", snapshot.getTransfer());
+        for (Map.Entry<String, Double> entry : snapshot.getHostBytesPerSecond().entrySet()) {
+            builder.append(String.format("主机%s：%.2fMB/s%n", entry.getKey(), entry.getValue() / (1024 * 1024)));
+        }
+        for (StageStats stage : snapshot.getStages()) {
+            builder.append(String.format("阶段%s：队列%d，活跃%d/%d，完成%d，失败%d%n",
+                    stage.getName(), stage.getQueueDepth(), stage.getActiveCount(), stage.getPoolSize(), stage.getCompleted(), stage.getFailed()));
+        }
+        BufferPoolStats pool = snapshot.getBufferPool();
+        builder.append(String.format("缓冲池：借出%dKB，峰值%dKB，命中%d，未命中%d，等待%d%n",
+                pool.getLeasedBytes() / 1024, pool.getPeakLeasedBytes() / 1024, pool.getHits(), pool.getMisses(), pool.getWaits()));
+        return builder.toString();
+    }
+
+    private static void appendHistogram(StringBuilder builder, String name, HistogramSnapshot histogram) {
+        builder.append(String.format("%s耗时(ms)：次数%d，平均%.1f，p50 %.1f，p90 %.1f，p99 %.1f，最大%.1f%n", name, histogram.getCount(),
+                histogram.getMeanMillis(), histogram.getP50Millis(), histogram.getP90Millis(), histogram.getP99Millis(), histogram.getMaxMillis()));
+    }
+
+    /**
+     * 距离上一次计算超过时间窗口时重新计算各主机的速度，否则返回上一次的结果
+     */
+    private synchronized Map<String, Double> hostRates() {
+        long now = System.nanoTime();
+        long elapsed = now - rateBaselineNanos;
+        if (elapsed < RATE_WINDOW_NANOS) {
+            return hostRates;
+        }
+        Map<String, Long> current = new HashMap<>(hostBytes.size() * 2);
+        Map<String, Double> rates = new HashMap<>(hostBytes.size() * 2);
+        for (Map.Entry<String, LongAdder> entry : hostBytes.entrySet()) {
+            long bytes = entry.getValue().sum();
+            current.put(entry.getKey(), bytes);
+            long delta = bytes - rateBaseline.getOrDefault(entry.getKey(), 0L);
+            rates.put(entry.getKey(), delta * 1e9 / elapsed);
+        }
+        rateBaseline = current;
+        rateBaselineNanos = now;
+        hostRates = rates;
+        return rates;
+    }
+}
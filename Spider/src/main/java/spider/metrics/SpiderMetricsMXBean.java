@@ -0,0 +1,30 @@
+package spider.metrics;
+
+/**
+ * 通过JMX暴露的指标
+ *
+ * @author Gloduck
+ */
+public interface SpiderMetricsMXBean {
+
+    /**
+     * 获取所有指标的快照
+     *
+     * @return 快照
+     */
+    MetricsSnapshot getSnapshot();
+
+    /**
+     * 获取JSON格式的快照
+     *
+     * @return JSON
+     */
+    String getSnapshotJson();
+
+    /**
+     * 获取文本格式的快照
+     *
+     * @return 文本
+     */
+    String getSnapshotText();
+}
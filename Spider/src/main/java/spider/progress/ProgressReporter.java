@@ -0,0 +1,149 @@
+package spider.progress;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * 进度汇报器。传输线程只对各自任务的原子计数器做累加，由单独的汇报线程按固定间隔采样，
+ * 把所有正在进行的任务汇总成一份进度交给回调，传输线程上不做任何格式化和加锁
+ *
+ * @author Gloduck
+ */
+public class ProgressReporter {
+    private final long intervalMillis;
+    private final Consumer<List<TaskProgress>> sink;
+    private final Set<Task> tasks = ConcurrentHashMap.newKeySet();
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * @param intervalMillis 采样间隔
+     * @param sink           接收汇总进度的回调，只会在汇报线程上调用
+     */
+    public ProgressReporter(long intervalMillis, Consumer<List<TaskProgress>> sink) {
+        this.intervalMillis = intervalMillis;
+        this.sink = sink;
+    }
+
+    /**
+     * 启动汇报线程
+     */
+    public synchronized void start() {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "spider-progress");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleAtFixedRate(this::report, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 停止汇报线程，已经登记的任务不再汇报
+     */
+    public synchronized void shutdown() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+        tasks.clear();
+    }
+
+    /**
+     * 登记一个传输任务
+     *
+     * @param fileName 文件名
+     * @param link     下载链接
+     * @param total    文件总大小，未知时为-1
+     * @return 任务的进度计数器，传输结束后需要调用{@link Task#finish()}
+     */
+    public Task track(String fileName, String link, long total) {
+        Task task = new Task(fileName, link, total);
+        tasks.add(task);
+        return task;
+    }
+
+    private void report() {
+        if (tasks.isEmpty()) {
+            return;
+        }
+        long now = System.nanoTime();
+        List<TaskProgress> snapshot = new ArrayList<>(tasks.size());
+        for (Task task : tasks) {
+            snapshot.add(task.sample(now));
+        }
+        try {
+            sink.accept(snapshot);
+        } catch (RuntimeException ignored) {
+            // 回调出错不能让定时任务停止
+        }
+    }
+
+    /**
+     * 单个任务的进度计数器
+     */
+    public class Task {
+        private final String fileName;
+        private final String link;
+        private final long total;
+        private final AtomicLong current = new AtomicLong();
+        /**
+         * 以下两个字段只在汇报线程上读写
+         */
+        private long lastSampleBytes;
+        private long lastSampleNanos = System.nanoTime();
+
+        private Task(String fileName, String link, long total) {
+            this.fileName = fileName;
+            this.link = link;
+            this.total = total;
+        }
+
+        /**
+         * 累加进度，可以在多个分段线程上并发调用
+         *
+         * @param delta 本次新增的字节数
+         */
+        public void increase(long delta) {
+            current.addAndGet(delta);
+        }
+
+        /**
+         * 已经传输的字节数，续传时包括之前已经下载的部分
+         *
+         * @return 字节数
+         */
+        public long current() {
+            return current.get();
+        }
+
+        /**
+         * 传输结束，不论成功与否都需要调用
+         */
+        public void finish() {
+            tasks.remove(this);
+        }
+
+        private TaskProgress sample(long now) {
+            long bytes = current.get();
+            long elapsed = now - lastSampleNanos;
+            TaskProgress progress = new TaskProgress();
+            progress.setFileName(fileName);
+            progress.setLink(link);
+            progress.setCurrent(bytes);
+            progress.setTotal(total);
+            progress.setBytesPerSecond(elapsed > 0 ? (bytes - lastSampleBytes) * 1e9 / elapsed : 0);
+            lastSampleBytes = bytes;
+            lastSampleNanos = now;
+            return progress;
+        }
+    }
+}
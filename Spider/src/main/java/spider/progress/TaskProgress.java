@@ -0,0 +1,32 @@
+package spider.progress;
+
+import lombok.Data;
+
+/**
+ * 某一时刻单个传输任务的进度快照
+ *
+ * @author Gloduck
+ */
+@Data
+public class TaskProgress {
+    private String fileName;
+    private String link;
+    private long current;
+    /**
+     * 文件总大小，未知时为-1
+     */
+    private long total;
+    /**
+     * 距离上一次采样的平均速度
+     */
+    private double bytesPerSecond;
+
+    /**
+     * 获取完成的百分比
+     *
+     * @return 百分比，文件大小未知时为-1
+     */
+    public double percent() {
+        return total > 0 ? current * 100.0 / total : -1;
+    }
+}
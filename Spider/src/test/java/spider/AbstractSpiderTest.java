@@ -0,0 +1,189 @@
+package spider;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import spider.config.SpiderConfig;
+import spider.download.DownloadException;
+import spider.download.TransferEngine;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author Gloduck
+ */
+class AbstractSpiderTest {
+    private static final List<String> URLS = Arrays.asList("http://a/3", "http://a/1", "http://a/2");
+    private static final byte[] BODY = {1, 2, 3, 4};
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void failedSetIsSortedAndMatchesTheFailures() throws Exception {
+        NotFoundSpider spider = new NotFoundSpider(config());
+        spider.startDownload();
+        List<String> failed = new ArrayList<>(spider.getFailedSet());
+        assertEquals(Arrays.asList("http://a/1", "http://a/2", "http://a/3"), failed);
+        assertEquals(spider.getFailures().keySet(), spider.getFailedSet());
+        // 子类依然可以直接记录失败的链接
+        assertTrue(spider.failedSet.add("http://a/0"));
+        assertEquals("http://a/0", spider.getFailedSet().iterator().next());
+        // 再次运行时重新开始记录
+        spider.startDownload();
+        assertEquals(failed, new ArrayList<>(spider.getFailedSet()));
+    }
+
+    @Test
+    void asyncTransfersAreCappedAndTheirThreadsStopWithTheRun() throws Exception {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        ExecutorService executor = Executors.newCachedThreadPool();
+        AtomicInteger active = new AtomicInteger();
+        AtomicInteger maxActive = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        server.createContext("/", exchange -> serve(exchange, active, maxActive, release));
+        server.setExecutor(executor);
+        server.start();
+        try {
+            String base = "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+            SpiderConfig config = config();
+            config.setTransferEngine(TransferEngine.ASYNC);
+            config.setCoreThreadCount(1);
+            config.setMaxThreadCount(1);
+            config.setTaskQueueCapacity(1);
+            config.setResolveThreadCount(4);
+            config.adjustConfig();
+            List<String> urls = IntStream.range(0, 6).mapToObj(i -> base + i + ".mp4").collect(Collectors.toList());
+            FileSpider spider = new FileSpider(config, urls, dir);
+            Future<?> run = executor.submit(() -> {
+                spider.startDownload();
+                return null;
+            });
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (active.get() < 2 && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            // 传输线程早已交出，但在途的传输数依然不超过maxThreadCount + taskQueueCapacity
+            Thread.sleep(300);
+            assertEquals(2, maxActive.get());
+            release.countDown();
+            run.get(10, TimeUnit.SECONDS);
+            assertTrue(spider.getFailedSet().isEmpty());
+            for (int i = 0; i < urls.size(); i++) {
+                assertArrayEquals(BODY, Files.readAllBytes(dir.resolve(i + ".mp4")));
+            }
+            assertFalse(awaitThread("spider-http-watchdog"));
+            assertFalse(awaitThread("spider-async-throttle"));
+        } finally {
+            release.countDown();
+            server.stop(0);
+            executor.shutdownNow();
+        }
+    }
+
+    private static void serve(HttpExchange exchange, AtomicInteger active, AtomicInteger maxActive, CountDownLatch release) throws IOException {
+        try (OutputStream body = exchange.getResponseBody()) {
+            if ("HEAD".equals(exchange.getRequestMethod())) {
+                exchange.getResponseHeaders().set("Content-Length", String.valueOf(BODY.length));
+                exchange.sendResponseHeaders(200, -1);
+                return;
+            }
+            maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            active.decrementAndGet();
+            exchange.sendResponseHeaders(200, BODY.length);
+            body.write(BODY);
+        }
+    }
+
+    /**
+     * 等待指定名称的线程结束
+     *
+     * @return 超时后是否还有这个名称的线程
+     */
+    private static boolean awaitThread(String name) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (Thread.getAllStackTraces().keySet().stream().anyMatch(thread -> thread.getName().equals(name) && thread.isAlive())) {
+            if (System.nanoTime() > deadline) {
+                return true;
+            }
+            Thread.sleep(20);
+        }
+        return false;
+    }
+
+    private static SpiderConfig config() {
+        SpiderConfig config = new SpiderConfig();
+        config.setType("test");
+        config.setTargetLists(Collections.singletonList("http://a/list"));
+        config.adjustConfig();
+        return config;
+    }
+
+    private static class NotFoundSpider extends AbstractSpider {
+        private NotFoundSpider(SpiderConfig config) {
+            super(config);
+        }
+
+        @Override
+        protected DownloadInfo getDownloadInfo(String url) throws Exception {
+            throw DownloadException.status(404);
+        }
+
+        @Override
+        protected List<String> parsePageList(String singleList) {
+            return URLS;
+        }
+    }
+
+    private static class FileSpider extends AbstractSpider {
+        private final List<String> urls;
+        private final Path dir;
+
+        private FileSpider(SpiderConfig config, List<String> urls, Path dir) {
+            super(config);
+            this.urls = urls;
+            this.dir = dir;
+        }
+
+        @Override
+        protected DownloadInfo getDownloadInfo(String url) {
+            DownloadInfo info = new DownloadInfo();
+            info.setLink(url);
+            info.setTargetPath(dir.toString());
+            info.setFileName(url.substring(url.lastIndexOf('/') + 1));
+            return info;
+        }
+
+        @Override
+        protected List<String> parsePageList(String singleList) {
+            return urls;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package spider;
+
+import org.junit.jupiter.api.Test;
+import spider.config.SpiderConfig;
+import spider.event.EventBus;
+import spider.event.OverflowPolicy;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * @author Gloduck
+ */
+class NoticeHookSubscriberTest {
+
+    @Test
+    void callbacksArriveInOrderOnTheBusThread() throws Exception {
+        SpiderConfig config = new SpiderConfig();
+        Set<String> failedSet = ConcurrentHashMap.newKeySet();
+        RecordingHook hook = new RecordingHook();
+        EventBus<SpiderEvent> bus = new EventBus<>(16, OverflowPolicy.BLOCK);
+        bus.subscribe("notice", new NoticeHookSubscriber(hook, config, failedSet));
+        AbstractSpider.DownloadInfo info = new AbstractSpider.DownloadInfo();
+        info.setFileName("a.mp4");
+        IOException failure = new IOException("reset");
+        Thread publisher = new Thread(() -> {
+            bus.publish(SpiderEvent.beforeParseList());
+            bus.publish(SpiderEvent.parseListing("http://a/list"));
+            bus.publish(SpiderEvent.afterParseList(1, null));
+            bus.publish(SpiderEvent.beforeDownload(info));
+            bus.publish(SpiderEvent.downloadFailed(info, failure));
+            bus.publish(SpiderEvent.afterDownload(info, false));
+            bus.publish(SpiderEvent.allTaskDone(1, null));
+        }, "spider-transfer-1");
+        publisher.start();
+        publisher.join();
+        // 关闭时等待缓冲区中的事件全部交给钩子
+        bus.close();
+        assertEquals(Arrays.asList("beforeParseList", "parseListing:http://a/list", "afterParseList:1", "beforeDownload:a.mp4",
+                "downloadFailed:a.mp4:reset", "afterDownload:a.mp4:false", "allTaskDone:1"), hook.calls);
+        assertEquals(Collections.singleton("spider-event-notice"), hook.threads);
+        // 回调中可以拿到发布事件的线程
+        assertEquals(Collections.singleton("spider-transfer-1"), hook.sources);
+        assertSame(config, hook.config);
+    }
+
+    @Test
+    void retainedTargetUrlsGoThroughTheListCallbacks() throws Exception {
+        RecordingHook hook = new RecordingHook();
+        EventBus<SpiderEvent> bus = new EventBus<>(16, OverflowPolicy.BLOCK);
+        bus.subscribe("notice", new NoticeHookSubscriber(hook, new SpiderConfig(), ConcurrentHashMap.newKeySet()));
+        List<String> urls = Arrays.asList("http://a/1", "http://a/2");
+        bus.publish(SpiderEvent.afterParseList(urls.size(), urls));
+        bus.publish(SpiderEvent.allTaskDone(urls.size(), urls));
+        bus.close();
+        // 只覆盖了按数量的回调时，默认的List回调会转过去
+        assertEquals(Arrays.asList("afterParseList:2", "allTaskDone:2"), hook.calls);
+    }
+
+    private static class RecordingHook extends NoticeHook.DefaultNoticeHook {
+        private final List<String> calls = Collections.synchronizedList(new ArrayList<>());
+        private final Set<String> threads = ConcurrentHashMap.newKeySet();
+        private final Set<String> sources = ConcurrentHashMap.newKeySet();
+        private volatile SpiderConfig config;
+
+        private void record(SpiderConfig config, String call) {
+            this.config = config;
+            threads.add(Thread.currentThread().getName());
+            sources.add(NoticeHookSubscriber.sourceThreadName());
+            calls.add(call);
+        }
+
+        @Override
+        public void beforeParseList(SpiderConfig config) {
+            record(config, "beforeParseList");
+        }
+
+        @Override
+        public void parseListing(SpiderConfig config, String currentList) {
+            record(config, "parseListing:" + currentList);
+        }
+
+        @Override
+        public void afterParseList(SpiderConfig config, long resultCount) {
+            record(config, "afterParseList:" + resultCount);
+        }
+
+        @Override
+        public void beforeDownload(SpiderConfig config, Set<String> failedSet, AbstractSpider.DownloadInfo info) {
+            record(config, "beforeDownload:" + info.getFileName());
+        }
+
+        @Override
+        public void downloadFailed(SpiderConfig config, Set<String> failedSet, AbstractSpider.DownloadInfo info, Exception e) {
+            record(config, "downloadFailed:" + info.getFileName() + ":" + e.getMessage());
+        }
+
+        @Override
+        public void afterDownload(SpiderConfig config, Set<String> failedSet, AbstractSpider.DownloadInfo info, boolean success) {
+            record(config, "afterDownload:" + info.getFileName() + ":" + success);
+        }
+
+        @Override
+        public void allTaskDone(SpiderConfig config, Set<String> failedSet, long targetCount) {
+            record(config, "allTaskDone:" + targetCount);
+        }
+    }
+}
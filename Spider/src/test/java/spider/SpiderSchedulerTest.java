@@ -0,0 +1,175 @@
+package spider;
+
+import org.junit.jupiter.api.Test;
+import spider.cache.ResolutionCache;
+import spider.config.SpiderConfig;
+import spider.download.DownloadException;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author Gloduck
+ */
+class SpiderSchedulerTest {
+    private static final String URL = "http://a/1";
+
+    @Test
+    void everyJobRunsUntilDone() throws Exception {
+        SpiderScheduler scheduler = new SpiderScheduler(2);
+        BlockingSpider first = new BlockingSpider(config(2));
+        BlockingSpider second = new BlockingSpider(config(1));
+        first.release.countDown();
+        second.release.countDown();
+        JobHandle job = scheduler.submit("first", first);
+        scheduler.submit("second", second);
+        assertEquals(2, job.getWeight());
+        scheduler.awaitAll();
+        assertEquals(Arrays.asList("first", "second"), scheduler.getJobs().stream().map(JobHandle::getName).collect(Collectors.toList()));
+        for (JobHandle handle : scheduler.getJobs()) {
+            assertEquals(JobHandle.JobState.DONE, handle.getState());
+            assertNull(handle.getFailure());
+            assertEquals(Collections.singleton(URL), handle.getSpider().getFailedSet());
+        }
+        assertEquals(0, scheduler.getBudget().used());
+    }
+
+    @Test
+    void runningNameCannotBeSubmittedTwice() throws Exception {
+        SpiderScheduler scheduler = new SpiderScheduler(1);
+        BlockingSpider spider = new BlockingSpider(config(1));
+        JobHandle job = scheduler.submit("job", spider);
+        assertTrue(spider.started.await(5, TimeUnit.SECONDS));
+        assertThrows(IllegalArgumentException.class, () -> scheduler.submit("job", new BlockingSpider(config(1))));
+        spider.release.countDown();
+        job.await();
+        // 结束后可以用同一个名字再次运行
+        BlockingSpider again = new BlockingSpider(config(1));
+        again.release.countDown();
+        scheduler.submit("job", again).await();
+        assertEquals(1, again.calls.get());
+    }
+
+    @Test
+    void removedJobIsStoppedAndItsTasksAreNotRetried() throws Exception {
+        SpiderScheduler scheduler = new SpiderScheduler(1);
+        BlockingSpider spider = new BlockingSpider(config(1));
+        JobHandle job = scheduler.submit("job", spider);
+        assertTrue(spider.started.await(5, TimeUnit.SECONDS));
+        assertSame(job, scheduler.remove("job"));
+        assertNull(scheduler.getJob("job"));
+        assertEquals(JobHandle.JobState.REMOVED, job.getState());
+        assertTrue(spider.isStopped());
+        spider.release.countDown();
+        job.await();
+        assertEquals(JobHandle.JobState.REMOVED, job.getState());
+        assertEquals(1, spider.calls.get());
+        assertEquals(Collections.singleton(URL), spider.getFailedSet());
+    }
+
+    @Test
+    void jobRemovedWhileItPreparesDispatchesNothing() throws Exception {
+        SpiderScheduler scheduler = new SpiderScheduler(1);
+        SlowStartSpider slow = new SlowStartSpider(config(1));
+        BlockingSpider spider = slow;
+        spider.release.countDown();
+        // 之前的停止在加入调度器时清除
+        spider.stop();
+        JobHandle job = scheduler.submit("job", spider);
+        assertFalse(spider.isStopped());
+        assertTrue(slow.preparing.await(5, TimeUnit.SECONDS));
+        scheduler.remove("job");
+        slow.prepare.countDown();
+        job.await();
+        assertEquals(JobHandle.JobState.REMOVED, job.getState());
+        assertNull(job.getFailure());
+        assertTrue(spider.isStopped());
+        assertEquals(0, spider.lists.get());
+        assertEquals(0, spider.calls.get());
+        assertTrue(spider.getFailedSet().isEmpty());
+        // 单独运行时重新开始
+        spider.startDownload();
+        assertFalse(spider.isStopped());
+        assertEquals(1, spider.calls.get());
+    }
+
+    private static SpiderConfig config(int weight) {
+        SpiderConfig config = new SpiderConfig();
+        config.setType("test");
+        config.setTargetLists(Collections.singletonList("http://a/list"));
+        config.setJobWeight(weight);
+        config.setRetryMaxAttempts(3);
+        config.setRetryBaseDelayMillis(10);
+        config.setRetryMaxDelayMillis(10);
+        config.adjustConfig();
+        return config;
+    }
+
+    /**
+     * 解析下载信息时等待放行，之后总是失败
+     */
+    private static class BlockingSpider extends AbstractSpider {
+        private final CountDownLatch started = new CountDownLatch(1);
+        private final CountDownLatch release = new CountDownLatch(1);
+        private final AtomicInteger calls = new AtomicInteger();
+        private final AtomicInteger lists = new AtomicInteger();
+
+        private BlockingSpider(SpiderConfig config) {
+            super(config);
+        }
+
+        @Override
+        protected DownloadInfo getDownloadInfo(String url) throws Exception {
+            started.countDown();
+            release.await();
+            calls.incrementAndGet();
+            // 停止之后即使失败的原因可以重试也不再重试
+            if (isStopped()) {
+                throw DownloadException.transientError("connection reset");
+            }
+            throw DownloadException.status(404);
+        }
+
+        @Override
+        protected List<String> parsePageList(String singleList) {
+            lists.incrementAndGet();
+            return Collections.singletonList(URL);
+        }
+    }
+
+    /**
+     * 第一次运行准备缓存时等待放行
+     */
+    private static class SlowStartSpider extends BlockingSpider {
+        private final CountDownLatch preparing = new CountDownLatch(1);
+        private final CountDownLatch prepare = new CountDownLatch(1);
+
+        private SlowStartSpider(SpiderConfig config) {
+            super(config);
+        }
+
+        @Override
+        protected ResolutionCache createResolutionCache() throws IOException {
+            preparing.countDown();
+            try {
+                prepare.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return super.createResolutionCache();
+        }
+    }
+}
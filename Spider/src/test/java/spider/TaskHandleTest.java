@@ -0,0 +1,131 @@
+package spider;
+
+import org.junit.jupiter.api.Test;
+import spider.config.SpiderConfig;
+import spider.download.DownloadException;
+import spider.download.TransferControl;
+import spider.engine.RetryPolicy;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author Gloduck
+ */
+class TaskHandleTest {
+    private static final String URL = "http://a/1";
+
+    @Test
+    void cancelAbortsTheRunningAttemptAndEveryLaterOne() {
+        TaskHandle handle = new TaskHandle(URL);
+        TransferControl running = handle.newAttempt();
+        assertFalse(running.isAborted());
+        assertTrue(handle.cancel());
+        assertFalse(handle.cancel());
+        assertTrue(handle.isCancelled());
+        assertTrue(running.isAborted());
+        assertFalse(RetryPolicy.isRetryable(running.cause()));
+        assertTrue(handle.newAttempt().isAborted());
+        assertThrows(DownloadException.class, handle::check);
+    }
+
+    @Test
+    void transientErrorsAreRetriedUntilTheAttemptsRunOut() throws Exception {
+        FailingSpider spider = new FailingSpider(config(10));
+        spider.startDownload();
+        assertEquals(3, spider.calls.get());
+        assertEquals(Collections.singleton(URL), spider.getFailedSet());
+    }
+
+    @Test
+    void cancelledTaskIsNotRetried() throws Exception {
+        FailingSpider spider = new FailingSpider(config(10)) {
+            @Override
+            protected DownloadInfo getDownloadInfo(String url) throws Exception {
+                // 失败的原因本身可以重试，但是任务已经被取消
+                cancelTask(url);
+                return super.getDownloadInfo(url);
+            }
+        };
+        spider.startDownload();
+        assertEquals(1, spider.calls.get());
+        assertEquals(Collections.singleton(URL), spider.getFailedSet());
+        assertNull(spider.getTaskHandle(URL));
+    }
+
+    @Test
+    void cancelDuringTheRetryDelayStopsTheScheduledRetry() throws Exception {
+        FailingSpider spider = new FailingSpider(config(500));
+        Thread run = new Thread(() -> {
+            try {
+                spider.startDownload();
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        run.start();
+        assertTrue(spider.firstCall.await(5, TimeUnit.SECONDS));
+        while (!spider.cancelTask(URL)) {
+            Thread.sleep(10);
+        }
+        run.join(10_000);
+        assertFalse(run.isAlive());
+        assertEquals(1, spider.calls.get());
+        assertEquals(Collections.singleton(URL), spider.getFailedSet());
+    }
+
+    @Test
+    void jobDeadlineCancelsTasksThatKeepRetrying() throws Exception {
+        SpiderConfig config = config(20);
+        config.setRetryMaxAttempts(1000);
+        config.setJobTimeoutMillis(300);
+        FailingSpider spider = new FailingSpider(config);
+        long start = System.nanoTime();
+        spider.startDownload();
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 5000);
+        assertTrue(spider.isStopped());
+        assertTrue(spider.calls.get() < 1000);
+        assertEquals(Collections.singleton(URL), spider.getFailedSet());
+    }
+
+    private static SpiderConfig config(long retryDelayMillis) {
+        SpiderConfig config = new SpiderConfig();
+        config.setType("test");
+        config.setTargetLists(Collections.singletonList("http://a/list"));
+        config.setRetryMaxAttempts(3);
+        config.setRetryBaseDelayMillis(retryDelayMillis);
+        config.setRetryMaxDelayMillis(retryDelayMillis);
+        config.adjustConfig();
+        return config;
+    }
+
+    private static class FailingSpider extends AbstractSpider {
+        private final AtomicInteger calls = new AtomicInteger();
+        private final CountDownLatch firstCall = new CountDownLatch(1);
+
+        private FailingSpider(SpiderConfig config) {
+            super(config);
+        }
+
+        @Override
+        protected DownloadInfo getDownloadInfo(String url) throws Exception {
+            calls.incrementAndGet();
+            firstCall.countDown();
+            throw DownloadException.transientError("connection reset");
+        }
+
+        @Override
+        protected List<String> parsePageList(String singleList) {
+            return Collections.singletonList(URL);
+        }
+    }
+}
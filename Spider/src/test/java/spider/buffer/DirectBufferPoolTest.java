@@ -0,0 +1,127 @@
+package spider.buffer;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author Gloduck
+ */
+class DirectBufferPoolTest {
+    private static final int K = 1024;
+
+    @Test
+    void sizesAreRoundedUpToTiers() throws InterruptedException {
+        DirectBufferPool pool = new DirectBufferPool(1024 * K);
+        assertEquals(8 * K, lease(pool, 1).capacity());
+        assertEquals(8 * K, lease(pool, 8 * K).capacity());
+        assertEquals(16 * K, lease(pool, 8 * K + 1).capacity());
+        assertEquals(64 * K, lease(pool, 64 * K).capacity());
+        assertEquals(128 * K, lease(pool, 100_000).capacity());
+        // 只作为建议值时向下取整，但不小于最小一档
+        assertEquals(64 * K, DirectBufferPool.floorTierSize(100_000));
+        assertEquals(8 * K, DirectBufferPool.floorTierSize(100));
+        assertThrows(IllegalArgumentException.class, () -> pool.lease(2048 * K));
+    }
+
+    @Test
+    void releasedBufferGoesBackToItsTier() throws InterruptedException {
+        DirectBufferPool pool = new DirectBufferPool(1024 * K);
+        ByteBuffer buffer = pool.lease(20_000);
+        buffer.put(new byte[100]);
+        pool.release(buffer);
+        ByteBuffer again = pool.lease(17_000);
+        assertSame(buffer, again);
+        assertEquals(0, again.position());
+        assertEquals(again.capacity(), again.limit());
+        // 其他档位的请求不会拿到这个缓冲区
+        assertNotSame(buffer, pool.lease(8 * K));
+        BufferPoolStats stats = pool.stats();
+        assertEquals(1, stats.getHits());
+        assertEquals(2, stats.getMisses());
+        assertEquals(40 * K, stats.getLeasedBytes());
+        assertEquals(40 * K, stats.getAllocatedBytes());
+    }
+
+    @Test
+    void leaseBlocksAtTheCapUntilABufferIsReleased() throws Exception {
+        DirectBufferPool pool = new DirectBufferPool(64 * K);
+        ByteBuffer first = pool.lease(32 * K);
+        pool.lease(32 * K);
+        CompletableFuture<ByteBuffer> waiting = CompletableFuture.supplyAsync(() -> lease(pool, 8 * K));
+        assertThrows(TimeoutException.class, () -> waiting.get(200, TimeUnit.MILLISECONDS));
+        // 归还的是其他档位的缓冲区，空闲时被丢弃以腾出额度
+        pool.release(first);
+        assertEquals(8 * K, waiting.get(5, TimeUnit.SECONDS).capacity());
+        BufferPoolStats stats = pool.stats();
+        assertEquals(1, stats.getWaits());
+        assertEquals(40 * K, stats.getAllocatedBytes());
+        assertEquals(64 * K, stats.getPeakLeasedBytes());
+    }
+
+    @Test
+    void tryLeaseReturnsNullAtTheCapInsteadOfBlocking() {
+        DirectBufferPool pool = new DirectBufferPool(32 * K);
+        ByteBuffer first = pool.tryLease(16 * K);
+        ByteBuffer second = pool.tryLease(16 * K);
+        assertEquals(16 * K, second.capacity());
+        assertNull(pool.tryLease(8 * K));
+        assertEquals(1, pool.stats().getWaits());
+        pool.release(first);
+        assertSame(first, pool.tryLease(16 * K));
+        pool.release(second);
+        // 空闲的其他档位被丢弃以腾出额度
+        assertEquals(8 * K, pool.tryLease(8 * K).capacity());
+        assertThrows(IllegalArgumentException.class, () -> pool.tryLease(64 * K));
+    }
+
+    @Test
+    void tryLeaseCallbackRunsOnceOnTheNextRelease() {
+        DirectBufferPool pool = new DirectBufferPool(16 * K);
+        ByteBuffer first = pool.tryLease(16 * K);
+        AtomicInteger notified = new AtomicInteger();
+        assertNull(pool.tryLease(16 * K, notified::incrementAndGet));
+        assertNull(pool.tryLease(8 * K, notified::incrementAndGet));
+        assertEquals(0, notified.get());
+        pool.release(first);
+        assertEquals(2, notified.get());
+        // 回调只执行一次，借到缓冲区时不登记
+        ByteBuffer again = pool.tryLease(16 * K, notified::incrementAndGet);
+        assertSame(first, again);
+        pool.release(again);
+        assertEquals(2, notified.get());
+    }
+
+    @Test
+    void idleBuffersAreEvictedToMakeRoom() throws InterruptedException {
+        DirectBufferPool pool = new DirectBufferPool(64 * K);
+        pool.release(pool.lease(16 * K));
+        pool.release(pool.lease(32 * K));
+        ByteBuffer large = pool.lease(64 * K);
+        assertEquals(64 * K, large.capacity());
+        BufferPoolStats stats = pool.stats();
+        assertEquals(64 * K, stats.getAllocatedBytes());
+        assertEquals(0, stats.getWaits());
+        assertTrue(stats.getAllocatedBytes() <= stats.getMaxBytes());
+    }
+
+    private static ByteBuffer lease(DirectBufferPool pool, int size) {
+        try {
+            return pool.lease(size);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+}
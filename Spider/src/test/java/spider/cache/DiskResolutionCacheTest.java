@@ -0,0 +1,80 @@
+package spider.cache;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author Gloduck
+ */
+class DiskResolutionCacheTest {
+    private static final long HOUR = 3600_000;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void entriesSurviveReopening() throws IOException {
+        ResolvedEntry entry = LruResolutionCacheTest.entry("http://a/1", HOUR);
+        new DiskResolutionCache(dir).put(entry);
+        ResolvedEntry loaded = new DiskResolutionCache(dir).get("http://a/1");
+        assertEquals(entry, loaded);
+        assertNull(new DiskResolutionCache(dir).get("http://a/2"));
+        // 写入时使用的临时文件不会留下
+        assertEquals(1, files().size());
+    }
+
+    @Test
+    void expiredEntryIsDeletedOnRead() throws IOException {
+        DiskResolutionCache cache = new DiskResolutionCache(dir);
+        cache.put(LruResolutionCacheTest.entry("http://a/1", -1));
+        assertEquals(1, files().size());
+        assertNull(cache.get("http://a/1"));
+        assertTrue(files().isEmpty());
+    }
+
+    @Test
+    void invalidateAndCorruptFilesAreMisses() throws IOException {
+        DiskResolutionCache cache = new DiskResolutionCache(dir);
+        cache.put(LruResolutionCacheTest.entry("http://a/1", HOUR));
+        cache.put(LruResolutionCacheTest.entry("http://a/2", HOUR));
+        cache.invalidate("http://a/1");
+        assertNull(cache.get("http://a/1"));
+        for (Path file : files()) {
+            Files.write(file, "{\"url\":".getBytes(StandardCharsets.UTF_8));
+        }
+        assertNull(cache.get("http://a/2"));
+        // 损坏的文件在下次写入时被覆盖
+        cache.put(LruResolutionCacheTest.entry("http://a/2", HOUR));
+        assertEquals("http://a/2", cache.get("http://a/2").getUrl());
+    }
+
+    @Test
+    void lruInFrontOfDiskReadsThroughAfterRestart() throws IOException {
+        try (ResolutionCache cache = new LruResolutionCache(1, new DiskResolutionCache(dir))) {
+            cache.put(LruResolutionCacheTest.entry("http://a/1", HOUR));
+            cache.put(LruResolutionCacheTest.entry("http://a/2", HOUR));
+        }
+        try (ResolutionCache cache = new LruResolutionCache(1, new DiskResolutionCache(dir))) {
+            assertEquals("http://a/1", cache.get("http://a/1").getUrl());
+            assertEquals("http://a/2", cache.get("http://a/2").getUrl());
+        }
+    }
+
+    private List<Path> files() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.collect(Collectors.toList());
+        }
+    }
+}
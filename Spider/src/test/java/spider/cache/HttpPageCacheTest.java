@@ -0,0 +1,136 @@
+package spider.cache;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author Gloduck
+ */
+class HttpPageCacheTest {
+    private static final String ETAG = "\"abc\"";
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void storesAndReadsPages() throws IOException {
+        HttpPageCache cache = HttpPageCache.open(dir, 1024);
+        byte[] body = "<html>list</html>".getBytes(StandardCharsets.UTF_8);
+        cache.store("http://a/1", ETAG, null, "text/html", body);
+        HttpPageCache.Entry entry = cache.lookup("http://a/1");
+        assertNotNull(entry);
+        assertEquals(ETAG, entry.getEtag());
+        assertEquals("text/html", entry.getContentType());
+        assertArrayEquals(body, cache.read(entry));
+        // 同一个链接再次保存时替换之前的内容
+        cache.store("http://a/1", "\"def\"", null, "text/html", new byte[10]);
+        assertEquals(10, cache.totalBytes());
+        assertEquals(2, fileCount());
+    }
+
+    @Test
+    void pagesWithoutValidatorOrTooLargeAreNotStored() throws IOException {
+        HttpPageCache cache = HttpPageCache.open(dir, 100);
+        cache.store("http://a/1", null, null, "text/html", new byte[10]);
+        cache.store("http://a/2", ETAG, null, "text/html", new byte[101]);
+        assertNull(cache.lookup("http://a/1"));
+        assertNull(cache.lookup("http://a/2"));
+        assertEquals(0, cache.totalBytes());
+        assertEquals(0, fileCount());
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedPages() throws IOException {
+        HttpPageCache cache = HttpPageCache.open(dir, 300);
+        cache.store("http://a/1", ETAG, null, null, new byte[100]);
+        cache.store("http://a/2", ETAG, null, null, new byte[100]);
+        cache.store("http://a/3", ETAG, null, null, new byte[100]);
+        // 访问之后第一页变为最近使用，淘汰第二页
+        assertNotNull(cache.lookup("http://a/1"));
+        cache.store("http://a/4", ETAG, null, null, new byte[100]);
+        assertNull(cache.lookup("http://a/2"));
+        assertNotNull(cache.lookup("http://a/1"));
+        assertNotNull(cache.lookup("http://a/3"));
+        assertNotNull(cache.lookup("http://a/4"));
+        assertEquals(300, cache.totalBytes());
+        assertEquals(6, fileCount());
+    }
+
+    @Test
+    void reopenRestoresEvictionOrderFromLastUse() throws IOException {
+        HttpPageCache cache = HttpPageCache.open(dir, 300);
+        cache.store("http://a/1", ETAG, null, null, new byte[100]);
+        cache.store("http://a/2", null, "Mon, 01 Jan 2024 00:00:00 GMT", null, new byte[100]);
+        cache.store("http://a/3", ETAG, null, null, new byte[100]);
+        touch(cache, "http://a/1", 3000);
+        touch(cache, "http://a/2", 1000);
+        touch(cache, "http://a/3", 2000);
+
+        HttpPageCache reopened = HttpPageCache.open(dir, 300);
+        assertEquals(300, reopened.totalBytes());
+        assertEquals("Mon, 01 Jan 2024 00:00:00 GMT", reopened.lookup("http://a/2").getLastModified());
+        reopened.store("http://a/4", ETAG, null, null, new byte[100]);
+        // 第二页刚刚被访问过，最久没有使用的是第三页
+        assertNull(reopened.lookup("http://a/3"));
+        assertNotNull(reopened.lookup("http://a/1"));
+
+        // 上限变小时打开就淘汰
+        HttpPageCache shrunk = HttpPageCache.open(dir, 100);
+        assertEquals(100, shrunk.totalBytes());
+        assertEquals(2, fileCount());
+    }
+
+    @Test
+    void openDropsBrokenEntries() throws IOException {
+        HttpPageCache cache = HttpPageCache.open(dir, 1024);
+        cache.store("http://a/1", ETAG, null, null, new byte[100]);
+        cache.store("http://a/2", ETAG, null, null, new byte[100]);
+        String key = cache.lookup("http://a/2").getKey();
+        Files.write(dir.resolve(key + ".body"), new byte[50]);
+        Files.write(dir.resolve("broken.meta"), "{".getBytes(StandardCharsets.UTF_8));
+
+        HttpPageCache reopened = HttpPageCache.open(dir, 1024);
+        assertNotNull(reopened.lookup("http://a/1"));
+        assertNull(reopened.lookup("http://a/2"));
+        assertEquals(100, reopened.totalBytes());
+        assertEquals(2, fileCount());
+    }
+
+    @Test
+    void invalidateDeletesFiles() throws IOException {
+        HttpPageCache cache = HttpPageCache.open(dir, 1024);
+        cache.store("http://a/1", ETAG, null, null, new byte[100]);
+        cache.invalidate("http://a/1");
+        cache.invalidate("http://a/1");
+        assertNull(cache.lookup("http://a/1"));
+        assertEquals(0, cache.totalBytes());
+        assertEquals(0, fileCount());
+        assertFalse(HttpPageCache.open(dir, 1024).totalBytes() > 0);
+    }
+
+    private void touch(HttpPageCache cache, String url, long millis) throws IOException {
+        Path body = dir.resolve(cache.lookup(url).getKey() + ".body");
+        assertTrue(Files.exists(body));
+        Files.setLastModifiedTime(body, FileTime.fromMillis(millis));
+    }
+
+    private long fileCount() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.count();
+        }
+    }
+}
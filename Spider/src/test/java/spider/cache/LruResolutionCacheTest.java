@@ -0,0 +1,93 @@
+package spider.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author Gloduck
+ */
+class LruResolutionCacheTest {
+    private static final long HOUR = 3600_000;
+
+    @Test
+    void expiredEntriesAreMisses() {
+        LruResolutionCache cache = new LruResolutionCache(10, null);
+        cache.put(entry("http://a/1", HOUR));
+        cache.put(entry("http://a/2", -1));
+        assertEquals("http://cdn/http://a/1", cache.get("http://a/1").getLink());
+        assertNull(cache.get("http://a/2"));
+        cache.invalidate("http://a/1");
+        assertNull(cache.get("http://a/1"));
+    }
+
+    @Test
+    void leastRecentlyUsedEntryIsEvictedAtTheBound() {
+        LruResolutionCache cache = new LruResolutionCache(2, null);
+        cache.put(entry("http://a/1", HOUR));
+        cache.put(entry("http://a/2", HOUR));
+        // 访问过的条目变成最近使用
+        cache.get("http://a/1");
+        cache.put(entry("http://a/3", HOUR));
+        assertNull(cache.get("http://a/2"));
+        assertEquals("http://a/1", cache.get("http://a/1").getUrl());
+        assertEquals("http://a/3", cache.get("http://a/3").getUrl());
+    }
+
+    @Test
+    void missesFallThroughToTheNextLevel() {
+        MapCache next = new MapCache();
+        LruResolutionCache cache = new LruResolutionCache(1, next);
+        ResolvedEntry first = entry("http://a/1", HOUR);
+        cache.put(first);
+        cache.put(entry("http://a/2", HOUR));
+        // 写入同时作用于下一级，内存中淘汰的条目依然可以从下一级读回
+        assertEquals(2, next.entries.size());
+        assertSame(first, cache.get("http://a/1"));
+        assertEquals(1, next.reads);
+        assertSame(first, cache.get("http://a/1"));
+        assertEquals(1, next.reads);
+        cache.invalidate("http://a/1");
+        assertFalse(next.entries.containsKey("http://a/1"));
+        assertNull(cache.get("http://a/1"));
+    }
+
+    static ResolvedEntry entry(String url, long ttlMillis) {
+        ResolvedEntry entry = new ResolvedEntry();
+        entry.setUrl(url);
+        entry.setFileName(url.substring(url.lastIndexOf('/') + 1) + ".mp4");
+        entry.setTargetPath("videos");
+        entry.setLink("http://cdn/" + url);
+        entry.setExpiresAtMillis(System.currentTimeMillis() + ttlMillis);
+        return entry;
+    }
+
+    private static class MapCache implements ResolutionCache {
+        private final Map<String, ResolvedEntry> entries = new HashMap<>();
+        private int reads;
+
+        @Override
+        public ResolvedEntry get(String url) {
+            reads++;
+            return entries.get(url);
+        }
+
+        @Override
+        public void put(ResolvedEntry entry) {
+            entries.put(entry.getUrl(), entry);
+        }
+
+        @Override
+        public void invalidate(String url) {
+            assertTrue(entries.containsKey(url));
+            entries.remove(url);
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package spider.dedup;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author Gloduck
+ */
+class ContentIndexTest {
+    private static final String SHA_A = "aaaa";
+    private static final String SHA_B = "bbbb";
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void findsExistingFileWithSameContent() throws IOException {
+        Path first = file("first.mp4", 10);
+        Path second = file("second.mp4", 10);
+        try (ContentIndex index = ContentIndex.open(dir.resolve("index/content.log"))) {
+            assertNull(index.register(SHA_A, 10, first));
+            assertEquals(first.toAbsolutePath().normalize(), index.register(SHA_A, 10, second));
+            assertEquals(first.toAbsolutePath().normalize(), index.find(SHA_A, 10, second));
+            // 自己不是自己的重复文件，长度不同也不算
+            assertNull(index.find(SHA_A, 10, first));
+            assertNull(index.find(SHA_A, 11, second));
+            assertNull(index.find(SHA_B, 10, second));
+        }
+    }
+
+    @Test
+    void staleEntriesAreDropped() throws IOException {
+        Path first = file("first.mp4", 10);
+        Path second = file("second.mp4", 10);
+        try (ContentIndex index = ContentIndex.open(dir.resolve("content.log"))) {
+            index.register(SHA_A, 10, first);
+            // 文件被修改或者删除后记录失效，新的文件代替它
+            Files.write(first, new byte[5]);
+            assertNull(index.find(SHA_A, 10, second));
+            assertNull(index.register(SHA_A, 10, second));
+            assertEquals(second.toAbsolutePath().normalize(), index.find(SHA_A, 10, first));
+        }
+    }
+
+    @Test
+    void recordsAreReplayedOnOpen() throws IOException {
+        Path first = file("first.mp4", 10);
+        Path log = dir.resolve("content.log");
+        try (ContentIndex index = ContentIndex.open(log)) {
+            index.register(SHA_A, 10, first);
+        }
+        // 写了一半的行被忽略
+        Files.write(log, (SHA_B + "\t1").getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        try (ContentIndex index = ContentIndex.open(log)) {
+            assertEquals(first.toAbsolutePath().normalize(), index.find(SHA_A, 10, dir.resolve("other.mp4")));
+            assertNull(index.find(SHA_B, 1, dir.resolve("other.mp4")));
+        }
+    }
+
+    @Test
+    void logIsCompactedWhenMostRecordsAreSuperseded() throws IOException {
+        Path log = dir.resolve("content.log");
+        try (ContentIndex index = ContentIndex.open(log)) {
+            for (int i = 0; i < 5; i++) {
+                Path file = file("copy" + i + ".mp4", 10);
+                assertNull(index.register(SHA_A, 10, file));
+                Files.delete(file);
+            }
+            assertNull(index.register(SHA_A, 10, file("last.mp4", 10)));
+            assertNull(index.register(SHA_B, 10, file("other.mp4", 10)));
+        }
+        Path last = dir.resolve("last.mp4");
+        assertEquals(7, Files.readAllLines(log, StandardCharsets.UTF_8).size());
+        try (ContentIndex index = ContentIndex.open(log)) {
+            assertEquals(last.toAbsolutePath().normalize(), index.find(SHA_A, 10, dir.resolve("new.mp4")));
+        }
+        List<String> lines = Files.readAllLines(log, StandardCharsets.UTF_8);
+        assertEquals(2, lines.size());
+        assertTrue(lines.contains(SHA_A + "\t10\t" + last.toAbsolutePath().normalize()));
+        assertTrue(Files.notExists(log.resolveSibling("content.log.tmp")));
+        // 压缩之后继续追加
+        try (ContentIndex index = ContentIndex.open(log)) {
+            index.register("cccc", 10, file("third.mp4", 10));
+        }
+        try (ContentIndex index = ContentIndex.open(log)) {
+            assertEquals(dir.resolve("other.mp4").toAbsolutePath().normalize(), index.find(SHA_B, 10, dir.resolve("new.mp4")));
+            assertEquals(dir.resolve("third.mp4").toAbsolutePath().normalize(), index.find("cccc", 10, dir.resolve("new.mp4")));
+        }
+        assertEquals(3, Files.readAllLines(log, StandardCharsets.UTF_8).size());
+    }
+
+    private Path file(String name, int size) throws IOException {
+        return Files.write(dir.resolve(name), new byte[size]);
+    }
+}
@@ -0,0 +1,188 @@
+package spider.distributed;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author Gloduck
+ */
+class FileWorkQueueTest {
+    private static final long LONG_LEASE = 60_000;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void stateIsReplayedByNewInstances() throws IOException {
+        try (FileWorkQueue queue = FileWorkQueue.open(dir)) {
+            assertTrue(queue.offer("http://a/1"));
+            assertTrue(queue.offer("http://a/2"));
+            assertTrue(queue.offer("http://a/3"));
+            assertFalse(queue.offer("http://a/1"));
+            queue.ack(queue.lease("w1", LONG_LEASE));
+            queue.fail(queue.lease("w1", LONG_LEASE), "404\n");
+            queue.closeInput();
+        }
+        try (FileWorkQueue queue = FileWorkQueue.open(dir)) {
+            assertFalse(queue.offer("http://a/1"));
+            QueueStatus status = queue.status();
+            assertEquals(1, status.getPending());
+            assertEquals(0, status.getLeased());
+            assertEquals(1, status.getDone());
+            assertEquals(1, status.getFailed());
+            assertTrue(status.isInputClosed());
+            assertFalse(status.isDrained());
+            assertEquals(Collections.singletonMap("http://a/2", "w1：404 "), queue.failures());
+            Lease lease = queue.lease("w2", LONG_LEASE);
+            assertEquals("http://a/3", lease.getUrl());
+            assertNull(queue.lease("w2", LONG_LEASE));
+            queue.ack(lease);
+            assertTrue(queue.status().isDrained());
+        }
+    }
+
+    @Test
+    void expiredLeaseIsTakenOverByAnotherWorker() throws Exception {
+        try (FileWorkQueue first = FileWorkQueue.open(dir); FileWorkQueue second = FileWorkQueue.open(dir)) {
+            first.offer("http://a/1");
+            first.closeInput();
+            Lease stale = first.lease("w1", 100);
+            assertNotNull(stale);
+            // 租约还没有过期，其他节点拿不到
+            assertNull(second.lease("w2", LONG_LEASE));
+            assertNotNull(first.renew(stale, 100));
+            Thread.sleep(200);
+            Lease taken = second.lease("w2", LONG_LEASE);
+            assertEquals("http://a/1", taken.getUrl());
+            assertEquals("w2", taken.getWorkerId());
+            assertEquals(1, second.status().getLeased());
+            // 原来的节点不能再续租或者报告失败
+            assertNull(first.renew(stale, LONG_LEASE));
+            first.fail(stale, "timeout");
+            assertTrue(second.failures().isEmpty());
+            second.ack(taken);
+            QueueStatus status = first.status();
+            assertEquals(1, status.getDone());
+            assertTrue(status.isDrained());
+        }
+    }
+
+    @Test
+    void lateAckFromPreviousHolderStillCompletes() throws Exception {
+        try (FileWorkQueue first = FileWorkQueue.open(dir); FileWorkQueue second = FileWorkQueue.open(dir)) {
+            first.offer("http://a/1");
+            first.closeInput();
+            Lease stale = first.lease("w1", 50);
+            Thread.sleep(100);
+            Lease taken = second.lease("w2", LONG_LEASE);
+            assertNotNull(taken);
+            first.ack(stale);
+            second.fail(taken, "ignored");
+            QueueStatus status = second.status();
+            assertEquals(1, status.getDone());
+            assertEquals(0, status.getFailed());
+            assertTrue(status.isDrained());
+        }
+    }
+
+    @Test
+    void pollAcknowledgedReturnsEachUrlOnce() throws IOException {
+        try (FileWorkQueue coordinator = FileWorkQueue.open(dir); FileWorkQueue worker = FileWorkQueue.open(dir)) {
+            coordinator.offer("http://a/1");
+            coordinator.offer("http://a/2");
+            coordinator.offer("http://a/3");
+            worker.ack(worker.lease("w1", LONG_LEASE));
+            // 第一次调用返回之前所有确认完成的链接
+            assertEquals(Collections.singletonList("http://a/1"), coordinator.pollAcknowledged());
+            assertTrue(coordinator.pollAcknowledged().isEmpty());
+            worker.ack(worker.lease("w1", LONG_LEASE));
+            worker.ack(worker.lease("w1", LONG_LEASE));
+            assertEquals(Arrays.asList("http://a/2", "http://a/3"), coordinator.pollAcknowledged());
+            assertTrue(coordinator.pollAcknowledged().isEmpty());
+        }
+    }
+
+    @Test
+    void truncatedRecordIsIgnored() throws IOException {
+        try (FileWorkQueue queue = FileWorkQueue.open(dir)) {
+            queue.offer("http://a/1");
+        }
+        // 其他进程写LEASE写到一半时退出
+        Files.write(dir.resolve("queue.log"), "LEASE\thttp://a/1\tw9".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        try (FileWorkQueue queue = FileWorkQueue.open(dir)) {
+            assertTrue(queue.offer("http://a/2"));
+            assertEquals(2, queue.status().getPending());
+        }
+        try (FileWorkQueue queue = FileWorkQueue.open(dir)) {
+            QueueStatus status = queue.status();
+            assertEquals(2, status.getPending());
+            assertEquals(0, status.getLeased());
+            assertEquals("http://a/1", queue.lease("w1", LONG_LEASE).getUrl());
+        }
+    }
+
+    @Test
+    void concurrentWorkersLeaseEachUrlOnce() throws Exception {
+        int urls = 200;
+        try (FileWorkQueue coordinator = FileWorkQueue.open(dir)) {
+            for (int i = 0; i < urls; i++) {
+                coordinator.offer("http://a/" + i);
+            }
+            coordinator.closeInput();
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<List<String>>> futures = new ArrayList<>();
+            for (int w = 0; w < 4; w++) {
+                String workerId = "w" + w;
+                futures.add(executor.submit(() -> {
+                    List<String> leased = new ArrayList<>();
+                    try (FileWorkQueue queue = FileWorkQueue.open(dir)) {
+                        Lease lease;
+                        while ((lease = queue.lease(workerId, LONG_LEASE)) != null) {
+                            leased.add(lease.getUrl());
+                            queue.ack(lease);
+                        }
+                    }
+                    return leased;
+                }));
+            }
+            Set<String> all = new HashSet<>();
+            int total = 0;
+            for (Future<List<String>> future : futures) {
+                List<String> leased = future.get();
+                all.addAll(leased);
+                total += leased.size();
+            }
+            assertEquals(urls, total);
+            assertEquals(urls, all.size());
+        } finally {
+            executor.shutdownNow();
+        }
+        try (FileWorkQueue queue = FileWorkQueue.open(dir)) {
+            assertEquals(urls, queue.status().getDone());
+            assertTrue(queue.status().isDrained());
+        }
+    }
+}
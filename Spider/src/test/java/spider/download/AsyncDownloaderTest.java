@@ -0,0 +1,124 @@
+package spider.download;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import spider.buffer.BufferPoolStats;
+import spider.buffer.DirectBufferPool;
+import spider.config.SpiderConfig;
+import spider.http.JdkHttpClient;
+import spider.limit.HostLimiter;
+import spider.metrics.SpiderMetrics;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author Gloduck
+ */
+class AsyncDownloaderTest {
+    private static final String ETAG = "\"v1\"";
+
+    @TempDir
+    Path dir;
+    private byte[] data;
+    private RangeFileServer server;
+    private ExecutorService segmentExecutor;
+    private SpiderConfig config;
+    private HostLimiter limiter;
+    private SpiderMetrics metrics;
+    private JdkHttpClient httpClient;
+    private SegmentedDownloader planner;
+    private AsyncDownloader downloader;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        data = new byte[1_000_003];
+        new Random(7).nextBytes(data);
+        server = new RangeFileServer(data, ETAG);
+        config = new SpiderConfig();
+        config.setSegmentCount(4);
+        config.setMinSegmentSize(1024);
+        config.setDownloadBufferSize(32 * 1024);
+        config.setTimeoutMilliseconds(5000);
+        limiter = new HostLimiter(config);
+        DirectBufferPool bufferPool = new DirectBufferPool(256 * 1024);
+        metrics = new SpiderMetrics(Collections::emptyList, () -> null);
+        httpClient = new JdkHttpClient(config, limiter);
+        segmentExecutor = Executors.newCachedThreadPool();
+        planner = new SegmentedDownloader(config, segmentExecutor, httpClient, limiter, bufferPool, metrics);
+        downloader = new AsyncDownloader(config, planner, httpClient, limiter, bufferPool, metrics);
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.close();
+        segmentExecutor.shutdownNow();
+        downloader.close();
+        httpClient.close();
+    }
+
+    @Test
+    void segmentsAreWrittenAtTheirOffsets() throws Exception {
+        Path target = dir.resolve("video.mp4");
+        SegmentedDownloader.RangeProbe probe = planner.probe(server.url("/video.mp4"));
+        AtomicLong progress = new AtomicLong();
+        downloader.download(server.url("/video.mp4"), target, probe, null, progress::addAndGet, new TransferControl()).get(10, TimeUnit.SECONDS);
+        assertEquals(Arrays.asList("bytes=0-249999", "bytes=250000-499999", "bytes=500000-749999", "bytes=750000-1000002"),
+                server.sortedRanges());
+        assertEquals(data.length, Files.size(target));
+        assertArrayEquals(data, Files.readAllBytes(target));
+        assertEquals(data.length, progress.get());
+        assertFalse(Files.exists(SegmentedDownloader.partPath(target)));
+        assertFalse(Files.exists(SegmentedDownloader.checkpointPath(target)));
+    }
+
+    @Test
+    void changedFileFailsWithRetryableErrorAndDropsTheCheckpoint() throws Exception {
+        Path target = dir.resolve("video.mp4");
+        SegmentedDownloader.RangeProbe probe = planner.probe(server.url("/video.mp4"));
+        server.etag = "\"v2\"";
+        ExecutionException e = assertThrows(ExecutionException.class, () -> downloader
+                .download(server.url("/video.mp4"), target, probe, null, bytes -> {
+                }, new TransferControl()).get(10, TimeUnit.SECONDS));
+        DownloadException cause = assertInstanceOf(DownloadException.class, e.getCause());
+        assertTrue(cause.isRetryable());
+        assertFalse(Files.exists(target));
+        assertFalse(Files.exists(SegmentedDownloader.checkpointPath(target)));
+    }
+
+    @Test
+    void exhaustedBufferPoolPausesTheSegmentsUntilABufferIsReleased() throws Exception {
+        // 只够一个分段写入，其余分段暂停读取，而不是改用堆内存
+        DirectBufferPool bufferPool = new DirectBufferPool(64 * 1024);
+        downloader.close();
+        downloader = new AsyncDownloader(config, planner, httpClient, limiter, bufferPool, metrics);
+        Path target = dir.resolve("video.mp4");
+        SegmentedDownloader.RangeProbe probe = planner.probe(server.url("/video.mp4"));
+        downloader.download(server.url("/video.mp4"), target, probe, null, bytes -> {
+        }, new TransferControl()).get(10, TimeUnit.SECONDS);
+        assertEquals(4, server.sortedRanges().size());
+        assertArrayEquals(data, Files.readAllBytes(target));
+        BufferPoolStats stats = bufferPool.stats();
+        assertTrue(stats.getWaits() > 0);
+        assertEquals(64 * 1024, stats.getPeakLeasedBytes());
+        assertEquals(0, stats.getLeasedBytes());
+    }
+}
@@ -0,0 +1,54 @@
+package spider.download;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * @author Gloduck
+ */
+class ContentDigestTest {
+    private static final byte[] BODY = "hello".getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    void reprDigestIsPreferredAndTheStrongestAlgorithmWins() throws Exception {
+        Map<String, String> headers = new HashMap<>();
+        headers.put("Repr-Digest", "md5=:" + base64("MD5") + ":, sha-256=:" + base64("SHA-256") + ":, unknown=:AAAA:");
+        headers.put("Digest", "SHA-512=" + base64("SHA-512"));
+        ContentDigest digest = ContentDigest.fromHeaders(headers::get);
+        assertEquals("SHA-256", digest.getAlgorithm());
+        assertArrayEquals(MessageDigest.getInstance("SHA-256").digest(BODY), digest.getValue());
+        assertEquals("2cf24dba5fb0a30e26e83b2ac5b9e29e1b161e5c1fa7425e73043362938b9824", digest.hex());
+    }
+
+    @Test
+    void olderHeadersAreUsedAsFallback() throws Exception {
+        Map<String, String> headers = new HashMap<>();
+        headers.put("Digest", "sha=" + base64("SHA-1") + ",MD5=" + base64("MD5"));
+        assertEquals("SHA-1", ContentDigest.fromHeaders(headers::get).getAlgorithm());
+        headers.clear();
+        headers.put("Content-MD5", base64("MD5"));
+        assertEquals("MD5", ContentDigest.fromHeaders(headers::get).getAlgorithm());
+    }
+
+    @Test
+    void missingOrMalformedHeadersAreIgnored() {
+        Map<String, String> headers = new HashMap<>();
+        assertNull(ContentDigest.fromHeaders(headers::get));
+        headers.put("Repr-Digest", "sha-256=:not base64!:");
+        headers.put("Content-MD5", "???");
+        assertNull(ContentDigest.fromHeaders(headers::get));
+    }
+
+    private static String base64(String algorithm) throws Exception {
+        return Base64.getEncoder().encodeToString(MessageDigest.getInstance(algorithm).digest(BODY));
+    }
+}
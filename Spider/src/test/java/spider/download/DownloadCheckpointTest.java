@@ -0,0 +1,197 @@
+package spider.download;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import spider.buffer.DirectBufferPool;
+import spider.config.SpiderConfig;
+import spider.http.JdkHttpClient;
+import spider.limit.HostLimiter;
+import spider.metrics.SpiderMetrics;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author Gloduck
+ */
+class DownloadCheckpointTest {
+    private static final String ETAG = "\"v1\"";
+    private static final int LENGTH = 64 * 1024;
+    private static final int SEGMENTS = 4;
+
+    @TempDir
+    Path dir;
+    private byte[] data;
+    private RangeFileServer server;
+    private String link;
+    private ExecutorService segmentExecutor;
+    private JdkHttpClient httpClient;
+    private SegmentedDownloader downloader;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        data = new byte[LENGTH];
+        new Random(42).nextBytes(data);
+        server = new RangeFileServer(data, ETAG);
+        link = server.url("/video.mp4");
+        SpiderConfig config = new SpiderConfig();
+        config.setSegmentCount(SEGMENTS);
+        config.setMinSegmentSize(1024);
+        config.setDownloadBufferSize(32 * 1024);
+        config.setTimeoutMilliseconds(5000);
+        segmentExecutor = Executors.newFixedThreadPool(SEGMENTS);
+        HostLimiter limiter = new HostLimiter(config);
+        DirectBufferPool bufferPool = new DirectBufferPool(256 * 1024);
+        SpiderMetrics metrics = new SpiderMetrics(Collections::emptyList, () -> null);
+        httpClient = new JdkHttpClient(config, limiter);
+        downloader = new SegmentedDownloader(config, segmentExecutor, httpClient, limiter, bufferPool, metrics);
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.close();
+        segmentExecutor.shutdownNow();
+        httpClient.close();
+    }
+
+    @Test
+    void loadReturnsNullForMissingOrCorruptFile() throws IOException {
+        Path path = dir.resolve("missing.cp");
+        assertNull(DownloadCheckpoint.load(path));
+        Files.write(path, "{\"segments\":[".getBytes(StandardCharsets.UTF_8));
+        assertNull(DownloadCheckpoint.load(path));
+    }
+
+    @Test
+    void snapshotRoundTrip() throws IOException {
+        DownloadCheckpoint checkpoint = checkpoint(ETAG, null);
+        checkpoint.getSegments().get(0).setCommitted(100);
+        Path path = dir.resolve("video.mp4.part.cp");
+        DownloadCheckpoint.write(path, checkpoint.snapshot());
+        DownloadCheckpoint loaded = DownloadCheckpoint.load(path);
+        assertEquals(checkpoint, loaded);
+        assertEquals(100, loaded.committedBytes());
+        assertFalse(Files.exists(path.resolveSibling(path.getFileName() + ".tmp")));
+    }
+
+    @Test
+    void matchesRequiresSameFileAndValidator() {
+        DownloadCheckpoint checkpoint = checkpoint(ETAG, "Mon, 01 Jan 2024 00:00:00 GMT");
+        assertTrue(checkpoint.matches(probe(ETAG, "Mon, 01 Jan 2024 00:00:00 GMT")));
+        assertFalse(checkpoint.matches(probe("\"v2\"", "Mon, 01 Jan 2024 00:00:00 GMT")));
+        assertFalse(checkpoint.matches(probe(ETAG, "Tue, 02 Jan 2024 00:00:00 GMT")));
+        SegmentedDownloader.RangeProbe shorter = probe(ETAG, "Mon, 01 Jan 2024 00:00:00 GMT");
+        shorter.setContentLength(LENGTH - 1);
+        assertFalse(checkpoint.matches(shorter));
+        SegmentedDownloader.RangeProbe noRanges = probe(ETAG, "Mon, 01 Jan 2024 00:00:00 GMT");
+        noRanges.setAcceptRanges(false);
+        assertFalse(checkpoint.matches(noRanges));
+        // 没有校验信息时无法判断文件是否变化
+        assertFalse(checkpoint(null, null).matches(probe(null, null)));
+    }
+
+    @Test
+    void ifRangePrefersStrongEtag() {
+        assertEquals(ETAG, checkpoint(ETAG, "Mon, 01 Jan 2024 00:00:00 GMT").ifRangeValidator());
+        assertEquals("Mon, 01 Jan 2024 00:00:00 GMT", checkpoint("W/\"v1\"", "Mon, 01 Jan 2024 00:00:00 GMT").ifRangeValidator());
+        assertNull(checkpoint("W/\"v1\"", null).ifRangeValidator());
+    }
+
+    @Test
+    void resumeRequestsOnlyMissingRanges() throws Exception {
+        Path target = dir.resolve("video.mp4");
+        SegmentedDownloader.RangeProbe probe = downloader.probe(link);
+        assertTrue(probe.isAcceptRanges());
+        assertEquals(LENGTH, probe.getContentLength());
+        assertEquals(ETAG, probe.getEtag());
+        DownloadCheckpoint checkpoint = downloader.plan(link, probe);
+        List<DownloadCheckpoint.Segment> segments = checkpoint.getSegments();
+        assertEquals(SEGMENTS, segments.size());
+        // 第一段已经完成，第二段完成了一半，后两段还没有开始
+        DownloadCheckpoint.Segment first = segments.get(0);
+        DownloadCheckpoint.Segment second = segments.get(1);
+        first.setCommitted(first.getEnd() - first.getStart() + 1);
+        second.setCommitted((second.getEnd() - second.getStart() + 1) / 2);
+        Path part = SegmentedDownloader.partPath(target);
+        Files.write(part, Arrays.copyOf(data, (int) second.position()));
+        DownloadCheckpoint.write(SegmentedDownloader.checkpointPath(target), checkpoint.snapshot());
+
+        DownloadCheckpoint resumable = downloader.resumableCheckpoint(target, probe);
+        assertNotNull(resumable);
+        AtomicLong progress = new AtomicLong();
+        downloader.download(link, target, probe, resumable, progress::addAndGet, new TransferControl());
+
+        List<String> expected = Arrays.asList(
+                "bytes=" + second.position() + "-" + second.getEnd(),
+                "bytes=" + segments.get(2).getStart() + "-" + segments.get(2).getEnd(),
+                "bytes=" + segments.get(3).getStart() + "-" + segments.get(3).getEnd());
+        assertEquals(expected, server.sortedRanges());
+        assertEquals(Collections.nCopies(3, ETAG), server.ifRanges);
+        assertEquals(LENGTH, progress.get());
+        assertArrayEquals(data, Files.readAllBytes(target));
+        assertFalse(Files.exists(part));
+        assertFalse(Files.exists(SegmentedDownloader.checkpointPath(target)));
+    }
+
+    @Test
+    void changedFileDiscardsCheckpoint() throws Exception {
+        Path target = dir.resolve("video.mp4");
+        SegmentedDownloader.RangeProbe probe = downloader.probe(link);
+        DownloadCheckpoint checkpoint = downloader.plan(link, probe);
+        checkpoint.getSegments().get(0).setCommitted(1024);
+        Files.write(SegmentedDownloader.partPath(target), Arrays.copyOf(data, 1024));
+        Path checkpointPath = SegmentedDownloader.checkpointPath(target);
+        DownloadCheckpoint.write(checkpointPath, checkpoint.snapshot());
+
+        // 探测之后服务器上的文件发生了变化，If-Range不匹配时返回完整的文件
+        server.etag = "\"v2\"";
+        DownloadCheckpoint resumable = downloader.resumableCheckpoint(target, probe);
+        assertNotNull(resumable);
+        DownloadException e = assertThrows(DownloadException.class, () -> downloader.download(link, target, probe, resumable, bytes -> {
+        }, new TransferControl()));
+        assertTrue(e.isRetryable());
+        assertFalse(Files.exists(checkpointPath));
+        assertFalse(Files.exists(target));
+    }
+
+    private DownloadCheckpoint checkpoint(String etag, String lastModified) {
+        DownloadCheckpoint checkpoint = new DownloadCheckpoint();
+        checkpoint.setLink(link);
+        checkpoint.setEtag(etag);
+        checkpoint.setLastModified(lastModified);
+        checkpoint.setContentLength(LENGTH);
+        DownloadCheckpoint.Segment segment = new DownloadCheckpoint.Segment();
+        segment.setStart(0);
+        segment.setEnd(LENGTH - 1);
+        checkpoint.getSegments().add(segment);
+        return checkpoint;
+    }
+
+    private static SegmentedDownloader.RangeProbe probe(String etag, String lastModified) {
+        SegmentedDownloader.RangeProbe probe = new SegmentedDownloader.RangeProbe();
+        probe.setAcceptRanges(true);
+        probe.setContentLength(LENGTH);
+        probe.setEtag(etag);
+        probe.setLastModified(lastModified);
+        return probe;
+    }
+}
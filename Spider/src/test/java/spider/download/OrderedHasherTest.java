@@ -0,0 +1,138 @@
+package spider.download;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author Gloduck
+ */
+class OrderedHasherTest {
+    private static final int SEGMENT_SIZE = 100_000;
+    private static final int CHUNK = 10_000;
+
+    @TempDir
+    Path dir;
+    private byte[] data;
+    private Path part;
+    private DownloadCheckpoint checkpoint;
+
+    @BeforeEach
+    void setUp() {
+        data = new byte[SEGMENT_SIZE * 3];
+        new Random(1).nextBytes(data);
+        part = dir.resolve("file.bin.part");
+        checkpoint = new DownloadCheckpoint();
+        checkpoint.setContentLength(data.length);
+        for (int i = 0; i < 3; i++) {
+            DownloadCheckpoint.Segment segment = new DownloadCheckpoint.Segment();
+            segment.setStart((long) i * SEGMENT_SIZE);
+            segment.setEnd((long) (i + 1) * SEGMENT_SIZE - 1);
+            checkpoint.getSegments().add(segment);
+        }
+    }
+
+    @Test
+    void outOfOrderSegmentsProduceFileOrderDigest() throws Exception {
+        try (FileChannel channel = FileChannel.open(part, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+             OrderedHasher hasher = new OrderedHasher(new ContentHasher(true, null), checkpoint, part)) {
+            // 后面的分段交替先到达，第一段最后才开始
+            for (int offset = 0; offset < SEGMENT_SIZE; offset += CHUNK) {
+                write(hasher, channel, 2, offset);
+                write(hasher, channel, 1, offset);
+            }
+            for (int offset = 0; offset < SEGMENT_SIZE; offset += CHUNK) {
+                write(hasher, channel, 0, offset);
+            }
+            assertEquals(sha256(data), hasher.complete(data.length));
+        }
+    }
+
+    @Test
+    void resumedDownloadCatchesUpFromThePartFile() throws Exception {
+        try (FileChannel channel = FileChannel.open(part, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            // 上次运行中第一段写了一半，第三段已经完成
+            for (int offset = 0; offset < SEGMENT_SIZE / 2; offset += CHUNK) {
+                write(null, channel, 0, offset);
+            }
+            for (int offset = 0; offset < SEGMENT_SIZE; offset += CHUNK) {
+                write(null, channel, 2, offset);
+            }
+            try (OrderedHasher hasher = new OrderedHasher(new ContentHasher(true, null), checkpoint, part)) {
+                for (int offset = 0; offset < SEGMENT_SIZE; offset += CHUNK) {
+                    write(hasher, channel, 1, offset);
+                }
+                for (int offset = SEGMENT_SIZE / 2; offset < SEGMENT_SIZE; offset += CHUNK) {
+                    write(hasher, channel, 0, offset);
+                }
+                assertEquals(sha256(data), hasher.complete(data.length));
+            }
+        }
+    }
+
+    @Test
+    void serverDigestIsVerified() throws Exception {
+        byte[] md5 = MessageDigest.getInstance("MD5").digest(data);
+        assertNull(hashAll(new ContentHasher(false, new ContentDigest("MD5", md5))));
+        md5[0] ^= 1;
+        DownloadException e = assertThrows(DownloadException.class, () -> hashAll(new ContentHasher(false, new ContentDigest("MD5", md5))));
+        assertTrue(e.isRetryable());
+    }
+
+    @Test
+    void incompleteFileFailsVerification() throws Exception {
+        try (FileChannel channel = FileChannel.open(part, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+             OrderedHasher hasher = new OrderedHasher(new ContentHasher(true, null), checkpoint, part)) {
+            write(hasher, channel, 0, 0);
+            write(hasher, channel, 2, 0);
+            assertThrows(DownloadException.class, () -> hasher.complete(data.length));
+        }
+    }
+
+    private String hashAll(ContentHasher contentHasher) throws Exception {
+        try (FileChannel channel = FileChannel.open(part, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+             OrderedHasher hasher = new OrderedHasher(contentHasher, checkpoint, part)) {
+            for (int segment = 2; segment >= 0; segment--) {
+                for (int offset = 0; offset < SEGMENT_SIZE; offset += CHUNK) {
+                    write(hasher, channel, segment, offset);
+                }
+            }
+            return hasher.complete(data.length);
+        }
+    }
+
+    /**
+     * 按分段下载的顺序写入一块数据：先交给摘要，再写入文件，最后更新断点
+     */
+    private void write(OrderedHasher hasher, FileChannel channel, int index, int offsetInSegment) throws IOException {
+        DownloadCheckpoint.Segment segment = checkpoint.getSegments().get(index);
+        long position = segment.getStart() + offsetInSegment;
+        ByteBuffer buffer = ByteBuffer.wrap(data, (int) position, CHUNK);
+        if (hasher != null) {
+            hasher.beforeWrite(buffer, position);
+        }
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+        synchronized (checkpoint) {
+            segment.setCommitted(position - segment.getStart());
+        }
+    }
+
+    private static String sha256(byte[] bytes) throws Exception {
+        return ContentDigest.toHex(MessageDigest.getInstance("SHA-256").digest(bytes));
+    }
+}
@@ -0,0 +1,101 @@
+package spider.download;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 测试用的本地文件服务器，按Range和If-Range返回内存中的文件，并记录收到的分段请求
+ *
+ * @author Gloduck
+ */
+class RangeFileServer implements AutoCloseable {
+    private static final Pattern RANGE = Pattern.compile("bytes=(\\d+)-(\\d+)");
+
+    private final byte[] data;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    final List<String> ranges = Collections.synchronizedList(new ArrayList<>());
+    final List<String> ifRanges = Collections.synchronizedList(new ArrayList<>());
+    volatile String etag;
+    volatile boolean honourRanges = true;
+
+    RangeFileServer(byte[] data, String etag) throws IOException {
+        this.data = data;
+        this.etag = etag;
+        this.executor = Executors.newCachedThreadPool();
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        this.server.createContext("/", this::serve);
+        this.server.setExecutor(executor);
+        this.server.start();
+    }
+
+    String url(String path) {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + path;
+    }
+
+    /**
+     * 按起始位置排序后的分段请求
+     */
+    List<String> sortedRanges() {
+        List<String> sorted;
+        synchronized (ranges) {
+            sorted = new ArrayList<>(ranges);
+        }
+        sorted.sort((a, b) -> Long.compare(start(a), start(b)));
+        return sorted;
+    }
+
+    private void serve(HttpExchange exchange) throws IOException {
+        try (OutputStream body = exchange.getResponseBody()) {
+            exchange.getResponseHeaders().set("Accept-Ranges", "bytes");
+            if (etag != null) {
+                exchange.getResponseHeaders().set("ETag", etag);
+            }
+            if ("HEAD".equals(exchange.getRequestMethod())) {
+                exchange.getResponseHeaders().set("Content-Length", String.valueOf(data.length));
+                exchange.sendResponseHeaders(200, -1);
+                return;
+            }
+            String range = exchange.getRequestHeaders().getFirst("Range");
+            String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+            Matcher matcher = range == null ? null : RANGE.matcher(range);
+            if (matcher != null) {
+                ranges.add(range);
+                ifRanges.add(ifRange);
+            }
+            boolean validatorMatches = ifRange == null || ifRange.equals(etag);
+            if (!honourRanges || matcher == null || !matcher.matches() || !validatorMatches) {
+                exchange.sendResponseHeaders(200, data.length);
+                body.write(data);
+                return;
+            }
+            int start = Integer.parseInt(matcher.group(1));
+            int end = Integer.parseInt(matcher.group(2));
+            exchange.getResponseHeaders().set("Content-Range", "bytes " + start + "-" + end + "/" + data.length);
+            exchange.sendResponseHeaders(206, end - start + 1L);
+            body.write(data, start, end - start + 1);
+        }
+    }
+
+    private static long start(String range) {
+        Matcher matcher = RANGE.matcher(range);
+        return matcher.matches() ? Long.parseLong(matcher.group(1)) : -1;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,138 @@
+package spider.download;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import spider.buffer.DirectBufferPool;
+import spider.config.SpiderConfig;
+import spider.http.JdkHttpClient;
+import spider.limit.HostLimiter;
+import spider.metrics.SpiderMetrics;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author Gloduck
+ */
+class SegmentedDownloaderTest {
+    @TempDir
+    Path dir;
+    private byte[] data;
+    private RangeFileServer server;
+    private ExecutorService executor;
+    private JdkHttpClient httpClient;
+    private SegmentedDownloader downloader;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        // 长度不能被段数整除，最后一段要带上余数
+        data = new byte[100_003];
+        new Random(1).nextBytes(data);
+        server = new RangeFileServer(data, null);
+        executor = Executors.newCachedThreadPool();
+        SpiderConfig config = new SpiderConfig();
+        config.setSegmentCount(4);
+        config.setMinSegmentSize(1024);
+        config.setDownloadBufferSize(32 * 1024);
+        config.setTimeoutMilliseconds(5000);
+        HostLimiter limiter = new HostLimiter(config);
+        DirectBufferPool bufferPool = new DirectBufferPool(256 * 1024);
+        SpiderMetrics metrics = new SpiderMetrics(Collections::emptyList, () -> null);
+        httpClient = new JdkHttpClient(config, limiter);
+        downloader = new SegmentedDownloader(config, executor, httpClient, limiter, bufferPool, metrics);
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.close();
+        executor.shutdownNow();
+        httpClient.close();
+    }
+
+    @Test
+    void segmentCountIsBoundedBySizeAndRangeSupport() {
+        assertEquals(4, downloader.segmentCountOf(probe(true, data.length)));
+        assertEquals(2, downloader.segmentCountOf(probe(true, 2048)));
+        assertEquals(1, downloader.segmentCountOf(probe(false, data.length)));
+        assertEquals(1, downloader.segmentCountOf(probe(true, -1)));
+    }
+
+    @Test
+    void segmentsCoverTheFileWithoutGapsOrOverlap() throws Exception {
+        Path target = dir.resolve("file.bin");
+        AtomicLong progress = new AtomicLong();
+        SegmentedDownloader.RangeProbe probe = probe(true, data.length);
+        probe.setDigest(new ContentDigest("SHA-256", MessageDigest.getInstance("SHA-256").digest(data)));
+        String sha256 = downloader.download(server.url("/file.bin"), target, probe, null, progress::addAndGet, new TransferControl());
+        assertEquals(probe.getDigest().hex(), sha256);
+        assertEquals(Arrays.asList("bytes=0-24999", "bytes=25000-49999", "bytes=50000-74999", "bytes=75000-100002"),
+                server.sortedRanges());
+        assertEquals(data.length, Files.size(target));
+        assertArrayEquals(data, Files.readAllBytes(target));
+        assertEquals(data.length, progress.get());
+    }
+
+    @Test
+    void serverIgnoringRangesFailsAndRemovesTheFile() {
+        server.honourRanges = false;
+        Path target = dir.resolve("file.bin");
+        assertThrows(IOException.class, () -> downloader.download(server.url("/file.bin"), target, probe(true, data.length), null, read -> {
+        }, new TransferControl()));
+        assertFalse(Files.exists(target));
+    }
+
+    @Test
+    void digestMismatchFailsWithRetryableErrorAndRemovesTheFile() {
+        Path target = dir.resolve("file.bin");
+        SegmentedDownloader.RangeProbe probe = probe(true, data.length);
+        probe.setDigest(new ContentDigest("MD5", new byte[16]));
+        DownloadException e = assertThrows(DownloadException.class, () -> downloader.download(server.url("/file.bin"), target, probe, null, read -> {
+        }, new TransferControl()));
+        assertTrue(e.isRetryable());
+        assertFalse(Files.exists(target));
+        assertFalse(Files.exists(SegmentedDownloader.partPath(target)));
+    }
+
+    @Test
+    void abortFailsTheTransferWithTheAbortCause() {
+        server.etag = "\"v1\"";
+        Path target = dir.resolve("file.bin");
+        TransferControl control = new TransferControl();
+        DownloadException timeout = DownloadException.transientError("timeout");
+        DownloadException e = assertThrows(DownloadException.class, () -> downloader.download(server.url("/file.bin"), target, probe(true, data.length, server.etag), null,
+                read -> control.abort(timeout), control));
+        assertSame(timeout, e);
+        assertTrue(e.isRetryable());
+        // 中止后保留断点，重试时继续下载
+        assertTrue(Files.exists(SegmentedDownloader.checkpointPath(target)));
+    }
+
+    private static SegmentedDownloader.RangeProbe probe(boolean acceptRanges, long length) {
+        return probe(acceptRanges, length, null);
+    }
+
+    private static SegmentedDownloader.RangeProbe probe(boolean acceptRanges, long length, String etag) {
+        SegmentedDownloader.RangeProbe probe = new SegmentedDownloader.RangeProbe();
+        probe.setEtag(etag);
+        probe.setAcceptRanges(acceptRanges);
+        probe.setContentLength(length);
+        return probe;
+    }
+}
@@ -0,0 +1,93 @@
+package spider.download;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author Gloduck
+ */
+class TransferWatchdogTest {
+    private TransferWatchdog watchdog;
+
+    @AfterEach
+    void tearDown() {
+        if (watchdog != null) {
+            watchdog.shutdown();
+        }
+    }
+
+    @Test
+    void taskTimeoutAbortsWithRetryableError() throws Exception {
+        watchdog = new TransferWatchdog(200, 0, 30_000);
+        watchdog.start();
+        TransferControl control = new TransferControl();
+        CountDownLatch aborted = new CountDownLatch(1);
+        control.onAbort(aborted::countDown);
+        watchdog.watch(control, () -> 0);
+        assertTrue(aborted.await(5, TimeUnit.SECONDS));
+        DownloadException cause = assertInstanceOf(DownloadException.class, control.cause());
+        assertTrue(cause.isRetryable());
+        assertSame(cause, assertThrows(DownloadException.class, control::check));
+    }
+
+    @Test
+    void transferBelowTheSpeedFloorIsAborted() throws Exception {
+        watchdog = new TransferWatchdog(0, 1024, 600);
+        watchdog.start();
+        TransferControl control = new TransferControl();
+        CountDownLatch aborted = new CountDownLatch(1);
+        control.onAbort(aborted::countDown);
+        AtomicLong bytes = new AtomicLong();
+        watchdog.watch(control, bytes::get);
+        // 每个检查周期只传输几个字节
+        for (int i = 0; i < 40 && aborted.getCount() > 0; i++) {
+            bytes.addAndGet(10);
+            Thread.sleep(50);
+        }
+        assertTrue(aborted.await(5, TimeUnit.SECONDS));
+        assertTrue(((DownloadException) control.cause()).isRetryable());
+    }
+
+    @Test
+    void fastOrUnwatchedTransfersAreLeftAlone() throws Exception {
+        watchdog = new TransferWatchdog(0, 1024, 600);
+        watchdog.start();
+        TransferControl fast = new TransferControl();
+        AtomicLong bytes = new AtomicLong();
+        watchdog.watch(fast, bytes::get);
+        TransferControl finished = new TransferControl();
+        watchdog.watch(finished, () -> 0).run();
+        for (int i = 0; i < 30; i++) {
+            bytes.addAndGet(1024);
+            Thread.sleep(50);
+        }
+        assertFalse(fast.isAborted());
+        assertFalse(finished.isAborted());
+    }
+
+    @Test
+    void onlyTheFirstAbortCounts() {
+        TransferControl control = new TransferControl();
+        DownloadException first = DownloadException.transientError("first");
+        assertTrue(control.abort(first));
+        assertFalse(control.abort(DownloadException.cancelled("second")));
+        assertSame(first, control.cause());
+        // 已经中止后注册的动作立即执行
+        AtomicLong runs = new AtomicLong();
+        control.onAbort(runs::incrementAndGet);
+        assertEquals(1, runs.get());
+        assertNull(new TransferControl().cause());
+    }
+}
@@ -0,0 +1,92 @@
+package spider.engine;
+
+import org.junit.jupiter.api.Test;
+import spider.config.SpiderConfig;
+import spider.download.DownloadException;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.net.http.HttpConnectTimeoutException;
+import java.net.http.HttpTimeoutException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author Gloduck
+ */
+class RetryPolicyTest {
+
+    @Test
+    void transientErrorsAreRetryable() {
+        assertTrue(RetryPolicy.isRetryable(new SocketTimeoutException("Read timed out")));
+        assertTrue(RetryPolicy.isRetryable(new SocketException("Connection reset")));
+        assertTrue(RetryPolicy.isRetryable(new ConnectException("Connection refused")));
+        assertTrue(RetryPolicy.isRetryable(new EOFException()));
+        assertTrue(RetryPolicy.isRetryable(DownloadException.status(503)));
+        assertTrue(RetryPolicy.isRetryable(DownloadException.status(429)));
+        assertTrue(RetryPolicy.isRetryable(DownloadException.transientError("分段下载不完整")));
+    }
+
+    @Test
+    void httpClientTimeoutsAndClosedConnectionsAreRetryable() {
+        assertTrue(RetryPolicy.isRetryable(new HttpTimeoutException("request timed out")));
+        assertTrue(RetryPolicy.isRetryable(new HttpConnectTimeoutException("HTTP connect timed out")));
+        // java.net.http.HttpClient在连接关闭时只抛出普通的IOException
+        assertTrue(RetryPolicy.isRetryable(new IOException("connection closed locally")));
+        assertTrue(RetryPolicy.isRetryable(new IOException("Connection reset")));
+        assertTrue(RetryPolicy.isRetryable(new IOException("Broken pipe")));
+        assertTrue(RetryPolicy.isRetryable(new IOException("HTTP/1.1 header parser received no bytes")));
+        assertTrue(RetryPolicy.isRetryable(new CompletionException(new IOException("fixed content-length: 100, bytes received: 10", new IOException("closed")))));
+    }
+
+    @Test
+    void permanentErrorsAreNotRetryable() {
+        assertFalse(RetryPolicy.isRetryable(DownloadException.status(404)));
+        assertFalse(RetryPolicy.isRetryable(new UnknownHostException("files.example.com")));
+        assertFalse(RetryPolicy.isRetryable(new IOException("磁盘已满")));
+        assertFalse(RetryPolicy.isRetryable(new IOException()));
+        assertFalse(RetryPolicy.isRetryable(new IllegalStateException()));
+        assertFalse(RetryPolicy.isRetryable(null));
+    }
+
+    @Test
+    void causeChainIsFollowedAndDownloadExceptionDecides() {
+        assertTrue(RetryPolicy.isRetryable(new ExecutionException(new RuntimeException(new SocketTimeoutException()))));
+        // 外层的DownloadException已经给出了结论，不再看里面的原因
+        DownloadException notFound = DownloadException.status(404);
+        notFound.initCause(new SocketException());
+        assertFalse(RetryPolicy.isRetryable(notFound));
+    }
+
+    @Test
+    void attemptsAndDelaysAreBounded() {
+        SpiderConfig config = new SpiderConfig();
+        config.setRetryMaxAttempts(3);
+        config.setRetryBaseDelayMillis(100);
+        config.setRetryMaxDelayMillis(1000);
+        RetryPolicy policy = new RetryPolicy(config);
+        SocketTimeoutException timeout = new SocketTimeoutException();
+        assertTrue(policy.shouldRetry(timeout, 1));
+        assertTrue(policy.shouldRetry(timeout, 2));
+        assertFalse(policy.shouldRetry(timeout, 3));
+        assertFalse(policy.shouldRetry(DownloadException.status(404), 1));
+        for (int i = 0; i < 100; i++) {
+            assertBetween(50, 100, policy.delayMillis(1));
+            assertBetween(200, 400, policy.delayMillis(3));
+            // 超过上限后一直使用上限，左移溢出时也一样
+            assertBetween(500, 1000, policy.delayMillis(5));
+            assertBetween(500, 1000, policy.delayMillis(64));
+        }
+    }
+
+    private static void assertBetween(long min, long max, long actual) {
+        assertTrue(actual >= min && actual <= max, String.format("%d不在[%d, %d]之间", actual, min, max));
+    }
+}
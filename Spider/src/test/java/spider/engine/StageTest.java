@@ -0,0 +1,123 @@
+package spider.engine;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author Gloduck
+ */
+class StageTest {
+
+    @Test
+    void submitBlocksWhenInFlightLimitIsReached() throws Exception {
+        Stage stage = Stage.platform("test", 1, 1, 4, 2);
+        CountDownLatch release = new CountDownLatch(1);
+        stage.submit(() -> await(release));
+        stage.submit(() -> await(release));
+        CountDownLatch submitted = new CountDownLatch(1);
+        Thread producer = new Thread(() -> {
+            stage.submit(() -> true);
+            submitted.countDown();
+        });
+        producer.start();
+        assertFalse(submitted.await(200, TimeUnit.MILLISECONDS), "在途任务达到上限时提交应该阻塞");
+        release.countDown();
+        assertTrue(submitted.await(5, TimeUnit.SECONDS));
+        stage.shutdownAndAwait();
+        StageStats stats = stage.stats();
+        assertEquals(3, stats.getSubmitted());
+        assertEquals(3, stats.getCompleted());
+        assertEquals(0, stats.getFailed());
+    }
+
+    @Test
+    void asyncTaskHoldsSlotUntilFutureCompletes() throws Exception {
+        Stage stage = Stage.platform("test", 1, 1, 4, 1);
+        CompletableFuture<Boolean> transfer = new CompletableFuture<>();
+        stage.submitAsync(() -> transfer);
+        CountDownLatch submitted = new CountDownLatch(1);
+        Thread producer = new Thread(() -> {
+            stage.submit(() -> false);
+            submitted.countDown();
+        });
+        producer.start();
+        // 工作线程已经空闲，但是异步任务还没有完成
+        assertFalse(submitted.await(200, TimeUnit.MILLISECONDS));
+        transfer.complete(true);
+        assertTrue(submitted.await(5, TimeUnit.SECONDS));
+        stage.shutdownAndAwait();
+        assertEquals(1, stage.stats().getCompleted());
+        assertEquals(1, stage.stats().getFailed());
+    }
+
+    @Test
+    void failedAndThrowingTasksAreCountedAsFailed() throws Exception {
+        Stage stage = Stage.platform("test", 1, 1, 4, 4);
+        stage.submit(() -> false);
+        stage.submit(() -> {
+            throw new IllegalStateException("boom");
+        });
+        stage.submit(() -> true);
+        stage.shutdownAndAwait();
+        StageStats stats = stage.stats();
+        assertEquals(3, stats.getSubmitted());
+        assertEquals(1, stats.getCompleted());
+        assertEquals(2, stats.getFailed());
+        assertEquals(0, stats.getActiveCount());
+        assertEquals(0, stats.getQueueDepth());
+    }
+
+    @Test
+    void prioritizedStageRunsQueuedTasksInOrder() throws Exception {
+        Stage stage = Stage.prioritized(ExecutionMode.PLATFORM, "test", 1, 16,
+                (a, b) -> Integer.compare(((Keyed) a).key, ((Keyed) b).key));
+        CountDownLatch release = new CountDownLatch(1);
+        List<Integer> order = Collections.synchronizedList(new ArrayList<>());
+        stage.submit(new Keyed(0, () -> {
+            await(release);
+            order.add(0);
+        }));
+        for (int key : new int[]{3, 1, 2, 1}) {
+            stage.submit(new Keyed(key, () -> order.add(key)));
+        }
+        release.countDown();
+        stage.shutdownAndAwait();
+        assertEquals(List.of(0, 1, 1, 2, 3), order);
+    }
+
+    private static boolean await(CountDownLatch latch) {
+        try {
+            return latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private static class Keyed implements BooleanSupplier {
+        private final int key;
+        private final Runnable action;
+
+        private Keyed(int key, Runnable action) {
+            this.key = key;
+            this.action = action;
+        }
+
+        @Override
+        public boolean getAsBoolean() {
+            action.run();
+            return true;
+        }
+    }
+}
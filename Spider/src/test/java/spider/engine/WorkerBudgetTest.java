@@ -0,0 +1,149 @@
+package spider.engine;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author Gloduck
+ */
+class WorkerBudgetTest {
+
+    @Test
+    void aSingleJobMayUseEveryFreeSlot() throws Exception {
+        WorkerBudget budget = new WorkerBudget(3);
+        WorkerBudget.Share only = budget.register("only", 1);
+        budget.register("idle", 5);
+        for (int i = 0; i < 3; i++) {
+            only.acquire();
+        }
+        assertEquals(3, only.inUse());
+        assertEquals(3, budget.used());
+        Thread blocked = acquireAsync(only, new CopyOnWriteArrayList<>(), "only");
+        awaitWaiting(blocked);
+        only.release();
+        blocked.join(5000);
+        assertEquals(3, budget.used());
+    }
+
+    @Test
+    void releasedSlotsGoToTheJobFurthestBelowItsWeight() throws Exception {
+        WorkerBudget budget = new WorkerBudget(4);
+        WorkerBudget.Share heavy = budget.register("heavy", 3);
+        WorkerBudget.Share light = budget.register("light", 1);
+        for (int i = 0; i < 4; i++) {
+            light.acquire();
+        }
+        List<String> granted = new CopyOnWriteArrayList<>();
+        Thread[] waiters = new Thread[4];
+        for (int i = 0; i < 3; i++) {
+            waiters[i] = acquireAsync(heavy, granted, "heavy");
+            awaitWaiting(waiters[i]);
+        }
+        waiters[3] = acquireAsync(light, granted, "light");
+        awaitWaiting(waiters[3]);
+        // light占用的比例一直高于heavy，直到heavy拿到3个名额之前归还的名额都给heavy
+        for (int i = 0; i < 3; i++) {
+            light.release();
+            awaitGranted(granted, i + 1);
+        }
+        light.release();
+        awaitGranted(granted, 4);
+        assertEquals(Arrays.asList("heavy", "heavy", "heavy", "light"), granted);
+        assertEquals(3, heavy.inUse());
+        assertEquals(1, light.inUse());
+    }
+
+    @Test
+    void closingAWaitingJobsPeerLetsItProceed() throws Exception {
+        WorkerBudget budget = new WorkerBudget(2);
+        WorkerBudget.Share first = budget.register("first", 1);
+        WorkerBudget.Share second = budget.register("second", 1);
+        first.acquire();
+        first.acquire();
+        Thread waiter = acquireAsync(second, new CopyOnWriteArrayList<>(), "second");
+        awaitWaiting(waiter);
+        first.release();
+        first.release();
+        first.close();
+        waiter.join(5000);
+        assertEquals(1, second.inUse());
+    }
+
+    @Test
+    void closingAShareWakesItsOwnWaiters() throws Exception {
+        WorkerBudget budget = new WorkerBudget(1);
+        WorkerBudget.Share share = budget.register("job", 1);
+        assertTrue(share.acquire());
+        AtomicBoolean granted = new AtomicBoolean(true);
+        Thread waiter = new Thread(() -> {
+            try {
+                granted.set(share.acquire());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        waiter.start();
+        awaitWaiting(waiter);
+        share.close();
+        waiter.join(5000);
+        assertFalse(granted.get());
+        assertFalse(share.acquire());
+        // 已经获得的名额依然需要归还
+        assertEquals(1, budget.used());
+        share.release();
+        assertEquals(0, budget.used());
+    }
+
+    @Test
+    void invalidArgumentsAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new WorkerBudget(0));
+        assertThrows(IllegalArgumentException.class, () -> new WorkerBudget(1).register("job", 0));
+    }
+
+    private static Thread acquireAsync(WorkerBudget.Share share, List<String> granted, String name) {
+        CountDownLatch started = new CountDownLatch(1);
+        Thread thread = new Thread(() -> {
+            started.countDown();
+            try {
+                share.acquire();
+                granted.add(name);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        thread.start();
+        try {
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+        return thread;
+    }
+
+    private static void awaitWaiting(Thread thread) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (thread.getState() != Thread.State.WAITING && thread.isAlive() && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(Thread.State.WAITING, thread.getState());
+    }
+
+    private static void awaitGranted(List<String> granted, int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (granted.size() < count && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(count, granted.size());
+    }
+}
@@ -0,0 +1,146 @@
+package spider.event;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author Gloduck
+ */
+class EventBusTest {
+
+    @Test
+    void eventsAreDeliveredInOrderOnTheSubscriberThread() throws InterruptedException {
+        EventBus<Integer> bus = new EventBus<>(64, OverflowPolicy.BLOCK);
+        List<Integer> received = Collections.synchronizedList(new ArrayList<>());
+        Set<String> threads = ConcurrentHashMap.newKeySet();
+        bus.subscribe("test", event -> {
+            threads.add(Thread.currentThread().getName());
+            received.add(event);
+        });
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(bus.publish(i));
+        }
+        bus.close();
+        assertEquals(range(1000), received);
+        assertEquals(Collections.singleton("spider-event-test"), threads);
+    }
+
+    @Test
+    void fullBufferDropsWithDropPolicy() throws InterruptedException {
+        EventBus<Integer> bus = new EventBus<>(4, OverflowPolicy.DROP);
+        List<Integer> received = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        bus.subscribe("slow", event -> {
+            entered.countDown();
+            await(release);
+            received.add(event);
+        });
+        bus.publish(0);
+        assertTrue(entered.await(5, TimeUnit.SECONDS));
+        // 消费线程卡在第一个事件上，缓冲区只能再放4个
+        for (int i = 1; i <= 4; i++) {
+            assertTrue(bus.publish(i));
+        }
+        assertFalse(bus.publish(5));
+        assertEquals(1, bus.getDropped());
+        release.countDown();
+        bus.close();
+        assertEquals(range(5), received);
+    }
+
+    @Test
+    void fullBufferBlocksPublisherWithBlockPolicy() throws InterruptedException {
+        EventBus<Integer> bus = new EventBus<>(4, OverflowPolicy.BLOCK);
+        List<Integer> received = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        bus.subscribe("slow", event -> {
+            entered.countDown();
+            await(release);
+            received.add(event);
+        });
+        bus.publish(0);
+        assertTrue(entered.await(5, TimeUnit.SECONDS));
+        for (int i = 1; i <= 4; i++) {
+            bus.publish(i);
+        }
+        CountDownLatch published = new CountDownLatch(1);
+        Thread publisher = new Thread(() -> {
+            bus.publish(5);
+            published.countDown();
+        });
+        publisher.start();
+        assertFalse(published.await(200, TimeUnit.MILLISECONDS), "缓冲区已满时发布方应该等待");
+        release.countDown();
+        assertTrue(published.await(5, TimeUnit.SECONDS));
+        bus.close();
+        assertEquals(range(6), received);
+        assertEquals(0, bus.getDropped());
+    }
+
+    @Test
+    void closeDrainsPendingEvents() throws InterruptedException {
+        EventBus<Integer> bus = new EventBus<>(256, OverflowPolicy.BLOCK);
+        List<Integer> received = Collections.synchronizedList(new ArrayList<>());
+        bus.subscribe("slow", event -> {
+            sleep(1);
+            received.add(event);
+        });
+        for (int i = 0; i < 100; i++) {
+            bus.publish(i);
+        }
+        bus.close();
+        assertEquals(range(100), received);
+    }
+
+    @Test
+    void failingSubscriberKeepsConsuming() throws InterruptedException {
+        EventBus<Integer> bus = new EventBus<>(16, OverflowPolicy.BLOCK);
+        List<Integer> received = Collections.synchronizedList(new ArrayList<>());
+        bus.subscribe("failing", event -> {
+            received.add(event);
+            if (event % 2 == 0) {
+                throw new IllegalStateException("boom");
+            }
+        });
+        for (int i = 0; i < 10; i++) {
+            bus.publish(i);
+        }
+        bus.close();
+        assertEquals(range(10), received);
+    }
+
+    private static List<Integer> range(int count) {
+        return IntStream.range(0, count).boxed().collect(Collectors.toList());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package spider.event;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author Gloduck
+ */
+class RingBufferTest {
+
+    @Test
+    void capacityMustBePowerOfTwo() {
+        assertThrows(IllegalArgumentException.class, () -> new RingBuffer<String>(0));
+        assertThrows(IllegalArgumentException.class, () -> new RingBuffer<String>(6));
+        new RingBuffer<String>(1);
+        new RingBuffer<String>(8);
+    }
+
+    @Test
+    void offerFailsWhenFullAndPollReturnsInOrder() {
+        RingBuffer<Integer> buffer = new RingBuffer<>(4);
+        assertFalse(buffer.hasNext());
+        assertNull(buffer.poll());
+        for (int i = 0; i < 4; i++) {
+            assertTrue(buffer.offer(i));
+        }
+        assertFalse(buffer.offer(4));
+        for (int i = 0; i < 4; i++) {
+            assertTrue(buffer.hasNext());
+            assertEquals(i, buffer.poll());
+        }
+        assertFalse(buffer.hasNext());
+        assertNull(buffer.poll());
+    }
+
+    @Test
+    void slotsAreReusedAfterWrapAround() {
+        RingBuffer<Integer> buffer = new RingBuffer<>(4);
+        int next = 0;
+        int expected = 0;
+        for (int round = 0; round < 100; round++) {
+            while (buffer.offer(next)) {
+                next++;
+            }
+            // 每轮只取出一部分，下一轮从不同的槽位开始写入
+            for (int i = 0; i <= round % 4; i++) {
+                assertEquals(expected++, buffer.poll());
+            }
+        }
+        Integer item;
+        while ((item = buffer.poll()) != null) {
+            assertEquals(expected++, item);
+        }
+        assertEquals(next, expected);
+    }
+
+    @Test
+    void concurrentProducersNeitherLoseNorDuplicate() throws InterruptedException {
+        int producers = 4;
+        int perProducer = 100_000;
+        RingBuffer<Integer> buffer = new RingBuffer<>(64);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            int base = p * perProducer;
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < perProducer; i++) {
+                    while (!buffer.offer(base + i)) {
+                        Thread.yield();
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        boolean[] seen = new boolean[producers * perProducer];
+        int[] lastOfProducer = new int[producers];
+        Arrays.fill(lastOfProducer, -1);
+        int received = 0;
+        while (received < seen.length) {
+            Integer item = buffer.poll();
+            if (item == null) {
+                Thread.yield();
+                continue;
+            }
+            assertFalse(seen[item], "重复的元素：" + item);
+            seen[item] = true;
+            // 同一个生产者放入的元素保持顺序
+            int producer = item / perProducer;
+            assertTrue(item > lastOfProducer[producer]);
+            lastOfProducer[producer] = item;
+            received++;
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertNull(buffer.poll());
+    }
+}
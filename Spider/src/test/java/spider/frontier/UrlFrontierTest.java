@@ -0,0 +1,129 @@
+package spider.frontier;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author Gloduck
+ */
+class UrlFrontierTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void offerSkipsDuplicatesAndFinishedUrls() throws IOException {
+        try (UrlFrontier frontier = UrlFrontier.inMemory()) {
+            assertNull(frontier.state("http://a/1"));
+            assertTrue(frontier.offer("http://a/1"));
+            assertFalse(frontier.offer("http://a/1"));
+            assertEquals(UrlState.PENDING, frontier.state("http://a/1"));
+            frontier.mark("http://a/2", UrlState.DONE);
+            assertFalse(frontier.offer("http://a/2"));
+            frontier.mark("http://a/1", UrlState.RESOLVED);
+            assertEquals(UrlState.RESOLVED, frontier.state("http://a/1"));
+        }
+    }
+
+    @Test
+    void indexKeepsStatesWhenItGrows() throws IOException {
+        int count = 200_000;
+        try (UrlFrontier frontier = UrlFrontier.inMemory()) {
+            for (int i = 0; i < count; i++) {
+                assertTrue(frontier.offer("http://a/" + i));
+                if (i % 3 == 0) {
+                    frontier.mark("http://a/" + i, UrlState.DONE);
+                }
+            }
+            for (int i = 0; i < count; i++) {
+                assertFalse(frontier.offer("http://a/" + i));
+                assertEquals(i % 3 == 0 ? UrlState.DONE : UrlState.PENDING, frontier.state("http://a/" + i));
+            }
+        }
+    }
+
+    @Test
+    void unfinishedUrlsAreAdmittedAfterRestart() throws IOException {
+        Path log = dir.resolve("frontier/urls.log");
+        try (UrlFrontier frontier = UrlFrontier.open(log)) {
+            for (String url : Arrays.asList("http://a/1", "http://a/2", "http://a/3")) {
+                frontier.offer(url);
+            }
+            frontier.mark("http://a/1", UrlState.DONE);
+            frontier.mark("http://a/2", UrlState.FAILED);
+        }
+        // 进程中断时写了一半的行
+        Files.write(log, "DON".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        try (UrlFrontier frontier = UrlFrontier.open(log)) {
+            assertEquals(UrlState.DONE, frontier.state("http://a/1"));
+            assertEquals(UrlState.FAILED, frontier.state("http://a/2"));
+            List<String> admitted = new ArrayList<>();
+            frontier.admitUnfinished(admitted::add);
+            assertEquals(Arrays.asList("http://a/2", "http://a/3"), admitted);
+            // 已经登记的链接再次发现时不会重复处理
+            assertFalse(frontier.offer("http://a/2"));
+            assertFalse(frontier.offer("http://a/1"));
+            assertTrue(frontier.offer("http://a/4"));
+        }
+    }
+
+    @Test
+    void logIsCompactedOnOpen() throws IOException {
+        Path log = dir.resolve("urls.log");
+        try (UrlFrontier frontier = UrlFrontier.open(log)) {
+            for (int i = 0; i < 10; i++) {
+                String url = "http://a/" + i;
+                frontier.offer(url);
+                frontier.mark(url, UrlState.RESOLVED);
+                frontier.mark(url, i < 5 ? UrlState.DONE : UrlState.FAILED);
+            }
+        }
+        assertEquals(30, Files.readAllLines(log, StandardCharsets.UTF_8).size());
+        try (UrlFrontier frontier = UrlFrontier.open(log)) {
+            List<String> lines = Files.readAllLines(log, StandardCharsets.UTF_8);
+            assertEquals(10, lines.size());
+            assertTrue(lines.contains("DONE\thttp://a/0"));
+            assertTrue(lines.contains("FAILED\thttp://a/9"));
+            // 压缩时借用的登记标记已经清除，没有完成的链接依然可以登记
+            List<String> admitted = new ArrayList<>();
+            frontier.admitUnfinished(admitted::add);
+            assertEquals(5, admitted.size());
+            assertFalse(frontier.offer("http://a/5"));
+            assertTrue(frontier.offer("http://a/10"));
+        }
+    }
+
+    @Test
+    void indexFileDoesNotOutliveTheFrontier() throws IOException {
+        Path log = dir.resolve("urls.log");
+        UrlFrontier frontier = UrlFrontier.open(log);
+        for (int i = 0; i < 100_000; i++) {
+            frontier.offer("http://a/" + i);
+        }
+        frontier.close();
+        assertEquals(Collections.singletonList(log), files());
+    }
+
+    private List<Path> files() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.collect(Collectors.toList());
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package spider.html;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author Gloduck
+ */
+class HtmlStreamParserTest {
+
+    @Test
+    void selectorMatchesTagClassIdAndAttributes() {
+        TagSelector selector = TagSelector.parse("a.item[href^=\"/video/\"], div#main, img[data-src$=.jpg], span[title*=hd], [data-id]");
+        assertTrue(selector.matches("a", attributes("class", "big item", "href", "/video/1")));
+        assertFalse(selector.matches("a", attributes("class", "items", "href", "/video/1")));
+        assertFalse(selector.matches("a", attributes("class", "item", "href", "/photo/1")));
+        assertTrue(selector.matches("div", attributes("id", "main")));
+        assertFalse(selector.matches("div", attributes("id", "main2")));
+        assertTrue(selector.matches("img", attributes("data-src", "cover.jpg")));
+        assertTrue(selector.matches("span", attributes("title", "1080 hd ")));
+        assertTrue(selector.matches("li", attributes("data-id", "")));
+        assertFalse(selector.matches("li", attributes()));
+    }
+
+    @Test
+    void unsupportedSelectorsAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> TagSelector.parse("div a"));
+        assertThrows(IllegalArgumentException.class, () -> TagSelector.parse("a,"));
+        assertThrows(IllegalArgumentException.class, () -> TagSelector.parse("a[href"));
+        assertThrows(IllegalArgumentException.class, () -> TagSelector.parse("a."));
+    }
+
+    @Test
+    void collectsAttributesAndText() throws IOException {
+        String html = "<!DOCTYPE html><html><head><title>x</title></head><body>"
+                + "<!-- <a class=\"item\" href=\"/skip\">comment</a> -->"
+                + "<A CLASS='item' HREF=\"/v?a=1&amp;b=2\" data-hd>Tom &amp;   Jerry\n <b>HD</b></A>"
+                + "<a class=item href=/v/2>second</a>"
+                + "<a href=/v/3>not selected</a>"
+                + "</body></html>";
+        List<HtmlTag> tags = parse(html, "a.item");
+        assertEquals(2, tags.size());
+        HtmlTag first = tags.get(0);
+        assertEquals("a", first.getName());
+        assertEquals("/v?a=1&b=2", first.attr("href"));
+        assertEquals("/v?a=1&b=2", first.attr("HREF"));
+        assertEquals("", first.attr("data-hd"));
+        assertEquals("Tom & Jerry HD", first.getText());
+        assertEquals("/v/2", tags.get(1).attr("href"));
+        assertEquals("second", tags.get(1).getText());
+    }
+
+    @Test
+    void voidAndSelfClosingElementsEndImmediately() throws IOException {
+        List<HtmlTag> tags = parse("<div><img src=a.jpg><br/><img src=\"b.jpg\" />text</div>", "img");
+        assertEquals(Arrays.asList("a.jpg", "b.jpg"), tags.stream().map(tag -> tag.attr("src")).collect(Collectors.toList()));
+        assertEquals("", tags.get(0).getText());
+    }
+
+    @Test
+    void optionalEndTagsCloseOnSiblingOrParentEnd() throws IOException {
+        List<HtmlTag> tags = parse("<ul><li>one<li>two <b>bold</b><li><p>three</ul><p>after", "li, p");
+        List<String> texts = tags.stream().map(tag -> tag.getName() + ":" + tag.getText()).collect(Collectors.toList());
+        assertEquals(Arrays.asList("li:one", "li:two bold", "li:three", "p:three", "p:after"), texts);
+    }
+
+    @Test
+    void nestedElementsEndAtTheirOwnEndTag() throws IOException {
+        List<HtmlTag> tags = parse("<div class=card><div class=title>name</div><span>1:00</span></div>tail", "div.card, div.title");
+        List<String> texts = tags.stream().map(HtmlTag::getText).collect(Collectors.toList());
+        assertEquals(Arrays.asList("name", "name 1:00"), texts);
+    }
+
+    @Test
+    void omittedEndTagsInsideElementDoNotKeepItOpen() throws IOException {
+        String html = "<div class=card><ul><li>a<li>b</ul><script>var x = 1;</script><p>c</div>"
+                + "<div class=card><span>d</div>"
+                + "<div class=card>e</div>";
+        List<HtmlTag> tags = parse(html, "div.card");
+        assertEquals(Arrays.asList("a b c", "d", "e"), tags.stream().map(HtmlTag::getText).collect(Collectors.toList()));
+    }
+
+    @Test
+    void scriptAndStyleContentIsNotParsed() throws IOException {
+        String html = "<script>var s = '<a class=\"item\" href=\"/fake\">x</a>';</SCRIPT>"
+                + "<style>a::before{content:'<a>'}</style>"
+                + "<a class=item href=/real>real</a>";
+        List<HtmlTag> tags = parse(html, "a");
+        assertEquals(1, tags.size());
+        assertEquals("/real", tags.get(0).attr("href"));
+        List<HtmlTag> scripts = parse("<script src=app.js></script><p>x</p>", "script");
+        assertEquals("app.js", scripts.get(0).attr("src"));
+    }
+
+    @Test
+    void unclosedElementsAreEmittedAtEndOfDocument() throws IOException {
+        List<HtmlTag> tags = parse("<div class=a>x <div class=a>y", "div.a");
+        assertEquals(Arrays.asList("x y", "y"), tags.stream().map(HtmlTag::getText).collect(Collectors.toList()));
+    }
+
+    @Test
+    void stopsReadingWhenVisitorReturnsFalse() throws IOException {
+        StringBuilder html = new StringBuilder("<ul>");
+        for (int i = 0; i < 100_000; i++) {
+            html.append("<li><a class=item href=/v/").append(i).append(">").append(i).append("</a></li>");
+        }
+        html.append("</ul>");
+        CountingReader reader = new CountingReader(new StringReader(html.toString()));
+        List<String> links = new ArrayList<>();
+        boolean stopped = HtmlStreamParser.parse(reader, TagSelector.parse("a.item"), tag -> {
+            links.add(tag.attr("href"));
+            return links.size() < 3;
+        });
+        assertTrue(stopped);
+        assertEquals(Arrays.asList("/v/0", "/v/1", "/v/2"), links);
+        assertTrue(reader.count < html.length() / 10, "提前停止后不应该继续读取：" + reader.count);
+
+        boolean finished = HtmlStreamParser.parse(new ByteArrayInputStream(html.toString().getBytes(StandardCharsets.UTF_8)),
+                StandardCharsets.UTF_8, TagSelector.parse("a.item"), tag -> true);
+        assertFalse(finished);
+    }
+
+    private static List<HtmlTag> parse(String html, String selector) throws IOException {
+        List<HtmlTag> tags = new ArrayList<>();
+        HtmlStreamParser.parse(new StringReader(html), TagSelector.parse(selector), tags::add);
+        return tags;
+    }
+
+    private static Map<String, String> attributes(String... pairs) {
+        Map<String, String> attributes = new HashMap<>();
+        for (int i = 0; i < pairs.length; i += 2) {
+            attributes.put(pairs[i], pairs[i + 1]);
+        }
+        return Collections.unmodifiableMap(attributes);
+    }
+
+    private static class CountingReader extends Reader {
+        private final Reader delegate;
+        private long count;
+
+        private CountingReader(Reader delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) throws IOException {
+            int read = delegate.read(buffer, offset, length);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+
+        @Override
+        public void close() throws IOException {
+            delegate.close();
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package spider.http;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author Gloduck
+ */
+class ReadTimeoutInputStreamTest {
+
+    @Test
+    void timeBetweenReadsIsNotIdle() throws Exception {
+        ReadTimeoutInputStream stream = new ReadTimeoutInputStream(new ByteArrayInputStream(new byte[]{1, 2}), 50);
+        assertEquals(1, stream.read());
+        // 调用方限速或者计算摘要，没有阻塞在读取中
+        Thread.sleep(150);
+        assertFalse(stream.closeIfIdle());
+        assertEquals(2, stream.read());
+    }
+
+    @Test
+    void blockedReadIsClosedAfterTheTimeout() throws Exception {
+        BlockingInputStream blocking = new BlockingInputStream();
+        ReadTimeoutInputStream stream = new ReadTimeoutInputStream(blocking, 100);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Integer> read = executor.submit(() -> stream.read(new byte[16]));
+            assertTrue(blocking.reading.await(5, TimeUnit.SECONDS));
+            assertFalse(stream.closeIfIdle());
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (!stream.closeIfIdle()) {
+                assertTrue(System.nanoTime() < deadline);
+                Thread.sleep(20);
+            }
+            Exception e = assertThrows(Exception.class, () -> read.get(5, TimeUnit.SECONDS));
+            assertInstanceOf(SocketTimeoutException.class, e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * 读取一直阻塞到流被关闭
+     */
+    private static class BlockingInputStream extends InputStream {
+        private final CountDownLatch reading = new CountDownLatch(1);
+        private final CountDownLatch closed = new CountDownLatch(1);
+
+        @Override
+        public int read() throws IOException {
+            reading.countDown();
+            try {
+                closed.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return -1;
+        }
+
+        @Override
+        public void close() {
+            closed.countDown();
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package spider.limit;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author Gloduck
+ */
+class AdaptiveLimitTest {
+    private static final long INTERVAL = 1000;
+
+    @Test
+    void acquireBlocksAtTheLimitUntilReleasedOrRaised() throws InterruptedException {
+        AdaptiveLimit limit = new AdaptiveLimit(1);
+        limit.acquire();
+        CountDownLatch acquired = new CountDownLatch(2);
+        Runnable waiter = () -> {
+            try {
+                limit.acquire();
+                acquired.countDown();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+        new Thread(waiter).start();
+        new Thread(waiter).start();
+        assertFalse(acquired.await(100, TimeUnit.MILLISECONDS));
+        limit.release();
+        assertFalse(acquired.await(100, TimeUnit.MILLISECONDS));
+        assertEquals(1, acquired.getCount());
+        limit.setLimit(2);
+        assertTrue(acquired.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void unsaturatedWindowKeepsTheLimit() {
+        AdaptiveLimit limit = new AdaptiveLimit(4);
+        record(limit, 1_000_000, 10, 0, TimeUnit.MILLISECONDS.toNanos(10));
+        assertEquals(4, limit.adjust(INTERVAL, 1, 100));
+    }
+
+    @Test
+    void saturatedWindowIncreasesUntilThroughputStopsGrowing() throws InterruptedException {
+        AdaptiveLimit limit = new AdaptiveLimit(2);
+        saturate(limit);
+        record(limit, 1_000_000, 10, 0, TimeUnit.MILLISECONDS.toNanos(10));
+        assertEquals(3, limit.adjust(INTERVAL, 1, 100));
+        // 吞吐量还在增加，继续加一
+        saturate(limit);
+        record(limit, 1_500_000, 10, 0, TimeUnit.MILLISECONDS.toNanos(10));
+        assertEquals(4, limit.adjust(INTERVAL, 1, 100));
+        // 吞吐量没有增加，延迟翻倍以上，说明已经越过拐点
+        saturate(limit);
+        record(limit, 1_500_000, 10, 0, TimeUnit.MILLISECONDS.toNanos(30));
+        assertEquals(3, limit.adjust(INTERVAL, 1, 100));
+        // 减小之后不会连续减小，重新开始试探
+        saturate(limit);
+        record(limit, 1_000_000, 10, 0, TimeUnit.MILLISECONDS.toNanos(30));
+        assertEquals(4, limit.adjust(INTERVAL, 1, 100));
+    }
+
+    @Test
+    void highErrorRateDecreasesProportionally() {
+        AdaptiveLimit limit = new AdaptiveLimit(10);
+        record(limit, 1_000_000, 90, 10, TimeUnit.MILLISECONDS.toNanos(10));
+        assertEquals(7, limit.adjust(INTERVAL, 1, 100));
+        // 错误率低于阈值时不减小
+        record(limit, 1_000_000, 99, 1, TimeUnit.MILLISECONDS.toNanos(10));
+        assertEquals(7, limit.adjust(INTERVAL, 1, 100));
+    }
+
+    @Test
+    void limitIsClampedToFloorAndCeiling() throws InterruptedException {
+        AdaptiveLimit limit = new AdaptiveLimit(3);
+        record(limit, 0, 0, 10, 0);
+        assertEquals(2, limit.adjust(INTERVAL, 2, 3));
+        record(limit, 0, 0, 10, 0);
+        assertEquals(2, limit.adjust(INTERVAL, 2, 3));
+        saturate(limit);
+        assertEquals(3, limit.adjust(INTERVAL, 2, 3));
+        saturate(limit);
+        assertEquals(3, limit.adjust(INTERVAL, 2, 3));
+        assertEquals(3, limit.getLimit());
+    }
+
+    /**
+     * 占满所有许可再归还，使本周期记为许可用尽
+     */
+    private static void saturate(AdaptiveLimit limit) throws InterruptedException {
+        int permits = limit.getLimit();
+        for (int i = 0; i < permits; i++) {
+            limit.acquire();
+        }
+        for (int i = 0; i < permits; i++) {
+            limit.release();
+        }
+    }
+
+    private static void record(AdaptiveLimit limit, long bytes, int responses, int errors, long latencyNanos) {
+        limit.recordBytes(bytes);
+        for (int i = 0; i < responses; i++) {
+            limit.recordResponse(latencyNanos);
+        }
+        for (int i = 0; i < errors; i++) {
+            limit.recordError();
+        }
+    }
+}
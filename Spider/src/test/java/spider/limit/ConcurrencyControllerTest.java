@@ -0,0 +1,101 @@
+package spider.limit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import spider.config.SpiderConfig;
+
+import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * @author Gloduck
+ */
+class ConcurrencyControllerTest {
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private ConcurrencyController controller;
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+        if (controller != null) {
+            controller.shutdown();
+        }
+    }
+
+    @Test
+    void globalLimitIsSharedByAllHosts() throws Exception {
+        controller = new ConcurrencyController(config(2, 4, 0));
+        assertEquals(2, controller.globalLimit());
+        HostSemaphores.Permit a = controller.acquire("a");
+        HostSemaphores.Permit b = controller.acquire("b");
+        Future<HostSemaphores.Permit> c = executor.submit(() -> controller.acquire("c"));
+        assertThrows(TimeoutException.class, () -> c.get(200, TimeUnit.MILLISECONDS));
+        a.close();
+        c.get(5, TimeUnit.SECONDS).close();
+        b.close();
+        assertEquals(3, controller.hostLimits().size());
+    }
+
+    @Test
+    void hostLimitStartsAtMaxConnectionsPerHost() throws Exception {
+        controller = new ConcurrencyController(config(4, 8, 1));
+        HostSemaphores.Permit first = controller.acquire("a");
+        Future<HostSemaphores.Permit> second = executor.submit(() -> controller.acquire("a"));
+        assertThrows(TimeoutException.class, () -> second.get(200, TimeUnit.MILLISECONDS));
+        assertEquals(1, (int) controller.hostLimits().get("a"));
+        first.close();
+        second.get(5, TimeUnit.SECONDS).close();
+    }
+
+    @Test
+    void waitingForASaturatedHostDoesNotHoldAGlobalPermit() throws Exception {
+        controller = new ConcurrencyController(config(2, 4, 1));
+        HostSemaphores.Permit busy = controller.acquire("a");
+        Future<HostSemaphores.Permit> queued = executor.submit(() -> controller.acquire("a"));
+        assertThrows(TimeoutException.class, () -> queued.get(200, TimeUnit.MILLISECONDS));
+        // 全局还剩一个许可，空闲的host不会被排队等待a的请求挡住
+        Future<HostSemaphores.Permit> free = executor.submit(() -> controller.acquire("b"));
+        HostSemaphores.Permit b = free.get(5, TimeUnit.SECONDS);
+        busy.close();
+        queued.get(5, TimeUnit.SECONDS).close();
+        b.close();
+    }
+
+    @Test
+    void errorsShrinkTheLimitsWithinTheirBounds() throws Exception {
+        SpiderConfig config = config(4, 8, 0);
+        config.setAdaptiveIntervalMillis(50);
+        controller = new ConcurrencyController(config);
+        controller.start();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while ((controller.globalLimit() > 1 || controller.hostLimits().get("a") > 1) && System.nanoTime() < deadline) {
+            controller.onResponse("a", 503, 0);
+            controller.onFailure("a");
+            Thread.sleep(10);
+        }
+        assertEquals(1, controller.globalLimit());
+        assertEquals(1, (int) controller.hostLimits().get("a"));
+        // 不会减小到下限以下，许可依然可以获取
+        Thread.sleep(200);
+        assertEquals(1, controller.globalLimit());
+        controller.acquire("a").close();
+    }
+
+    private static SpiderConfig config(int maxThreadCount, int maxConcurrency, int maxConnectionsPerHost) {
+        SpiderConfig config = new SpiderConfig();
+        config.setType("test");
+        config.setTargetLists(Collections.singletonList("http://a/list"));
+        config.setMaxThreadCount(maxThreadCount);
+        config.setMaxConnectionsPerHost(maxConnectionsPerHost);
+        config.setAdaptiveMaxConcurrency(maxConcurrency);
+        config.adjustConfig();
+        return config;
+    }
+}
@@ -0,0 +1,55 @@
+package spider.limit;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author Gloduck
+ */
+class TokenBucketTest {
+
+    @Test
+    void nonPositiveRateMeansUnlimited() {
+        assertNull(TokenBucket.perSecond(0));
+        assertNull(TokenBucket.perSecond(-1));
+        assertNotNull(TokenBucket.perSecond(0.5));
+    }
+
+    @Test
+    void burstUpToCapacityDoesNotWait() {
+        TokenBucket bucket = new TokenBucket(1000, 100);
+        assertEquals(0, bucket.reserve(60));
+        assertEquals(0, bucket.reserve(40));
+    }
+
+    @Test
+    void overdraftIsPaidBackByLaterCallers() {
+        TokenBucket bucket = new TokenBucket(1000, 100);
+        // 透支50个令牌，按每秒1000个需要等待约50毫秒
+        long first = bucket.reserve(150);
+        assertBetween(TimeUnit.MILLISECONDS.toNanos(30), TimeUnit.MILLISECONDS.toNanos(50), first);
+        // 后来的获取者还要等待之前透支的部分
+        long second = bucket.reserve(50);
+        assertBetween(TimeUnit.MILLISECONDS.toNanos(75), TimeUnit.MILLISECONDS.toNanos(100), second);
+    }
+
+    @Test
+    void acquireSleepsForTheOverdraft() throws InterruptedException {
+        TokenBucket bucket = new TokenBucket(1000, 10);
+        long start = System.nanoTime();
+        bucket.acquire(10);
+        bucket.acquire(100);
+        long elapsed = System.nanoTime() - start;
+        assertTrue(elapsed >= TimeUnit.MILLISECONDS.toNanos(90), "等待时间过短：" + elapsed);
+    }
+
+    private static void assertBetween(long min, long max, long actual) {
+        assertTrue(actual >= min && actual <= max, String.format("%d不在[%d, %d]之间", actual, min, max));
+    }
+}
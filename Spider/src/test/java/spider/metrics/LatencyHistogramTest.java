@@ -0,0 +1,74 @@
+package spider.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author Gloduck
+ */
+class LatencyHistogramTest {
+    private static final int LAST_INDEX = LatencyHistogram.indexOf(Long.MAX_VALUE);
+
+    @Test
+    void smallValuesHaveExactBuckets() {
+        for (long micros = 0; micros < 64; micros++) {
+            assertEquals(micros, LatencyHistogram.indexOf(micros));
+            assertEquals(micros, LatencyHistogram.upperBound((int) micros));
+        }
+    }
+
+    @Test
+    void bucketsAreContiguousAndMonotonic() {
+        for (int index = 0; index < LAST_INDEX; index++) {
+            long upper = LatencyHistogram.upperBound(index);
+            assertEquals(index, LatencyHistogram.indexOf(upper), "桶的上界应该落在本桶");
+            assertEquals(index + 1, LatencyHistogram.indexOf(upper + 1), "上界加一应该落在下一个桶");
+        }
+    }
+
+    @Test
+    void relativeErrorIsBounded() {
+        Random random = new Random(7);
+        for (int i = 0; i < 100_000; i++) {
+            long micros = random.nextLong() >>> (24 + random.nextInt(40));
+            long upper = LatencyHistogram.upperBound(LatencyHistogram.indexOf(micros));
+            assertTrue(upper >= micros, "代表值不能低估：" + micros);
+            assertTrue(upper - micros <= micros / 32, String.format("%d的代表值%d误差过大", micros, upper));
+        }
+    }
+
+    @Test
+    void hugeValuesGoToTheLastBucket() {
+        assertEquals(LAST_INDEX, LatencyHistogram.indexOf(1L << 41));
+        assertTrue(LatencyHistogram.indexOf((1L << 40) - 1) <= LAST_INDEX);
+    }
+
+    @Test
+    void snapshotReportsPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.snapshot().getCount());
+        for (int millis = 1; millis <= 100; millis++) {
+            histogram.recordNanos(TimeUnit.MILLISECONDS.toNanos(millis));
+        }
+        HistogramSnapshot snapshot = histogram.snapshot();
+        assertEquals(100, snapshot.getCount());
+        assertEquals(50.5, snapshot.getMeanMillis(), 1e-9);
+        assertWithin(50, snapshot.getP50Millis());
+        assertWithin(90, snapshot.getP90Millis());
+        assertWithin(99, snapshot.getP99Millis());
+        assertWithin(100, snapshot.getMaxMillis());
+    }
+
+    /**
+     * 代表值是桶的上界，只会比实际值大，且不超过约3%
+     */
+    private static void assertWithin(double expected, double actual) {
+        assertTrue(actual >= expected && actual <= expected * (1 + 1.0 / 32),
+                String.format("应接近%.1f，实际为%.3f", expected, actual));
+    }
+}
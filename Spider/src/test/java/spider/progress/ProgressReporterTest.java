@@ -0,0 +1,139 @@
+package spider.progress;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author Gloduck
+ */
+class ProgressReporterTest {
+    private final BlockingQueue<List<TaskProgress>> reports = new ArrayBlockingQueue<>(1024);
+    private final BlockingQueue<String> threads = new ArrayBlockingQueue<>(1024);
+    private ProgressReporter reporter;
+
+    @AfterEach
+    void tearDown() {
+        if (reporter != null) {
+            reporter.shutdown();
+        }
+    }
+
+    @Test
+    void samplesAreReportedOnTheReporterThread() throws Exception {
+        reporter = new ProgressReporter(20, snapshot -> {
+            threads.offer(Thread.currentThread().getName());
+            reports.offer(snapshot);
+        });
+        ProgressReporter.Task task = reporter.track("a.mp4", "http://a/1", 1000);
+        reporter.start();
+        Thread[] writers = new Thread[4];
+        for (int i = 0; i < writers.length; i++) {
+            writers[i] = new Thread(() -> {
+                for (int j = 0; j < 100; j++) {
+                    task.increase(1);
+                }
+            });
+            writers[i].start();
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        TaskProgress progress = awaitCurrent(400);
+        assertEquals("a.mp4", progress.getFileName());
+        assertEquals("http://a/1", progress.getLink());
+        assertEquals(1000, progress.getTotal());
+        assertEquals(40.0, progress.percent(), 1e-9);
+        assertEquals("spider-progress", threads.take());
+    }
+
+    @Test
+    void speedIsMeasuredBetweenSamples() throws Exception {
+        reporter = new ProgressReporter(50, reports::offer);
+        ProgressReporter.Task task = reporter.track("a.mp4", "http://a/1", 1_000_000);
+        reporter.start();
+        reports.poll(5, TimeUnit.SECONDS);
+        task.increase(10_000);
+        TaskProgress progress = awaitCurrent(10_000);
+        assertTrue(progress.getBytesPerSecond() > 0, "速度应该大于0：" + progress.getBytesPerSecond());
+        // 没有新的数据时速度回到0
+        TaskProgress idle = reports.poll(5, TimeUnit.SECONDS).get(0);
+        assertEquals(0, idle.getBytesPerSecond(), 1e-9);
+    }
+
+    @Test
+    void unknownLengthHasNoPercent() throws Exception {
+        reporter = new ProgressReporter(20, reports::offer);
+        ProgressReporter.Task task = reporter.track("live.flv", "http://a/live", -1);
+        task.increase(123);
+        reporter.start();
+        TaskProgress progress = awaitCurrent(123);
+        assertEquals(-1, progress.getTotal());
+        assertEquals(-1, progress.percent(), 1e-9);
+    }
+
+    @Test
+    void finishedTasksAreNoLongerReported() throws Exception {
+        reporter = new ProgressReporter(20, reports::offer);
+        ProgressReporter.Task first = reporter.track("a.mp4", "http://a/1", 10);
+        reporter.track("b.mp4", "http://a/2", 10);
+        reporter.start();
+        assertEquals(2, reports.poll(5, TimeUnit.SECONDS).size());
+        first.finish();
+        // 已经在采样中的一次汇报可能还包含它
+        reports.clear();
+        reports.poll(5, TimeUnit.SECONDS);
+        List<TaskProgress> snapshot = reports.poll(5, TimeUnit.SECONDS);
+        assertNotNull(snapshot);
+        assertEquals(1, snapshot.size());
+        assertEquals("b.mp4", snapshot.get(0).getFileName());
+    }
+
+    @Test
+    void nothingIsReportedWithoutTasksOrAfterShutdown() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        reporter = new ProgressReporter(10, snapshot -> {
+            calls.incrementAndGet();
+            // 回调出错不影响后续的汇报
+            throw new IllegalStateException("boom");
+        });
+        reporter.start();
+        Thread.sleep(100);
+        assertEquals(0, calls.get());
+        reporter.track("a.mp4", "http://a/1", 10);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (calls.get() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(calls.get() >= 2);
+        reporter.shutdown();
+        int afterShutdown = calls.get();
+        Thread.sleep(100);
+        assertEquals(afterShutdown, calls.get());
+        assertNull(reports.poll());
+    }
+
+    /**
+     * 等到汇报中的第一个任务达到指定的字节数
+     */
+    private TaskProgress awaitCurrent(long expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (System.currentTimeMillis() < deadline) {
+            List<TaskProgress> snapshot = reports.poll(deadline - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+            if (snapshot != null && !snapshot.isEmpty() && snapshot.get(0).getCurrent() == expected) {
+                return snapshot.get(0);
+            }
+        }
+        throw new AssertionError("没有等到进度达到" + expected);
+    }
+}